@@ -0,0 +1,2 @@
+UPDATE dataset d JOIN dataset_acquisition da ON d.dataset_acquisition_id = da.id JOIN examination e ON da.examination_id = e.id SET d.study_id = e.study_id;
+CREATE INDEX i_dataset_study ON dataset (study_id);
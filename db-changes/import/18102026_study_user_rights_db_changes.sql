@@ -0,0 +1,3 @@
+ALTER TABLE study_user ADD COLUMN study_user_rights int NOT NULL DEFAULT 0;
+UPDATE study_user su SET study_user_rights = (SELECT BIT_OR(1 << sur.study_user_rights) FROM study_user_study_user_rights sur WHERE sur.study_user_id = su.id);
+DROP TABLE study_user_study_user_rights;
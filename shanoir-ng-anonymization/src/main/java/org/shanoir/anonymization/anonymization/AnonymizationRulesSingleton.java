@@ -49,9 +49,12 @@ public class AnonymizationRulesSingleton {
 
 	private Map<String, List<String>> tagsToDeleteForManufacturer;
 
+	private Map<String, int[]> sortedTagsToDeleteForManufacturer;
+
 	private AnonymizationRulesSingleton() {
 		this.profiles = new HashMap<>();
 		this.tagsToDeleteForManufacturer = new HashMap<>();
+		this.sortedTagsToDeleteForManufacturer = new HashMap<>();
 		Integer xtagColumn = null;
 		try {
 			ClassLoader classLoader = getClass().getClassLoader();
@@ -129,6 +132,14 @@ public class AnonymizationRulesSingleton {
 
 			myWorkBook.close();
 
+			// compile once the rules for the lookups during anonymization
+			for (Profile profile : profiles.values()) {
+				profile.getTagActionTable();
+			}
+			for (Map.Entry<String, List<String>> entry : tagsToDeleteForManufacturer.entrySet()) {
+				sortedTagsToDeleteForManufacturer.put(entry.getKey(), TagActionTable.toSortedTags(entry.getValue()));
+			}
+
 		} catch (IOException e) {
 			LOG.error("Unable to read anonymization file: {}", e);
 		}
@@ -147,4 +158,11 @@ public class AnonymizationRulesSingleton {
 		return tagsToDeleteForManufacturer;
 	}
 
+	/**
+	 * @return for each manufacturer the sorted tags to delete, see TagActionTable.toSortedTags
+	 */
+	public Map<String, int[]> getSortedTagsToDeleteForManufacturer() {
+		return sortedTagsToDeleteForManufacturer;
+	}
+
 }
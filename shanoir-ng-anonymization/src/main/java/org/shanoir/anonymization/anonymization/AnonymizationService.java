@@ -16,6 +16,9 @@ package org.shanoir.anonymization.anonymization;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.function.BiConsumer;
+
+import org.dcm4che3.data.Attributes;
 
 /**
  * Anonymization service.
@@ -56,5 +59,20 @@ public interface AnonymizationService {
 			String patientLastName, String patientID) throws Exception;
 	
 	void anonymizeForShanoir(ArrayList<File> dicomFiles, String profile, String patientName, String patientID) throws Exception;
+
+	/**
+	 * Same as above, and gives the anonymized attributes of each file (pixel data as
+	 * bulk data reference) to the consumer, so that the caller does not need to read
+	 * the files again. The consumer is called concurrently, from several threads.
+	 * 
+	 * @param dicomFiles
+	 * @param profile
+	 * @param patientName
+	 * @param patientID
+	 * @param anonymizedAttributesConsumer
+	 * @throws Exception
+	 */
+	void anonymizeForShanoir(ArrayList<File> dicomFiles, String profile, String patientName, String patientID,
+			BiConsumer<File, Attributes> anonymizedAttributesConsumer) throws Exception;
 	
 }
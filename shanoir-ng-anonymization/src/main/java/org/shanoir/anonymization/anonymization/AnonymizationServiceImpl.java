@@ -17,18 +17,28 @@ package org.shanoir.anonymization.anonymization;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.VR;
+import org.dcm4che3.io.BulkDataDescriptor;
 import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomInputStream.IncludeBulkData;
 import org.dcm4che3.io.DicomOutputStream;
 import org.shanoir.ng.anonymization.uid.generation.UIDGeneration;
 import org.slf4j.Logger;
@@ -39,6 +49,10 @@ import org.slf4j.LoggerFactory;
  * e.g. when used by server. bug fixed for identical media storage sop instance
  * uid and sop instance uid and bug fixed for invalid uid generation.
  * 
+ * The files are anonymized in parallel, each file in one pass: only the header
+ * is read into memory, the pixel data are copied from the original file into an
+ * anonymized copy, that replaces atomically the original file at the end.
+ * 
  * @author ifakhfakh
  * @author mkain
  * 
@@ -47,38 +61,28 @@ public class AnonymizationServiceImpl implements AnonymizationService {
 
 	private static final Logger LOG = LoggerFactory.getLogger(AnonymizationServiceImpl.class);
 
-	private static final String PRIVATE_TAGS = "0xggggeeee";
-	private static final String CURVE_DATA_TAGS = "0x50xxxxxx";
-	private static final String OVERLAY_COMMENTS_TAGS = "0x60xx4000";
-	private static final String OVERLAY_DATA_TAGS = "0x60xx3000";
+	private static final String ANONYMIZED_FILE_SUFFIX = ".anonymized";
+
+	/**
+	 * Only the pixel data are read as references into the original file: the values
+	 * of the other large elements, e.g. of private tags, have to be checked for PHI.
+	 */
+	private static final BulkDataDescriptor PIXEL_DATA_ONLY = (itemPointer, privateCreator, tag, vr, length) ->
+			itemPointer.isEmpty() && tag == Tag.PixelData;
+
+	/**
+	 * Shared by all anonymizations of the same JVM, to not use more threads
+	 * than processors when several imports are running at the same time.
+	 */
+	private static final ForkJoinPool ANONYMIZATION_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 	
 	private Random rand = new Random();
 	
-	private static Map<String, List<String>> tagsToDeleteForManufacturer;
+	private static Map<String, int[]> tagsToDeleteForManufacturer;
 
 	@Override
 	public void anonymize(ArrayList<File> dicomFiles, String profile) throws Exception {
-		long startTime = System.currentTimeMillis();
-		final int totalAmount = dicomFiles.size();
-		LOG.info("Start anonymization, for {} DICOM files.", totalAmount);
-		Map<String, Profile> profiles = AnonymizationRulesSingleton.getInstance().getProfiles();
-		Map<String, String> anonymizationMap = profiles.get(profile).getAnonymizationMap();
-		tagsToDeleteForManufacturer = AnonymizationRulesSingleton.getInstance().getTagsToDeleteForManufacturer();
-		// init here for multi-threading reasons
-		Map<String, String> seriesInstanceUIDs = new HashMap<>();
-		Map<String, String> studyInstanceUIDs = new HashMap<>();
-		Map<String, String> studyIds = new HashMap<>();
-		LOG.debug("anonymize : totalAmount={}", totalAmount);
-		int current = 0;
-		for (int i = 0; i < dicomFiles.size(); ++i) {
-			final File file = dicomFiles.get(i);
-			// Perform the anonymization
-			performAnonymization(file, anonymizationMap, false, "", "", seriesInstanceUIDs, studyInstanceUIDs, studyIds);
-			current++;
-			final int currentPercent = current * 100 / totalAmount;
-			LOG.debug("anonymize : anonymization current percent= {} %", currentPercent);
-		}
-		logInfos("End anonymization", startTime);
+		anonymizeFiles(dicomFiles, profile, false, "", "", null);
 	}
 
 	@Override
@@ -90,28 +94,65 @@ public class AnonymizationServiceImpl implements AnonymizationService {
 
 	@Override
 	public void anonymizeForShanoir(ArrayList<File> dicomFiles, String profile, String patientName, String patientID) throws Exception {
+		anonymizeFiles(dicomFiles, profile, true, patientName, patientID, null);
+	}
+
+	@Override
+	public void anonymizeForShanoir(ArrayList<File> dicomFiles, String profile, String patientName, String patientID,
+			BiConsumer<File, Attributes> anonymizedAttributesConsumer) throws Exception {
+		anonymizeFiles(dicomFiles, profile, true, patientName, patientID, anonymizedAttributesConsumer);
+	}
+
+	/**
+	 * Anonymizes all files in parallel and waits for all of them: the first
+	 * error met is thrown after all files have been processed.
+	 * 
+	 * @param dicomFiles
+	 * @param profile
+	 * @param isShanoirAnonymization
+	 * @param patientName
+	 * @param patientID
+	 * @param anonymizedAttributesConsumer can be null
+	 * @throws Exception
+	 */
+	private void anonymizeFiles(ArrayList<File> dicomFiles, String profile, boolean isShanoirAnonymization,
+			String patientName, String patientID, BiConsumer<File, Attributes> anonymizedAttributesConsumer) throws Exception {
 		long startTime = System.currentTimeMillis();
 		final int totalAmount = dicomFiles.size();
 		LOG.info("Start anonymization, for {} DICOM files.", totalAmount);
 		Map<String, Profile> profiles = AnonymizationRulesSingleton.getInstance().getProfiles();
-		Map<String, String> anonymizationMap = profiles.get(profile).getAnonymizationMap();
-		tagsToDeleteForManufacturer = AnonymizationRulesSingleton.getInstance().getTagsToDeleteForManufacturer();
-		// init here for multi-threading reasons
-
-		Map<String, String> seriesInstanceUIDs = new HashMap<>();
-		Map<String, String> studyInstanceUIDs = new HashMap<>();
-		Map<String, String> studyIds = new HashMap<>();
+		TagActionTable tagActions = profiles.get(profile).getTagActionTable();
+		tagsToDeleteForManufacturer = AnonymizationRulesSingleton.getInstance().getSortedTagsToDeleteForManufacturer();
+		// init here for multi-threading reasons: shared between the files of this call only
+		Map<String, String> seriesInstanceUIDs = new ConcurrentHashMap<>();
+		Map<String, String> studyInstanceUIDs = new ConcurrentHashMap<>();
+		Map<String, String> studyIds = new ConcurrentHashMap<>();
 		LOG.debug("anonymize : totalAmount={}", totalAmount);
-		int current = 0;
-		for (int i = 0; i < dicomFiles.size(); ++i) {
-			final File file = dicomFiles.get(i);
-			// Perform the anonymization
-			performAnonymization(file, anonymizationMap, true, patientName, patientID, seriesInstanceUIDs, studyInstanceUIDs, studyIds);
-			current++;
-			final int currentPercent = current * 100 / totalAmount;
-			LOG.debug("anonymize : anonymization current percent= {} %", currentPercent);
+		final AtomicInteger current = new AtomicInteger();
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(totalAmount);
+		for (final File file : dicomFiles) {
+			tasks.add(ANONYMIZATION_POOL.submit(() -> {
+				// Perform the anonymization
+				performAnonymization(file, tagActions, isShanoirAnonymization, patientName, patientID, seriesInstanceUIDs, studyInstanceUIDs, studyIds, anonymizedAttributesConsumer);
+				final int currentPercent = current.incrementAndGet() * 100 / totalAmount;
+				LOG.debug("anonymize : anonymization current percent= {} %", currentPercent);
+				return null;
+			}));
+		}
+		Exception firstException = null;
+		for (ForkJoinTask<?> task : tasks) {
+			try {
+				task.get();
+			} catch (ExecutionException e) {
+				if (firstException == null) {
+					firstException = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+			}
 		}
 		logInfos("End anonymization", startTime);
+		if (firstException != null) {
+			throw firstException;
+		}
 	}
 	
 	private void logInfos(final String methodName, long startTime) {
@@ -147,28 +188,41 @@ public class AnonymizationServiceImpl implements AnonymizationService {
 	 * Further does each part of an UID has to start with a non-zero value, see
 	 * UIDGeneration code.
 	 * 
+	 * The pixel data are never loaded: they are read as
+	 * references into the original file and copied from there into the anonymized
+	 * file, which is then moved atomically onto the original file. If anything goes
+	 * wrong, the original file stays untouched.
+	 * 
+	 * The actions of the profile are looked up in its precompiled TagActionTable,
+	 * so that the loop over the tags does not allocate anything for most tags.
+	 * 
 	 * @param dicomFile
 	 *            the image path
-	 * @param profile
-	 *            anonymization profile
+	 * @param tagActions
+	 *            anonymization profile, compiled
+	 * @param anonymizedAttributesConsumer
+	 *            receives the anonymized attributes once the file is written, can be null
 	 * @throws Exception
 	 */
-	public void performAnonymization(final File dicomFile, Map<String, String> anonymizationMap, boolean isShanoirAnonymization,
+	public void performAnonymization(final File dicomFile, TagActionTable tagActions, boolean isShanoirAnonymization,
 			String patientName, String patientID, Map<String, String> seriesInstanceUIDs,
-			Map<String, String> studyInstanceUIDs, Map<String, String> studyIds) throws Exception {
+			Map<String, String> studyInstanceUIDs, Map<String, String> studyIds,
+			BiConsumer<File, Attributes> anonymizedAttributesConsumer) throws Exception {
 		DicomInputStream din = null;
 		DicomOutputStream dos = null;
+		final File anonymizedFile = new File(dicomFile.getParentFile(), dicomFile.getName() + ANONYMIZED_FILE_SUFFIX);
 		try {
 			din = new DicomInputStream(dicomFile);
+			din.setIncludeBulkData(IncludeBulkData.URI);
+			din.setBulkDataDescriptor(PIXEL_DATA_ONLY);
 			
 			/**
 			 * DICOM "header"/meta-information fields: read tags
 			 */
 			Attributes metaInformationAttributes = din.readFileMetaInformation();
 			for (int tagInt : metaInformationAttributes.tags()) {
-				String tagString = String.format("0x%08x", Integer.valueOf(tagInt));
-				if (anonymizationMap.containsKey(tagString)) {
-					final String action = anonymizationMap.get(tagString);
+				final byte action = tagActions.getAction(tagInt);
+				if (action != TagActionTable.NO_ACTION) {
 					anonymizeTag(tagInt, action, metaInformationAttributes);
 				}
 			}
@@ -190,46 +244,44 @@ public class AnonymizationServiceImpl implements AnonymizationService {
 			String patientBirthNameAttr = datasetAttributes.getString(Tag.PatientBirthName);
 			// temporarily keep the patient birth date for isShanoirAnonymization
 			String patientBirthDateAttr = datasetAttributes.getString(Tag.PatientBirthDate);
+			int[] tagsToDelete = tagsToDeleteForManufacturer != null
+					? tagsToDeleteForManufacturer.get(datasetAttributes.getString(Tag.Manufacturer)) : null;
 
 			// anonymize DICOM files according to selected profile
 			for (int tagInt : datasetAttributes.tags()) {
-				String tagString = String.format("0x%08X", Integer.valueOf(tagInt));
-				String gggg = tagString.substring(2, 6);
-				Integer intgggg = Integer.decode("0x" + gggg);
 				// odd: for private tags
-				if (intgggg % 2 == 1) {
-					String action = anonymizationMap.get(PRIVATE_TAGS);
-					String value = datasetAttributes.getString(tagInt);
+				if (TagActionTable.isPrivateTag(tagInt)) {
+					byte action = tagActions.getPrivateTagsAction();
 					// only act below in case of K: keep, if X: delete for private tags, no need
-					if (value != null && !value.isEmpty() && action.equals("K")) {
-						action = checkForPHIInPrivateTags(patientNameArrayAttr, patientIDAttr, patientBirthNameAttr, patientBirthDateAttr, tagInt, value, action);
-						action = handleTagsToDeleteForManufacturer(datasetAttributes, tagString, action);
+					if (action == TagActionTable.KEEP) {
+						String value = getPrivateTagValue(datasetAttributes, tagInt);
+						if (value != null && !value.isEmpty()) {
+							action = checkForPHIInPrivateTags(patientNameArrayAttr, patientIDAttr, patientBirthNameAttr, patientBirthDateAttr, tagInt, value, action);
+							action = handleTagsToDeleteForManufacturer(tagsToDelete, tagInt, action);
+						}
 					}
 					anonymizeTag(tagInt, action, datasetAttributes);
-				// even: public tags
-				} else if (anonymizationMap.containsKey(tagString)) {
-					if (tagInt == Tag.SOPInstanceUID) {
-						anonymizeSOPInstanceUID(tagInt, datasetAttributes, mediaStorageSOPInstanceUIDGenerated);
-					} else if (tagInt == Tag.SeriesInstanceUID) {
-						anonymizeSeriesInstanceUID(tagInt, datasetAttributes, seriesInstanceUIDs);
-					} else if (tagInt == Tag.StudyInstanceUID) {
-						anonymizeStudyInstanceUID(tagInt, datasetAttributes, studyInstanceUIDs);
-					} else if (tagInt == Tag.StudyID) {
-						anonymizeStudyId(tagInt, datasetAttributes, studyIds);
-					} else {
-						final String action = anonymizationMap.get(tagString);
-						anonymizeTag(tagInt, action, datasetAttributes);
-					}
 				} else {
-					if (0x50000000 <= tagInt && tagInt <= 0x50FFFFFF) {
-						final String action = anonymizationMap.get(CURVE_DATA_TAGS);
-						anonymizeTag(tagInt, action, datasetAttributes);
-					} else if (0x60004000 <= tagInt && tagInt <= 0x60FF4000) {
-						final String action = anonymizationMap.get(OVERLAY_COMMENTS_TAGS);
-						anonymizeTag(tagInt, action, datasetAttributes);
-					} else if (0x60003000 <= tagInt && tagInt <= 0x60FF3000) {
-						final String action = anonymizationMap.get(OVERLAY_DATA_TAGS);
-						anonymizeTag(tagInt, action, datasetAttributes);
+					final byte action = tagActions.getAction(tagInt);
+					// even: public tags
+					if (action != TagActionTable.NO_ACTION) {
+						if (tagInt == Tag.SOPInstanceUID) {
+							anonymizeSOPInstanceUID(tagInt, datasetAttributes, mediaStorageSOPInstanceUIDGenerated);
+						} else if (tagInt == Tag.SeriesInstanceUID) {
+							anonymizeSeriesInstanceUID(tagInt, datasetAttributes, seriesInstanceUIDs);
+						} else if (tagInt == Tag.StudyInstanceUID) {
+							anonymizeStudyInstanceUID(tagInt, datasetAttributes, studyInstanceUIDs);
+						} else if (tagInt == Tag.StudyID) {
+							anonymizeStudyId(tagInt, datasetAttributes, studyIds);
+						} else {
+							anonymizeTag(tagInt, action, datasetAttributes);
+						}
+					} else {
+						// curve data and overlays
+						final byte rangeAction = tagActions.getRangeAction(tagInt);
+						if (rangeAction != TagActionTable.NO_ACTION) {
+							anonymizeTag(tagInt, rangeAction, datasetAttributes);
+						}
 					}
 				}
 			}
@@ -238,9 +290,17 @@ public class AnonymizationServiceImpl implements AnonymizationService {
 				anonymizePatientMetaData(datasetAttributes, patientName, patientID, patientBirthDateAttr);
 			}
 			LOG.debug("finish anonymization: begin storage");
-			dos = new DicomOutputStream(dicomFile);
+			dos = new DicomOutputStream(anonymizedFile);
 			dos.writeDataset(metaInformationAttributes, datasetAttributes);
+			dos.close();
+			dos = null;
+			din.close();
+			din = null;
+			replaceFile(anonymizedFile, dicomFile);
 			LOG.debug("finish anonymization: end storage");
+			if (anonymizedAttributesConsumer != null) {
+				anonymizedAttributesConsumer.accept(dicomFile, datasetAttributes);
+			}
 		} catch (final IOException exc) {
 			LOG.error("performAnonymization : error while anonimizing file " + dicomFile.toString() + " : ", exc);
 		} finally {
@@ -254,28 +314,41 @@ public class AnonymizationServiceImpl implements AnonymizationService {
 			} catch (IOException e) {
 				LOG.error(e.getMessage(), e);
 			}
+			// only left in case of error, the original file has not been touched
+			if (anonymizedFile.exists() && !anonymizedFile.delete()) {
+				LOG.error("performAnonymization : unable to delete file " + anonymizedFile.toString());
+			}
+		}
+	}
+
+	/**
+	 * Moves the anonymized file onto the original one, atomically if the
+	 * file system supports it.
+	 * 
+	 * @param anonymizedFile
+	 * @param dicomFile
+	 * @throws IOException
+	 */
+	private void replaceFile(final File anonymizedFile, final File dicomFile) throws IOException {
+		try {
+			Files.move(anonymizedFile.toPath(), dicomFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(anonymizedFile.toPath(), dicomFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
 		}
 	}
 
 	/**
 	 * Handle tags to delete for manufacturer here
 	 * 
-	 * @param datasetAttributes
-	 * @param tagString
+	 * @param tagsToDelete
+	 *            sorted tags to delete for the manufacturer of the file, may be null
+	 * @param tagInt
 	 * @param action
 	 * @return
 	 */
-	private String handleTagsToDeleteForManufacturer(Attributes datasetAttributes, String tagString, String action) {
-		String manufacturer = datasetAttributes.getString(Tag.Manufacturer);
-		List<String> tagsToDelete = tagsToDeleteForManufacturer.get(manufacturer);
-		if (tagsToDelete != null) {
-			for (Iterator<String> iterator = tagsToDelete.iterator(); iterator.hasNext();) {
-				String tagToDelete = iterator.next();
-				if (tagString.equals(tagToDelete)) {
-					action = "X";
-					break;
-				}
-			}
+	private byte handleTagsToDeleteForManufacturer(int[] tagsToDelete, int tagInt, byte action) {
+		if (tagsToDelete != null && Arrays.binarySearch(tagsToDelete, tagInt) >= 0) {
+			return TagActionTable.REMOVE;
 		}
 		return action;
 	}
@@ -289,19 +362,33 @@ public class AnonymizationServiceImpl implements AnonymizationService {
 	 * @param value
 	 * @throws Exception
 	 */
-	private String checkForPHIInPrivateTags(String[] patientNameArrayAttr, String patientIDAttr, String patientBirthNameAttr,
-			String patientBirthDateAttr, int tagInt, String value, String action) throws Exception {
+	/**
+	 * @return the value of a private tag as text, also for the binary values of
+	 *         unknown private tags, that can contain text
+	 * @throws IOException
+	 */
+	private String getPrivateTagValue(Attributes attributes, int tagInt) throws IOException {
+		VR vr = attributes.getVR(tagInt);
+		if (vr == VR.UN || vr == VR.OB) {
+			byte[] bytes = attributes.getBytes(tagInt);
+			return bytes != null ? attributes.getSpecificCharacterSet().decode(bytes) : null;
+		}
+		return attributes.getString(tagInt);
+	}
+
+	private byte checkForPHIInPrivateTags(String[] patientNameArrayAttr, String patientIDAttr, String patientBirthNameAttr,
+			String patientBirthDateAttr, int tagInt, String value, byte action) throws Exception {
 		// check for patient name elements
 		for (int i = 0; i < patientNameArrayAttr.length; i++) {
 			String patientNamePart = patientNameArrayAttr[i];
 			if(checkTagContainsValuePHI(tagInt, value, patientNamePart)) {
-				return "X";
+				return TagActionTable.REMOVE;
 			}
 		}
 		if (checkTagContainsValuePHI(tagInt, value, patientIDAttr)
 			|| checkTagContainsValuePHI(tagInt, value, patientBirthNameAttr)
 			|| checkTagContainsValuePHI(tagInt, value, patientBirthDateAttr)) {
-			return "X";
+			return TagActionTable.REMOVE;
 		}
 		return action;
 	}
@@ -326,18 +413,17 @@ public class AnonymizationServiceImpl implements AnonymizationService {
 	 * @param tagInt
 	 *            : the tag to anonymize
 	 * @param action
-	 *            : the action letter to apply
+	 *            : the action to apply, see TagActionTable
 	 * @param attributes
 	 *            : the list of dicom attributes to modify
 	 */
-	private void anonymizeTag(Integer tagInt, String action, Attributes attributes) {
-		String value = getFinalValueForTag(action);
-		if (value == null) {
+	private void anonymizeTag(int tagInt, byte action, Attributes attributes) {
+		if (action == TagActionTable.REMOVE) {
 			attributes.remove(tagInt);
-		} else if ("KEEP".equals(value)) {
+		} else if (action == TagActionTable.KEEP) {
 			// do nothing
 		} else {
-			anonymizeTagAccordingToVR(attributes, tagInt, value);
+			anonymizeTagAccordingToVR(attributes, tagInt, getFinalValueForTag(action));
 		}
 	}
 
@@ -346,90 +432,69 @@ public class AnonymizationServiceImpl implements AnonymizationService {
 	}
 
 	private void anonymizeSeriesInstanceUID(int tagInt, Attributes attributes, Map<String, String> seriesInstanceUIDs) {
-		String value;
-		if (seriesInstanceUIDs != null && seriesInstanceUIDs.size() != 0
-				&& seriesInstanceUIDs.get(attributes.getString(tagInt)) != null) {
-			value = seriesInstanceUIDs.get(attributes.getString(tagInt));
-		} else {
-			UIDGeneration generator = new UIDGeneration();
-			String newUID = null;
-			try {
-				newUID = generator.getNewUID();
-			} catch (Exception e) {
-				LOG.error(e.getMessage());
-			}
-			value = newUID;
-			seriesInstanceUIDs.put(attributes.getString(tagInt), value);
-		}
+		String value = seriesInstanceUIDs.computeIfAbsent(getUIDMapKey(attributes, tagInt), key -> generateNewUID());
 		anonymizeTagAccordingToVR(attributes, tagInt, value);
 	}
 
 	private void anonymizeStudyInstanceUID(int tagInt, Attributes attributes, Map<String, String> studyInstanceUIDs) {
-		String value;
-		if (studyInstanceUIDs != null && studyInstanceUIDs.size() != 0
-				&& studyInstanceUIDs.get(attributes.getString(tagInt)) != null) {
-			value = studyInstanceUIDs.get(attributes.getString(tagInt));
-		} else {
-			UIDGeneration generator = new UIDGeneration();
-			String newUID = null;
-			try {
-				newUID = generator.getNewUID();
-			} catch (Exception e) {
-				LOG.error(e.getMessage());
-			}
-			value = newUID;
-			studyInstanceUIDs.put(attributes.getString(tagInt), value);
-		}
+		String value = studyInstanceUIDs.computeIfAbsent(getUIDMapKey(attributes, tagInt), key -> generateNewUID());
 		anonymizeTagAccordingToVR(attributes, tagInt, value);
 	}
 
+	/**
+	 * The maps are shared between the threads anonymizing the files of one call:
+	 * a ConcurrentHashMap does not accept null keys, so a missing value is mapped to "".
+	 */
+	private String getUIDMapKey(Attributes attributes, int tagInt) {
+		String oldValue = attributes.getString(tagInt);
+		return oldValue != null ? oldValue : "";
+	}
+
+	private String generateNewUID() {
+		UIDGeneration generator = new UIDGeneration();
+		String newUID = null;
+		try {
+			newUID = generator.getNewUID();
+		} catch (Exception e) {
+			LOG.error(e.getMessage());
+		}
+		return newUID;
+	}
+
 	private void anonymizeStudyId(int tagInt, Attributes attributes, Map<String, String> studyIds) {
-		String value;
-		if (studyIds != null && studyIds.size() != 0 && studyIds.get(attributes.getString(tagInt)) != null) {
-			value = studyIds.get(attributes.getString(tagInt));
-		} else {
+		String value = studyIds.computeIfAbsent(getUIDMapKey(attributes, tagInt), key -> {
 			char[] chars = "abcdefghijklmnopqrstuvwxyz".toCharArray();
 			StringBuilder sb = new StringBuilder();
 			for (int i = 0; i < 10; i++) {
 				char c = chars[rand.nextInt(chars.length)];
 				sb.append(c);
 			}
-			String output = sb.toString();
-			value = output.toString();
-			studyIds.put(attributes.getString(tagInt), value);
-		}
+			return sb.toString();
+		});
 		anonymizeTagAccordingToVR(attributes, tagInt, value);
 	}
 
 	/**
-	 * Get the anonymized value of the tag
+	 * Get the anonymized value of the tag, for the actions replacing the value
 	 * 
 	 * @param action
-	 *            : the action letter to apply
+	 *            : the action to apply, see TagActionTable
 	 * @return
 	 */
-	private String getFinalValueForTag(final String action) {
+	private String getFinalValueForTag(final byte action) {
 		String result = "";
-		if (action != null) {
-			if (action.equals("X")) {
-				result = null;
-			} else if (action.equals("Z")) {
-				result = "";
-			} else if (action.equals("D")) {
-				SecureRandom random = new SecureRandom();
-				result = new BigInteger(130, random).toString(32);
-			} else if (action.equals("U")) {
-				UIDGeneration generator = new UIDGeneration();
-				String newUID = null;
-				try {
-					newUID = generator.getNewUID();
-				} catch (Exception e) {
-					LOG.error(e.getMessage());
-				}
-				result = newUID;
-			} else if (action.equals("K")) {
-				result = "KEEP";
+		if (action == TagActionTable.DUMMY) {
+			SecureRandom random = new SecureRandom();
+			result = new BigInteger(130, random).toString(32);
+		} else if (action == TagActionTable.NEW_UID) {
+			UIDGeneration generator = new UIDGeneration();
+			String newUID = null;
+			try {
+				newUID = generator.getNewUID();
+			} catch (Exception e) {
+				LOG.error(e.getMessage());
 			}
+			result = newUID;
 		}
 		return result;
 	}
@@ -9,6 +9,8 @@ public class Profile {
 	
 	private Map<String, String> anonymizationMap;
 
+	private TagActionTable tagActionTable;
+
 	public Profile(Integer profileColumn) {
 		super();
 		this.profileColumn = profileColumn;
@@ -25,6 +27,20 @@ public class Profile {
 
 	public void setAnonymizationMap(Map<String, String> anonymizationMap) {
 		this.anonymizationMap = anonymizationMap;
+		this.tagActionTable = null;
+	}
+
+	/**
+	 * The anonymization map compiled for the lookups during anonymization,
+	 * compiled on first use.
+	 * 
+	 * @return the tag action table
+	 */
+	public synchronized TagActionTable getTagActionTable() {
+		if (tagActionTable == null) {
+			tagActionTable = new TagActionTable(anonymizationMap);
+		}
+		return tagActionTable;
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,199 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.anonymization.anonymization;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Anonymization profile compiled once for the per-tag hot path: the actions of
+ * the profile are stored as bytes in an open-addressed int -> action table, plus
+ * the actions of the range rules (private tags, curve data, overlay data and
+ * overlay comments). A lookup does not allocate anything.
+ * 
+ * @author mkain
+ *
+ */
+public final class TagActionTable {
+
+	public static final byte NO_ACTION = 0;
+	/** K: keep the value */
+	public static final byte KEEP = 1;
+	/** X: remove the tag */
+	public static final byte REMOVE = 2;
+	/** Z and all other actions: replace with an empty value */
+	public static final byte EMPTY = 3;
+	/** D: replace with a dummy value */
+	public static final byte DUMMY = 4;
+	/** U: replace with a new uid */
+	public static final byte NEW_UID = 5;
+
+	static final String PRIVATE_TAGS = "0xggggeeee";
+	static final String CURVE_DATA_TAGS = "0x50xxxxxx";
+	static final String OVERLAY_COMMENTS_TAGS = "0x60xx4000";
+	static final String OVERLAY_DATA_TAGS = "0x60xx3000";
+
+	private static final int HEX_RADIX = 16;
+
+	private final int[] tags;
+
+	private final byte[] actions;
+
+	private final int mask;
+
+	private final byte privateTagsAction;
+
+	private final byte curveDataAction;
+
+	private final byte overlayCommentsAction;
+
+	private final byte overlayDataAction;
+
+	public TagActionTable(Map<String, String> anonymizationMap) {
+		int capacity = Integer.highestOneBit(Math.max(anonymizationMap.size(), 1) * 2 - 1) << 1;
+		this.tags = new int[capacity];
+		this.actions = new byte[capacity];
+		this.mask = capacity - 1;
+		for (Entry<String, String> entry : anonymizationMap.entrySet()) {
+			Integer tag = parseTag(entry.getKey());
+			if (tag != null) {
+				put(tag, toAction(entry.getValue()));
+			}
+		}
+		this.privateTagsAction = toRangeAction(anonymizationMap, PRIVATE_TAGS);
+		this.curveDataAction = toRangeAction(anonymizationMap, CURVE_DATA_TAGS);
+		this.overlayCommentsAction = toRangeAction(anonymizationMap, OVERLAY_COMMENTS_TAGS);
+		this.overlayDataAction = toRangeAction(anonymizationMap, OVERLAY_DATA_TAGS);
+	}
+
+	/**
+	 * Returns the action of the profile for exactly this tag.
+	 * 
+	 * @param tag
+	 * @return the action or NO_ACTION, if the tag is not in the profile
+	 */
+	public byte getAction(int tag) {
+		int index = hash(tag) & mask;
+		while (actions[index] != NO_ACTION) {
+			if (tags[index] == tag) {
+				return actions[index];
+			}
+			index = (index + 1) & mask;
+		}
+		return NO_ACTION;
+	}
+
+	/**
+	 * Returns the action of the range rules for curve data and overlays,
+	 * used for the public tags, that are not in the profile.
+	 * 
+	 * @param tag
+	 * @return the action or NO_ACTION, if the tag is in no range
+	 */
+	public byte getRangeAction(int tag) {
+		if (0x50000000 <= tag && tag <= 0x50FFFFFF) {
+			return curveDataAction;
+		} else if (0x60004000 <= tag && tag <= 0x60FF4000) {
+			return overlayCommentsAction;
+		} else if (0x60003000 <= tag && tag <= 0x60FF3000) {
+			return overlayDataAction;
+		}
+		return NO_ACTION;
+	}
+
+	public byte getPrivateTagsAction() {
+		return privateTagsAction;
+	}
+
+	public static boolean isPrivateTag(int tag) {
+		// odd group number
+		return (tag & 0x00010000) != 0;
+	}
+
+	/**
+	 * Converts the tags of the sheet "TagsToDeleteForManufacturer" into a sorted
+	 * array, to be searched with Arrays.binarySearch.
+	 * 
+	 * @param tagStrings
+	 * @return sorted tags
+	 */
+	public static int[] toSortedTags(List<String> tagStrings) {
+		int[] sortedTags = new int[tagStrings.size()];
+		int count = 0;
+		for (String tagString : tagStrings) {
+			Integer tag = parseTag(tagString);
+			if (tag != null) {
+				sortedTags[count++] = tag;
+			}
+		}
+		sortedTags = Arrays.copyOf(sortedTags, count);
+		Arrays.sort(sortedTags);
+		return sortedTags;
+	}
+
+	static byte toAction(String action) {
+		if (action == null) {
+			return EMPTY;
+		}
+		switch (action) {
+		case "K":
+			return KEEP;
+		case "X":
+			return REMOVE;
+		case "D":
+			return DUMMY;
+		case "U":
+			return NEW_UID;
+		default:
+			return EMPTY;
+		}
+	}
+
+	private static byte toRangeAction(Map<String, String> anonymizationMap, String rangeKey) {
+		return anonymizationMap.containsKey(rangeKey) ? toAction(anonymizationMap.get(rangeKey)) : EMPTY;
+	}
+
+	/**
+	 * @param tagString in format 0x00101010
+	 * @return the tag or null, for the range keys like 0x60xx3000
+	 */
+	private static Integer parseTag(String tagString) {
+		if (tagString == null || tagString.length() != 10 || !tagString.startsWith("0x")) {
+			return null;
+		}
+		try {
+			return (int) Long.parseLong(tagString.substring(2), HEX_RADIX);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private void put(int tag, byte action) {
+		int index = hash(tag) & mask;
+		while (actions[index] != NO_ACTION && tags[index] != tag) {
+			index = (index + 1) & mask;
+		}
+		tags[index] = tag;
+		actions[index] = action;
+	}
+
+	private static int hash(int tag) {
+		int h = tag * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.anonymization.anonymization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for the anonymization of the private tags of a DICOM file.
+ *
+ * @author mkain
+ *
+ */
+public class AnonymizationServiceImplTest {
+
+	private static final String SOP_INSTANCE_UID = "1.2.3.4.5";
+
+	private static final String PATIENT_ID = "PAT123456";
+
+	private static final int PRIVATE_CREATOR = 0x00290010;
+
+	private static final int LARGE_PRIVATE_TAG = 0x00291010;
+
+	private static final int SMALL_PRIVATE_TAG = 0x00291011;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRemoveLargePrivateTagContainingPHI() throws Exception {
+		byte[] pixelData = new byte[64 * 1024];
+		for (int i = 0; i < pixelData.length; i++) {
+			pixelData[i] = (byte) i;
+		}
+		// the patient id is in the middle of a private value larger than the usual bulk data
+		byte[] privateValue = new byte[4096];
+		Arrays.fill(privateValue, (byte) ' ');
+		byte[] phi = ("id=" + PATIENT_ID).getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(phi, 0, privateValue, 2000, phi.length);
+		File dicomFile = writeDicomFile(privateValue, pixelData);
+
+		Map<String, String> anonymizationMap = new HashMap<>();
+		anonymizationMap.put(TagActionTable.PRIVATE_TAGS, "K");
+		new AnonymizationServiceImpl().performAnonymization(dicomFile, new TagActionTable(anonymizationMap), false,
+				"", "", new ConcurrentHashMap<String, String>(), new ConcurrentHashMap<String, String>(),
+				new ConcurrentHashMap<String, String>(), null);
+
+		Attributes attributes;
+		try (DicomInputStream din = new DicomInputStream(dicomFile)) {
+			attributes = din.readDataset(-1, -1);
+		}
+		assertFalse(attributes.contains(LARGE_PRIVATE_TAG));
+		assertTrue(attributes.contains(SMALL_PRIVATE_TAG));
+		assertEquals(PATIENT_ID, attributes.getString(Tag.PatientID));
+		assertArrayEquals(pixelData, attributes.getBytes(Tag.PixelData));
+		assertFalse(new File(dicomFile.getParentFile(), dicomFile.getName() + ".anonymized").exists());
+	}
+
+	private File writeDicomFile(byte[] privateValue, byte[] pixelData) throws Exception {
+		Attributes dataset = new Attributes();
+		dataset.setString(Tag.SOPClassUID, VR.UI, UID.MRImageStorage);
+		dataset.setString(Tag.SOPInstanceUID, VR.UI, SOP_INSTANCE_UID);
+		dataset.setString(Tag.PatientName, VR.PN, "DOE^JOHNNY");
+		dataset.setString(Tag.PatientID, VR.LO, PATIENT_ID);
+		dataset.setString(PRIVATE_CREATOR, VR.LO, "TEST CREATOR");
+		dataset.setBytes(LARGE_PRIVATE_TAG, VR.UN, privateValue);
+		dataset.setString(SMALL_PRIVATE_TAG, VR.LO, "harmless");
+		dataset.setBytes(Tag.PixelData, VR.OW, pixelData);
+		File dicomFile = folder.newFile("image.dcm");
+		try (DicomOutputStream dos = new DicomOutputStream(dicomFile)) {
+			dos.writeDataset(Attributes.createFileMetaInformation(SOP_INSTANCE_UID, UID.MRImageStorage,
+					UID.ExplicitVRLittleEndian), dataset);
+		}
+		return dicomFile;
+	}
+
+}
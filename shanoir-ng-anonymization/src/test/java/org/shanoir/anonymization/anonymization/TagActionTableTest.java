@@ -0,0 +1,73 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.anonymization.anonymization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test class for TagActionTable.
+ * 
+ * @author mkain
+ *
+ */
+public class TagActionTableTest {
+
+	@Test
+	public void testGetAction() {
+		Map<String, String> anonymizationMap = new HashMap<>();
+		anonymizationMap.put("0x00100010", "Z");
+		anonymizationMap.put("0x00100020", "X");
+		anonymizationMap.put("0x0020000D", "U");
+		anonymizationMap.put("0x00080080", "D");
+		anonymizationMap.put("0x00080070", "K");
+		anonymizationMap.put("0x00081030", "X/Z");
+		anonymizationMap.put(TagActionTable.PRIVATE_TAGS, "K");
+		anonymizationMap.put(TagActionTable.CURVE_DATA_TAGS, "X");
+		TagActionTable table = new TagActionTable(anonymizationMap);
+		assertEquals(TagActionTable.EMPTY, table.getAction(0x00100010));
+		assertEquals(TagActionTable.REMOVE, table.getAction(0x00100020));
+		assertEquals(TagActionTable.NEW_UID, table.getAction(0x0020000D));
+		assertEquals(TagActionTable.DUMMY, table.getAction(0x00080080));
+		assertEquals(TagActionTable.KEEP, table.getAction(0x00080070));
+		assertEquals(TagActionTable.EMPTY, table.getAction(0x00081030));
+		assertEquals(TagActionTable.NO_ACTION, table.getAction(0x00100030));
+		assertEquals(TagActionTable.KEEP, table.getPrivateTagsAction());
+		assertEquals(TagActionTable.REMOVE, table.getRangeAction(0x50001000));
+		assertEquals(TagActionTable.EMPTY, table.getRangeAction(0x60004000));
+		assertEquals(TagActionTable.NO_ACTION, table.getRangeAction(0x00100010));
+	}
+
+	@Test
+	public void testIsPrivateTag() {
+		assertTrue(TagActionTable.isPrivateTag(0x00191010));
+		assertFalse(TagActionTable.isPrivateTag(0x00100010));
+	}
+
+	@Test
+	public void testToSortedTags() {
+		assertArrayEquals(new int[] { 0x00331013, 0x0033101C },
+				TagActionTable.toSortedTags(Arrays.asList("0x0033101C", "0x00331013", "0x00xxxxxx")));
+	}
+
+}
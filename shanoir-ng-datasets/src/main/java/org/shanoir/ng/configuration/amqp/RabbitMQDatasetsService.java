@@ -15,20 +15,30 @@
 package org.shanoir.ng.configuration.amqp;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.shanoir.ng.dataset.model.Dataset;
 import org.shanoir.ng.datasetacquisition.model.DatasetAcquisition;
 import org.shanoir.ng.datasetacquisition.service.DatasetAcquisitionService;
-import org.shanoir.ng.examination.model.Examination;
 import org.shanoir.ng.examination.repository.ExaminationRepository;
+import org.shanoir.ng.exporter.service.BIDSService;
 import org.shanoir.ng.shared.configuration.RabbitMQConfiguration;
 import org.shanoir.ng.shared.core.model.IdName;
 import org.shanoir.ng.shared.event.ShanoirEvent;
+import org.shanoir.ng.shared.event.ShanoirEventService;
 import org.shanoir.ng.shared.event.ShanoirEventType;
 import org.shanoir.ng.shared.model.Study;
 import org.shanoir.ng.shared.model.Subject;
 import org.shanoir.ng.shared.repository.StudyRepository;
 import org.shanoir.ng.shared.repository.SubjectRepository;
+import org.shanoir.ng.solr.repository.ShanoirMetadataRepository;
 import org.shanoir.ng.solr.service.SolrService;
 import org.shanoir.ng.study.rights.ampq.RabbitMqStudyUserService;
 import org.shanoir.ng.utils.SecurityContextUtil;
@@ -43,9 +53,11 @@ import org.springframework.amqp.rabbit.annotation.RabbitHandler;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -71,10 +83,35 @@ public class RabbitMQDatasetsService {
 	@Autowired
 	private SolrService solrService;
 
+	@Autowired
+	private ShanoirMetadataRepository shanoirMetadataRepository;
+
 	@Autowired
 	private DatasetAcquisitionService datasetAcquisitionService;
 
+	@Autowired
+	private BIDSService bidsService;
+
+	@Autowired
+	private ShanoirEventService eventService;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
 	private static final Logger LOG = LoggerFactory.getLogger(RabbitMQDatasetsService.class);
+
+	/** Cleans the files of the deleted studies and subjects. */
+	private ExecutorService cleanupExecutor;
+
+	@PostConstruct
+	private void init() {
+		cleanupExecutor = Executors.newSingleThreadExecutor();
+	}
+
+	@PreDestroy
+	private void shutdown() {
+		cleanupExecutor.shutdown();
+	}
 
 	@RabbitListener(bindings = @QueueBinding(
 			value = @Queue(value = RabbitMQConfiguration.STUDY_USER_QUEUE_DATASET, durable = "true"),
@@ -96,8 +133,12 @@ public class RabbitMQDatasetsService {
 			Study existingStudy = studyRepository.findOne(receivedStudy.getId());
 			if (existingStudy != null) {
 				// update existing study's name
+				boolean nameChanged = !Objects.equals(receivedStudy.getName(), existingStudy.getName());
 				existingStudy.setName(receivedStudy.getName());
 				studyRepository.save(existingStudy);
+				if (nameChanged) {
+					solrService.markForIndex(shanoirMetadataRepository.findDatasetIdsByStudyId(existingStudy.getId()));
+				}
 			} else {
 				// create new study
 				Study newStudy = new Study(receivedStudy.getId(), receivedStudy.getName());
@@ -119,8 +160,12 @@ public class RabbitMQDatasetsService {
 			receivedSubject = objectMapper.readValue(subjectStr, IdName.class);
 			Subject existingSubject = subjectRepository.findOne(receivedSubject.getId());
 			if (existingSubject != null) {
+				boolean nameChanged = !Objects.equals(receivedSubject.getName(), existingSubject.getName());
 				existingSubject.setName(receivedSubject.getName());
 				subjectRepository.save(existingSubject);
+				if (nameChanged) {
+					solrService.markForIndex(shanoirMetadataRepository.findDatasetIdsBySubjectId(existingSubject.getId()));
+				}
 			} else {
 				Subject newSubject = new Subject(receivedSubject.getId(), receivedSubject.getName());
 				subjectRepository.save(newSubject);
@@ -149,9 +194,11 @@ public class RabbitMQDatasetsService {
 			ShanoirEvent event =  objectMapper.readValue(studyStr, ShanoirEvent.class);
 			DatasetAcquisition acq = datasetAcquisitionService.findById(Long.valueOf(event.getObjectId()));
 			if (acq != null) {
+				List<Long> datasetIds = new ArrayList<>();
 				for (Dataset ds : acq.getDatasets()) {
-					solrService.indexDataset(ds.getId());
+					datasetIds.add(ds.getId());
 				}
+				solrService.indexDatasets(datasetIds);
 			}
 		} catch (Exception e) {
 			LOG.error("Could not index datasets while creating new Dataset acquisition: ", e);
@@ -169,25 +216,31 @@ public class RabbitMQDatasetsService {
 			exchange = @Exchange(value = RabbitMQConfiguration.EVENTS_EXCHANGE, ignoreDeclarationExceptions = "true",
 			autoDelete = "false", durable = "true", type=ExchangeTypes.TOPIC))
 			)
-	@Transactional
 	public void deleteSubject(String eventAsString) throws AmqpRejectAndDontRequeueException {
 		ObjectMapper mapper = new ObjectMapper();
 		mapper.registerModule(new JavaTimeModule());
 		SecurityContextUtil.initAuthenticationContext("ADMIN_ROLE");
 		try {
 			ShanoirEvent event = mapper.readValue(eventAsString, ShanoirEvent.class);
+			Long subjectId = Long.valueOf(event.getObjectId());
+			ShanoirEvent progressEvent = new ShanoirEvent(ShanoirEventType.DELETE_DATASETS_EVENT, event.getObjectId(), event.getUserId(),
+					"Deleting examinations of subject " + subjectId, ShanoirEvent.IN_PROGRESS, 0f);
+			eventService.publishEvent(progressEvent);
 
-			// Delete associated examinations and datasets from solr repository
-			for (Examination exam : examRepository.findBySubjectId(Long.valueOf(event.getObjectId()))) {
-				for (DatasetAcquisition dsAcq : exam.getDatasetAcquisitions()) {
-					for (Dataset ds : dsAcq.getDatasets())  {
-						solrService.deleteFromIndex(ds.getId());
-					}
-				}
-				examRepository.delete(exam.getId());
-			}
-			// Delete subject from datasets database
-			subjectRepository.delete(Long.valueOf(event.getObjectId()));
+			// Delete examinations and subject from datasets database in one transaction
+			List<Long> datasetIds = new TransactionTemplate(transactionManager).execute(status -> {
+				List<Long> subjectDatasetIds = shanoirMetadataRepository.findDatasetIdsBySubjectId(subjectId);
+				examRepository.deleteExaminations(examRepository.findIdsBySubjectId(subjectId));
+				subjectRepository.delete(subjectId);
+				return subjectDatasetIds;
+			});
+			// Delete associated datasets from solr repository at once, once the deletion is committed
+			solrService.deleteFromIndex(datasetIds);
+			progressEvent.setProgress(1f);
+			progressEvent.setStatus(ShanoirEvent.SUCCESS);
+			eventService.publishEvent(progressEvent);
+
+			cleanupExecutor.execute(() -> bidsService.deleteSubject(subjectId));
 		} catch (Exception e) {
 			LOG.error("Something went wrong deserializing the event. {}", e.getMessage());
 			throw new AmqpRejectAndDontRequeueException("Something went wrong deserializing the event." + e.getMessage());
@@ -204,7 +257,6 @@ public class RabbitMQDatasetsService {
 			exchange = @Exchange(value = RabbitMQConfiguration.EVENTS_EXCHANGE, ignoreDeclarationExceptions = "true",
 			autoDelete = "false", durable = "true", type=ExchangeTypes.TOPIC))
 			)
-	@Transactional
 	public void deleteStudy(String eventAsString) throws AmqpRejectAndDontRequeueException {
 		ObjectMapper mapper = new ObjectMapper();
 		mapper.registerModule(new JavaTimeModule());
@@ -212,18 +264,24 @@ public class RabbitMQDatasetsService {
 
 		try {
 			ShanoirEvent event = mapper.readValue(eventAsString, ShanoirEvent.class);
+			Long studyId = Long.valueOf(event.getObjectId());
+			ShanoirEvent progressEvent = new ShanoirEvent(ShanoirEventType.DELETE_DATASETS_EVENT, event.getObjectId(), event.getUserId(),
+					"Deleting examinations of study " + studyId, ShanoirEvent.IN_PROGRESS, 0f);
+			eventService.publishEvent(progressEvent);
 
-			// Delete associated examinations and datasets from solr repository then from database
-			for (Examination exam : examRepository.findByStudyId(Long.valueOf(event.getObjectId()))) {
-				for (DatasetAcquisition dsAcq : exam.getDatasetAcquisitions()) {
-					for (Dataset ds : dsAcq.getDatasets())  {
-						solrService.deleteFromIndex(ds.getId());
-					}
-				}
-				examRepository.delete(exam.getId());
-			}
-			// Delete study from datasets database
-			studyRepository.delete(Long.valueOf(event.getObjectId()));
+			// Delete examinations and study from datasets database in one transaction
+			new TransactionTemplate(transactionManager).execute(status -> {
+				examRepository.deleteExaminations(examRepository.findIdsByStudyId(studyId));
+				studyRepository.delete(studyId);
+				return null;
+			});
+			// Delete associated datasets from solr repository with one query, once the deletion is committed
+			solrService.deleteStudyFromIndex(studyId);
+			progressEvent.setProgress(1f);
+			progressEvent.setStatus(ShanoirEvent.SUCCESS);
+			eventService.publishEvent(progressEvent);
+
+			cleanupExecutor.execute(() -> bidsService.deleteStudy(studyId));
 		} catch (Exception e) {
 			LOG.error("Something went wrong deserializing the event. {}", e.getMessage());
 			throw new AmqpRejectAndDontRequeueException("Something went wrong deserializing the event." + e.getMessage());
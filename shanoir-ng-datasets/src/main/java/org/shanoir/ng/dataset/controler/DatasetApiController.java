@@ -19,14 +19,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -34,11 +30,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
-import javax.mail.MessagingException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
@@ -61,6 +55,7 @@ import org.shanoir.ng.dataset.service.DatasetService;
 import org.shanoir.ng.datasetacquisition.model.DatasetAcquisition;
 import org.shanoir.ng.datasetfile.DatasetFile;
 import org.shanoir.ng.download.WADODownloaderService;
+import org.shanoir.ng.download.WADODownloaderService.DatasetURLs;
 import org.shanoir.ng.examination.model.Examination;
 import org.shanoir.ng.examination.service.ExaminationService;
 import org.shanoir.ng.exporter.service.BIDSService;
@@ -105,7 +100,9 @@ public class DatasetApiController implements DatasetApi {
 
 	private static final String ZIP = ".zip";
 
-	private static final String DOWNLOAD = ".download";
+	private static final String GZ = "gz";
+
+	private static final String CONTENT_TYPE_ZIP = "application/zip";
 
 	private static final String JAVA_IO_TMPDIR = "java.io.tmpdir";
 
@@ -274,70 +271,47 @@ public class DatasetApiController implements DatasetApi {
 					new ErrorModel(HttpStatus.NOT_FOUND.value(), "Dataset with id not found.", null));
 		}
 
-		/* Create folder and file */
-		String tmpDir = System.getProperty(JAVA_IO_TMPDIR);
-		File userDir = getUserImportDir(tmpDir);
-
 		String datasetName = "";
 		datasetName += dataset.getId() + "-" + dataset.getName();
 		if (dataset.getUpdatedMetadata() != null && dataset.getUpdatedMetadata().getComment() != null) {
 			datasetName += "-" + dataset.getUpdatedMetadata().getComment();
 		}
 
-		String tmpFilePath = userDir + File.separator + datasetName + "_" + format;
-
-		SimpleDateFormat formatter = new SimpleDateFormat("yyyyMMddHHmmss");
-		File workFolder = new File(tmpFilePath + "-" + formatter.format(new DateTime().toDate()) + DOWNLOAD);
-		workFolder.mkdirs();
-
-		try {
-			List<URL> pathURLs = new ArrayList<>();
-			String subjectName = subjectRepo.findOne(dataset.getSubjectId()).getName();
-			if (subjectName == null) {
-				subjectName = "unknown";
-			}
-
-			if (DCM.equals(format)) {
-				getDatasetFilePathURLs(dataset, pathURLs, DatasetExpressionFormat.DICOM);
-				downloader.downloadDicomFilesForURLs(pathURLs, workFolder, subjectName);
-			} else if (NII.equals(format)) {
-				getDatasetFilePathURLs(dataset, pathURLs, DatasetExpressionFormat.NIFTI_SINGLE_FILE);
-				copyNiftiFilesForURLs(pathURLs, workFolder, dataset, subjectName);
-			} else if (EEG.equals(format)) {
-				getDatasetFilePathURLs(dataset, pathURLs, DatasetExpressionFormat.EEG);
-				copyNiftiFilesForURLs(pathURLs, workFolder, dataset, subjectName);
-			} else {
-				throw new RestServiceException(
-						new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(), "Bad arguments", null));
-			}
-		} catch (IOException | MessagingException e) {
-			LOG.error("Error while retrieveing dataset data.", e);
-			FileUtils.deleteQuietly(workFolder);
-
+		List<URL> pathURLs = new ArrayList<>();
+		String subjectName = subjectRepo.findOne(dataset.getSubjectId()).getName();
+		if (subjectName == null) {
+			subjectName = "unknown";
+		}
+		if (DCM.equals(format)) {
+			getDatasetFilePathURLs(dataset, pathURLs, DatasetExpressionFormat.DICOM);
+		} else if (NII.equals(format)) {
+			getDatasetFilePathURLs(dataset, pathURLs, DatasetExpressionFormat.NIFTI_SINGLE_FILE);
+		} else if (EEG.equals(format)) {
+			getDatasetFilePathURLs(dataset, pathURLs, DatasetExpressionFormat.EEG);
+		} else {
 			throw new RestServiceException(
-					new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(), "Error while retrieveing dataset data.", e));
+					new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(), "Bad arguments", null));
 		}
-		File zipFile = new File(tmpFilePath + ZIP);
-		zipFile.createNewFile();
-
-		zip(workFolder.getAbsolutePath(), zipFile.getAbsolutePath());
-		
-		// Try to determine file's content type
-		String contentType = request.getServletContext().getMimeType(zipFile.getAbsolutePath());
 
 		ShanoirEvent event = new ShanoirEvent(ShanoirEventType.DOWNLOAD_DATASET_EVENT, dataset.getId().toString(), KeycloakUtil.getTokenUserId(), dataset.getId().toString() + "." + format, ShanoirEvent.IN_PROGRESS);
 		eventService.publishEvent(event);
-		
-		try (InputStream is = new FileInputStream(zipFile);) {
-			response.setHeader("Content-Disposition", "attachment;filename=" + zipFile.getName());
-			response.setContentType(contentType);
-			org.apache.commons.io.IOUtils.copy(is, response.getOutputStream());
+
+		response.setHeader("Content-Disposition", "attachment;filename=" + datasetName + "_" + format + ZIP);
+		response.setContentType(CONTENT_TYPE_ZIP);
+		try (ZipOutputStream zos = new ZipOutputStream(response.getOutputStream())) {
+			if (DCM.equals(format)) {
+				downloader.downloadDicomFilesForURLsAsZip(pathURLs, zos, "", subjectName);
+			} else {
+				zipNiftiFilesForURLs(pathURLs, zos, "", dataset, subjectName);
+			}
+			zos.finish();
 			response.flushBuffer();
 			event.setStatus(ShanoirEvent.SUCCESS);
 			eventService.publishEvent(event);
-		} finally {
-			FileUtils.deleteQuietly(workFolder);
-			FileUtils.deleteQuietly(zipFile);
+		} catch (IOException e) {
+			LOG.error("Error while retrieveing dataset data.", e);
+			throw new RestServiceException(
+					new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(), "Error while retrieveing dataset data.", e));
 		}
 	}
 
@@ -389,88 +363,67 @@ public class DatasetApiController implements DatasetApi {
 	public void massiveDownload(String format, List<Dataset> datasets, HttpServletResponse response) throws EntityNotFoundException, RestServiceException, IOException {
 		// STEP 2: Check rights => Also filters datasets on rights
 		datasets = datasetSecurityService.hasRightOnAtLeastOneDataset(datasets, "CAN_DOWNLOAD");
-		// STEP 3: Get the data
-		// Check rights on at least one of the datasets and filter the datasetIds list
-		File userDir = getUserImportDir(System.getProperty(JAVA_IO_TMPDIR));
-		
+		if (!DCM.equals(format) && !NII.equals(format) && !EEG.equals(format)) {
+			throw new RestServiceException(
+					new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(), "Please choose either nifti, dicom or eeg file type.", null));
+		}
+		// STEP 3: Stream the data: the files are written in the zip while they are read,
+		// every dataset in its own folder
+		String ids = String.join(",", datasets.stream().map(dataset -> dataset.getId().toString()).collect(Collectors.toList()));
+		ShanoirEvent event = new ShanoirEvent(ShanoirEventType.DOWNLOAD_DATASET_EVENT, ids, KeycloakUtil.getTokenUserId(), ids + "." + format, ShanoirEvent.IN_PROGRESS);
+		eventService.publishEvent(event);
+
 		// Add timestamp to get a difference
 		SimpleDateFormat formatter = new SimpleDateFormat("yyyyMMddHHmmss");
-		File tmpFile = new File(userDir.getAbsolutePath() + File.separator + "Datasets" + formatter.format(new DateTime().toDate()));
-		tmpFile.mkdirs();
-
-		// Get the data
-		try {
+		response.setHeader("Content-Disposition", "attachment;filename=Datasets" + formatter.format(new DateTime().toDate()) + ZIP);
+		response.setContentType(CONTENT_TYPE_ZIP);
+		long startTime = System.currentTimeMillis();
+		try (ZipOutputStream zos = new ZipOutputStream(response.getOutputStream())) {
+			// the dicom files are downloaded at the end, all at once, to request each serie only once
+			List<DatasetURLs> dicomURLs = new ArrayList<>();
 			for (Dataset dataset : datasets) {
-				// Create a new folder for every dataset
-				File datasetFile = new File(tmpFile.getAbsolutePath() + File.separator + dataset.getId());
-				datasetFile.mkdir();
-
-        String subjectName = subjectRepo.findOne(dataset.getSubjectId()).getName();
+				String entryFolder = dataset.getId() + "/";
+				String subjectName = subjectRepo.findOne(dataset.getSubjectId()).getName();
 
-        List<URL> pathURLs = new ArrayList<>();
+				List<URL> pathURLs = new ArrayList<>();
 
 				if (dataset instanceof EegDataset) {
 					getDatasetFilePathURLs(dataset, pathURLs, DatasetExpressionFormat.EEG);
-					copyNiftiFilesForURLs(pathURLs, datasetFile, dataset, subjectName);
+					zipNiftiFilesForURLs(pathURLs, zos, entryFolder, dataset, subjectName);
 				} else if (DCM.equals(format)) {
 					getDatasetFilePathURLs(dataset, pathURLs, DatasetExpressionFormat.DICOM);
-					downloader.downloadDicomFilesForURLs(pathURLs, datasetFile, subjectName);
+					dicomURLs.add(new DatasetURLs(pathURLs, entryFolder, subjectName));
 				} else if (NII.equals(format)) {
 					getDatasetFilePathURLs(dataset, pathURLs, DatasetExpressionFormat.NIFTI_SINGLE_FILE);
-					copyNiftiFilesForURLs(pathURLs, datasetFile, dataset, subjectName);
-				}  else if (EEG.equals(format)) {
-					getDatasetFilePathURLs(dataset, pathURLs, DatasetExpressionFormat.EEG);
-					copyNiftiFilesForURLs(pathURLs, datasetFile, dataset, subjectName);
+					zipNiftiFilesForURLs(pathURLs, zos, entryFolder, dataset, subjectName);
 				} else {
-					throw new RestServiceException(
-							new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(), "Please choose either nifti, dicom or eeg file type.", null));
+					getDatasetFilePathURLs(dataset, pathURLs, DatasetExpressionFormat.EEG);
+					zipNiftiFilesForURLs(pathURLs, zos, entryFolder, dataset, subjectName);
 				}
 			}
-		} catch (IOException | MessagingException e) {
+			downloader.downloadDicomFilesForURLsAsZip(dicomURLs, zos);
+			zos.finish();
+			response.flushBuffer();
+			event.setStatus(ShanoirEvent.SUCCESS);
+			eventService.publishEvent(event);
+		} catch (IOException e) {
 			LOG.error("Error while copying files: ", e);
-			FileUtils.deleteQuietly(tmpFile);
 			throw new RestServiceException(
 					new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(), "Error while retrieving files. Please contact an administrator.", e));
-		} catch(OutOfMemoryError error) {
-			LOG.error("Out of memory error while copying files: ", error);
-			FileUtils.deleteQuietly(tmpFile);
-			throw new RestServiceException(
-					new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(), "The size of data you tried to download is too Important. Please split your download.", error));
-		}
-		// Zip it
-		File zipFile = new File(tmpFile.getAbsolutePath() + ZIP);
-		zipFile.createNewFile();
-		zip(tmpFile.getAbsolutePath(), zipFile.getAbsolutePath());
-
-		// Try to determine file's content type
-		String contentType = request.getServletContext().getMimeType(zipFile.getAbsolutePath());
-
-		String ids = String.join(",", datasets.stream().map(dataset -> dataset.getId().toString()).collect(Collectors.toList()));
-		ShanoirEvent event = new ShanoirEvent(ShanoirEventType.DOWNLOAD_DATASET_EVENT, ids, KeycloakUtil.getTokenUserId(), ids + "." + format, ShanoirEvent.IN_PROGRESS);
-		eventService.publishEvent(event);
-
-		try (InputStream is = new FileInputStream(zipFile);) {
-		    response.setHeader("Content-Disposition", "attachment;filename=" + zipFile.getName());
-		    response.setContentType(contentType);
-		    org.apache.commons.io.IOUtils.copy(is, response.getOutputStream());
-		    response.flushBuffer();
-		    event.setStatus(ShanoirEvent.SUCCESS);
-		    eventService.publishEvent(event);
-		} finally {
-		    FileUtils.deleteQuietly(tmpFile);
-		    FileUtils.deleteQuietly(zipFile);
 		}
+		LOG.info("Massive download of {} datasets streamed in {} millis.", datasets.size(), System.currentTimeMillis() - startTime);
 	}
 
 	/**
-	 * Receives a list of URLs containing file:/// urls and copies the files to a folder named workFolder.
+	 * Receives a list of URLs containing file:/// urls and writes the files as entries
+	 * of a zip, in the folder entryFolder ("" for the root).
 	 * @param urls
-	 * @param workFolder
+	 * @param zipOutputStream
+	 * @param entryFolder
 	 * @param subjectName the subjectName
 	 * @throws IOException
-	 * @throws MessagingException
 	 */
-	private void copyNiftiFilesForURLs(final List<URL> urls, final File workFolder, Dataset dataset, Object subjectName) throws IOException {
+	private void zipNiftiFilesForURLs(final List<URL> urls, final ZipOutputStream zipOutputStream, final String entryFolder, Dataset dataset, Object subjectName) throws IOException {
 		int index = 0;
 		for (Iterator<URL> iterator = urls.iterator(); iterator.hasNext();) {
 			URL url =  iterator.next();
@@ -489,12 +442,35 @@ public class DatasetApiController implements DatasetApi {
 			.append(index)
 			.append(".").append(FilenameUtils.getExtension(srcFile.getName()));
 
-			File destFile = new File(workFolder.getAbsolutePath() + File.separator + name);
-			Files.copy(srcFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			zipFile(srcFile, entryFolder + name, zipOutputStream);
 			index++;
 		}
 	}
 
+	/**
+	 * Writes a file as an entry of a zip. Already compressed files (.gz, .zip) are
+	 * STORED, as deflating them again costs cpu for nothing: their crc is computed
+	 * beforehand, as a STORED entry requires it.
+	 * 
+	 * @param srcFile
+	 * @param entryName
+	 * @param zipOutputStream
+	 * @throws IOException
+	 */
+	private void zipFile(final File srcFile, final String entryName, final ZipOutputStream zipOutputStream) throws IOException {
+		ZipEntry zipEntry = new ZipEntry(entryName);
+		String extension = FilenameUtils.getExtension(srcFile.getName());
+		if (GZ.equalsIgnoreCase(extension) || ZIP.substring(1).equalsIgnoreCase(extension)) {
+			zipEntry.setMethod(ZipEntry.STORED);
+			zipEntry.setSize(srcFile.length());
+			zipEntry.setCompressedSize(srcFile.length());
+			zipEntry.setCrc(FileUtils.checksumCRC32(srcFile));
+		}
+		zipOutputStream.putNextEntry(zipEntry);
+		Files.copy(srcFile.toPath(), zipOutputStream);
+		zipOutputStream.closeEntry();
+	}
+
 	/**
 	 * Reads all dataset files depending on the format attached to one dataset.
 	 * @param dataset
@@ -516,39 +492,6 @@ public class DatasetApiController implements DatasetApi {
 		}
 	}
 
-	/**
-	 * Zip
-	 * 
-	 * @param sourceDirPath
-	 * @param zipFilePath
-	 * @throws IOException
-	 */
-	private void zip(final String sourceDirPath, final String zipFilePath) throws IOException {
-		Path p = Paths.get(zipFilePath);
-		// 1. Create an outputstream (zip) on the destination
-		try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(p))) {
-			
-			// 2. "Walk" => iterate over the source file
-			Path pp = Paths.get(sourceDirPath);
-			try(Stream<Path> walker = Files.walk(pp)) {
-				
-				// 3. We only consider directories, and we copyt them directly by "relativising" them then copying them to the output
-				walker.filter(path -> !path.toFile().isDirectory())
-				.forEach(path -> {
-					ZipEntry zipEntry = new ZipEntry(pp.relativize(path).toString());
-					try {
-						zos.putNextEntry(zipEntry);
-						Files.copy(path, zos);
-						zos.closeEntry();
-					} catch (IOException e) {
-						LOG.error(e.getMessage(), e);
-					}
-				});
-			}
-			zos.finish();
-		}
-	}
-	
 	/**
 	 * Zip a single file
 	 * 
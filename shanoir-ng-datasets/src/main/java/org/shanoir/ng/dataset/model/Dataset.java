@@ -21,6 +21,7 @@ import java.util.List;
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
 import javax.persistence.JoinColumn;
@@ -28,6 +29,9 @@ import javax.persistence.ManyToMany;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Table;
 import javax.persistence.Transient;
 
 import org.shanoir.ng.dataset.modality.CalibrationDataset;
@@ -61,6 +65,7 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo.Id;
  * @author jlouis
  */
 @Entity
+@Table(indexes = @Index(name = "i_dataset_study", columnList = "studyId"))
 @Inheritance(strategy = InheritanceType.JOINED)
 @JsonTypeInfo(use = Id.NAME, include = As.PROPERTY, property = "type")
 @JsonSubTypes({
@@ -135,7 +140,7 @@ public abstract class Dataset extends AbstractEntity {
 	/** The study for which this dataset has been imported. Don't use it, use getStudyId() instead. */
 	private Long importedStudyId;
 	
-	/** Subject. */
+	/** Study of the examination, copied to filter the datasets by study without joins. */
 	private Long studyId;
 
 	/** Subject. */
@@ -315,12 +320,23 @@ public abstract class Dataset extends AbstractEntity {
 	/**
 	 * @return the studyId
 	 */
-	@Transient
 	public Long getStudyId() {
+		if (studyId != null) return studyId;
 		if (getDatasetAcquisition() == null || getDatasetAcquisition().getExamination() == null) return null;
 		return getDatasetAcquisition().getExamination().getStudyId();
 	}
 
+	/**
+	 * Copies the study id of the examination, before the dataset is saved.
+	 */
+	@PrePersist
+	@PreUpdate
+	protected void updateStudyId() {
+		if (getDatasetAcquisition() != null && getDatasetAcquisition().getExamination() != null) {
+			this.studyId = getDatasetAcquisition().getExamination().getStudyId();
+		}
+	}
+
 
 	/**
 	 * @return the subjectId
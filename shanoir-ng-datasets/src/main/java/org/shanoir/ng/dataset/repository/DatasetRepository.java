@@ -21,7 +21,10 @@ import org.springframework.data.repository.PagingAndSortingRepository;
 
 public interface DatasetRepository extends PagingAndSortingRepository<Dataset, Long>, DatasetRepositoryCustom {
 
-	Page<Dataset> findByDatasetAcquisitionExaminationStudyIdIn(Iterable<Long> studyIds, Pageable pageable);
+	/**
+	 * Filters on the study id copied in the dataset, without joining the examinations.
+	 */
+	Page<Dataset> findByStudyIdIn(Iterable<Long> studyIds, Pageable pageable);
 
 	Iterable<Dataset> findByDatasetAcquisitionExaminationStudyId(Long studyId);
 	
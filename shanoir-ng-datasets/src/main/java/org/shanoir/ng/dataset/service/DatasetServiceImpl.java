@@ -141,7 +141,7 @@ public class DatasetServiceImpl implements DatasetService {
 			Long userId = KeycloakUtil.getTokenUserId();
 			List<Long> studyIds = rightsRepository.findDistinctStudyIdByUserId(userId, StudyUserRight.CAN_SEE_ALL.getId());
 			
-			return repository.findByDatasetAcquisitionExaminationStudyIdIn(studyIds, pageable);
+			return repository.findByStudyIdIn(studyIds, pageable);
 		}
 	}
 
@@ -19,6 +19,7 @@ import java.util.List;
 import org.shanoir.ng.datasetacquisition.model.DatasetAcquisition;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
 /**
@@ -33,6 +34,10 @@ public interface DatasetAcquisitionRepository extends PagingAndSortingRepository
 	
 	List<DatasetAcquisition> findByExaminationId(Long studyCardId);
 	
+	/**
+	 * The examinations are fetched with the page, as their study is checked for each acquisition.
+	 */
+	@EntityGraph(attributePaths = "examination")
 	Page<DatasetAcquisition> findByExaminationStudyIdIn(Iterable<Long> studyIds, Pageable pageable);
 
 }
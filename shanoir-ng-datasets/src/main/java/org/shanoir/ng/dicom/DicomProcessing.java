@@ -19,19 +19,33 @@ import java.io.IOException;
 
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
 import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomInputStream.IncludeBulkData;
 import org.shanoir.ng.importer.dto.DatasetFile;
 import org.springframework.stereotype.Service;
 
 @Service
 public class DicomProcessing {
 	
+	/**
+	 * Reads the header of the dicom file of the given image. The pixel data are never
+	 * loaded in RAM: for enhanced MR they are kept as a bulk data reference into the file,
+	 * which is enough for the dcm4che emf extract method, for the others the reading stops
+	 * at the pixel data.
+	 * 
+	 * @param image
+	 * @param isEnhancedMR
+	 * @return the attributes of the dataset
+	 * @throws IOException
+	 */
 	public Attributes getDicomObjectAttributes(DatasetFile image, boolean isEnhancedMR) throws IOException {
 		File dicomFile = new File(image.getPath());
 		try (DicomInputStream dIS = new DicomInputStream(dicomFile)) {
 			Attributes datasetAttributes;
 			if (isEnhancedMR) {
-				// In case of Enhanced MR, we need to the pixel data in order to use Dcm4chee emf extract method.
+				// In case of Enhanced MR, the emf extract method needs a pixel data element: only its reference is read.
+				dIS.setIncludeBulkData(IncludeBulkData.URI);
 				datasetAttributes = dIS.readDataset(-1, -1);
 			} else {
 				// Else we do not load the picture in Ram for faster performance.
@@ -42,4 +56,31 @@ public class DicomProcessing {
 		}
 	}
 
+	/**
+	 * Returns the attributes needed to create the dataset expression of a file. The
+	 * import microservice sends them in the import job, as it has read them already:
+	 * the file is only read, if they are missing.
+	 * 
+	 * @param image
+	 * @param isEnhancedMR
+	 * @return the attributes
+	 * @throws IOException
+	 */
+	public Attributes getDatasetFileAttributes(DatasetFile image, boolean isEnhancedMR) throws IOException {
+		if (image.getSopInstanceUID() == null) {
+			return getDicomObjectAttributes(image, isEnhancedMR);
+		}
+		Attributes datasetAttributes = new Attributes(5);
+		datasetAttributes.setString(Tag.StudyInstanceUID, VR.UI, image.getStudyInstanceUID());
+		datasetAttributes.setString(Tag.SeriesInstanceUID, VR.UI, image.getSeriesInstanceUID());
+		datasetAttributes.setString(Tag.SOPInstanceUID, VR.UI, image.getSopInstanceUID());
+		if (image.getAcquisitionTime() != null) {
+			datasetAttributes.setString(Tag.AcquisitionTime, VR.TM, image.getAcquisitionTime());
+		}
+		if (image.getContentTime() != null) {
+			datasetAttributes.setString(Tag.ContentTime, VR.TM, image.getContentTime());
+		}
+		return datasetAttributes;
+	}
+
 }
@@ -0,0 +1,254 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.download;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class parses a multipart/related response, as given by a PACS for WADO-RS
+ * requests, incrementally: each part is given to the PartHandler as an InputStream,
+ * that ends at the boundary of the part, so that a part is never held in memory.
+ *
+ * @author mkain
+ *
+ */
+public class MultipartRelatedParser {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final byte CR = '\r';
+
+	private static final byte LF = '\n';
+
+	private static final String BOUNDARY = "boundary=";
+
+	private final InputStream in;
+
+	/** CRLF--boundary, that ends each part. */
+	private final byte[] delimiter;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	private int pos;
+
+	private int limit;
+
+	/**
+	 * Handles one part of a multipart/related response.
+	 */
+	@FunctionalInterface
+	public interface PartHandler {
+
+		/**
+		 * @param headers the headers of the part, the names in lower case
+		 * @param body the body of the part, ends at the boundary
+		 * @throws IOException
+		 */
+		void handle(Map<String, String> headers, InputStream body) throws IOException;
+
+	}
+
+	public MultipartRelatedParser(InputStream in, String boundary) {
+		this.in = in;
+		this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+		// the first boundary is not preceded by CRLF: add it to find it as any other delimiter
+		buffer[0] = CR;
+		buffer[1] = LF;
+		limit = 2;
+	}
+
+	/**
+	 * Extracts the boundary of the Content-Type header of a multipart response.
+	 *
+	 * @param contentType
+	 * @return the boundary or null
+	 */
+	public static String getBoundary(String contentType) {
+		if (contentType == null) {
+			return null;
+		}
+		int index = contentType.indexOf(BOUNDARY);
+		if (index == -1) {
+			return null;
+		}
+		String boundary = contentType.substring(index + BOUNDARY.length());
+		int end = boundary.indexOf(';');
+		if (end != -1) {
+			boundary = boundary.substring(0, end);
+		}
+		boundary = boundary.trim();
+		if (boundary.startsWith("\"") && boundary.endsWith("\"") && boundary.length() > 1) {
+			boundary = boundary.substring(1, boundary.length() - 1);
+		}
+		return boundary;
+	}
+
+	/**
+	 * Parses all parts and gives them one after the other to the handler. The bytes of
+	 * a part, that the handler did not read, are skipped.
+	 *
+	 * @param handler
+	 * @throws IOException
+	 */
+	public void parse(PartHandler handler) throws IOException {
+		// skip the preamble
+		drain(new PartInputStream());
+		while (!isCloseDelimiter()) {
+			Map<String, String> headers = readHeaders();
+			PartInputStream body = new PartInputStream();
+			handler.handle(headers, body);
+			drain(body);
+		}
+	}
+
+	/**
+	 * After a delimiter: "--" ends the multipart, else the line ends with CRLF.
+	 */
+	private boolean isCloseDelimiter() throws IOException {
+		if (!fill(2)) {
+			throw new EOFException("Multipart stream ended without close delimiter.");
+		}
+		if (buffer[pos] == '-' && buffer[pos + 1] == '-') {
+			pos += 2;
+			return true;
+		}
+		// ignore transport padding until the end of the line
+		readLine();
+		return false;
+	}
+
+	private Map<String, String> readHeaders() throws IOException {
+		Map<String, String> headers = new HashMap<>();
+		String line;
+		while (!(line = readLine()).isEmpty()) {
+			int colon = line.indexOf(':');
+			if (colon > 0) {
+				headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+			}
+		}
+		return headers;
+	}
+
+	private String readLine() throws IOException {
+		StringBuilder line = new StringBuilder();
+		while (true) {
+			if (!fill(1)) {
+				throw new EOFException("Multipart stream ended in part headers.");
+			}
+			byte b = buffer[pos++];
+			if (b == LF) {
+				int length = line.length();
+				if (length > 0 && line.charAt(length - 1) == CR) {
+					line.setLength(length - 1);
+				}
+				return line.toString();
+			}
+			line.append((char) b);
+		}
+	}
+
+	/**
+	 * Makes sure, that at least n bytes are available in the buffer.
+	 *
+	 * @return false, if the stream ended before
+	 */
+	private boolean fill(int n) throws IOException {
+		if (limit - pos >= n) {
+			return true;
+		}
+		System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+		limit -= pos;
+		pos = 0;
+		while (limit < n) {
+			int read = in.read(buffer, limit, buffer.length - limit);
+			if (read == -1) {
+				return false;
+			}
+			limit += read;
+		}
+		return true;
+	}
+
+	private void drain(InputStream body) throws IOException {
+		byte[] skip = new byte[BUFFER_SIZE];
+		while (body.read(skip) != -1) {
+			// skip
+		}
+	}
+
+	/**
+	 * The body of one part, that ends before the next delimiter.
+	 */
+	private class PartInputStream extends InputStream {
+
+		private boolean ended;
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int read = read(b, 0, 1);
+			return read == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (ended) {
+				return -1;
+			}
+			if (len == 0) {
+				return 0;
+			}
+			if (!fill(delimiter.length)) {
+				throw new EOFException("Multipart stream ended without delimiter.");
+			}
+			// as at least delimiter.length bytes are available, a delimiter at pos is complete
+			int index = indexOfDelimiter();
+			if (index == pos) {
+				pos += delimiter.length;
+				ended = true;
+				return -1;
+			}
+			int count = Math.min(len, index - pos);
+			System.arraycopy(buffer, pos, b, off, count);
+			pos += count;
+			return count;
+		}
+
+		/**
+		 * @return the index of the delimiter, or of its beginning at the end of
+		 * the buffer, or limit if there is none
+		 */
+		private int indexOfDelimiter() {
+			for (int i = pos; i < limit; i++) {
+				if (buffer[i] == delimiter[0]) {
+					int j = 1;
+					while (j < delimiter.length && i + j < limit && buffer[i + j] == delimiter[j]) {
+						j++;
+					}
+					if (j == delimiter.length || i + j == limit) {
+						return i;
+					}
+				}
+			}
+			return limit;
+		}
+	}
+
+}
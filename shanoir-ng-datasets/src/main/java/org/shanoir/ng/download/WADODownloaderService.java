@@ -12,35 +12,55 @@
  * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
  */
 
+
 package org.shanoir.ng.download;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
-import javax.mail.BodyPart;
-import javax.mail.MessagingException;
-import javax.mail.internet.MimeMultipart;
-import javax.mail.util.ByteArrayDataSource;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.io.DicomInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 /**
  * This class is used to download files on using WADO URLs:
  * 
@@ -53,7 +73,14 @@ import org.springframework.web.client.RestTemplate;
  * 
  * As the responses are encoded as multipart/related messages,
  * this class extracts as well the files contained in the response to
- * the file system.
+ * the file system, incrementally with the MultipartRelatedParser.
+ * 
+ * The WADO-RS URLs of the same serie are grouped into one request for the
+ * whole serie (without /instances/), the instances not requested are skipped.
+ * Up to dcm4chee-arc.dicom.wado.threads requests run concurrently over a pooled
+ * http client. If a serie request fails, only the instances not yet received
+ * are requested again, one by one (resume). Each instance is received in a
+ * temporary file, before it is written, so that no truncated file is written.
  * 
  * WADO-URI: http://dcm4chee-arc:8081/dcm4chee-arc/aets/DCM4CHEE/wado?requestType=WADO
  * &studyUID=1.4.9.12.22.1.8444.518952078217568647576155668816300281982444
@@ -91,10 +118,40 @@ public class WADODownloaderService {
 	private static final String CONTENT_TYPE_DICOM = "application/dicom";
 
 	private static final String CONTENT_TYPE = "&contentType";
-	
-	@Autowired
-	private RestTemplate restTemplate;
-	
+
+	private static final String ACCEPT = CONTENT_TYPE_MULTIPART + "; type=" + CONTENT_TYPE_DICOM + ";";
+
+	/** Bytes read at the beginning of a part to find its SOP instance UID in the file meta information. */
+	private static final int FILE_META_INFORMATION_MAX_LENGTH = 16 * 1024;
+
+	/** Base delay in ms before requesting again, multiplied by the attempt. */
+	private static final long RETRY_DELAY = 1000;
+
+	@Value("${dcm4chee-arc.dicom.wado.threads:4}")
+	private int downloadThreads;
+
+	@Value("${dcm4chee-arc.dicom.wado.retries:3}")
+	private int retries;
+
+	private CloseableHttpClient httpClient;
+
+	private ExecutorService downloadExecutor;
+
+	@PostConstruct
+	public void init() {
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(downloadThreads);
+		connectionManager.setDefaultMaxPerRoute(downloadThreads);
+		httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+		downloadExecutor = Executors.newFixedThreadPool(downloadThreads);
+	}
+
+	@PreDestroy
+	public void shutdown() throws IOException {
+		downloadExecutor.shutdownNow();
+		httpClient.close();
+	}
+
 	/**
 	 * This method receives a list of URLs containing WADO-RS or WADO-URI urls and downloads
 	 * their received dicom files to a folder named workFolder.
@@ -103,41 +160,220 @@ public class WADODownloaderService {
 	 * @param workFolder
 	 * @param subjectName
 	 * @throws IOException
-	 * @throws MessagingException
 	 */
-	public void downloadDicomFilesForURLs(final List<URL> urls, final File workFolder, String subjectName) throws IOException, MessagingException {
-		for (Iterator iterator = urls.iterator(); iterator.hasNext();) {
-			String url = ((URL) iterator.next()).toString();
-			String instanceUID = null;
-			// handle and check at first for WADO-RS URLs by "/instances/"
-			int indexInstanceUID = url.lastIndexOf(WADO_REQUEST_TYPE_WADO_RS);
-			if (indexInstanceUID > 0) {
-				instanceUID = url.substring(indexInstanceUID + WADO_REQUEST_TYPE_WADO_RS.length());
-				byte[] responseBody = downloadFileFromPACS(url);
-				extractDICOMFilesFromMHTMLFile(responseBody, instanceUID, workFolder);
-			} else {
-				// handle and check secondly for WADO-URI URLs by "objectUID="
-				// instanceUID == objectUID
-				indexInstanceUID = url.lastIndexOf(WADO_REQUEST_TYPE_WADO_URI);
+	public void downloadDicomFilesForURLs(final List<URL> urls, final File workFolder, String subjectName) throws IOException {
+		downloadDicomFiles(Collections.singletonList(new DatasetURLs(urls, "", subjectName)), (fileName, file) ->
+				Files.copy(file.toPath(), new File(workFolder, fileName).toPath(), StandardCopyOption.REPLACE_EXISTING));
+	}
+
+	/**
+	 * This method receives a list of URLs containing WADO-RS or WADO-URI urls and writes
+	 * their received dicom files as entries of a zip, in the folder entryFolder ("" for the root).
+	 * 
+	 * @param urls
+	 * @param zipOutputStream
+	 * @param entryFolder
+	 * @param subjectName
+	 * @throws IOException
+	 */
+	public void downloadDicomFilesForURLsAsZip(final List<URL> urls, final ZipOutputStream zipOutputStream, final String entryFolder, String subjectName) throws IOException {
+		downloadDicomFilesForURLsAsZip(Collections.singletonList(new DatasetURLs(urls, entryFolder, subjectName)), zipOutputStream);
+	}
+
+	/**
+	 * This method receives the WADO-RS or WADO-URI urls of several datasets and writes
+	 * their received dicom files as entries of a zip, in the entry folder of each dataset.
+	 * The urls of the same serie are grouped over all the datasets, so that a serie is
+	 * requested only once. Each instance is received completely in a temporary file,
+	 * before it is written into the zip: only the writes wait for the zip, and a failed
+	 * download never leaves a truncated entry.
+	 * 
+	 * @param datasetURLs
+	 * @param zipOutputStream
+	 * @throws IOException
+	 */
+	public void downloadDicomFilesForURLsAsZip(final List<DatasetURLs> datasetURLs, final ZipOutputStream zipOutputStream) throws IOException {
+		downloadDicomFiles(datasetURLs, (fileName, file) -> {
+			synchronized (zipOutputStream) {
+				zipOutputStream.putNextEntry(new ZipEntry(fileName));
+				Files.copy(file.toPath(), zipOutputStream);
+				zipOutputStream.closeEntry();
+			}
+		});
+	}
+
+	private void downloadDicomFiles(final List<DatasetURLs> datasetURLs, DicomFileWriter writer) throws IOException {
+		// WADO-RS: serie url -> instance UID -> instance url and file names
+		Map<String, Map<String, InstanceRequest>> wadoRsSeries = new LinkedHashMap<>();
+		// WADO-URI: instance url -> instance url and file names
+		Map<String, InstanceRequest> wadoUriInstances = new LinkedHashMap<>();
+		for (DatasetURLs dataset : datasetURLs) {
+			for (Iterator<URL> iterator = dataset.getUrls().iterator(); iterator.hasNext();) {
+				String url = iterator.next().toString();
+				// handle and check at first for WADO-RS URLs by "/instances/"
+				int indexInstanceUID = url.lastIndexOf(WADO_REQUEST_TYPE_WADO_RS);
 				if (indexInstanceUID > 0) {
-					instanceUID = extractInstanceUID(url, instanceUID);
-					byte[] responseBody = downloadFileFromPACS(url);
-					String name = subjectName + "_" + instanceUID;
-					File extractedDicomFile = new File(workFolder.getPath() + File.separator + name + DCM);
-					ByteArrayInputStream bIS = null;
-					try {
-						bIS = new ByteArrayInputStream(responseBody);
-						Files.copy(bIS, extractedDicomFile.toPath());
-					} finally {
-						if (bIS != null) {
-							bIS.close();
-						}
-					}
+					String instanceUID = url.substring(indexInstanceUID + WADO_REQUEST_TYPE_WADO_RS.length());
+					wadoRsSeries.computeIfAbsent(url.substring(0, indexInstanceUID), key -> new LinkedHashMap<>())
+							.computeIfAbsent(instanceUID, key -> new InstanceRequest(url))
+							.addFileName(dataset.getEntryFolder() + instanceUID + DCM);
+				} else if (url.lastIndexOf(WADO_REQUEST_TYPE_WADO_URI) > 0) {
+					// handle and check secondly for WADO-URI URLs by "objectUID="
+					// instanceUID == objectUID
+					String instanceUID = extractInstanceUID(url, null);
+					wadoUriInstances.computeIfAbsent(url, key -> new InstanceRequest(url))
+							.addFileName(dataset.getEntryFolder() + dataset.getSubjectName() + UNDER_SCORE + instanceUID + DCM);
 				} else {
 					throw new IOException("URL for download is neither in WADO-RS nor in WADO-URI format. Please verify database contents.");
 				}
 			}
 		}
+		List<Future<?>> downloads = new ArrayList<>();
+		for (Map.Entry<String, Map<String, InstanceRequest>> serie : wadoRsSeries.entrySet()) {
+			downloads.add(downloadExecutor.submit(() -> {
+				downloadSerieWADORS(serie.getKey(), serie.getValue(), writer);
+				return null;
+			}));
+		}
+		for (InstanceRequest instance : wadoUriInstances.values()) {
+			downloads.add(downloadExecutor.submit(() -> {
+				withRetries(instance.url, () -> downloadFileFromPACS(instance.url, (contentType, body) -> writeInstance(body, instance.fileNames, writer)));
+				return null;
+			}));
+		}
+		waitForDownloads(downloads);
+	}
+
+	/**
+	 * Waits for all downloads and throws the first error.
+	 * 
+	 * @param downloads
+	 * @throws IOException
+	 */
+	private void waitForDownloads(List<Future<?>> downloads) throws IOException {
+		IOException firstException = null;
+		for (Future<?> download : downloads) {
+			try {
+				download.get();
+			} catch (InterruptedException e) {
+				downloads.forEach(future -> future.cancel(true));
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted during download from PACS.", e);
+			} catch (ExecutionException e) {
+				LOG.error("Error during download from PACS.", e.getCause());
+				if (firstException == null) {
+					firstException = e.getCause() instanceof IOException ? (IOException) e.getCause()
+							: new IOException("Error during download from PACS.", e.getCause());
+				}
+			}
+		}
+		if (firstException != null) {
+			throw firstException;
+		}
+	}
+
+	/**
+	 * Downloads all instances of a serie with one WADO-RS request, keeps the requested instances
+	 * and requests again one by one the instances not received, if an error occurs.
+	 * 
+	 * @param serieURL
+	 * @param instances instance UID -> instance url and file names
+	 * @param writer
+	 * @throws IOException
+	 */
+	private void downloadSerieWADORS(final String serieURL, final Map<String, InstanceRequest> instances, final DicomFileWriter writer) throws IOException {
+		Set<String> missingInstanceUIDs = new LinkedHashSet<>(instances.keySet());
+		try {
+			downloadFileFromPACS(serieURL, (contentType, body) -> extractDICOMFilesFromMultipart(contentType, body, (headers, part) -> {
+				byte[] fileMetaInformation = readFileMetaInformation(part);
+				String instanceUID = getSOPInstanceUID(fileMetaInformation);
+				if (instanceUID != null && missingInstanceUIDs.contains(instanceUID)) {
+					writeInstance(new SequenceInputStream(new ByteArrayInputStream(fileMetaInformation), part), instances.get(instanceUID).fileNames, writer);
+					missingInstanceUIDs.remove(instanceUID);
+				}
+			}));
+		} catch (IOException e) {
+			LOG.warn("WADO-RS download of serie {} failed with {} of {} instances missing, resuming: {}",
+					serieURL, missingInstanceUIDs.size(), instances.size(), e.getMessage());
+		}
+		for (String instanceUID : missingInstanceUIDs) {
+			InstanceRequest instance = instances.get(instanceUID);
+			// the parts written by a failed attempt are not written again
+			int[] writtenParts = { 0 };
+			withRetries(instance.url, () -> downloadFileFromPACS(instance.url, (contentType, body) -> {
+				int[] partIndex = { 0 };
+				extractDICOMFilesFromMultipart(contentType, body, (headers, part) -> {
+					if (partIndex[0] >= writtenParts[0]) {
+						// several parts, if the PACS splits the instance
+						List<String> fileNames = new ArrayList<>();
+						for (String fileName : instance.fileNames) {
+							fileNames.add(partIndex[0] == 0 ? fileName : fileName.substring(0, fileName.length() - DCM.length()) + UNDER_SCORE + partIndex[0] + DCM);
+						}
+						writeInstance(part, fileNames, writer);
+						writtenParts[0]++;
+					}
+					partIndex[0]++;
+				});
+			}));
+		}
+	}
+
+	/**
+	 * Receives an instance completely in a temporary file, then writes it under all its file names:
+	 * if the download fails, nothing is written.
+	 */
+	private void writeInstance(InputStream instance, List<String> fileNames, DicomFileWriter writer) throws IOException {
+		File tempFile = File.createTempFile("wado", DCM);
+		try {
+			Files.copy(instance, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			for (String fileName : fileNames) {
+				writer.write(fileName, tempFile);
+			}
+		} finally {
+			Files.deleteIfExists(tempFile.toPath());
+		}
+	}
+
+	/**
+	 * Reads the beginning of a part, that contains the file meta information.
+	 */
+	private byte[] readFileMetaInformation(InputStream part) throws IOException {
+		byte[] buffer = new byte[FILE_META_INFORMATION_MAX_LENGTH];
+		int length = IOUtils.read(part, buffer);
+		return Arrays.copyOf(buffer, length);
+	}
+
+	private String getSOPInstanceUID(byte[] fileMetaInformation) {
+		try (DicomInputStream dIS = new DicomInputStream(new ByteArrayInputStream(fileMetaInformation))) {
+			Attributes fmi = dIS.readFileMetaInformation();
+			return fmi != null ? fmi.getString(Tag.MediaStorageSOPInstanceUID) : null;
+		} catch (IOException e) {
+			LOG.warn("No file meta information found in part of WADO-RS response.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Calls a download and calls it again in case of IO error.
+	 */
+	private void withRetries(String url, Download download) throws IOException {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				download.run();
+				return;
+			} catch (IOException e) {
+				if (attempt > retries) {
+					throw e;
+				}
+				LOG.warn("Download of {} failed (attempt {}), retrying: {}", url, attempt, e.getMessage());
+				try {
+					Thread.sleep(RETRY_DELAY * attempt);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted during download from PACS.", ie);
+				}
+			}
+		}
 	}
 
 	/**
@@ -163,63 +399,129 @@ public class WADODownloaderService {
 	}
 
 	/**
-	 * This method contacts the PACS with a WADO-RS url and does the actual download.
+	 * This method contacts the PACS with a WADO url and does the actual download:
+	 * the response body is given to the handler, while it is received.
 	 * 
 	 * @param url
-	 * @param targetFile
-	 * @return
+	 * @param handler
 	 * @throws IOException
 	 */
-	private byte[] downloadFileFromPACS(final String url) throws IOException {
-		restTemplate.getMessageConverters().add(new ByteArrayHttpMessageConverter());
-		HttpHeaders headers = new HttpHeaders();
-		headers.add(HttpHeaders.ACCEPT, CONTENT_TYPE_MULTIPART + "; type=" + CONTENT_TYPE_DICOM + ";");
-		HttpEntity<String> entity = new HttpEntity<>(headers);
-		ResponseEntity<byte[]> response = restTemplate.exchange(url,
-				HttpMethod.GET, entity, byte[].class, "1");
-		if (response.getStatusCode() == HttpStatus.OK) {
-			return response.getBody();
-		} else {
-			throw new IOException("Download did not work: wrong status code received.");
+	private void downloadFileFromPACS(final String url, final ResponseHandler handler) throws IOException {
+		HttpGet httpGet = new HttpGet(url);
+		httpGet.setHeader(HttpHeaders.ACCEPT, ACCEPT);
+		try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+				EntityUtils.consume(response.getEntity());
+				throw new IOException("Download did not work: wrong status code received: " + response.getStatusLine());
+			}
+			Header contentType = response.getEntity().getContentType();
+			try (InputStream body = response.getEntity().getContent()) {
+				handler.handle(contentType != null ? contentType.getValue() : null, body);
+			}
+			// consume the rest to give back the connection to the pool
+			EntityUtils.consume(response.getEntity());
 		}
 	}
 
 	/**
-	 * This method reads in a file in format MHTML, one representation of a multipart/related response, that is given from
-	 * a PACS server, that supports WADO-RS requests.
+	 * This method reads a multipart/related response, that is given from a PACS server,
+	 * that supports WADO-RS requests, part after part, without keeping it in memory.
 	 * 
-	 * MHTML, short for MIME Encapsulation of Aggregate HTML Documents, is a web page archive format used to combine in a single document
-	 * the HTML code and its companion resources that are otherwise represented by external links (such as images, Flash animations, Java applets,
-	 * and audio files). The content of an MHTML file is encoded as if it were an HTML e-mail message, using the MIME type multipart/related.
-	 * 
-	 * @param responseBody
-	 * @param instanceUID
-	 * @param workFolder
-	 * @throws FileNotFoundException
+	 * @param contentType
+	 * @param body
+	 * @param handler
 	 * @throws IOException
-	 * @throws MessagingException
 	 */
-	private void extractDICOMFilesFromMHTMLFile(final byte[] responseBody, final String instanceUID, final File workFolder)
-			throws IOException, MessagingException {
-		try(ByteArrayInputStream bIS = new ByteArrayInputStream(responseBody)) {
-			ByteArrayDataSource datasource = new ByteArrayDataSource(bIS, CONTENT_TYPE_MULTIPART);
-			MimeMultipart multipart = new MimeMultipart(datasource);
-			int count = multipart.getCount();
-			for (int i = 0; i < count; i++) {
-				BodyPart bodyPart = multipart.getBodyPart(i);
-				if (bodyPart.isMimeType(CONTENT_TYPE_DICOM)) {
-					File extractedDicomFile = null;
-					if (count == 1) {
-						extractedDicomFile = new File(workFolder.getPath() + File.separator + instanceUID + DCM);
-					} else {
-						extractedDicomFile = new File(workFolder.getPath() + File.separator + instanceUID + UNDER_SCORE + count + DCM);
-					}
-					Files.copy(bodyPart.getInputStream(), extractedDicomFile.toPath());
-				} else {
-					throw new IOException("Answer file from PACS contains other content-type than DICOM, stop here.");
-				}
+	private void extractDICOMFilesFromMultipart(final String contentType, final InputStream body, final MultipartRelatedParser.PartHandler handler)
+			throws IOException {
+		String boundary = MultipartRelatedParser.getBoundary(contentType);
+		if (boundary == null) {
+			throw new IOException("Answer from PACS is not a multipart response: " + contentType);
+		}
+		new MultipartRelatedParser(body, boundary).parse((headers, part) -> {
+			String partContentType = headers.get("content-type");
+			if (partContentType != null && partContentType.startsWith(CONTENT_TYPE_DICOM)) {
+				handler.handle(headers, part);
+			} else {
+				throw new IOException("Answer file from PACS contains other content-type than DICOM, stop here.");
+			}
+		});
+	}
+
+	/**
+	 * The WADO urls of one dataset, with the folder and the subject name used to name its files.
+	 */
+	public static class DatasetURLs {
+
+		private final List<URL> urls;
+
+		private final String entryFolder;
+
+		private final String subjectName;
+
+		public DatasetURLs(List<URL> urls, String entryFolder, String subjectName) {
+			this.urls = urls;
+			this.entryFolder = entryFolder;
+			this.subjectName = subjectName;
+		}
+
+		public List<URL> getUrls() {
+			return urls;
+		}
+
+		public String getEntryFolder() {
+			return entryFolder;
+		}
+
+		public String getSubjectName() {
+			return subjectName;
+		}
+
+	}
+
+	/**
+	 * An instance to download, with the names of the files to write: one by dataset requesting it.
+	 */
+	private static class InstanceRequest {
+
+		private final String url;
+
+		private final List<String> fileNames = new ArrayList<>();
+
+		InstanceRequest(String url) {
+			this.url = url;
+		}
+
+		void addFileName(String fileName) {
+			if (!fileNames.contains(fileName)) {
+				fileNames.add(fileName);
 			}
 		}
+
+	}
+
+	/**
+	 * Writes one downloaded dicom file, either to a folder or into a zip.
+	 */
+	@FunctionalInterface
+	private interface DicomFileWriter {
+
+		void write(String fileName, File file) throws IOException;
+
+	}
+
+	@FunctionalInterface
+	private interface ResponseHandler {
+
+		void handle(String contentType, InputStream body) throws IOException;
+
+	}
+
+	@FunctionalInterface
+	private interface Download {
+
+		void run() throws IOException;
+
 	}
 
 }
@@ -19,14 +19,16 @@ import java.util.List;
 import org.shanoir.ng.examination.model.Examination;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 
 /**
  * Repository for examination.
  *
  * @author ifakhfakh
  */
-public interface ExaminationRepository extends PagingAndSortingRepository<Examination, Long> {
+public interface ExaminationRepository extends PagingAndSortingRepository<Examination, Long>, ExaminationRepositoryCustom {
 
 	/**
 	 * Get a paginated list of examinations for a list of studies.
@@ -99,4 +101,22 @@ public interface ExaminationRepository extends PagingAndSortingRepository<Examin
 	 */
 	List<Examination> findByStudyId(Long studyId);
 
+	/**
+	 * Get the ids of the examinations of a study, without loading them.
+	 * 
+	 * @param studyId study id.
+	 * @return list of examination ids.
+	 */
+	@Query("select e.id from Examination e where e.studyId = :studyId")
+	List<Long> findIdsByStudyId(@Param("studyId") Long studyId);
+
+	/**
+	 * Get the ids of the examinations of a subject, without loading them.
+	 * 
+	 * @param subjectId subject id.
+	 * @return list of examination ids.
+	 */
+	@Query("select e.id from Examination e where e.subjectId = :subjectId")
+	List<Long> findIdsBySubjectId(@Param("subjectId") Long subjectId);
+
 }
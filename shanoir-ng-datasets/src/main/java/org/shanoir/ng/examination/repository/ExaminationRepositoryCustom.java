@@ -0,0 +1,30 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.examination.repository;
+
+import java.util.List;
+
+public interface ExaminationRepositoryCustom {
+
+	/**
+	 * Deletes the examinations with their acquisitions, datasets and assessments,
+	 * with bulk queries in the order of the foreign keys, instead of loading them
+	 * to cascade the removal. Must be called inside a transaction.
+	 *
+	 * @param examinationIds ids of the examinations to delete.
+	 */
+	void deleteExaminations(List<Long> examinationIds);
+
+}
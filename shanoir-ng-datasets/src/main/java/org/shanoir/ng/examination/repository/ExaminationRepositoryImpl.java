@@ -0,0 +1,140 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.examination.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+@Component
+public class ExaminationRepositoryImpl implements ExaminationRepositoryCustom {
+
+	/** Maximum number of ids bound to the "in" clause of one query. */
+	private static final int MAX_IDS_PER_QUERY = 1000;
+
+	private static final String IDS = "ids";
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	@Transactional
+	public void deleteExaminations(List<Long> examinationIds) {
+		if (examinationIds.isEmpty()) {
+			return;
+		}
+		// the bulk queries bypass the persistence context
+		entityManager.flush();
+		List<Long> acquisitionIds = findIds("select a.id from DatasetAcquisition a where a.examination.id in :ids", examinationIds);
+		deleteDatasets(findIds("select d.id from Dataset d where d.datasetAcquisition.id in :ids", acquisitionIds));
+		deleteDatasetAcquisitions(acquisitionIds);
+		deleteInstrumentBasedAssessments(examinationIds);
+		executeNativeUpdate("delete from extra_data_file_path where examination_id in :ids", examinationIds);
+		executeUpdate("delete from Examination e where e.id in :ids", examinationIds);
+		entityManager.clear();
+	}
+
+	private void deleteDatasets(List<Long> datasetIds) {
+		List<Long> expressionIds = findIds("select e.id from DatasetExpression e where e.dataset.id in :ids", datasetIds);
+		executeUpdate("update DatasetExpression e set e.originalDatasetExpression = null where e.originalDatasetExpression.id in :ids", expressionIds);
+		executeUpdate("delete from DatasetFile f where f.datasetExpression.id in :ids", expressionIds);
+		executeUpdate("delete from DatasetExpression e where e.id in :ids", expressionIds);
+
+		executeUpdate("delete from DiffusionGradient g where g.mrDataset.id in :ids", datasetIds);
+		executeUpdate("delete from EchoTime t where t.mrDataset.id in :ids", datasetIds);
+		executeUpdate("delete from FlipAngle a where a.mrDataset.id in :ids", datasetIds);
+		executeUpdate("delete from InversionTime t where t.mrDataset.id in :ids", datasetIds);
+		executeUpdate("delete from RepetitionTime t where t.mrDataset.id in :ids", datasetIds);
+		executeUpdate("delete from Channel c where c.dataset.id in :ids", datasetIds);
+		executeUpdate("delete from Event e where e.dataset.id in :ids", datasetIds);
+		executeNativeUpdate("delete from related_datasets where dataset_id in :ids", datasetIds);
+		executeNativeUpdate("delete from input_of_dataset_processing where dataset_id in :ids", datasetIds);
+		executeUpdate("update Dataset d set d.referencedDatasetForSuperimposition = null where d.referencedDatasetForSuperimposition.id in :ids", datasetIds);
+
+		List<Long> metadataIds = findIds("select m.id from Dataset d join d.originMetadata m where d.id in :ids", datasetIds);
+		metadataIds.addAll(findIds("select m.id from Dataset d join d.updatedMetadata m where d.id in :ids", datasetIds));
+		List<Long> mrMetadataIds = findIds("select m.id from MrDataset d join d.originMrMetadata m where d.id in :ids", datasetIds);
+		mrMetadataIds.addAll(findIds("select m.id from MrDataset d join d.updatedMrMetadata m where d.id in :ids", datasetIds));
+		List<Long> processingIds = findIds("select distinct p.id from Dataset d join d.datasetProcessing p where d.id in :ids", datasetIds);
+
+		executeUpdate("delete from Dataset d where d.id in :ids", datasetIds);
+		executeUpdate("delete from DatasetMetadata m where m.id in :ids", metadataIds);
+		executeUpdate("delete from MrDatasetMetadata m where m.id in :ids", mrMetadataIds);
+
+		// the processings, which output datasets are all deleted
+		processingIds.removeAll(findIds("select p.id from Dataset d join d.datasetProcessing p where p.id in :ids", processingIds));
+		executeNativeUpdate("delete from input_of_dataset_processing where processing_id in :ids", processingIds);
+		executeUpdate("delete from DatasetProcessing p where p.id in :ids", processingIds);
+	}
+
+	private void deleteDatasetAcquisitions(List<Long> acquisitionIds) {
+		List<Long> mrProtocolIds = findIds("select p.id from MrDatasetAcquisition a join a.mrProtocol p where a.id in :ids", acquisitionIds);
+		List<Long> petProtocolIds = findIds("select p.id from PetDatasetAcquisition a join a.petProtocol p where a.id in :ids", acquisitionIds);
+		List<Long> ctProtocolIds = findIds("select p.id from CtDatasetAcquisition a join a.ctProtocol p where a.id in :ids", acquisitionIds);
+		List<Long> protocolMetadataIds = findIds("select m.id from MrProtocol p join p.originMetadata m where p.id in :ids", mrProtocolIds);
+		protocolMetadataIds.addAll(findIds("select m.id from MrProtocol p join p.updatedMetadata m where p.id in :ids", mrProtocolIds));
+
+		executeUpdate("delete from DatasetAcquisition a where a.id in :ids", acquisitionIds);
+		executeUpdate("delete from DiffusionGradient g where g.mrProtocol.id in :ids", mrProtocolIds);
+		executeUpdate("delete from MrProtocol p where p.id in :ids", mrProtocolIds);
+		executeNativeUpdate("delete from mr_protocol_metadata_mr_scanning_sequence where mr_protocol_metadata_id in :ids", protocolMetadataIds);
+		executeNativeUpdate("delete from mr_protocol_metadata_mr_sequence_variant where mr_protocol_metadata_id in :ids", protocolMetadataIds);
+		executeUpdate("delete from MrProtocolMetadata m where m.id in :ids", protocolMetadataIds);
+		executeUpdate("delete from PetProtocol p where p.id in :ids", petProtocolIds);
+		executeUpdate("delete from CtProtocol p where p.id in :ids", ctProtocolIds);
+	}
+
+	private void deleteInstrumentBasedAssessments(List<Long> examinationIds) {
+		List<Long> assessmentIds = findIds("select a.id from InstrumentBasedAssessment a where a.examination.id in :ids", examinationIds);
+		List<Long> variableAssessmentIds = findIds("select v.id from VariableAssessment v where v.instrumentBasedAssessment.id in :ids", assessmentIds);
+		executeUpdate("delete from Score s where s.variableAssessment.id in :ids", variableAssessmentIds);
+		executeUpdate("delete from VariableAssessment v where v.id in :ids", variableAssessmentIds);
+		executeUpdate("delete from InstrumentBasedAssessment a where a.id in :ids", assessmentIds);
+	}
+
+	private List<Long> findIds(String query, List<Long> ids) {
+		List<Long> result = new ArrayList<>();
+		for (List<Long> partition : partition(ids)) {
+			result.addAll(entityManager.createQuery(query, Long.class).setParameter(IDS, partition).getResultList());
+		}
+		return result;
+	}
+
+	private void executeUpdate(String query, List<Long> ids) {
+		for (List<Long> partition : partition(ids)) {
+			entityManager.createQuery(query).setParameter(IDS, partition).executeUpdate();
+		}
+	}
+
+	private void executeNativeUpdate(String query, List<Long> ids) {
+		for (List<Long> partition : partition(ids)) {
+			entityManager.createNativeQuery(query).setParameter(IDS, partition).executeUpdate();
+		}
+	}
+
+	private static List<List<Long>> partition(List<Long> ids) {
+		List<List<Long>> partitions = new ArrayList<>();
+		for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+			partitions.add(ids.subList(from, Math.min(from + MAX_IDS_PER_QUERY, ids.size())));
+		}
+		return partitions;
+	}
+
+}
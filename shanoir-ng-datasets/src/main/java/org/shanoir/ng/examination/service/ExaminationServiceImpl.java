@@ -17,14 +17,17 @@ package org.shanoir.ng.examination.service;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import org.apache.commons.io.FileUtils;
 import org.shanoir.ng.dataset.model.Dataset;
+import org.shanoir.ng.dataset.repository.DatasetRepository;
 import org.shanoir.ng.datasetacquisition.model.DatasetAcquisition;
 import org.shanoir.ng.examination.model.Examination;
 import org.shanoir.ng.examination.repository.ExaminationRepository;
 import org.shanoir.ng.shared.exception.EntityNotFoundException;
 import org.shanoir.ng.shared.security.rights.StudyUserRight;
+import org.shanoir.ng.solr.repository.ShanoirMetadataRepository;
 import org.shanoir.ng.solr.service.SolrService;
 import org.shanoir.ng.study.rights.StudyUserRightsRepository;
 import org.shanoir.ng.utils.KeycloakUtil;
@@ -57,9 +60,15 @@ public class ExaminationServiceImpl implements ExaminationService {
 	@Autowired
 	private StudyUserRightsRepository rightsRepository;
 
+	@Autowired
+	private DatasetRepository datasetRepository;
+
 	@Autowired
 	private SolrService solrService;
 
+	@Autowired
+	private ShanoirMetadataRepository shanoirMetadataRepository;
+
 	@Override
 	public void deleteById(final Long id) throws EntityNotFoundException {
 		Examination exam = examinationRepository.findOne(id);
@@ -122,8 +131,29 @@ public class ExaminationServiceImpl implements ExaminationService {
 		if (examinationDb == null) {
 			throw new EntityNotFoundException(Examination.class, examination.getId());
 		}
+		final Long previousStudyId = examinationDb.getStudyId();
 		updateExaminationValues(examinationDb, examination);
 		examinationRepository.save(examinationDb);
+		// the study id is copied in the datasets, to filter them by study: the datasets are loaded only when it changes
+		if (!Objects.equals(previousStudyId, examinationDb.getStudyId()) && examinationDb.getDatasetAcquisitions() != null) {
+			List<Dataset> movedDatasets = new ArrayList<>();
+			for (DatasetAcquisition acq : examinationDb.getDatasetAcquisitions()) {
+				for (Dataset ds : acq.getDatasets()) {
+					if (!Objects.equals(ds.getStudyId(), examinationDb.getStudyId())) {
+						ds.setStudyId(examinationDb.getStudyId());
+						movedDatasets.add(ds);
+					}
+				}
+			}
+			if (!movedDatasets.isEmpty()) {
+				datasetRepository.save(movedDatasets);
+			}
+		}
+		// the examination comment and date are indexed with the datasets
+		List<Long> datasetIds = shanoirMetadataRepository.findDatasetIdsByExaminationId(examinationDb.getId());
+		if (!datasetIds.isEmpty()) {
+			solrService.markForIndex(datasetIds);
+		}
 		return examinationDb;
 	}
 
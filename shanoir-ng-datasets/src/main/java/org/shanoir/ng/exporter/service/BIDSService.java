@@ -49,4 +49,16 @@ public interface BIDSService {
 	 */
 	public void deleteExam(Long examId);
 
+	/**
+	 * Deletes the BIDS folder of a study
+	 * @param studyId the study to delete
+	 */
+	public void deleteStudy(Long studyId);
+
+	/**
+	 * Deletes the folders of a subject in the BIDS folders of all studies
+	 * @param subjectId the subject to delete
+	 */
+	public void deleteSubject(Long subjectId);
+
 }
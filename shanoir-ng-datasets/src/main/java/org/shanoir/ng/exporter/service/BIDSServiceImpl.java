@@ -223,6 +223,38 @@ public class BIDSServiceImpl implements BIDSService {
 		}
 	}
 
+	@Override
+	public void deleteStudy(Long studyId) {
+		File fileToDelete = null;
+		try {
+			fileToDelete = getFileFromId(studyId.toString(), new File(bidsStorageDir));
+			if (fileToDelete != null) {
+				FileUtils.deleteDirectory(fileToDelete);
+			}
+		} catch (Exception e) {
+			LOG.error("ERROR when deleting BIDS folder: please delete it manually: {}", fileToDelete, e);
+		}
+	}
+
+	@Override
+	public void deleteSubject(Long subjectId) {
+		File[] studyDirs = new File(bidsStorageDir).listFiles(file -> file.isDirectory() && file.getName().startsWith(STUDY_PREFIX));
+		if (studyDirs == null) {
+			return;
+		}
+		for (File studyDir : studyDirs) {
+			File fileToDelete = null;
+			try {
+				fileToDelete = getFileFromId(subjectId.toString(), studyDir);
+				if (fileToDelete != null) {
+					FileUtils.deleteDirectory(fileToDelete);
+				}
+			} catch (Exception e) {
+				LOG.error("ERROR when deleting BIDS folder: please delete it manually: {}", fileToDelete, e);
+			}
+		}
+	}
+
 	/**
 	 * Deletes a line with given regex in the given file
 	 * @param fileNameRegex the regex to find the filename to delete
@@ -32,6 +32,21 @@ public class DatasetFile {
 	@JsonProperty("imageOrientationPatient")
 	private List<Double> imageOrientationPatient;
 
+	@JsonProperty("studyInstanceUID")
+	private String studyInstanceUID;
+
+	@JsonProperty("seriesInstanceUID")
+	private String seriesInstanceUID;
+
+	@JsonProperty("sopInstanceUID")
+	private String sopInstanceUID;
+
+	@JsonProperty("acquisitionTime")
+	private String acquisitionTime;
+
+	@JsonProperty("contentTime")
+	private String contentTime;
+
 	public String getPath() {
 		return path;
 	}
@@ -64,4 +79,44 @@ public class DatasetFile {
 		this.imageOrientationPatient = imageOrientationPatient;
 	}
 
+	public String getStudyInstanceUID() {
+		return studyInstanceUID;
+	}
+
+	public void setStudyInstanceUID(String studyInstanceUID) {
+		this.studyInstanceUID = studyInstanceUID;
+	}
+
+	public String getSeriesInstanceUID() {
+		return seriesInstanceUID;
+	}
+
+	public void setSeriesInstanceUID(String seriesInstanceUID) {
+		this.seriesInstanceUID = seriesInstanceUID;
+	}
+
+	public String getSopInstanceUID() {
+		return sopInstanceUID;
+	}
+
+	public void setSopInstanceUID(String sopInstanceUID) {
+		this.sopInstanceUID = sopInstanceUID;
+	}
+
+	public String getAcquisitionTime() {
+		return acquisitionTime;
+	}
+
+	public void setAcquisitionTime(String acquisitionTime) {
+		this.acquisitionTime = acquisitionTime;
+	}
+
+	public String getContentTime() {
+		return contentTime;
+	}
+
+	public void setContentTime(String contentTime) {
+		this.contentTime = contentTime;
+	}
+
 }
@@ -17,6 +17,7 @@ package org.shanoir.ng.importer.service;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -25,6 +26,8 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.shanoir.ng.dataset.modality.EegDataset;
 import org.shanoir.ng.dataset.modality.EegDatasetDTO;
@@ -65,6 +68,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Scope;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 @Service
@@ -99,31 +104,55 @@ public class ImporterService {
 	@Autowired
 	private ShanoirEventService eventService;
 
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
 	private static final String SESSION_PREFIX = "ses-";
 
 	private static final String SUBJECT_PREFIX = "sub-";
 
 	private static final String EEG_PREFIX = "eeg";
 
+	/**
+	 * Imports the series of an import job in stages, so that no transaction is
+	 * open during the transfers: the dataset acquisition of each serie is created
+	 * in its own short transaction, then the DICOM images are sent to the PACS
+	 * and at last the BIDS folder and the archive are updated.
+	 * If the import fails before all the series are in the PACS, the dataset
+	 * acquisitions already committed for this import job are deleted again.
+	 * 
+	 * @param importJob
+	 * @param userId
+	 * @throws ShanoirException
+	 */
 	public void createAllDatasetAcquisition(ImportJob importJob, Long userId) throws ShanoirException {
 		
 		ShanoirEvent event = importJob.getShanoirEvent();
 		event.setMessage("Starting import...");
 		eventService.publishEvent(event);
 		SecurityContextUtil.initAuthenticationContext("ADMIN_ROLE");
+		// the acquisitions committed, until their series are all in the PACS
+		List<Long> createdAcquisitionIds = new ArrayList<>();
 		try {
 			Examination examination = examinationRepository.findOne(importJob.getExaminationId());
 			if (examination != null) {
 				int rank = 0;
+				List<Serie> seriesToPersist = new ArrayList<>();
 				for (Patient patient : importJob.getPatients()) {
 					for (Study study : patient.getStudies()) {
 						float progress = 0f;
 						for (Serie serie : study.getSeries() ) {
 							if (serie.getSelected() != null && serie.getSelected()) {
-								createDatasetAcquisitionForSerie(serie, rank, examination, importJob);
+								final int serieRank = rank;
+								DatasetAcquisition datasetAcquisition = executeInTransaction(() -> createDatasetAcquisitionForSerie(serie, serieRank, examination, importJob));
+								if (datasetAcquisition != null) {
+									createdAcquisitionIds.add(datasetAcquisition.getId());
+									seriesToPersist.add(serie);
+								}
 								rank++;
 							}
-							progress += 1f / study.getSeries().size();
+							// the second half of the progress is for the send to the PACS
+							progress += 0.5f / study.getSeries().size();
 							// This message is important for email service
 							event.setMessage("Treating serie " + serie.getSeriesDescription()+ " for examination " + importJob.getExaminationId());
 							event.setProgress(progress);
@@ -131,6 +160,14 @@ public class ImporterService {
 						}
 					}
 				}
+				// Persist Dicom images in Shanoir Pacs, several series at a time
+				AtomicInteger sentSeries = new AtomicInteger();
+				dicomPersisterService.persistAllForSeries(seriesToPersist, serie -> {
+					event.setMessage("Serie " + serie.getSeriesDescription() + " sent to PACS for examination " + importJob.getExaminationId());
+					event.setProgress(0.5f + 0.5f * sentSeries.incrementAndGet() / seriesToPersist.size());
+					eventService.publishEvent(event);
+				});
+				createdAcquisitionIds.clear();
 			} else {
 				throw new ShanoirException("Examination not found: " + importJob.getExaminationId());
 			}
@@ -143,48 +180,110 @@ public class ImporterService {
 			+ " in examination " + examination.getId());
 			eventService.publishEvent(event);
 
-			// Create BIDS folder
-			try {
-				bidsService.addDataset(examination, importJob.getSubjectName(), importJob.getStudyName());
-			} catch (Exception e2) {
-				// Only log exception, don't fail for the moment
-				event.setMessage("Almost success - BIDS folder creation failed");
-				LOG.error("ERROR: Could not create BIDS folder", e2);
-			}
-			// Manage archive
-			if (importJob.getArchive() == null) {
-				return;
-			}
-			// Copy archive
-			File archiveFile = new File(importJob.getArchive());
-			if (!archiveFile.exists()) {
-				LOG.info("Archive file not found, not saved: {}", importJob.getArchive());
-				return;
-			}
-			MultipartFile multipartFile = new MockMultipartFile(archiveFile.getName(), archiveFile.getName(), "application/zip", new FileInputStream(archiveFile));
-			
-			// Add bruker archive as extra data
-			String fileName = this.examinationService.addExtraData(importJob.getExaminationId(), multipartFile);
-			if (fileName != null) {
-				List<String> archives = examination.getExtraDataFilePathList();
-				if (archives == null) {
-					archives = new ArrayList<>();
-				}
-				archives.add(archiveFile.getName());
-				examination.setExtraDataFilePathList(archives);
-				examinationRepository.save(examination);
-			}
+			// the examination is read again with its new acquisitions
+			executeInTransaction(() -> {
+				Examination examinationDb = examinationRepository.findOne(importJob.getExaminationId());
+				createBidsFolder(examinationDb, importJob, event);
+				addArchive(examinationDb, importJob);
+				return null;
+			});
 		} catch (Exception e) {
 			event.setStatus(ShanoirEvent.ERROR);
 			event.setMessage("Unexpected error during the import: " + e.getMessage() + ", please contact an administrator.");
 			event.setProgress(1f);
 			eventService.publishEvent(event);
 			LOG.error("Error during import for exam: {} : {}", importJob.getExaminationId(), e);
+			deleteDatasetAcquisitions(createdAcquisitionIds);
 			throw new ShanoirException(event.getMessage(), e);
 
 		}
 	}
-	public void createDatasetAcquisitionForSerie(Serie serie, int rank, Examination examination, ImportJob importJob) throws Exception {
+
+	/**
+	 * Deletes the dataset acquisitions of a failed import job, with their datasets,
+	 * from the database and from the solr index: their images are not all in the PACS.
+	 * Each acquisition is deleted in its own transaction, as the import runs outside
+	 * of any transaction and the datasets of the acquisition are loaded lazily.
+	 * 
+	 * @param datasetAcquisitionIds
+	 */
+	private void deleteDatasetAcquisitions(List<Long> datasetAcquisitionIds) {
+		for (Long datasetAcquisitionId : datasetAcquisitionIds) {
+			try {
+				executeInTransaction(() -> {
+					datasetAcquisitionService.deleteById(datasetAcquisitionId);
+					return null;
+				});
+			} catch (Exception e) {
+				LOG.error("Could not delete dataset acquisition {} of failed import", datasetAcquisitionId, e);
+			}
+		}
+	}
+
+	private void createBidsFolder(Examination examination, ImportJob importJob, ShanoirEvent event) {
+		try {
+			bidsService.addDataset(examination, importJob.getSubjectName(), importJob.getStudyName());
+		} catch (Exception e2) {
+			// Only log exception, don't fail for the moment
+			event.setMessage("Almost success - BIDS folder creation failed");
+			LOG.error("ERROR: Could not create BIDS folder", e2);
+		}
+	}
+
+	private void addArchive(Examination examination, ImportJob importJob) throws IOException {
+		// Manage archive
+		if (importJob.getArchive() == null) {
+			return;
+		}
+		// Copy archive
+		File archiveFile = new File(importJob.getArchive());
+		if (!archiveFile.exists()) {
+			LOG.info("Archive file not found, not saved: {}", importJob.getArchive());
+			return;
+		}
+		MultipartFile multipartFile = new MockMultipartFile(archiveFile.getName(), archiveFile.getName(), "application/zip", new FileInputStream(archiveFile));
+		
+		// Add bruker archive as extra data
+		String fileName = this.examinationService.addExtraData(importJob.getExaminationId(), multipartFile);
+		if (fileName != null) {
+			List<String> archives = examination.getExtraDataFilePathList();
+			if (archives == null) {
+				archives = new ArrayList<>();
+			}
+			archives.add(archiveFile.getName());
+			examination.setExtraDataFilePathList(archives);
+			examinationRepository.save(examination);
+		}
+	}
+
+	/**
+	 * Executes the callable in a new transaction, rolled back on any exception.
+	 */
+	private <T> T executeInTransaction(Callable<T> callable) throws Exception {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		try {
+			return transactionTemplate.execute(status -> {
+				try {
+					return callable.call();
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new UndeclaredThrowableException(e);
+				}
+			});
+		} catch (UndeclaredThrowableException e) {
+			throw (Exception) e.getUndeclaredThrowable();
+		}
+	}
+
+	/**
+	 * Creates the dataset acquisition of a serie in the database. The DICOM images
+	 * of the serie are sent to the PACS afterwards, with all the other series of
+	 * the import job.
+	 * 
+	 * @return the dataset acquisition created, null if the serie has no DICOM images
+	 */
+	public DatasetAcquisition createDatasetAcquisitionForSerie(Serie serie, int rank, Examination examination, ImportJob importJob) throws Exception {
 		if (checkSerieForDicomImages(serie)) {
 			datasetAcquisitionContext.setDatasetAcquisitionStrategy(serie.getModality());
 			DatasetAcquisition datasetAcquisition = datasetAcquisitionContext.generateDatasetAcquisitionForSerie(serie, rank, importJob);
@@ -195,16 +294,10 @@ public class ImporterService {
 			}
 			// Persist Serie in Shanoir DB
 			datasetAcquisitionService.create(datasetAcquisition);
-			long startTime = System.currentTimeMillis();
-			// Persist Dicom images in Shanoir Pacs
-			dicomPersisterService.persistAllForSerie(serie);
-			long endTime = System.currentTimeMillis();
-			long duration = endTime - startTime;
-			LOG.info("Import of " + serie.getImagesNumber() + " DICOM images into the PACS required "
-					+ duration + " millis for serie: " + serie.getSeriesInstanceUID()
-					+ "(" + serie.getSeriesDescription() + ")");
+			return datasetAcquisition;
 		} else {
 			LOG.warn("Serie " + serie.getSequenceName() + ", " + serie.getProtocolName() + " found without images. Ignored.");
+			return null;
 		}
 	}
 	
@@ -14,12 +14,34 @@
 
 package org.shanoir.ng.shared.service;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStreamReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Connection;
+import org.dcm4che3.net.Device;
+import org.dcm4che3.net.DimseRSPHandler;
+import org.dcm4che3.net.InputStreamDataWriter;
+import org.dcm4che3.net.Priority;
+import org.dcm4che3.net.Status;
+import org.dcm4che3.net.pdu.AAssociateRQ;
+import org.dcm4che3.net.pdu.PresentationContext;
 import org.shanoir.ng.shared.exception.ShanoirException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,10 +49,12 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
- * The class CStoreDicomService calls the command storescu of dcm4che3 on the
- * command line to send the dicom images to the PACS via c-store. In the
- * dockerbuild file of the ms datasets /docker-compose/datasets
- * dcm4che-5.21.0-bin.zip is installed and configured to be available for this.
+ * The class CStoreDicomService sends the dicom images to the PACS via c-store,
+ * in process with the network api of dcm4che3, instead of calling the command
+ * storescu on the command line. One association is opened per directory sent,
+ * so several series can be sent concurrently, and the files are streamed from
+ * disk. The files, that the PACS did not store, are sent again on a new
+ * association: storing the same instances twice is idempotent for the PACS.
  * 
  * @author mkain
  *
@@ -41,9 +65,10 @@ public class CStoreDicomService implements DicomServiceApi {
 	/** Logger. */
 	private static final Logger LOG = LoggerFactory.getLogger(CStoreDicomService.class);
 
-	private static final String STORESCU = "storescu";
+	private static final String DEVICE_NAME = "storescu";
 
-	private static final String C = "-c";
+	/** Base delay in ms before sending again the failed files, multiplied by the attempt. */
+	private static final long RETRY_DELAY = 1000;
 
 	@Value("${dcm4chee-arc.host}")
 	private String dcm4cheeHost;
@@ -54,19 +79,62 @@ public class CStoreDicomService implements DicomServiceApi {
 	@Value("${dcm4chee-arc.dicom.c-store.aet.called}")
 	private String dcm4cheeCStoreAETCalled;
 
+	@Value("${dcm4chee-arc.dicom.c-store.aet.calling:STORESCU}")
+	private String cStoreAETCalling;
+
+	@Value("${dcm4chee-arc.dicom.send.retries:3}")
+	private int retries;
+
+	private ApplicationEntity ae;
+
+	private Connection remote;
+
+	private ExecutorService executor;
+
+	private ScheduledExecutorService scheduledExecutor;
+
+	@PostConstruct
+	public void init() {
+		Device device = new Device(DEVICE_NAME);
+		Connection connection = new Connection();
+		device.addConnection(connection);
+		ae = new ApplicationEntity(cStoreAETCalling);
+		device.addApplicationEntity(ae);
+		ae.addConnection(connection);
+		executor = Executors.newCachedThreadPool();
+		scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+		device.setExecutor(executor);
+		device.setScheduledExecutor(scheduledExecutor);
+		remote = new Connection();
+		remote.setHostname(dcm4cheeHost);
+		remote.setPort(Integer.parseInt(dcm4cheePortDcm));
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdown();
+		scheduledExecutor.shutdown();
+	}
+
 	@Override
 	public void sendDicomFilesToPacs(File directoryWithDicomFiles) throws Exception {
 		if (directoryWithDicomFiles != null && directoryWithDicomFiles.exists()
 				&& directoryWithDicomFiles.isDirectory()) {
-			File[] dicomFiles = directoryWithDicomFiles.listFiles();
+			File[] dicomFiles = directoryWithDicomFiles.listFiles(File::isFile);
 			LOG.info("Start: C-STORE sending " + dicomFiles.length + " dicom files to PACS from folder: "
 					+ directoryWithDicomFiles.getAbsolutePath());
-			List<String> args = new ArrayList<String>();
-			args.add(STORESCU);
-			args.add(C);
-			args.add(dcm4cheeCStoreAETCalled + "@" + dcm4cheeHost + ":" + dcm4cheePortDcm);
-			args.add(directoryWithDicomFiles.getAbsolutePath());
-			execute(args);
+			List<DicomFile> filesToSend = readDicomFiles(dicomFiles);
+			for (int attempt = 1; !filesToSend.isEmpty(); attempt++) {
+				filesToSend = store(filesToSend);
+				if (!filesToSend.isEmpty()) {
+					if (attempt > retries) {
+						throw new ShanoirException("Send to PACS (c-store) error occured: " + filesToSend.size()
+								+ " files not stored from folder: " + directoryWithDicomFiles.getAbsolutePath());
+					}
+					LOG.warn("C-STORE of {} files failed (attempt {}), retrying.", filesToSend.size(), attempt);
+					Thread.sleep(RETRY_DELAY * attempt);
+				}
+			}
 			LOG.info("Finished: C-STORE sending " + dicomFiles.length + " dicom files to PACS from folder: "
 					+ directoryWithDicomFiles.getAbsolutePath());
 		} else {
@@ -76,33 +144,109 @@ public class CStoreDicomService implements DicomServiceApi {
 	}
 
 	/**
-	 * Calls the command line, error occurred if exitCode != 0.
+	 * Reads the file meta information of each file, to know the presentation
+	 * contexts to negotiate. Files without are no dicom files and ignored, as
+	 * storescu did.
 	 * 
-	 * Uses ProcessBuilder here as Runtime.exec did not work (stopped after sending 49 images),
-	 * very probably related to a buffer problem: many output of the script saturates the default
-	 * output buffer of Runtime.exec, so we have been obliged to use ProcessBuilder here.
-	 * 
-	 * Furthermore the below code is blocking by intention. It could be coded not blocking, BUT
-	 * the problem is when to check for the results: 5, 10, 15 secs?, in any case we want to continue
-	 * when it terminates, so no real gain when using ExecuterService.
+	 * @param files
+	 * @return
+	 * @throws IOException
+	 */
+	private List<DicomFile> readDicomFiles(File[] files) throws IOException {
+		List<DicomFile> dicomFiles = new ArrayList<>(files.length);
+		for (File file : files) {
+			try (DicomInputStream dIS = new DicomInputStream(file)) {
+				Attributes fmi = dIS.readFileMetaInformation();
+				if (fmi == null) {
+					LOG.warn("C-STORE: file ignored, no dicom file meta information: {}", file.getAbsolutePath());
+					continue;
+				}
+				dicomFiles.add(new DicomFile(file, fmi, dIS.getPosition()));
+			}
+		}
+		return dicomFiles;
+	}
+
+	/**
+	 * Sends the files on one association and returns the files, that have not
+	 * been stored by the PACS.
 	 * 
-	 * @param args
-	 * @throws Exception
+	 * @param dicomFiles
+	 * @return
+	 * @throws InterruptedException
 	 */
-	private void execute(List<String> args) throws Exception {
-		LOG.debug("Calling command: " + args.toString());
-		ProcessBuilder processBuilder = new ProcessBuilder();
-		processBuilder.command(args);
-		Process process = processBuilder.start();
-        BufferedReader reader =
-                new BufferedReader(new InputStreamReader(process.getInputStream()));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            LOG.debug(line);
-        }
-        int exitCode = process.waitFor();
-		if (exitCode != 0)
-			throw new ShanoirException("Send to PACS (c-store) error occured on cmd line.");
+	private List<DicomFile> store(List<DicomFile> dicomFiles) throws InterruptedException {
+		AAssociateRQ rq = new AAssociateRQ();
+		rq.setCalledAET(dcm4cheeCStoreAETCalled);
+		for (DicomFile dicomFile : dicomFiles) {
+			if (!rq.containsPresentationContextFor(dicomFile.cuid, dicomFile.tsuid)) {
+				rq.addPresentationContext(new PresentationContext(
+						rq.getNumberOfPresentationContexts() * 2 + 1, dicomFile.cuid, dicomFile.tsuid));
+			}
+		}
+		Set<DicomFile> notStored = ConcurrentHashMap.newKeySet();
+		notStored.addAll(dicomFiles);
+		Association as = null;
+		try {
+			as = ae.connect(remote, rq);
+			for (DicomFile dicomFile : dicomFiles) {
+				try (InputStream in = new FileInputStream(dicomFile.file)) {
+					in.skip(dicomFile.datasetPosition);
+					as.cstore(dicomFile.cuid, dicomFile.iuid, Priority.NORMAL, new InputStreamDataWriter(in),
+							dicomFile.tsuid, new DimseRSPHandler(as.nextMessageID()) {
+								@Override
+								public void onDimseRSP(Association as, Attributes cmd, Attributes data) {
+									super.onDimseRSP(as, cmd, data);
+									int status = cmd.getInt(Tag.Status, -1);
+									if (status == Status.Success || (status & 0xF000) == Status.CoercionOfDataElements) {
+										notStored.remove(dicomFile);
+									} else {
+										LOG.warn("C-STORE of {} failed with status {}", dicomFile.file.getAbsolutePath(),
+												Integer.toHexString(status));
+									}
+								}
+							});
+				}
+			}
+			as.waitForOutstandingRSP();
+		} catch (InterruptedException e) {
+			throw e;
+		} catch (Exception e) {
+			LOG.error("Error during C-STORE into pacs", e);
+		} finally {
+			if (as != null && as.isReadyForDataTransfer()) {
+				try {
+					as.release();
+				} catch (IOException e) {
+					LOG.error("Error during release of C-STORE association", e);
+				}
+			}
+		}
+		List<DicomFile> failed = new ArrayList<>(dicomFiles);
+		failed.retainAll(notStored);
+		return failed;
+	}
+
+	private static class DicomFile {
+
+		private final File file;
+
+		private final String cuid;
+
+		private final String iuid;
+
+		private final String tsuid;
+
+		/** Position of the data set after the file meta information. */
+		private final long datasetPosition;
+
+		DicomFile(File file, Attributes fmi, long datasetPosition) {
+			this.file = file;
+			this.cuid = fmi.getString(Tag.MediaStorageSOPClassUID);
+			this.iuid = fmi.getString(Tag.MediaStorageSOPInstanceUID);
+			this.tsuid = fmi.getString(Tag.TransferSyntaxUID);
+			this.datasetPosition = datasetPosition;
+		}
 	}
 
-}
\ No newline at end of file
+}
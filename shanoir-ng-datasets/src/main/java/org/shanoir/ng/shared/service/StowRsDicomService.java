@@ -16,16 +16,21 @@ package org.shanoir.ng.shared.service;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
-import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.shanoir.ng.shared.exception.ShanoirException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +40,12 @@ import org.springframework.stereotype.Component;
 /**
  * This class sends dicom files from a directory to a PACS on using stow-rs REST.
  * 
+ * The files are sent in chunks of dcm4chee-arc.dicom.send.chunkSize files, each
+ * chunk being one multipart request, streamed from disk, over a pooled keep-alive
+ * http client shared by all series sent concurrently. A chunk failing with an
+ * IO error or a server error is sent again: storing the same instances twice
+ * is idempotent for the PACS.
+ * 
  * @author mkain
  *
  */
@@ -49,6 +60,9 @@ public class StowRsDicomService implements DicomServiceApi {
 	private static final String CONTENT_TYPE = "application/dicom";
 	private static final String BOUNDARY = "--import_dicom_shanoir--";
 
+	/** Base delay in ms before sending again a failed chunk, multiplied by the attempt. */
+	private static final long RETRY_DELAY = 1000;
+
 	@Value("${dcm4chee-arc.protocol}")
 	private String dcm4cheeProtocol;
 
@@ -61,34 +75,90 @@ public class StowRsDicomService implements DicomServiceApi {
 	@Value("${dcm4chee-arc.dicom.web.rs}")
 	private String dicomWebRS;
 
+	@Value("${dcm4chee-arc.dicom.send.threads:4}")
+	private int sendThreads;
+
+	@Value("${dcm4chee-arc.dicom.send.chunkSize:100}")
+	private int chunkSize;
+
+	@Value("${dcm4chee-arc.dicom.send.retries:3}")
+	private int retries;
+
+	private CloseableHttpClient httpClient;
+
+	@PostConstruct
+	public void init() {
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(sendThreads);
+		connectionManager.setDefaultMaxPerRoute(sendThreads);
+		httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+	}
+
+	@PreDestroy
+	public void shutdown() throws IOException {
+		httpClient.close();
+	}
+
 	@Override
 	public void sendDicomFilesToPacs(File directoryWithDicomFiles) throws Exception {
-		if (directoryWithDicomFiles == null || directoryWithDicomFiles.exists() || directoryWithDicomFiles.isDirectory()) {
+		if (directoryWithDicomFiles == null || !directoryWithDicomFiles.exists() || !directoryWithDicomFiles.isDirectory()) {
 			throw new ShanoirException("sendDicomFilesToPacs called with null, or file: not existing or not a directory.");
 		}
-		File[] dicomFiles = directoryWithDicomFiles.listFiles();
+		File[] dicomFiles = directoryWithDicomFiles.listFiles(File::isFile);
 		LOG.info("Start: STOW-RS sending " + dicomFiles.length + " dicom files to PACS from folder: " + directoryWithDicomFiles.getAbsolutePath());
+		for (int from = 0; from < dicomFiles.length; from += chunkSize) {
+			File[] chunk = Arrays.copyOfRange(dicomFiles, from, Math.min(from + chunkSize, dicomFiles.length));
+			sendChunk(chunk);
+		}
+		LOG.info("Finished: STOW-RS sending " + dicomFiles.length + " dicom files to PACS from folder: " + directoryWithDicomFiles.getAbsolutePath());
+	}
 
-		try(CloseableHttpClient httpClient = HttpClients.createDefault()) {
-			MultipartEntityBuilder multipartEntityBuilder = MultipartEntityBuilder.create().setBoundary(BOUNDARY);
-			for (File dicomFile : dicomFiles) {
-				multipartEntityBuilder.addBinaryBody("dcm_upload", dicomFile, ContentType.create(CONTENT_TYPE), "filename");
+	/**
+	 * Sends one chunk of files, and sends it again in case of IO or server error.
+	 * 
+	 * @param chunk
+	 * @throws Exception
+	 */
+	private void sendChunk(File[] chunk) throws Exception {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				postChunk(chunk);
+				return;
+			} catch (IOException e) {
+				if (attempt > retries) {
+					LOG.error("IOException during upload into pacs", e);
+					throw e;
+				}
+				LOG.warn("STOW-RS sending of {} files failed (attempt {}), retrying: {}", chunk.length, attempt, e.getMessage());
+				try {
+					Thread.sleep(RETRY_DELAY * attempt);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new ShanoirException("Interrupted during upload into pacs.", ie);
+				}
+			}
+		}
+	}
+
+	private void postChunk(File[] chunk) throws IOException, ShanoirException {
+		MultipartEntityBuilder multipartEntityBuilder = MultipartEntityBuilder.create().setBoundary(BOUNDARY);
+		for (File dicomFile : chunk) {
+			multipartEntityBuilder.addBinaryBody("dcm_upload", dicomFile, ContentType.create(CONTENT_TYPE), "filename");
+		}
+		HttpEntity entity = multipartEntityBuilder.build();
+		HttpPost httpPost = new HttpPost(dcm4cheeProtocol + dcm4cheeHost + ":" + dcm4cheePortWeb + dicomWebRS);
+		httpPost.setHeader(HttpHeaders.CONTENT_TYPE, CONTENT_TYPE_MULTIPART+";type="+CONTENT_TYPE+";boundary="+BOUNDARY);
+		httpPost.setEntity(entity);
+		try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+			int status = response.getStatusLine().getStatusCode();
+			// consume the response to give back the connection to the pool
+			EntityUtils.consume(response.getEntity());
+			if (status >= 500) {
+				throw new IOException("STOW-RS server error: " + response.getStatusLine());
+			} else if (status >= 300) {
+				throw new ShanoirException("STOW-RS upload into pacs refused: " + response.getStatusLine());
 			}
-			HttpEntity entity = multipartEntityBuilder.build();
-			HttpPost httpPost = new HttpPost(dcm4cheeProtocol + dcm4cheeHost + ":" + dcm4cheePortWeb + dicomWebRS);
-			httpPost.setHeader(HttpHeaders.CONTENT_TYPE, CONTENT_TYPE_MULTIPART+";type="+CONTENT_TYPE+";boundary="+BOUNDARY);
-			httpPost.setEntity(entity);
-			CloseableHttpResponse response = httpClient.execute(httpPost);
-			response.getEntity();
-			response.close();
-		} catch (ClientProtocolException e) {
-			LOG.error("ClientProtocolException during upload into pacs",e);
-			throw e;
-		} catch (IOException e) {
-			LOG.error("IOException during upload into pacs",e);
-			throw e;
 		}
-		LOG.info("Finished: STOW-RS sending " + dicomFiles.length + " dicom files to PACS from folder: " + directoryWithDicomFiles.getAbsolutePath());
 	}
 
 }
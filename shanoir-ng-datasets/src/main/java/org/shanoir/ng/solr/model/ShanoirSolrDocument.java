@@ -75,6 +75,11 @@ public class ShanoirSolrDocument {
 	@Field
 	@Indexed(name="studyId", type="Long")
 	private Long studyId;
+
+	/** Time of the indexing: the full reindex removes the documents older than itself. */
+	@Field
+	@Indexed(name="indexGeneration", type="Long")
+	private Long indexGeneration;
 	
 	public ShanoirSolrDocument () {
 		
@@ -235,4 +240,18 @@ public class ShanoirSolrDocument {
 		this.studyId = studyId;
 	}
 
-}
\ No newline at end of file
+
+	/**
+	 * @return the indexGeneration
+	 */
+	public Long getIndexGeneration() {
+		return indexGeneration;
+	}
+
+	/**
+	 * @param indexGeneration the indexGeneration to set
+	 */
+	public void setIndexGeneration(Long indexGeneration) {
+		this.indexGeneration = indexGeneration;
+	}
+}
@@ -29,11 +29,28 @@ import org.shanoir.ng.solr.model.ShanoirMetadata;
  */
 public interface ShanoirMetadataRepositoryCustom {
 	/**
-	 * Find in all tables information to construct ShanoirSolrDocument.
+	 * Find in all tables information to construct ShanoirSolrDocument, for some datasets.
 	 * 
-	 * @return list of ShanoirSolrDocument.
+	 * @param datasetIds
+	 * @return list of ShanoirMetadata.
 	 */
-	List<ShanoirMetadata> findAllAsSolrDoc();
+	List<ShanoirMetadata> findSolrDocs(List<Long> datasetIds);
 
 	ShanoirMetadata findOneSolrDoc(Long datasetId);
+
+	/**
+	 * Find the ids of the datasets after a dataset id, in id order, to read all datasets
+	 * page after page.
+	 * 
+	 * @param lastDatasetId the last id of the previous page, 0 for the first page
+	 * @param maxResults
+	 * @return list of dataset ids.
+	 */
+	List<Long> findDatasetIdsAfter(Long lastDatasetId, int maxResults);
+
+	List<Long> findDatasetIdsByExaminationId(Long examinationId);
+
+	List<Long> findDatasetIdsBySubjectId(Long subjectId);
+
+	List<Long> findDatasetIdsByStudyId(Long studyId);
 }
@@ -20,6 +20,7 @@
 package org.shanoir.ng.solr.repository;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import javax.persistence.EntityManager;
@@ -41,8 +42,11 @@ public class ShanoirMetadataRepositoryImpl implements ShanoirMetadataRepositoryC
 	
 	@SuppressWarnings("unchecked")
 	@Override
-	public List<ShanoirMetadata> findAllAsSolrDoc() {
+	public List<ShanoirMetadata> findSolrDocs(List<Long> datasetIds) {
 		List<ShanoirMetadata> result = new ArrayList<>();
+		if (datasetIds.isEmpty()) {
+			return result;
+		}
 		/**
  SELECT d.id as datasetId, dm.name as datasetName, dm.dataset_modality_type as datasetType, mdm.mr_dataset_nature as datasetNature, d.creation_date as datasetCreationDate, e.comment as examinationComment, e.examination_date as examinationDate, su.name as subjectName, st.name as studyName, e.study_id as studyId
  FROM dataset d
@@ -51,7 +55,7 @@ public class ShanoirMetadataRepositoryImpl implements ShanoirMetadataRepositoryC
  LEFT JOIN study st ON st.id = e.study_id
  LEFT JOIN subject su ON su.id = d.subject_id, dataset_metadata dm, mr_dataset md
  LEFT JOIN mr_dataset_metadata mdm ON md.updated_mr_metadata_id = mdm.id
- WHERE d.updated_metadata_id = dm.id AND md.id = d.id AND d.id = 25;
+ WHERE d.updated_metadata_id = dm.id AND md.id = d.id AND d.id IN (25);
 		 */
 		Query mrQuery = em.createNativeQuery(
 				"SELECT d.id as datasetId, dm.name as datasetName, dm.dataset_modality_type as datasetType, mdm.mr_dataset_nature as datasetNature, d.creation_date as datasetCreationDate, e.comment as examinationComment, e.examination_date as examinationDate, su.name as subjectName, st.name as studyName, e.study_id as studyId\n"
@@ -61,7 +65,7 @@ public class ShanoirMetadataRepositoryImpl implements ShanoirMetadataRepositoryC
 				+ " LEFT JOIN study st ON st.id = e.study_id"
 				+ " LEFT JOIN subject su ON su.id = d.subject_id, dataset_metadata dm, mr_dataset md"
 				+ " LEFT JOIN mr_dataset_metadata mdm ON md.updated_mr_metadata_id = mdm.id"
-				+ " WHERE d.updated_metadata_id = dm.id AND md.id = d.id;", "SolrResult");
+				+ " WHERE d.updated_metadata_id = dm.id AND md.id = d.id AND d.id IN (:datasetIds)", "SolrResult");
 		Query petQuery = em.createNativeQuery(
 				"SELECT d.id as datasetId, dm.name as datasetName, dm.dataset_modality_type as datasetType, null as datasetNature, d.creation_date as datasetCreationDate, e.comment as examinationComment, e.examination_date as examinationDate, su.name as subjectName, st.name as studyName, e.study_id as studyId\n"
 				+ " FROM dataset d"
@@ -69,7 +73,7 @@ public class ShanoirMetadataRepositoryImpl implements ShanoirMetadataRepositoryC
 				+ " LEFT JOIN examination e ON e.id = da.examination_id"
 				+ " LEFT JOIN study st ON st.id = e.study_id"
 				+ " LEFT JOIN subject su ON su.id = d.subject_id, pet_dataset pd, dataset_metadata dm"
-				+ " WHERE d.updated_metadata_id = dm.id AND pd.id = d.id;", "SolrResult");
+				+ " WHERE d.updated_metadata_id = dm.id AND pd.id = d.id AND d.id IN (:datasetIds)", "SolrResult");
 		Query ctQuery = em.createNativeQuery(
 				"SELECT d.id as datasetId, dm.name as datasetName, dm.dataset_modality_type as datasetType, null as datasetNature, d.creation_date as datasetCreationDate, e.comment as examinationComment, e.examination_date as examinationDate, su.name as subjectName, st.name as studyName, e.study_id as studyId\n"
 				+ " FROM dataset d"
@@ -77,53 +81,70 @@ public class ShanoirMetadataRepositoryImpl implements ShanoirMetadataRepositoryC
 				+ " LEFT JOIN examination e ON e.id = da.examination_id"
 				+ " LEFT JOIN study st ON st.id = e.study_id"
 				+ " LEFT JOIN subject su ON su.id = d.subject_id, ct_dataset cd, dataset_metadata dm"
-				+ " WHERE d.updated_metadata_id = dm.id AND cd.id = d.id;", "SolrResult");
-				
-		result.addAll(mrQuery.getResultList());
-		result.addAll(petQuery.getResultList());
-		result.addAll(ctQuery.getResultList());
-		
+				+ " WHERE d.updated_metadata_id = dm.id AND cd.id = d.id AND d.id IN (:datasetIds)", "SolrResult");
+
+		result.addAll(mrQuery.setParameter("datasetIds", datasetIds).getResultList());
+		result.addAll(petQuery.setParameter("datasetIds", datasetIds).getResultList());
+		result.addAll(ctQuery.setParameter("datasetIds", datasetIds).getResultList());
+
 		return result;
 	}
 
 	@Override
 	public ShanoirMetadata findOneSolrDoc(Long datasetId) {
-		List<ShanoirMetadata> result = new ArrayList<>();
-
-		Query mrQuery = em.createNativeQuery(
-				"SELECT d.id as datasetId, dm.name as datasetName, dm.dataset_modality_type as datasetType, mdm.mr_dataset_nature as datasetNature, d.creation_date as datasetCreationDate, e.comment as examinationComment, e.examination_date as examinationDate, su.name as subjectName, st.name as studyName, e.study_id as studyId\n"
-				+ " FROM dataset d"
-				+ " LEFT JOIN dataset_acquisition da on da.id = d.dataset_acquisition_id"
-				+ " LEFT JOIN examination e ON e.id = da.examination_id"
-				+ " LEFT JOIN study st ON st.id = e.study_id"
-				+ " LEFT JOIN subject su ON su.id = d.subject_id, dataset_metadata dm, mr_dataset md"
-				+ " LEFT JOIN mr_dataset_metadata mdm ON md.updated_mr_metadata_id = mdm.id"
-				+ " WHERE d.updated_metadata_id = dm.id AND md.id = d.id AND d.id = " + datasetId + ";", "SolrResult");
-		Query petQuery = em.createNativeQuery(
-				"SELECT d.id as datasetId, dm.name as datasetName, dm.dataset_modality_type as datasetType, null as datasetNature, d.creation_date as datasetCreationDate, e.comment as examinationComment, e.examination_date as examinationDate, su.name as subjectName, st.name as studyName, e.study_id as studyId\n"
-				+ " FROM dataset d"
-				+ " LEFT JOIN dataset_acquisition da on da.id = d.dataset_acquisition_id"
-				+ " LEFT JOIN examination e ON e.id = da.examination_id"
-				+ " LEFT JOIN study st ON st.id = e.study_id"
-				+ " LEFT JOIN subject su ON su.id = d.subject_id, pet_dataset pd, dataset_metadata dm"
-				+ " WHERE d.updated_metadata_id = dm.id AND pd.id = d.id AND d.id = " + datasetId + ";", "SolrResult");
-		Query ctQuery = em.createNativeQuery(
-				"SELECT d.id as datasetId, dm.name as datasetName, dm.dataset_modality_type as datasetType, null as datasetNature, d.creation_date as datasetCreationDate, e.comment as examinationComment, e.examination_date as examinationDate, su.name as subjectName, st.name as studyName, e.study_id as studyId\n"
-				+ " FROM dataset d"
-				+ " LEFT JOIN dataset_acquisition da on da.id = d.dataset_acquisition_id"
-				+ " LEFT JOIN examination e ON e.id = da.examination_id"
-				+ " LEFT JOIN study st ON st.id = e.study_id"
-				+ " LEFT JOIN subject su ON su.id = d.subject_id, ct_dataset cd, dataset_metadata dm"
-				+ " WHERE d.updated_metadata_id = dm.id AND cd.id = d.id AND d.id = " + datasetId + ";", "SolrResult");
-		
-		result.addAll(mrQuery.getResultList());
-		result.addAll(petQuery.getResultList());
-		result.addAll(ctQuery.getResultList());
-		
+		List<ShanoirMetadata> result = findSolrDocs(Collections.singletonList(datasetId));
 		if (result.size() != 1) {
 			return null;
 		}
-		
 		return result.get(0);
 	}
-}
\ No newline at end of file
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<Long> findDatasetIdsAfter(Long lastDatasetId, int maxResults) {
+		Query query = em.createNativeQuery("SELECT d.id FROM dataset d WHERE d.id > :lastDatasetId ORDER BY d.id")
+				.setParameter("lastDatasetId", lastDatasetId)
+				.setMaxResults(maxResults);
+		return toLongs(query.getResultList());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<Long> findDatasetIdsByExaminationId(Long examinationId) {
+		Query query = em.createNativeQuery("SELECT d.id FROM dataset d"
+				+ " JOIN dataset_acquisition da ON da.id = d.dataset_acquisition_id"
+				+ " WHERE da.examination_id = :examinationId")
+				.setParameter("examinationId", examinationId);
+		return toLongs(query.getResultList());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<Long> findDatasetIdsBySubjectId(Long subjectId) {
+		Query query = em.createNativeQuery("SELECT d.id FROM dataset d WHERE d.subject_id = :subjectId")
+				.setParameter("subjectId", subjectId);
+		return toLongs(query.getResultList());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<Long> findDatasetIdsByStudyId(Long studyId) {
+		Query query = em.createNativeQuery("SELECT d.id FROM dataset d"
+				+ " JOIN dataset_acquisition da ON da.id = d.dataset_acquisition_id"
+				+ " JOIN examination e ON e.id = da.examination_id"
+				+ " WHERE e.study_id = :studyId")
+				.setParameter("studyId", studyId);
+		return toLongs(query.getResultList());
+	}
+
+	/**
+	 * Native queries return the ids as BigInteger or Long, depending on the database.
+	 */
+	private List<Long> toLongs(List<Number> ids) {
+		List<Long> result = new ArrayList<>(ids.size());
+		for (Number id : ids) {
+			result.add(id.longValue());
+		}
+		return result;
+	}
+}
@@ -18,4 +18,26 @@ public interface SolrRepositoryCustom {
 	public SolrResultPage<ShanoirSolrDocument> findByFacetCriteria(ShanoirSolrFacet facet,Pageable pageable);
 	
 	public SolrResultPage<ShanoirSolrDocument> findByStudyIdInAndFacetCriteria(Collection<Long> studyIds, ShanoirSolrFacet facet,Pageable pageable);
+
+	/**
+	 * Adds documents to the index without commit, to commit once after a batch.
+	 */
+	public void addToIndexWithoutCommit(Collection<ShanoirSolrDocument> documents);
+
+	/**
+	 * Deletes the documents indexed before the generation, without commit.
+	 */
+	public void deleteOlderGenerations(long indexGeneration);
+
+	/**
+	 * Deletes the documents of the datasets with one query, without commit.
+	 */
+	public void deleteByDatasetIdsWithoutCommit(Collection<Long> datasetIds);
+
+	/**
+	 * Deletes the documents of all the datasets of a study with one query, without commit.
+	 */
+	public void deleteByStudyIdWithoutCommit(Long studyId);
+
+	public void commit();
 }
@@ -17,6 +17,8 @@ import org.springframework.data.solr.core.query.FacetOptions;
 import org.springframework.data.solr.core.query.FacetQuery;
 import org.springframework.data.solr.core.query.Node;
 import org.springframework.data.solr.core.query.SimpleFacetQuery;
+import org.springframework.data.solr.core.query.SimpleQuery;
+import org.springframework.data.solr.core.query.SimpleStringCriteria;
 import org.springframework.data.solr.core.query.result.FacetPage;
 import org.springframework.data.solr.core.query.result.SolrResultPage;
 
@@ -32,9 +34,42 @@ public class SolrRepositoryImpl implements SolrRepositoryCustom{
 	private static final String EXAMINATION_COMMENT = "examinationComment";
 	private static final String SUBJECT_NAME = "subjectName_str";
 	private static final String STUDY_NAME = "studyName_str";
+	private static final String INDEX_GENERATION = "indexGeneration";
+	private static final String DATASET_ID = "datasetId";
+	private static final String STUDY_ID = "studyId";
 	@Resource
 	private SolrTemplate solrTemplate;
 
+	@Override
+	public void addToIndexWithoutCommit(Collection<ShanoirSolrDocument> documents) {
+		if (!documents.isEmpty()) {
+			solrTemplate.saveBeans(documents);
+		}
+	}
+
+	@Override
+	public void deleteOlderGenerations(long indexGeneration) {
+		// documents without generation are older too
+		solrTemplate.delete(new SimpleQuery(new SimpleStringCriteria("*:* -" + INDEX_GENERATION + ":[" + indexGeneration + " TO *]")));
+	}
+
+	@Override
+	public void deleteByDatasetIdsWithoutCommit(Collection<Long> datasetIds) {
+		if (!datasetIds.isEmpty()) {
+			solrTemplate.delete(new SimpleQuery(new Criteria(DATASET_ID).in(datasetIds)));
+		}
+	}
+
+	@Override
+	public void deleteByStudyIdWithoutCommit(Long studyId) {
+		solrTemplate.delete(new SimpleQuery(new Criteria(STUDY_ID).is(studyId)));
+	}
+
+	@Override
+	public void commit() {
+		solrTemplate.commit();
+	}
+
 	@Override
 	public SolrResultPage<ShanoirSolrDocument> findByFacetCriteria(ShanoirSolrFacet facet, Pageable pageable) {
 		Criteria criteria = new Criteria(Criteria.WILDCARD).expression(Criteria.WILDCARD);
@@ -19,6 +19,9 @@
  */
 package org.shanoir.ng.solr.service;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.shanoir.ng.solr.model.ShanoirSolrDocument;
 import org.shanoir.ng.solr.model.ShanoirSolrFacet;
 import org.springframework.data.domain.Pageable;
@@ -35,6 +38,20 @@ public interface SolrService {
 	void addToIndex(ShanoirSolrDocument document);
 	
 	void deleteFromIndex(Long datasetId);
+
+	/**
+	 * Deletes the documents of datasets in batches, with one commit at the end.
+	 * 
+	 * @param datasetIds
+	 */
+	void deleteFromIndex(List<Long> datasetIds);
+
+	/**
+	 * Deletes the documents of all the datasets of a study, with one delete by query.
+	 * 
+	 * @param studyId
+	 */
+	void deleteStudyFromIndex(Long studyId);
 	
 	void indexAll();
 	
@@ -44,4 +61,24 @@ public interface SolrService {
 
 	void indexDataset(Long datasetId);
 
+	/**
+	 * Indexes datasets in batches, with one commit at the end.
+	 * 
+	 * @param datasetIds
+	 */
+	void indexDatasets(List<Long> datasetIds);
+
+	/**
+	 * Marks datasets as changed (examination, subject or study updated): they are
+	 * indexed by the next incremental indexing.
+	 * 
+	 * @param datasetIds
+	 */
+	void markForIndex(Collection<Long> datasetIds);
+
+	/**
+	 * Indexes the datasets marked as changed since the last run.
+	 */
+	void indexChangedDatasets();
+
 }
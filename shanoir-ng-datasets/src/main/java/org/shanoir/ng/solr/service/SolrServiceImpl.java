@@ -19,9 +19,12 @@
  */
 package org.shanoir.ng.solr.service;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.shanoir.ng.shared.dateTime.DateTimeUtils;
 import org.shanoir.ng.shared.security.rights.StudyUserRight;
@@ -30,8 +33,10 @@ import org.shanoir.ng.solr.model.ShanoirSolrDocument;
 import org.shanoir.ng.solr.model.ShanoirSolrFacet;
 import org.shanoir.ng.solr.repository.ShanoirMetadataRepository;
 import org.shanoir.ng.solr.repository.SolrRepository;
-import org.shanoir.ng.study.rights.StudyUserRightsRepository;
+import org.shanoir.ng.study.rights.StudyRightsService;
 import org.shanoir.ng.utils.KeycloakUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -48,7 +53,10 @@ import org.springframework.transaction.annotation.Transactional;
 @Service
 public class SolrServiceImpl implements SolrService {
 
-	//	private static final Logger LOG = LoggerFactory.getLogger(SolrServiceImpl.class);
+	private static final Logger LOG = LoggerFactory.getLogger(SolrServiceImpl.class);
+
+	/** Number of datasets read and sent to solr at once. */
+	private static final int BATCH_SIZE = 500;
 
 	@Autowired
 	private SolrRepository solrRepository;
@@ -57,7 +65,10 @@ public class SolrServiceImpl implements SolrService {
 	private ShanoirMetadataRepository shanoirMetadataRepository;
 
 	@Autowired
-	private StudyUserRightsRepository rightsRepository;
+	private StudyRightsService rightsService;
+
+	/** Datasets changed since the last incremental indexing. */
+	private final Set<Long> changedDatasetIds = ConcurrentHashMap.newKeySet();
 
 	@Transactional
 	@Override
@@ -71,41 +82,106 @@ public class SolrServiceImpl implements SolrService {
 		solrRepository.deleteByDatasetId(datasetId);
 	}
 
+	@Transactional
+	@Override
+	public void deleteFromIndex(List<Long> datasetIds) {
+		for (int from = 0; from < datasetIds.size(); from += BATCH_SIZE) {
+			solrRepository.deleteByDatasetIdsWithoutCommit(datasetIds.subList(from, Math.min(from + BATCH_SIZE, datasetIds.size())));
+		}
+		solrRepository.commit();
+	}
+
+	@Transactional
+	@Override
+	public void deleteStudyFromIndex(Long studyId) {
+		solrRepository.deleteByStudyIdWithoutCommit(studyId);
+		solrRepository.commit();
+	}
+
 	@Transactional
 	public void deleteAll() {
 		solrRepository.deleteAll();
 	}
 
+	/**
+	 * Reindexes all datasets without emptying the index before: the datasets are read
+	 * page after page and the documents replaced in batches, with one commit. Only then
+	 * the documents of an older generation, of datasets that do not exist anymore,
+	 * are deleted. So the search never gets empty.
+	 */
 	@Transactional
 	@Override
 	@Scheduled(cron = "0 0 6 * * *", zone="Europe/Paris")
 	public void indexAll() {
-		// 1. delete all
-		deleteAll();
-
-		// 2. get all datasets
-		List<ShanoirMetadata> documents = shanoirMetadataRepository.findAllAsSolrDoc();
-		Iterator<ShanoirMetadata> docIt = documents.iterator();
-		while (docIt.hasNext()) {
-			ShanoirMetadata shanoirMetadata = docIt.next();
-			ShanoirSolrDocument doc = new ShanoirSolrDocument(shanoirMetadata.getDatasetId(), shanoirMetadata.getDatasetName(),
-					shanoirMetadata.getDatasetType(), shanoirMetadata.getDatasetNature(), DateTimeUtils.localDateToDate(shanoirMetadata.getDatasetCreationDate()),
-					shanoirMetadata.getExaminationComment(), DateTimeUtils.localDateToDate(shanoirMetadata.getExaminationDate()),
-					shanoirMetadata.getSubjectName(), shanoirMetadata.getStudyName(), shanoirMetadata.getStudyId());
-			addToIndex(doc);
+		long indexGeneration = System.currentTimeMillis();
+		int count = 0;
+		Long lastDatasetId = 0L;
+		List<Long> datasetIds;
+		while (!(datasetIds = shanoirMetadataRepository.findDatasetIdsAfter(lastDatasetId, BATCH_SIZE)).isEmpty()) {
+			addToIndex(datasetIds, indexGeneration);
+			lastDatasetId = datasetIds.get(datasetIds.size() - 1);
+			count += datasetIds.size();
 		}
+		solrRepository.commit();
+		solrRepository.deleteOlderGenerations(indexGeneration);
+		solrRepository.commit();
+		LOG.info("Solr: {} datasets indexed in {} millis.", count, System.currentTimeMillis() - indexGeneration);
 	}
 
 	@Transactional
 	@Override
 	public void indexDataset(Long datasetId) {
-		// Get all associated datasets and index them to solr
-		ShanoirMetadata shanoirMetadata = shanoirMetadataRepository.findOneSolrDoc(datasetId);
-		ShanoirSolrDocument doc = new ShanoirSolrDocument(shanoirMetadata.getDatasetId(), shanoirMetadata.getDatasetName(),
-				shanoirMetadata.getDatasetType(), shanoirMetadata.getDatasetNature(), DateTimeUtils.localDateToDate(shanoirMetadata.getDatasetCreationDate()),
-				shanoirMetadata.getExaminationComment(), DateTimeUtils.localDateToDate(shanoirMetadata.getExaminationDate()),
-				shanoirMetadata.getSubjectName(), shanoirMetadata.getStudyName(), shanoirMetadata.getStudyId());
-		solrRepository.save(doc);
+		indexDatasets(Collections.singletonList(datasetId));
+	}
+
+	@Transactional
+	@Override
+	public void indexDatasets(List<Long> datasetIds) {
+		// documents indexed after the start of a full reindex are newer than its generation
+		long indexGeneration = System.currentTimeMillis();
+		for (int from = 0; from < datasetIds.size(); from += BATCH_SIZE) {
+			addToIndex(datasetIds.subList(from, Math.min(from + BATCH_SIZE, datasetIds.size())), indexGeneration);
+		}
+		solrRepository.commit();
+	}
+
+	@Override
+	public void markForIndex(Collection<Long> datasetIds) {
+		changedDatasetIds.addAll(datasetIds);
+	}
+
+	@Override
+	@Scheduled(fixedDelayString = "${solr.index.delay:10000}")
+	public void indexChangedDatasets() {
+		if (changedDatasetIds.isEmpty()) {
+			return;
+		}
+		List<Long> datasetIds = new ArrayList<>(changedDatasetIds);
+		changedDatasetIds.removeAll(datasetIds);
+		try {
+			indexDatasets(datasetIds);
+		} catch (RuntimeException e) {
+			// keep them for the next run
+			changedDatasetIds.addAll(datasetIds);
+			LOG.error("Solr: error while indexing {} changed datasets.", datasetIds.size(), e);
+		}
+	}
+
+	/**
+	 * Reads the metadata of one batch of datasets and adds their documents, without commit.
+	 */
+	private void addToIndex(List<Long> datasetIds, long indexGeneration) {
+		List<ShanoirMetadata> metadatas = shanoirMetadataRepository.findSolrDocs(datasetIds);
+		List<ShanoirSolrDocument> documents = new ArrayList<>(metadatas.size());
+		for (ShanoirMetadata shanoirMetadata : metadatas) {
+			ShanoirSolrDocument doc = new ShanoirSolrDocument(shanoirMetadata.getDatasetId(), shanoirMetadata.getDatasetName(),
+					shanoirMetadata.getDatasetType(), shanoirMetadata.getDatasetNature(), DateTimeUtils.localDateToDate(shanoirMetadata.getDatasetCreationDate()),
+					shanoirMetadata.getExaminationComment(), DateTimeUtils.localDateToDate(shanoirMetadata.getExaminationDate()),
+					shanoirMetadata.getSubjectName(), shanoirMetadata.getStudyName(), shanoirMetadata.getStudyId());
+			doc.setIndexGeneration(indexGeneration);
+			documents.add(doc);
+		}
+		solrRepository.addToIndexWithoutCommit(documents);
 	}
 
 	@Transactional
@@ -116,7 +192,7 @@ public class SolrServiceImpl implements SolrService {
 		if (KeycloakUtil.getTokenRoles().contains("ROLE_ADMIN")) {
 			result = solrRepository.findAllDocsAndFacets(pageable);
 		} else {
-			List<Long> studyIds = rightsRepository.findDistinctStudyIdByUserId(KeycloakUtil.getTokenUserId(), StudyUserRight.CAN_SEE_ALL.getId());
+			List<Long> studyIds = rightsService.getStudyIdsWithRight(StudyUserRight.CAN_SEE_ALL.name());
 			if (studyIds.isEmpty()) {
 				return new SolrResultPage<ShanoirSolrDocument>(Collections.emptyList());
 			}
@@ -133,7 +209,7 @@ public class SolrServiceImpl implements SolrService {
 		if (KeycloakUtil.getTokenRoles().contains("ROLE_ADMIN")) {
 			result = solrRepository.findByFacetCriteria(facet, pageable);
 		} else {
-			List<Long> studyIds = rightsRepository.findDistinctStudyIdByUserId(KeycloakUtil.getTokenUserId(), StudyUserRight.CAN_SEE_ALL.getId());
+			List<Long> studyIds = rightsService.getStudyIdsWithRight(StudyUserRight.CAN_SEE_ALL.name());
 			result = solrRepository.findByStudyIdInAndFacetCriteria(studyIds, facet, pageable);
 		}
 		return result;
@@ -0,0 +1,175 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.datasetacquisition.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.shanoir.ng.dataset.modality.MrDataset;
+import org.shanoir.ng.dataset.repository.DatasetRepository;
+import org.shanoir.ng.datasetacquisition.model.DatasetAcquisition;
+import org.shanoir.ng.datasetacquisition.model.mr.MrDatasetAcquisition;
+import org.shanoir.ng.datasetacquisition.repository.DatasetAcquisitionRepository;
+import org.shanoir.ng.examination.model.Examination;
+import org.shanoir.ng.exporter.service.BIDSService;
+import org.shanoir.ng.importer.dto.Dataset;
+import org.shanoir.ng.importer.dto.DatasetFile;
+import org.shanoir.ng.importer.dto.ExpressionFormat;
+import org.shanoir.ng.importer.dto.ImportJob;
+import org.shanoir.ng.importer.dto.Patient;
+import org.shanoir.ng.importer.dto.Serie;
+import org.shanoir.ng.importer.dto.Study;
+import org.shanoir.ng.importer.service.DatasetAcquisitionContext;
+import org.shanoir.ng.importer.service.DicomPersisterService;
+import org.shanoir.ng.importer.service.ImporterService;
+import org.shanoir.ng.shared.event.ShanoirEvent;
+import org.shanoir.ng.shared.event.ShanoirEventService;
+import org.shanoir.ng.shared.exception.ShanoirException;
+import org.shanoir.ng.solr.service.SolrService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Test class for the deletion of the dataset acquisitions of a failed import,
+ * with the real persistence: as in the import queue, no transaction is open
+ * when the import starts.
+ *
+ * @author mkain
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class ImporterServiceRollbackTest {
+
+	private static final Long EXAMINATION_ID = 1L;
+
+	@Autowired
+	private ImporterService importerService;
+
+	@Autowired
+	private DatasetAcquisitionRepository datasetAcquisitionRepository;
+
+	@Autowired
+	private DatasetRepository datasetRepository;
+
+	@MockBean
+	private DatasetAcquisitionContext datasetAcquisitionContext;
+
+	@MockBean
+	private DicomPersisterService dicomPersisterService;
+
+	@MockBean
+	private BIDSService bidsService;
+
+	@MockBean
+	private ShanoirEventService shanoirEventService;
+
+	@MockBean
+	private SolrService solrService;
+
+	@After
+	public void tearDown() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	public void testDeleteDatasetAcquisitionsOfFailedImport() throws Exception {
+		// GIVEN an import job, whose serie cannot be sent to the PACS
+		ImportJob importJob = createImportJob();
+		Serie serie = importJob.getPatients().get(0).getStudies().get(0).getSeries().get(0);
+		given(datasetAcquisitionContext.generateDatasetAcquisitionForSerie(Matchers.eq(serie), Matchers.eq(0), Matchers.eq(importJob)))
+				.willReturn(createDatasetAcquisition());
+		doThrow(new IOException("PACS not available")).when(dicomPersisterService)
+				.persistAllForSeries(Matchers.eq(Collections.singletonList(serie)), any());
+		long acquisitionsBefore = datasetAcquisitionRepository.count();
+		long datasetsBefore = datasetRepository.count();
+
+		// WHEN the import job is treated
+		try {
+			importerService.createAllDatasetAcquisition(importJob, 1L);
+			fail("The import should fail");
+		} catch (ShanoirException e) {
+			// expected
+		}
+
+		// THEN the committed dataset acquisition is deleted again, with its dataset in the database and in solr
+		assertEquals(acquisitionsBefore, datasetAcquisitionRepository.count());
+		assertEquals(datasetsBefore, datasetRepository.count());
+		ArgumentCaptor<Long> datasetId = ArgumentCaptor.forClass(Long.class);
+		verify(solrService).deleteFromIndex(datasetId.capture());
+		assertNull(datasetRepository.findOne(datasetId.getValue()));
+		verify(bidsService, never()).addDataset(any(Examination.class), any(String.class), any(String.class));
+	}
+
+	private DatasetAcquisition createDatasetAcquisition() {
+		MrDatasetAcquisition datasetAcquisition = new MrDatasetAcquisition();
+		datasetAcquisition.setRank(0);
+		datasetAcquisition.setSortingIndex(0);
+		MrDataset dataset = new MrDataset();
+		dataset.setDatasetAcquisition(datasetAcquisition);
+		List<org.shanoir.ng.dataset.model.Dataset> datasets = new ArrayList<>();
+		datasets.add(dataset);
+		datasetAcquisition.setDatasets(datasets);
+		return datasetAcquisition;
+	}
+
+	private ImportJob createImportJob() {
+		DatasetFile datasetFile = new DatasetFile();
+		ExpressionFormat expressionFormat = new ExpressionFormat();
+		expressionFormat.setDatasetFiles(Collections.singletonList(datasetFile));
+		Dataset dataset = new Dataset();
+		dataset.setExpressionFormats(Collections.singletonList(expressionFormat));
+		Serie serie = new Serie();
+		serie.setSelected(Boolean.TRUE);
+		serie.setModality("MR");
+		serie.setDatasets(Collections.singletonList(dataset));
+		Study study = new Study();
+		study.setSeries(Collections.singletonList(serie));
+		Patient patient = new Patient();
+		patient.setStudies(Collections.singletonList(study));
+
+		ImportJob importJob = new ImportJob();
+		importJob.setPatients(Collections.singletonList(patient));
+		importJob.setExaminationId(EXAMINATION_ID);
+		importJob.setAcquisitionEquipmentId(1L);
+		importJob.setSubjectName("subjectName");
+		importJob.setStudyName("studyName");
+		importJob.setStudyId(1L);
+		importJob.setShanoirEvent(new ShanoirEvent());
+		return importJob;
+	}
+
+}
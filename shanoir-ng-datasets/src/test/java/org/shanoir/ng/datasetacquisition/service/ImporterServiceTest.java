@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.verify;
@@ -52,10 +53,12 @@ import org.shanoir.ng.importer.service.DicomPersisterService;
 import org.shanoir.ng.importer.service.ImporterService;
 import org.shanoir.ng.shared.event.ShanoirEvent;
 import org.shanoir.ng.shared.event.ShanoirEventService;
+import org.shanoir.ng.shared.exception.ShanoirException;
 import org.shanoir.ng.utils.KeycloakUtil;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
 
 @RunWith(PowerMockRunner.class)
 @SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
@@ -88,6 +91,9 @@ public class ImporterServiceTest {
 	@Mock
 	private ShanoirEventService taskService;
 
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
 	@Before
 	public void setUp() throws IOException {
         PowerMockito.mockStatic(KeycloakUtil.class);
@@ -166,6 +172,75 @@ public class ImporterServiceTest {
 	@Test
 	public void createAllDatasetAcquisition() throws Exception {
 		// GIVEN an importJob with series and patients
+		ImportJob importJob = createImportJob();
+		Serie serie = importJob.getPatients().get(0).getStudies().get(0).getSeries().get(0);
+		
+		Examination examination = new Examination();
+		examination.setId(2L);
+		when(examinationRepository.findOne(importJob.getExaminationId())).thenReturn(examination);
+		DatasetAcquisition datasetAcq = new MrDatasetAcquisition();
+		when(datasetAcquisitionContext.generateDatasetAcquisitionForSerie(serie, 0, importJob)).thenReturn(datasetAcq );
+		
+		// WHEN we treat this importjob
+		service.createAllDatasetAcquisition(importJob, 1L);
+		
+		ArgumentCaptor<ShanoirEvent> argument = ArgumentCaptor.forClass(ShanoirEvent.class);
+		Mockito.verify(taskService, Mockito.times(3)).publishEvent(argument.capture());
+		
+		List<ShanoirEvent> values = argument.getAllValues();
+		ShanoirEvent task = values.get(0);
+		assertTrue(task.getStatus() == 1);
+		// NOTE: This test is important as we use the message to send an mail to study admin further.
+		// PLEASE do not change sucess message OR change it accordingly in emailServiceImpl.
+		assertEquals("studyName(1): Successfully created datasets for subject subjectName in examination 2", task.getMessage());
+		
+		// THEN datasets are created
+		// Check what we save at the end
+		verify(datasetAcquisitionService).create(datasetAcq);
+		verify(dicomPersisterService).persistAllForSeries(Mockito.eq(Collections.singletonList(serie)), any());
+		verify(bidsService).addDataset(any(Examination.class), Mockito.eq(importJob.getSubjectName()), Mockito.eq(importJob.getStudyName()));
+		verify(datasetAcquisitionService, Mockito.never()).deleteById(any(Long.class));
+
+		assertNotNull(datasetAcq);
+		
+		// AN archive is not referenced in the examination (file not existing)
+		List<String> extradata = datasetAcq.getExamination().getExtraDataFilePathList();
+		assertNull(extradata);
+	}
+
+	@Test
+	public void createAllDatasetAcquisitionPacsFailure() throws Exception {
+		// GIVEN an importJob, which serie cannot be sent to the PACS
+		ImportJob importJob = createImportJob();
+		Serie serie = importJob.getPatients().get(0).getStudies().get(0).getSeries().get(0);
+		
+		Examination examination = new Examination();
+		examination.setId(2L);
+		when(examinationRepository.findOne(importJob.getExaminationId())).thenReturn(examination);
+		DatasetAcquisition datasetAcq = new MrDatasetAcquisition();
+		datasetAcq.setId(3L);
+		when(datasetAcquisitionContext.generateDatasetAcquisitionForSerie(serie, 0, importJob)).thenReturn(datasetAcq);
+		Mockito.doThrow(new IOException("PACS not available")).when(dicomPersisterService).persistAllForSeries(Mockito.eq(Collections.singletonList(serie)), any());
+		
+		// WHEN we treat this importjob
+		try {
+			service.createAllDatasetAcquisition(importJob, 1L);
+			fail("The import should fail");
+		} catch (ShanoirException e) {
+			// expected
+		}
+		
+		// THEN the dataset acquisition committed is deleted again, with its datasets in solr
+		verify(datasetAcquisitionService).create(datasetAcq);
+		verify(datasetAcquisitionService).deleteById(3L);
+		verify(bidsService, Mockito.never()).addDataset(any(Examination.class), any(String.class), any(String.class));
+		
+		ArgumentCaptor<ShanoirEvent> argument = ArgumentCaptor.forClass(ShanoirEvent.class);
+		Mockito.verify(taskService, Mockito.atLeastOnce()).publishEvent(argument.capture());
+		assertEquals(ShanoirEvent.ERROR, argument.getValue().getStatus());
+	}
+
+	private ImportJob createImportJob() {
 		List<Patient> patients = new ArrayList<Patient>();
 		Patient patient = new Patient();
 		List<Study> studies = new ArrayList<Study>();
@@ -201,36 +276,6 @@ public class ImporterServiceTest {
 		importJob.setStudyName("studyName");
 		importJob.setStudyId(1L);
 		importJob.setShanoirEvent(new ShanoirEvent());
-		
-		Examination examination = new Examination();
-		examination.setId(2L);
-		when(examinationRepository.findOne(importJob.getExaminationId())).thenReturn(examination);
-		DatasetAcquisition datasetAcq = new MrDatasetAcquisition();
-		when(datasetAcquisitionContext.generateDatasetAcquisitionForSerie(serie, 0, importJob)).thenReturn(datasetAcq );
-		
-		// WHEN we treat this importjob
-		service.createAllDatasetAcquisition(importJob, 1L);
-		
-		ArgumentCaptor<ShanoirEvent> argument = ArgumentCaptor.forClass(ShanoirEvent.class);
-		Mockito.verify(taskService, Mockito.times(3)).publishEvent(argument.capture());
-		
-		List<ShanoirEvent> values = argument.getAllValues();
-		ShanoirEvent task = values.get(0);
-		assertTrue(task.getStatus() == 1);
-		// NOTE: This test is important as we use the message to send an mail to study admin further.
-		// PLEASE do not change sucess message OR change it accordingly in emailServiceImpl.
-		assertEquals("studyName(1): Successfully created datasets for subject subjectName in examination 2", task.getMessage());
-		
-		// THEN datasets are created
-		// Check what we save at the end
-		verify(datasetAcquisitionService).create(datasetAcq);
-		verify(dicomPersisterService).persistAllForSerie(any());
-		verify(bidsService).addDataset(any(Examination.class), Mockito.eq(importJob.getSubjectName()), Mockito.eq(importJob.getStudyName()));
-
-		assertNotNull(datasetAcq);
-		
-		// AN archive is not referenced in the examination (file not existing)
-		List<String> extradata = datasetAcq.getExamination().getExtraDataFilePathList();
-		assertNull(extradata);
+		return importJob;
 	}
 }
@@ -0,0 +1,79 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.download;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * Test class for MultipartRelatedParser.
+ *
+ * @author mkain
+ *
+ */
+public class MultipartRelatedParserTest {
+
+	private static final String BOUNDARY = "myBoundary";
+
+	@Test
+	public void testGetBoundary() {
+		assertEquals(BOUNDARY, MultipartRelatedParser.getBoundary("multipart/related; type=\"application/dicom\"; boundary=" + BOUNDARY));
+		assertEquals(BOUNDARY, MultipartRelatedParser.getBoundary("multipart/related; boundary=\"" + BOUNDARY + "\"; type=\"application/dicom\""));
+		assertEquals(null, MultipartRelatedParser.getBoundary("application/dicom"));
+	}
+
+	@Test
+	public void testParse() throws IOException {
+		// the second part contains a CRLF followed by a boundary prefix
+		byte[] part1 = "first part".getBytes(StandardCharsets.US_ASCII);
+		byte[] part2 = "second\r\n--my part\r".getBytes(StandardCharsets.US_ASCII);
+		ByteArrayOutputStream multipart = new ByteArrayOutputStream();
+		multipart.write(("preamble\r\n--" + BOUNDARY + "\r\nContent-Type: application/dicom\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		multipart.write(part1);
+		multipart.write(("\r\n--" + BOUNDARY + "\r\nContent-Type: application/dicom\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		multipart.write(part2);
+		multipart.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+
+		List<byte[]> parts = new ArrayList<>();
+		List<String> contentTypes = new ArrayList<>();
+		new MultipartRelatedParser(new ByteArrayInputStream(multipart.toByteArray()), BOUNDARY).parse((headers, body) -> {
+			contentTypes.add(headers.get("content-type"));
+			parts.add(IOUtils.toByteArray(body));
+		});
+
+		assertEquals(2, parts.size());
+		assertArrayEquals(part1, parts.get(0));
+		assertArrayEquals(part2, parts.get(1));
+		assertEquals("application/dicom", contentTypes.get(0));
+	}
+
+	@Test(expected = EOFException.class)
+	public void testParseTruncated() throws IOException {
+		byte[] multipart = ("--" + BOUNDARY + "\r\nContent-Type: application/dicom\r\n\r\ntruncated").getBytes(StandardCharsets.US_ASCII);
+		new MultipartRelatedParser(new ByteArrayInputStream(multipart), BOUNDARY).parse((headers, body) -> IOUtils.toByteArray(body));
+	}
+
+}
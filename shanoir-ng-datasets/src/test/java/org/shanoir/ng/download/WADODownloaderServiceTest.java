@@ -0,0 +1,210 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.download;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.shanoir.ng.download.WADODownloaderService.DatasetURLs;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test class for WADODownloaderService, with a PACS, that breaks the serie
+ * response in the middle of an instance.
+ *
+ * @author mkain
+ *
+ */
+public class WADODownloaderServiceTest {
+
+	private static final String BOUNDARY = "myBoundary";
+
+	private static final String SERIE_PATH = "/rs/studies/1.2/series/1.2.3";
+
+	private static final String UID_1 = "1.2.3.1";
+
+	private static final String UID_2 = "1.2.3.2";
+
+	private static final String UID_3 = "1.2.3.3";
+
+	private final Map<String, byte[]> instances = new LinkedHashMap<>();
+
+	private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+	private HttpServer pacs;
+
+	private WADODownloaderService service;
+
+	@Before
+	public void setUp() throws IOException {
+		// the serie response breaks in instance 2, that is the last one
+		instances.put(UID_1, createInstance(UID_1));
+		instances.put(UID_3, createInstance(UID_3));
+		instances.put(UID_2, createInstance(UID_2));
+
+		pacs = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		pacs.createContext("/", this::handle);
+		pacs.start();
+
+		service = new WADODownloaderService();
+		ReflectionTestUtils.setField(service, "downloadThreads", 2);
+		ReflectionTestUtils.setField(service, "retries", 2);
+		service.init();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		service.shutdown();
+		pacs.stop(0);
+	}
+
+	@Test
+	public void testDownloadAsZipResumesAfterFailedPart() throws IOException {
+		// instance 2 is broken in the serie response and in the first instance response
+		Map<String, byte[]> entries = downloadAsZip(new DatasetURLs(urls(UID_1, UID_2), "1/", "subject"));
+
+		assertEquals(new HashSet<>(Arrays.asList("1/" + UID_1 + ".dcm", "1/" + UID_2 + ".dcm")), entries.keySet());
+		assertArrayEquals(instances.get(UID_1), entries.get("1/" + UID_1 + ".dcm"));
+		assertArrayEquals(instances.get(UID_2), entries.get("1/" + UID_2 + ".dcm"));
+		assertEquals(1, requestCount(SERIE_PATH));
+		assertEquals(0, requestCount(SERIE_PATH + "/instances/" + UID_1));
+		assertEquals(2, requestCount(SERIE_PATH + "/instances/" + UID_2));
+	}
+
+	@Test
+	public void testDownloadAsZipGroupsSeriesOfDatasets() throws IOException {
+		Map<String, byte[]> entries = downloadAsZip(
+				new DatasetURLs(urls(UID_1), "1/", "subject"),
+				new DatasetURLs(urls(UID_1, UID_3), "2/", "subject"));
+
+		assertEquals(new HashSet<>(Arrays.asList("1/" + UID_1 + ".dcm", "2/" + UID_1 + ".dcm", "2/" + UID_3 + ".dcm")), entries.keySet());
+		assertArrayEquals(instances.get(UID_1), entries.get("2/" + UID_1 + ".dcm"));
+		assertArrayEquals(instances.get(UID_3), entries.get("2/" + UID_3 + ".dcm"));
+		// the serie is requested once for both datasets
+		assertEquals(1, requestCount(SERIE_PATH));
+		assertEquals(0, requestCount(SERIE_PATH + "/instances/" + UID_1));
+		assertEquals(0, requestCount(SERIE_PATH + "/instances/" + UID_3));
+	}
+
+	private Map<String, byte[]> downloadAsZip(DatasetURLs... datasetURLs) throws IOException {
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		try (ZipOutputStream zipOutputStream = new ZipOutputStream(zip)) {
+			service.downloadDicomFilesForURLsAsZip(Arrays.asList(datasetURLs), zipOutputStream);
+		}
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(zip.toByteArray()))) {
+			ZipEntry entry;
+			while ((entry = zipInputStream.getNextEntry()) != null) {
+				entries.put(entry.getName(), IOUtils.toByteArray(zipInputStream));
+			}
+		}
+		return entries;
+	}
+
+	private List<URL> urls(String... instanceUIDs) throws IOException {
+		URL[] urls = new URL[instanceUIDs.length];
+		for (int i = 0; i < instanceUIDs.length; i++) {
+			urls[i] = new URL("http://localhost:" + pacs.getAddress().getPort() + SERIE_PATH + "/instances/" + instanceUIDs[i]);
+		}
+		return Arrays.asList(urls);
+	}
+
+	private int requestCount(String path) {
+		AtomicInteger count = requests.get(path);
+		return count != null ? count.get() : 0;
+	}
+
+	private static byte[] createInstance(String instanceUID) throws IOException {
+		Attributes dataset = new Attributes();
+		dataset.setString(Tag.SOPClassUID, VR.UI, UID.MRImageStorage);
+		dataset.setString(Tag.SOPInstanceUID, VR.UI, instanceUID);
+		dataset.setString(Tag.PatientName, VR.PN, "subject");
+		// pixel data, so that the instance is larger than the file meta information read first
+		dataset.setBytes(Tag.PixelData, VR.OB, new byte[32 * 1024]);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (DicomOutputStream dicomOutputStream = new DicomOutputStream(out, UID.ExplicitVRLittleEndian)) {
+			dicomOutputStream.writeDataset(Attributes.createFileMetaInformation(instanceUID, UID.MRImageStorage, UID.ExplicitVRLittleEndian), dataset);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * The serie response and the first response for instance 2 end in the middle of instance 2.
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		int count = requests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+		ByteArrayOutputStream multipart = new ByteArrayOutputStream();
+		boolean broken;
+		if (path.equals(SERIE_PATH)) {
+			for (byte[] instance : instances.values()) {
+				writePart(multipart, instance);
+			}
+			broken = true;
+		} else {
+			String instanceUID = path.substring(path.lastIndexOf('/') + 1);
+			writePart(multipart, instances.get(instanceUID));
+			broken = UID_2.equals(instanceUID) && count == 1;
+		}
+		byte[] body = multipart.toByteArray();
+		if (broken) {
+			body = Arrays.copyOf(body, body.length - instances.get(UID_2).length / 2);
+		} else {
+			multipart.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+			body = multipart.toByteArray();
+		}
+		exchange.getResponseHeaders().set("Content-Type", "multipart/related; type=\"application/dicom\"; boundary=" + BOUNDARY);
+		exchange.sendResponseHeaders(200, 0);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private static void writePart(ByteArrayOutputStream multipart, byte[] instance) throws IOException {
+		multipart.write(("\r\n--" + BOUNDARY + "\r\nContent-Type: application/dicom\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		multipart.write(instance);
+	}
+
+}
@@ -16,15 +16,22 @@ package org.shanoir.ng.examination;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.shanoir.ng.dataset.model.DatasetMetadata;
+import org.shanoir.ng.dataset.modality.MrDatasetMetadata;
+import org.shanoir.ng.dataset.repository.DatasetRepository;
+import org.shanoir.ng.datasetacquisition.model.mr.MrProtocol;
+import org.shanoir.ng.datasetacquisition.repository.DatasetAcquisitionRepository;
 import org.shanoir.ng.examination.model.Examination;
 import org.shanoir.ng.examination.repository.ExaminationRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.test.context.ActiveProfiles;
@@ -52,6 +59,15 @@ public class ExaminationRepositoryTest {
 	@Autowired
 	private ExaminationRepository repository;
 
+	@Autowired
+	private DatasetAcquisitionRepository datasetAcquisitionRepository;
+
+	@Autowired
+	private DatasetRepository datasetRepository;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
 	/*
 	 * Mocks used to avoid unsatisfied dependency exceptions.
 	 */
@@ -101,4 +117,20 @@ public class ExaminationRepositoryTest {
 		assertThat(examinationDb.getNote()).isEqualTo(EXAMINATION_TEST_1_NOTE);
 	}
 
+	@Test
+	public void deleteExaminationsTest() throws Exception {
+		repository.deleteExaminations(Collections.singletonList(EXAMINATION_TEST_1_ID));
+
+		assertThat(repository.findOne(EXAMINATION_TEST_1_ID)).isNull();
+		assertThat(datasetAcquisitionRepository.findOne(1L)).isNull();
+		assertThat(datasetRepository.findOne(1L)).isNull();
+		assertThat(entityManager.find(MrProtocol.class, 1L)).isNull();
+		assertThat(entityManager.find(DatasetMetadata.class, 1L)).isNull();
+		assertThat(entityManager.find(MrDatasetMetadata.class, 1L)).isNull();
+		// the other examinations are kept
+		assertThat(repository.count()).isEqualTo(2);
+		assertThat(datasetAcquisitionRepository.findOne(2L)).isNotNull();
+		assertThat(datasetRepository.findOne(2L)).isNotNull();
+	}
+
 }
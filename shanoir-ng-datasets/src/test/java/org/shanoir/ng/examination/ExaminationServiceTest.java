@@ -35,6 +35,8 @@ import org.shanoir.ng.examination.service.ExaminationServiceImpl;
 import org.shanoir.ng.shared.exception.ShanoirException;
 import org.shanoir.ng.shared.paging.PageImpl;
 import org.shanoir.ng.shared.service.MicroserviceRequestsService;
+import org.shanoir.ng.solr.repository.ShanoirMetadataRepository;
+import org.shanoir.ng.solr.service.SolrService;
 import org.shanoir.ng.study.rights.StudyRightsService;
 import org.shanoir.ng.utils.KeycloakUtil;
 import org.shanoir.ng.utils.ModelsUtil;
@@ -67,6 +69,12 @@ public class ExaminationServiceTest {
 	@Mock
 	private RabbitTemplate rabbitTemplate;
 
+	@Mock
+	private ShanoirMetadataRepository shanoirMetadataRepository;
+
+	@Mock
+	private SolrService solrService;
+
 	@InjectMocks
 	private ExaminationServiceImpl examinationService;
 	
@@ -108,11 +116,18 @@ public class ExaminationServiceTest {
 
 	@Test
 	public void updateTest() throws ShanoirException {
+		final Examination examinationDb = ModelsUtil.createExamination();
+		examinationDb.setId(EXAMINATION_ID);
+		given(examinationRepository.findOne(EXAMINATION_ID)).willReturn(examinationDb);
+		given(shanoirMetadataRepository.findDatasetIdsByExaminationId(EXAMINATION_ID)).willReturn(Arrays.asList(2L, 3L));
+
 		final Examination updatedExamination = examinationService.update(createExamination());
 		Assert.assertNotNull(updatedExamination);
 		Assert.assertTrue(UPDATED_EXAMINATION_COMMENT.equals(updatedExamination.getComment()));
 
 		Mockito.verify(examinationRepository, Mockito.times(1)).save(Mockito.any(Examination.class));
+		// the datasets of the examination are indexed again
+		Mockito.verify(solrService, Mockito.times(1)).markForIndex(Arrays.asList(2L, 3L));
 	}
 
 	private Examination createExamination() {
@@ -1,8 +1,12 @@
 package org.shanoir.ng.tasks;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.List;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
@@ -10,6 +14,7 @@ import org.mockito.Mockito;
 import org.shanoir.ng.shared.configuration.RabbitMQConfiguration;
 import org.shanoir.ng.shared.event.ShanoirEvent;
 import org.shanoir.ng.shared.event.ShanoirEventService;
+import org.shanoir.ng.shared.event.ShanoirEventType;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -45,13 +50,41 @@ public class ShanoirEventServiceTest {
 		// WHEN we add the task
 		service.publishEvent(t);
 
-		// THEN the task is sent using RabbitMQ and sent to the front
+		// THEN the task is sent asynchronously using RabbitMQ and sent to the front
 		ArgumentCaptor<String> argumentCatcher = new ArgumentCaptor();
-		Mockito.verify(template).convertAndSend(Mockito.eq(RabbitMQConfiguration.EVENTS_EXCHANGE), Mockito.eq(t.getEventType()), argumentCatcher.capture());
+		Mockito.verify(template, Mockito.timeout(5000)).convertAndSend(Mockito.eq(RabbitMQConfiguration.EVENTS_EXCHANGE), Mockito.eq(t.getEventType()), argumentCatcher.capture());
 		String message = argumentCatcher.getValue();
 		assertNotNull(message);
 		assertTrue(message.contains(t.getId().toString()));
 		assertTrue(message.contains(t.getMessage()));
 		assertTrue(message.contains("" + t.getUserId()));
 	}
+
+	@Test
+	public void testCoalesceProgressUpdates() {
+		// GIVEN an event, whose progress is updated several times before it ends
+		ShanoirEvent event = new ShanoirEvent(ShanoirEventType.IMPORT_DATASET_EVENT, "1", Long.valueOf(456), "Importing", ShanoirEvent.IN_PROGRESS, 0.1f);
+		event.setId(Long.valueOf(124));
+
+		// WHEN the updates are published
+		service.publishEvent(event);
+		event.setProgress(0.5f);
+		service.publishEvent(event);
+		event.setProgress(0.9f);
+		service.publishEvent(event);
+		event.setStatus(ShanoirEvent.SUCCESS);
+		event.setMessage("Imported");
+		event.setProgress(1f);
+		service.publishEvent(event);
+
+		// THEN only the last progress update is sent, followed by the end of the event
+		ArgumentCaptor<String> argumentCatcher = ArgumentCaptor.forClass(String.class);
+		Mockito.verify(template, Mockito.timeout(5000).times(2)).convertAndSend(Mockito.eq(RabbitMQConfiguration.EVENTS_EXCHANGE), Mockito.eq(event.getEventType()), argumentCatcher.capture());
+		List<String> messages = argumentCatcher.getAllValues();
+		assertEquals(2, messages.size());
+		assertTrue(messages.get(0).contains("\"progress\":0.9"));
+		assertFalse(messages.get(0).contains("Imported"));
+		assertTrue(messages.get(1).contains("Imported"));
+		assertTrue(messages.get(1).contains("\"progress\":1.0"));
+	}
 }
@@ -15,7 +15,15 @@
 package org.shanoir.ng.configuration;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.servlet.MultipartConfigElement;
+import javax.servlet.http.HttpServletRequest;
+
+import org.shanoir.ng.importer.ImporterApi;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.web.MultipartProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -23,6 +31,9 @@ import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.commons.CommonsMultipartResolver;
+import org.springframework.web.servlet.DispatcherServlet;
 
 /**
  * As Spring Boot >= 1.4 does not automatically provide a RestTemplate
@@ -32,6 +43,7 @@ import org.springframework.web.client.RestTemplate;
  */
 @Configuration
 @EnableAsync
+@EnableConfigurationProperties(MultipartProperties.class)
 public class ShanoirImportConfiguration {
 
 	@Bean
@@ -39,6 +51,25 @@ public class ShanoirImportConfiguration {
 		return builder.build();
 	}
 
+	/**
+	 * The container does not parse the multipart requests (spring.http.multipart.enabled
+	 * is false), they are parsed here with commons-fileupload. The DICOM zip upload is not
+	 * resolved: its controller extracts the zip while it is read from the request.
+	 */
+	@Bean(name = DispatcherServlet.MULTIPART_RESOLVER_BEAN_NAME)
+	public MultipartResolver multipartResolver(MultipartProperties multipartProperties) {
+		CommonsMultipartResolver resolver = new CommonsMultipartResolver() {
+			@Override
+			public boolean isMultipart(HttpServletRequest request) {
+				return super.isMultipart(request) && !request.getRequestURI().endsWith(ImporterApi.UPLOAD_DICOM_PATH);
+			}
+		};
+		MultipartConfigElement multipartConfig = multipartProperties.createMultipartConfig();
+		resolver.setMaxUploadSize(multipartConfig.getMaxRequestSize());
+		resolver.setMaxUploadSizePerFile(multipartConfig.getMaxFileSize());
+		return resolver;
+	}
+
 	@Bean(name = "asyncExecutor")
     public Executor asyncExecutor() {
 		SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_INHERITABLETHREADLOCAL);
@@ -50,5 +81,50 @@ public class ShanoirImportConfiguration {
         executor.initialize();
         return executor;
     }
-	
+
+	/**
+	 * Executor of the c-moves of PACS imports: one c-move per serie, the pool size
+	 * limits the number of associations opened with the PACS at the same time.
+	 */
+	@Bean(name = "pacsExecutor")
+	public ThreadPoolTaskExecutor pacsExecutor(
+			@Value("${shanoir.import.pacs.maxMoveAssociations:4}") int maxMoveAssociations) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(maxMoveAssociations);
+		executor.setMaxPoolSize(maxMoveAssociations);
+		executor.setThreadNamePrefix("PacsThread-");
+		executor.initialize();
+		return executor;
+	}
+
+	/**
+	 * Executor of the nifti conversions: each thread runs one converter process, so the
+	 * pool size limits the number of processes running at the same time on the node.
+	 * When the queue is full, the import thread waits for a free place in the queue,
+	 * so that the conversions always run on the pool and are never rejected.
+	 */
+	@Bean(name = "conversionExecutor")
+	public ThreadPoolTaskExecutor conversionExecutor(
+			@Value("${shanoir.conversion.slots:4}") int slots,
+			@Value("${shanoir.conversion.queueCapacity:100}") int queueCapacity) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(slots);
+		executor.setMaxPoolSize(slots);
+		executor.setQueueCapacity(queueCapacity);
+		executor.setRejectedExecutionHandler((conversion, threadPoolExecutor) -> {
+			if (threadPoolExecutor.isShutdown()) {
+				throw new RejectedExecutionException("Conversion executor is shut down");
+			}
+			try {
+				threadPoolExecutor.getQueue().put(conversion);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted while waiting to submit a conversion", e);
+			}
+		});
+		executor.setThreadNamePrefix("ConversionThread-");
+		executor.initialize();
+		return executor;
+	}
+
 }
\ No newline at end of file
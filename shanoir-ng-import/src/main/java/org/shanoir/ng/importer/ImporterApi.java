@@ -18,12 +18,14 @@ import java.io.IOException;
 
 import java.io.FileNotFoundException;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.shanoir.ng.exchange.model.Exchange;
 import org.shanoir.ng.importer.dicom.query.DicomQuery;
 import org.shanoir.ng.importer.model.EegImportJob;
 import org.shanoir.ng.importer.model.ImportJob;
 import org.shanoir.ng.shared.exception.RestServiceException;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -36,6 +38,8 @@ import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.multipart.MultipartFile;
 
 import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiImplicitParam;
+import io.swagger.annotations.ApiImplicitParams;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
@@ -45,6 +49,9 @@ import io.swagger.annotations.ApiResponses;
 @RequestMapping("/importer")
 public interface ImporterApi {
 
+	/** Path of the DICOM zip upload, which request is not resolved as multipart by Spring. */
+	String UPLOAD_DICOM_PATH = "/upload_dicom/";
+
     @ApiOperation(value = "Create a temp directory (random long), as sub-dir of a user specific dir, for one import and return the name == tempDirId",
     		notes = "Create a temp directory (random long), as sub-dir of a user specific dir, for one import and return the name == tempDirId", response = String.class)
 	@ApiResponses(value = {
@@ -84,11 +91,13 @@ public interface ImporterApi {
         @ApiResponse(code = 400, message = "Invalid input / Bad Request", response = Void.class),
         @ApiResponse(code = 409, message = "Already exists - conflict", response = Void.class),
         @ApiResponse(code = 200, message = "Unexpected Error", response = Error.class) })
-    @PostMapping(value = "/upload_dicom/",
+    @ApiImplicitParams({
+        @ApiImplicitParam(name = "file", value = "file detail", required = true, dataType = "file", paramType = "form") })
+    @PostMapping(value = UPLOAD_DICOM_PATH,
         produces = { "application/json" },
         consumes = { "multipart/form-data" })
     @PreAuthorize("hasRole('ADMIN') or (hasAnyRole('EXPERT', 'USER') and @importSecurityService.hasRightOnOneStudy('CAN_IMPORT'))")
-    ResponseEntity<ImportJob> uploadDicomZipFile(@ApiParam(value = "file detail") @RequestPart("file") MultipartFile dicomZipFile) throws RestServiceException;
+    ResponseEntity<ImportJob> uploadDicomZipFile(HttpServletRequest request) throws RestServiceException;
     
     @ApiOperation(value = "Upload one EEG file", notes = "Upload channel and metadata from EEG file", response = Void.class, tags = {"Import one EEG file", })
     @ApiResponses(value = {
@@ -150,10 +159,15 @@ public interface ImporterApi {
     @ApiOperation(value = "Get dicom image", notes = "Get dicom image", response = Void.class, tags={ "", })
     @ApiResponses(value = {
         @ApiResponse(code = 200, message = "get dicom image", response = Void.class),
+        @ApiResponse(code = 206, message = "get part of dicom image", response = Void.class),
+        @ApiResponse(code = 304, message = "dicom image not modified", response = Void.class),
+        @ApiResponse(code = 404, message = "dicom image not found", response = Void.class),
+        @ApiResponse(code = 422, message = "frames cannot be extracted from dicom image", response = Void.class),
         @ApiResponse(code = 400, message = "Invalid input / Bad Request", response = Void.class),
         @ApiResponse(code = 500, message = "unexpected error", response = Error.class) })
     @GetMapping(value = "/get_dicom/", produces = { "application/dicom" })
         @PreAuthorize("hasRole('ADMIN') or (hasAnyRole('EXPERT', 'USER') and @importSecurityService.hasRightOnOneStudy('CAN_IMPORT'))")
-    ResponseEntity<ByteArrayResource> getDicomImage(@ApiParam(value = "path", required=true) @RequestParam(value = "path", required = true) String path) throws RestServiceException, IOException;
+    ResponseEntity<Resource> getDicomImage(@ApiParam(value = "path", required=true) @RequestParam(value = "path", required = true) String path,
+    		@ApiParam(value = "frame") @RequestParam(value = "frame", required = false) Integer frame) throws RestServiceException, IOException;
 
 }
@@ -21,17 +21,30 @@ import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
-import java.net.URLConnection;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.commons.io.FilenameUtils;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.emf.MultiframeExtractor;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomInputStream.IncludeBulkData;
+import org.dcm4che3.io.DicomOutputStream;
 import org.shanoir.ng.exchange.imports.dicom.DicomDirGeneratorService;
 import org.shanoir.ng.exchange.model.ExExamination;
 import org.shanoir.ng.exchange.model.ExStudy;
@@ -65,13 +78,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.MultipartConfigFactory;
 import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -105,17 +120,13 @@ public class ImporterApiController implements ImporterApi {
 
 	private static final String NO_FILE_UPLOADED = "No file uploaded.";
 
+	private static final String FILE_PART = "file";
+
 	private static final Logger LOG = LoggerFactory.getLogger(ImporterApiController.class);
 
 	private static final String DICOMDIR = "DICOMDIR";
 
-	private static final String APPLICATION_ZIP = "application/zip";
-
-	/** The Constant KB. */
-	private static final int KB = 1024;
-
-	/** The Constant BUFFER_SIZE. */
-	private static final int BUFFER_SIZE = 10 * KB;
+	private static final MediaType APPLICATION_DICOM = MediaType.parseMediaType("application/dicom");
 
 	@Value("${ms.url.shanoir-ng-datasets-eeg}")
 	private String datasetsMsUrl;
@@ -132,6 +143,9 @@ public class ImporterApiController implements ImporterApi {
 	@Value("${shanoir.import.directory}")
 	private String importDir;
 
+	@Value("${spring.http.multipart.maxRequestSize}")
+	private String maxRequestSize;
+
 	@Autowired
 	private RestTemplate restTemplate;
 
@@ -170,17 +184,48 @@ public class ImporterApiController implements ImporterApi {
 	}
 
 	@Override
-	public ResponseEntity<ImportJob> uploadDicomZipFile(
-			@ApiParam(value = "file detail") @RequestPart("file") final MultipartFile dicomZipFile)
-			throws RestServiceException {
-		if (dicomZipFile == null || !ImportUtils.isZipFile(dicomZipFile)) {
+	public ResponseEntity<ImportJob> uploadDicomZipFile(final HttpServletRequest request) throws RestServiceException {
+		if (!ServletFileUpload.isMultipartContent(request)) {
 			throw new RestServiceException(
-					new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(), WRONG_CONTENT_FILE_UPLOAD, null));
+					new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(), NO_FILE_UPLOADED, null));
 		}
-		if (!ImportUtils.isZipFile(dicomZipFile)) {
-			throw new RestServiceException(new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(),
-					"Wrong content type of file upload, .zip required.", null));
+		// the parts are read one after the other from the request body, without storing them
+		ServletFileUpload upload = new ServletFileUpload();
+		MultipartConfigFactory multipartConfig = new MultipartConfigFactory();
+		multipartConfig.setMaxRequestSize(maxRequestSize);
+		upload.setSizeMax(multipartConfig.createMultipartConfig().getMaxRequestSize());
+		try {
+			FileItemIterator items = upload.getItemIterator(request);
+			while (items.hasNext()) {
+				FileItemStream item = items.next();
+				if (!item.isFormField() && FILE_PART.equals(item.getFieldName())) {
+					if (!ImportUtils.isZipFile(item.getName(), item.getContentType())) {
+						throw new RestServiceException(
+								new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(), WRONG_CONTENT_FILE_UPLOAD, null));
+					}
+					try (InputStream zipStream = item.openStream()) {
+						return uploadDicomZipStream(zipStream);
+					}
+				}
+			}
+		} catch (FileUploadException | IOException e) {
+			LOG.error(e.getMessage(), e);
+			throw new RestServiceException(
+					new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(), ERROR_WHILE_SAVING_UPLOADED_FILE, null));
 		}
+		throw new RestServiceException(
+				new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(), NO_FILE_UPLOADED, null));
+	}
+
+	/**
+	 * Extracts a DICOM zip file while it is read from the stream, e.g. the upload,
+	 * and creates the import job of its content.
+	 * 
+	 * @param zipStream
+	 * @return the import job
+	 * @throws RestServiceException
+	 */
+	public ResponseEntity<ImportJob> uploadDicomZipStream(final InputStream zipStream) throws RestServiceException {
 		try {
 			/**
 			 * 1. STEP: Handle file management. Always create a userId specific folder in
@@ -188,17 +233,13 @@ public class ImporterApiController implements ImporterApi {
 			 * separate them into separate folders for each user
 			 */
 			File userImportDir = ImportUtils.getUserImportDir(importDir);
-			
-			boolean createDicomDir = false;
 
-			File tempFile = ImportUtils.saveTempFile(userImportDir, dicomZipFile);
-
-			if (!ImportUtils.checkZipContainsFile(DICOMDIR, tempFile)) {
-				createDicomDir = true;
-			}
-			
-			File importJobDir = ImportUtils.saveTempFileCreateFolderAndUnzip(tempFile, dicomZipFile, true);
+			// the zip is extracted while it is read, without storing it first
+			long startTime = System.currentTimeMillis();
+			File importJobDir = ImportUtils.createFolderAndUnzip(userImportDir, zipStream);
+			LOG.info("Zip file extracted in {} ms.", System.currentTimeMillis() - startTime);
 
+			boolean createDicomDir = Arrays.stream(importJobDir.list()).noneMatch(DICOMDIR::equalsIgnoreCase);
 			if (createDicomDir) {
 				LOG.info("DICOMDIR missing from zip file, generating one.");
 				final File dicomDir = new File(importJobDir, DICOMDIR);
@@ -326,12 +367,9 @@ public class ImporterApiController implements ImporterApi {
 					new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(), NO_FILE_UPLOADED, null));
 		}
 		File tempFile = new File(dicomZipFilename);
-		MockMultipartFile multiPartFile;
-		try {
-			multiPartFile = new MockMultipartFile(tempFile.getName(), tempFile.getName(), APPLICATION_ZIP, new FileInputStream(tempFile.getAbsolutePath()));
-
+		try (InputStream zipStream = new FileInputStream(tempFile)) {
 			// Import dicomfile
-			return uploadDicomZipFile(multiPartFile);
+			return uploadDicomZipStream(zipStream);
 		} catch (IOException e) {
 			LOG.error("ERROR while loading zip fiole, please contact an administrator");
 			e.printStackTrace();
@@ -435,9 +473,9 @@ public class ImporterApiController implements ImporterApi {
 			throws ShanoirImportException {
 		for (File edfFile : edfMatchingFiles) {
 
-			// Parse the file
-			try (FileInputStream edfStream = new FileInputStream(edfFile)) {
-				EDFParserResult result = EDFParser.parseEDF(edfStream);
+			// Parse the header and the annotations only, the samples are not needed
+			try (FileChannel edfChannel = FileChannel.open(edfFile.toPath(), StandardOpenOption.READ)) {
+				EDFParserResult result = EDFParser.parseHeaderAndAnnotations(edfChannel);
 
 				// Create channels
 				List<Channel> channels = new ArrayList<>();
@@ -693,30 +731,88 @@ public class ImporterApiController implements ImporterApi {
 	 * @throws RestServiceException
 	 */
 	@Override
-	public ResponseEntity<ByteArrayResource> getDicomImage(@ApiParam(value = "path", required=true)  @RequestParam(value = "path", required = true) String path)
+	public ResponseEntity<Resource> getDicomImage(@ApiParam(value = "path", required=true)  @RequestParam(value = "path", required = true) String path,
+			@ApiParam(value = "frame") @RequestParam(value = "frame", required = false) Integer frame)
 			throws RestServiceException, IOException {
 
 		final File userImportDir = ImportUtils.getUserImportDir(importDir);
-		String pathInfo = userImportDir.getAbsolutePath() + File.separator + path;
-		URL url = new URL("file:///" + pathInfo);
-		final URLConnection uCon = url.openConnection();
-		final InputStream is = uCon.getInputStream();
-
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		int nRead;
-		byte[] data = new byte[BUFFER_SIZE];
-		while ((nRead = is.read(data, 0, data.length)) != -1) {
-			buffer.write(data, 0, nRead);
+		final File dicomFile = new File(userImportDir, path);
+		// only files of the user import directory can be read
+		if (!dicomFile.getCanonicalPath().startsWith(userImportDir.getCanonicalPath() + File.separator) || !dicomFile.isFile()) {
+			throw new RestServiceException(
+					new ErrorModel(HttpStatus.NOT_FOUND.value(), "Dicom file not found: " + path, null));
 		}
-	 
-		buffer.flush();
-		byte[] byteArray = buffer.toByteArray();
-		
-		ByteArrayResource resource = new ByteArrayResource(byteArray);
+		if (frame != null) {
+			return getDicomFrame(dicomFile, frame);
+		}
+		// the file is streamed from disk: Range requests and conditional GET
+		// (If-None-Match, If-Modified-Since) are handled by Spring for resources
+		return ResponseEntity.ok()
+				.contentType(APPLICATION_DICOM)
+				.eTag(getETag(dicomFile, null))
+				.lastModified(dicomFile.lastModified())
+				.body(new FileSystemResource(dicomFile));
+	}
 
+	/**
+	 * Returns one frame of a multiframe dicom file as a single frame dicom. The
+	 * pixel data of the other frames is not read from disk. The frame is written
+	 * in the transfer syntax of the file, as its pixel data may be compressed.
+	 * 
+	 * @param dicomFile
+	 * @param frame index of the frame, starting at 0
+	 * @return the frame
+	 * @throws IOException
+	 * @throws RestServiceException when the frame does not exist or the SOP class
+	 *             of the file cannot be split into frames
+	 */
+	private ResponseEntity<Resource> getDicomFrame(File dicomFile, int frame) throws IOException, RestServiceException {
+		Attributes attributes;
+		String transferSyntaxUID;
+		try (DicomInputStream dIS = new DicomInputStream(dicomFile)) {
+			dIS.setIncludeBulkData(IncludeBulkData.URI);
+			attributes = dIS.readDataset(-1, -1);
+			transferSyntaxUID = dIS.getTransferSyntax();
+		}
+		int numberOfFrames = attributes.getInt(Tag.NumberOfFrames, 1);
+		if (frame < 0 || frame >= numberOfFrames) {
+			throw new RestServiceException(
+					new ErrorModel(HttpStatus.NOT_FOUND.value(), "Frame " + frame + " not found in: " + dicomFile.getName(), null));
+		}
+		Attributes frameAttributes = attributes;
+		if (numberOfFrames > 1) {
+			try {
+				frameAttributes = new MultiframeExtractor().extract(attributes, frame);
+			} catch (IllegalArgumentException e) {
+				// only the enhanced multiframe SOP classes can be split into frames
+				throw new RestServiceException(new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(),
+						"Frames cannot be extracted from: " + dicomFile.getName() + ": " + e.getMessage(), null));
+			}
+		}
+		ByteArrayOutputStream frameStream = new ByteArrayOutputStream();
+		// the file meta information is always explicit VR little endian, the dataset follows in the declared syntax
+		try (DicomOutputStream dOS = new DicomOutputStream(frameStream, UID.ExplicitVRLittleEndian)) {
+			dOS.writeFileMetaInformation(frameAttributes.createFileMetaInformation(transferSyntaxUID));
+			dOS.switchTransferSyntax(transferSyntaxUID);
+			dOS.writeDataset(null, frameAttributes);
+		}
 		return ResponseEntity.ok()
-				.contentType(MediaType.parseMediaType("application/dicom"))
-				.contentLength(uCon.getContentLength())
-				.body(resource);
+				.contentType(APPLICATION_DICOM)
+				.eTag(getETag(dicomFile, frame))
+				.lastModified(dicomFile.lastModified())
+				.body(new ByteArrayResource(frameStream.toByteArray()));
 	}
+
+	/**
+	 * The files of an import do not change, once they are extracted: the size
+	 * and modification date are enough to identify their content.
+	 */
+	private String getETag(File file, Integer frame) {
+		String eTag = Long.toHexString(file.lastModified()) + "-" + Long.toHexString(file.length());
+		if (frame != null) {
+			eTag += "-" + frame;
+		}
+		return "\"" + eTag + "\"";
+	}
+
 }
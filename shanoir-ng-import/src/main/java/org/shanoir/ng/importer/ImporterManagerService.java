@@ -18,10 +18,13 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 
 import org.shanoir.anonymization.anonymization.AnonymizationServiceImpl;
 import org.shanoir.ng.importer.dcm2nii.DatasetsCreatorAndNIfTIConverterService;
@@ -44,9 +47,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -78,6 +83,10 @@ public class ImporterManagerService {
 	
 	@Autowired
 	private DicomStoreSCPServer dicomStoreSCPServer;
+
+	@Autowired
+	@Qualifier("pacsExecutor")
+	private ThreadPoolTaskExecutor pacsExecutor;
 	
 	@Autowired
 	private ImagesCreatorAndDicomFileAnalyzerService imagesCreatorAndDicomFileAnalyzer;
@@ -118,9 +127,8 @@ public class ImporterManagerService {
 			if (importJob.isFromPacs()) {
 				importJobDir = createImportJobDir(userImportDir.getAbsolutePath());
 				// at first all dicom files arrive normally in /tmp/shanoir-dcmrcv (see config DicomStoreSCPServer)
-				downloadAndMoveDicomFilesToImportJobDir(importJobDir, patients);
-				// convert instances to images, as already done after zip file upload
-				imagesCreatorAndDicomFileAnalyzer.createImagesAndAnalyzeDicomFiles(patients, importJobDir.getAbsolutePath(), true);
+				// and each serie is converted to images, as after zip file upload, as soon as it has arrived
+				downloadMoveAndAnalyzeDicomFiles(importJobDir, patients);
 			} else if (importJob.isFromShanoirUploader()) {
 				importJobDir = new File(importJob.getWorkFolder());
 				// convert instances to images, as already done after zip file upload
@@ -137,10 +145,12 @@ public class ImporterManagerService {
 				Patient patient = patientsIt.next();
 				// perform anonymization only in case of profile explicitly set
 				if (importJob.getAnonymisationProfileToUse() != null && !importJob.getAnonymisationProfileToUse().isEmpty()) {
-					ArrayList<File> dicomFiles = getDicomFilesForPatient(importJob, patient, importJobDir.getAbsolutePath());
+					Map<File, Image> dicomFiles = getDicomFilesForPatient(importJob, patient, importJobDir.getAbsolutePath());
 					final String subjectName = patient.getSubject().getName();
 					try {
-						ANONYMIZER.anonymizeForShanoir(dicomFiles, importJob.getAnonymisationProfileToUse(), subjectName, subjectName);
+						// the header values sent to the datasets microservice are updated with the anonymized ones
+						ANONYMIZER.anonymizeForShanoir(new ArrayList<>(dicomFiles.keySet()), importJob.getAnonymisationProfileToUse(), subjectName, subjectName,
+								(file, attributes) -> dicomFiles.get(file).setHeaderValues(attributes));
 					} catch (Exception e) {
 						LOG.error(e.getMessage(), e);
 						throw new ShanoirException("Error during anonymization.");
@@ -199,11 +209,19 @@ public class ImporterManagerService {
 
 	/**
 	 * Calls a c-move for each serie involved, files are received via DicomStoreSCPServer.
+	 * The c-moves run in parallel on the pacsExecutor, which limits the number of
+	 * associations opened with the PACS. The analysis of a serie is started as soon as
+	 * all its files have arrived, while the other series are still downloaded.
 	 * 
+	 * @param importJobDir
 	 * @param patients
 	 * @throws ShanoirException
+	 * @throws FileNotFoundException
 	 */
-	private void downloadAndMoveDicomFilesToImportJobDir(final File importJobDir, List<Patient> patients) throws ShanoirException {
+	private void downloadMoveAndAnalyzeDicomFiles(final File importJobDir, List<Patient> patients) throws ShanoirException, FileNotFoundException {
+		long startTime = System.currentTimeMillis();
+		List<Serie> downloadedSeries = new ArrayList<>();
+		List<Future<ForkJoinTask<?>>> downloads = new ArrayList<>();
 		for (Iterator<Patient> patientsIt = patients.iterator(); patientsIt.hasNext();) {
 			Patient patient = patientsIt.next();
 			List<Study> studies = patient.getStudies();
@@ -212,33 +230,84 @@ public class ImporterManagerService {
 				List<Serie> series = study.getSeries();
 				for (Iterator<Serie> seriesIt = series.iterator(); seriesIt.hasNext();) {
 					Serie serie = seriesIt.next();
-					queryPACSService.queryCMOVE(serie);
-					String serieID = serie.getSeriesInstanceUID();
-					File serieIDFolderDir = new File(importJobDir + File.separator + serieID);
-					if(!serieIDFolderDir.exists()) {
-						serieIDFolderDir.mkdirs();
-					} else {
-						throw new ShanoirException("Error while creating serie id folder: folder already exists.");
-					}
-					for (Iterator<Instance> iterator = serie.getInstances().iterator(); iterator.hasNext();) {
-						Instance instance = iterator.next();
-						String sopInstanceUID = instance.getSopInstanceUID();
-						File oldFile = new File(dicomStoreSCPServer.getStorageDirPath() + File.separator + serieID + File.separator + sopInstanceUID + DicomStoreSCPServer.DICOM_FILE_SUFFIX);
-						if (oldFile.exists()) {
-							File newFile = new File(importJobDir.getAbsolutePath() + File.separator + serieID + File.separator + oldFile.getName());
-							oldFile.renameTo(newFile);
-							LOG.debug("Moving file: {} to ", oldFile.getAbsolutePath(), newFile.getAbsolutePath());
-						} else {
-							throw new ShanoirException("Error while creating serie id folder: file to copy does not exist.");
-						}
-					}
+					downloadedSeries.add(serie);
+					downloads.add(pacsExecutor.submit(() -> {
+						downloadAndMoveSerie(importJobDir, serie);
+						return imagesCreatorAndDicomFileAnalyzer.submitSerieAnalysis(patient, serie, importJobDir.getAbsolutePath(), true);
+					}));
+				}
+			}
+		}
+		List<ForkJoinTask<?>> analyses = waitForDownloads(downloadedSeries, downloads);
+		imagesCreatorAndDicomFileAnalyzer.waitForSeriesTasks(downloadedSeries, analyses);
+		LOG.info("Downloaded and analyzed {} series from PACS in {} ms.", downloadedSeries.size(), System.currentTimeMillis() - startTime);
+	}
+
+	/**
+	 * Waits for the download of all series, so that no c-move is left running,
+	 * and throws the first error met.
+	 * 
+	 * @param series
+	 * @param downloads
+	 * @return the analysis tasks of the series
+	 * @throws ShanoirException
+	 */
+	private List<ForkJoinTask<?>> waitForDownloads(List<Serie> series, List<Future<ForkJoinTask<?>>> downloads) throws ShanoirException {
+		List<ForkJoinTask<?>> analyses = new ArrayList<>(downloads.size());
+		ShanoirException firstException = null;
+		for (int i = 0; i < downloads.size(); i++) {
+			try {
+				analyses.add(downloads.get(i).get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ShanoirException("Interrupted during download from PACS.", e);
+			} catch (ExecutionException e) {
+				LOG.error("Error during download of serie: {}", series.get(i).getSeriesInstanceUID(), e.getCause());
+				if (firstException == null) {
+					firstException = e.getCause() instanceof ShanoirException ? (ShanoirException) e.getCause()
+							: new ShanoirException("Error during download of serie: " + series.get(i).getSeriesInstanceUID(), e.getCause());
 				}
 			}
 		}
+		if (firstException != null) {
+			throw firstException;
+		}
+		return analyses;
+	}
+
+	/**
+	 * Calls a c-move for one serie and moves its files from the DicomStoreSCPServer
+	 * storage folder into the import job folder.
+	 * 
+	 * @param importJobDir
+	 * @param serie
+	 * @throws ShanoirException
+	 */
+	private void downloadAndMoveSerie(final File importJobDir, Serie serie) throws ShanoirException {
+		queryPACSService.queryCMOVE(serie);
+		String serieID = serie.getSeriesInstanceUID();
+		File serieIDFolderDir = new File(importJobDir + File.separator + serieID);
+		if(!serieIDFolderDir.exists()) {
+			serieIDFolderDir.mkdirs();
+		} else {
+			throw new ShanoirException("Error while creating serie id folder: folder already exists.");
+		}
+		for (Iterator<Instance> iterator = serie.getInstances().iterator(); iterator.hasNext();) {
+			Instance instance = iterator.next();
+			String sopInstanceUID = instance.getSopInstanceUID();
+			File oldFile = new File(dicomStoreSCPServer.getStorageDirPath() + File.separator + serieID + File.separator + sopInstanceUID + DicomStoreSCPServer.DICOM_FILE_SUFFIX);
+			if (oldFile.exists()) {
+				File newFile = new File(importJobDir.getAbsolutePath() + File.separator + serieID + File.separator + oldFile.getName());
+				oldFile.renameTo(newFile);
+				LOG.debug("Moving file: {} to ", oldFile.getAbsolutePath(), newFile.getAbsolutePath());
+			} else {
+				throw new ShanoirException("Error while creating serie id folder: file to copy does not exist.");
+			}
+		}
 	}
 
 	/**
-	 * Using Java HashSet here to avoid duplicate files for anonymization.
+	 * Using Java HashMap here to avoid duplicate files for anonymization.
 	 * For performance reasons already init with 5000 buckets, assuming,
 	 * that we will normally never have more than 5000 files to process.
 	 * Maybe to be evaluated later with more bigger imports.
@@ -246,41 +315,41 @@ public class ImporterManagerService {
 	 * @param importJob
 	 * @param patient
 	 * @param workFolderPath
-	 * @return list of files
+	 * @return images by file
 	 * @throws FileNotFoundException
 	 */
-	private ArrayList<File> getDicomFilesForPatient(final ImportJob importJob, final Patient patient, final String workFolderPath) throws FileNotFoundException {
-		Set<File> pathsSet = new HashSet<>(5000);
+	private Map<File, Image> getDicomFilesForPatient(final ImportJob importJob, final Patient patient, final String workFolderPath) throws FileNotFoundException {
+		Map<File, Image> imagesByFile = new HashMap<>(5000);
 		List<Study> studies = patient.getStudies();
 		for (Iterator<Study> studiesIt = studies.iterator(); studiesIt.hasNext();) {
 			Study study = studiesIt.next();
 			List<Serie> series = study.getSeries();
 			for (Iterator<Serie> seriesIt = series.iterator(); seriesIt.hasNext();) {
 				Serie serie = seriesIt.next();
-				handleSerie(workFolderPath, pathsSet, serie);
+				handleSerie(workFolderPath, imagesByFile, serie);
 			}
 		}
-		return new ArrayList<>(pathsSet);
+		return imagesByFile;
 	}
 
 	/**
 	 * This method walks trough the images of a serie, gets the path,
-	 * creates a file for it and adds it to pathsSet.
+	 * creates a file for it and adds it to imagesByFile.
 	 * 
 	 * @param workFolderPath
-	 * @param pathsSet
+	 * @param imagesByFile
 	 * @param serie
 	 * @param importJob
 	 * @throws FileNotFoundException
 	 */
-	private void handleSerie(final String workFolderPath, Set<File> pathsSet, Serie serie) throws FileNotFoundException {
+	private void handleSerie(final String workFolderPath, Map<File, Image> imagesByFile, Serie serie) throws FileNotFoundException {
 		List<Image> images = serie.getImages();
 		for (Iterator<Image> imagesIt = images.iterator(); imagesIt.hasNext();) {
 			Image image = imagesIt.next();
 			String path = image.getPath();
 			File file = new File(workFolderPath + File.separator + path);
 			if(file.exists()) {
-				pathsSet.add(file);
+				imagesByFile.put(file, image);
 			} else {
 				throw new FileNotFoundException("File not found: " + path);
 			}
@@ -18,6 +18,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.zip.ZipOutputStream;
@@ -44,7 +45,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.multipart.MultipartFile;
@@ -68,8 +68,6 @@ public class BidsImporterApiController implements BidsImporterApi {
 
 	private static final String NO_FILE_UPLOADED = "No file uploaded.";
 
-	private static final String APPLICATION_ZIP = "application/zip";
-
 	@Autowired
 	ImporterApiController importer;
 
@@ -201,7 +199,7 @@ public class BidsImporterApiController implements BidsImporterApi {
 				creator.start();
 			}
 
-			// Zip data folders to be able to call ImporterAPIController.uploadDicomZipFile
+			// Zip data folders to be able to call ImporterAPIController.uploadDicomZipStream
 			FileOutputStream fos = new FileOutputStream(subjFile.getAbsolutePath() + ".zip");
 			ZipOutputStream zipOut = new ZipOutputStream(fos);
 
@@ -209,11 +207,11 @@ public class BidsImporterApiController implements BidsImporterApi {
 
 			zipOut.close();
 			fos.close();
-			MockMultipartFile multiPartFile = new MockMultipartFile(subjFile.getName(), subjFile.getName() + ".zip",
-					APPLICATION_ZIP, new FileInputStream(subjFile.getAbsolutePath() + ".zip"));
-
 			// Send data folder to import API and get import job
-			ResponseEntity<ImportJob> entity = importer.uploadDicomZipFile(multiPartFile);
+			ResponseEntity<ImportJob> entity;
+			try (InputStream zipStream = new FileInputStream(subjFile.getAbsolutePath() + ".zip")) {
+				entity = importer.uploadDicomZipStream(zipStream);
+			}
 
 			// Complete ImportJob to use startImportJob
 			job = entity.getBody();
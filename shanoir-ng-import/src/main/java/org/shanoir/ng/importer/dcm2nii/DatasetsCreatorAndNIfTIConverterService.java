@@ -33,6 +33,10 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.FileUtils;
@@ -56,7 +60,9 @@ import org.shanoir.ng.utils.ShanoirExec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
 
@@ -123,11 +129,13 @@ public class DatasetsCreatorAndNIfTIConverterService {
 	@Value("${shanoir.conversion.dcm2nii.converters.clidcm.path.windows}")
 	private String clidcmPathWindows;
 
-	/** Logs of the conversion. */
-	private String conversionLogs;
+	/** Maximum duration of the conversions of one import, in minutes. */
+	@Value("${shanoir.conversion.timeout:60}")
+	private long conversionTimeout;
 
-	/** Output files mapped by series UID. */
-	private HashMap<String, List<String>> outputFiles = new HashMap<>();
+	@Autowired
+	@Qualifier("conversionExecutor")
+	private ThreadPoolTaskExecutor conversionExecutor;
 
 	Random rand = new Random();
 
@@ -149,7 +157,9 @@ public class DatasetsCreatorAndNIfTIConverterService {
 		} else {
 			throw new ShanoirException("Error while creating series folder: folder already exists.");
 		}
-		conversionLogs = "";
+		NIfTIConversionContext context = new NIfTIConversionContext(findById(converterId));
+		List<Serie> convertedSeries = new ArrayList<>();
+		List<Future<?>> conversions = new ArrayList<>();
 		List<Study> studies = patient.getStudies();
 		for (Iterator<Study> studiesIt = studies.iterator(); studiesIt.hasNext();) {
 			Study study = studiesIt.next();
@@ -158,23 +168,78 @@ public class DatasetsCreatorAndNIfTIConverterService {
 				Serie serie = seriesIt.next();
 				if (serie.getSelected()) {
 					File serieIDFolderFile = createSerieIDFolderAndMoveFiles(workFolder, seriesFolderFile, serie);
-					boolean serieIdentifiedForNotSeparating;
-					try {
-						serieIdentifiedForNotSeparating = checkSerieForPropertiesString(serie, seriesProperties);
-						// if the serie is not one of the series, that should not be separated, please separate the series,
-						// otherwise just do not separate the series and keep all images for one nii conversion
-						serie.setDatasets(new ArrayList<Dataset>());
-						constructDicom(serieIDFolderFile, serie, serieIdentifiedForNotSeparating);
-						constructNifti(serieIDFolderFile, serie, converterId);
-					} catch (NoSuchFieldException | SecurityException e) {
-						LOG.error(e.getMessage());
-					}
-					// as images/non-images are migrated to datasets, clear the list now
-					serie.getImages().clear();
-					serie.getNonImages().clear();
+					convertedSeries.add(serie);
+					conversions.add(conversionExecutor.submit(() -> createDatasetsAndRunConversionForSerie(serieIDFolderFile, serie, context)));
 				}
 			}
 		}
+		LOG.info("{} series submitted for conversion ({} series waiting, {} converting)", conversions.size(),
+				conversionExecutor.getThreadPoolExecutor().getQueue().size(), conversionExecutor.getActiveCount());
+		waitForConversions(convertedSeries, conversions);
+		LOG.info("conversionLogs : {}", context.getConversionLogs());
+	}
+
+	/**
+	 * Separates the datasets of one serie and converts them.
+	 * 
+	 * @param serieIDFolderFile
+	 * @param serie
+	 * @param context
+	 */
+	private void createDatasetsAndRunConversionForSerie(File serieIDFolderFile, Serie serie, NIfTIConversionContext context) {
+		boolean serieIdentifiedForNotSeparating;
+		try {
+			serieIdentifiedForNotSeparating = checkSerieForPropertiesString(serie, seriesProperties);
+			// if the serie is not one of the series, that should not be separated, please separate the series,
+			// otherwise just do not separate the series and keep all images for one nii conversion
+			serie.setDatasets(new ArrayList<Dataset>());
+			constructDicom(serieIDFolderFile, serie, serieIdentifiedForNotSeparating);
+			constructNifti(serieIDFolderFile, serie, context);
+		} catch (NoSuchFieldException | SecurityException e) {
+			LOG.error(e.getMessage());
+		}
+		// as images/non-images are migrated to datasets, clear the list now
+		serie.getImages().clear();
+		serie.getNonImages().clear();
+	}
+
+	/**
+	 * Waits for the conversions of all series, until one deadline for the whole
+	 * import. A serie, that does not finish in time, is cancelled (what kills its
+	 * converter process) and the remaining conversions of the import are cancelled
+	 * as well.
+	 * 
+	 * @param series
+	 * @param conversions
+	 * @throws ShanoirException
+	 */
+	private void waitForConversions(List<Serie> series, List<Future<?>> conversions) throws ShanoirException {
+		long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(conversionTimeout);
+		ShanoirException firstException = null;
+		for (int i = 0; i < conversions.size(); i++) {
+			Future<?> conversion = conversions.get(i);
+			String serieID = series.get(i).getSeriesInstanceUID();
+			try {
+				if (firstException == null) {
+					conversion.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				} else {
+					conversion.cancel(true);
+				}
+			} catch (TimeoutException e) {
+				conversion.cancel(true);
+				firstException = new ShanoirException("Timeout during conversion of serie: " + serieID, e);
+			} catch (ExecutionException e) {
+				LOG.error("Error during conversion of serie: {}", serieID, e.getCause());
+				firstException = new ShanoirException("Error during conversion of serie: " + serieID, e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				conversion.cancel(true);
+				firstException = new ShanoirException("Interrupted during conversion of serie: " + serieID, e);
+			}
+		}
+		if (firstException != null) {
+			throw firstException;
+		}
 	}
 
 	/**
@@ -302,14 +367,15 @@ public class DatasetsCreatorAndNIfTIConverterService {
 	/**
 	 * Execute the Nifti conversion
 	 *
-	 * @param converter
+	 * @param context
 	 * @param input folder
 	 * @param output folder
 	 * @param boolean is a 4D volume
 	 * @param boolean is convert to clidcm
 	 *
 	 */
-	private void convertToNiftiExec(NIfTIConverter converter, String inputFolder, String outputFolder, boolean is4D) {
+	private void convertToNiftiExec(NIfTIConversionContext context, String inputFolder, String outputFolder, boolean is4D) {
+		NIfTIConverter converter = context.getConverter();
 		if (converter == null) {
 			return;
 		}
@@ -317,11 +383,11 @@ public class DatasetsCreatorAndNIfTIConverterService {
 		// Mcverter
 		if (converter.isMcverter()) {
 			is4D = true;
-			conversionLogs += shanoirExec.mcverterExec(inputFolder, converterPath, outputFolder, is4D);
+			context.appendLogs(shanoirExec.mcverterExec(inputFolder, converterPath, outputFolder, is4D));
 			// Clidcm
 		} else if (converter.isClidcm()) {
 			try {
-				conversionLogs += shanoirExec.clidcmExec(inputFolder, converterPath, outputFolder);
+				context.appendLogs(shanoirExec.clidcmExec(inputFolder, converterPath, outputFolder));
 			} catch (Exception e) {
 				LOG.debug("Error converting with clidcm outputfolder : " + outputFolder + " - is4D :" + is4D + " - ", e);
 			}
@@ -330,16 +396,16 @@ public class DatasetsCreatorAndNIfTIConverterService {
 			 * and '.bval' files because this is the type of files normally created by
 			 * dcm2nii .
 			 */
-			createBvecAndBval(outputFolder);
+			createBvecAndBval(context, outputFolder);
 			// Dicom2Nifti
 		} else if (converter.isDicom2Nifti()) {
-			conversionLogs += shanoirExec.dicom2niftiExec(inputFolder, converterPath, outputFolder);
+			context.appendLogs(shanoirExec.dicom2niftiExec(inputFolder, converterPath, outputFolder));
 			// dcm2nii
 		} else if (converter.isDicomifier()) {
-			conversionLogs += shanoirExec.dicomifier(inputFolder, outputFolder);
+			context.appendLogs(shanoirExec.dicomifier(inputFolder, outputFolder));
 		} else {
 			is4D = true;
-			conversionLogs += shanoirExec.dcm2niiExec(inputFolder, converterPath, outputFolder, is4D);
+			context.appendLogs(shanoirExec.dcm2niiExec(inputFolder, converterPath, outputFolder, is4D));
 		}
 	}
 
@@ -349,7 +415,7 @@ public class DatasetsCreatorAndNIfTIConverterService {
 	 *
 	 * @param path
 	 */
-	private List<File> createBvecAndBval(final String path) {
+	private List<File> createBvecAndBval(NIfTIConversionContext context, final String path) {
 		LOG.debug("createBvecAndBval : Begin, params : path={}", path);
 		List<File> bvecAndBval = new ArrayList<>();
 		final FilenameFilter filter = new FilenameFilter() {
@@ -368,7 +434,7 @@ public class DatasetsCreatorAndNIfTIConverterService {
 			}
 		}
 		if(bvecAndBval.isEmpty()) {
-			conversionLogs += "There was an error creating bvec and bval. DiffusionGradientOrientation and/or B0 values may be missing in DICOM file.";
+			context.appendLogs("There was an error creating bvec and bval. DiffusionGradientOrientation and/or B0 values may be missing in DICOM file.");
 		}
 		LOG.debug("createBvecAndBval : end");
 		return bvecAndBval;
@@ -435,26 +501,22 @@ public class DatasetsCreatorAndNIfTIConverterService {
 	}
 
 	/**
-	 * Remove unused files that are created during the conversion process.
+	 * Remove unused files that are created during the conversion process of a serie.
 	 */
-	private void removeUnusedFiles() {
-		final List<File> toBeRemovedList = new ArrayList<>();
-		for (final List<String> listPath : outputFiles.values()) {
-			for (final String path : listPath) {
-				File file = new File(path);
+	private void removeUnusedFiles(NIfTIConversionContext context, String serieID) {
+		List<String> serieOutputFiles = context.getOutputFiles(serieID);
+		synchronized (serieOutputFiles) {
+			for (Iterator<String> iterator = serieOutputFiles.iterator(); iterator.hasNext();) {
+				File file = new File(iterator.next());
 				if (file.getName().startsWith("o") || file.getName().startsWith("x")) {
-					toBeRemovedList.add(file);
+					iterator.remove();
+					boolean success = file.delete();
+					if (!success) {
+						LOG.error("removeUnusedFiles : error while deleting {}", file);
+					}
 				}
 			}
 		}
-		for (final File toBeRemovedFile : toBeRemovedList) {
-			// TODO : ne marche pas
-			outputFiles.remove(toBeRemovedFile);
-			boolean success = toBeRemovedFile.delete();
-			if (!success) {
-				LOG.error("removeUnusedFiles : error while deleting {}", toBeRemovedFile);
-			}
-		}
 	}
 
 	/**
@@ -507,22 +569,14 @@ public class DatasetsCreatorAndNIfTIConverterService {
 	 * @throws SecurityException
 	 * @throws NoSuchFieldException
 	 */
-	private NIfTIConverter datasetToNiftiConversionLauncher(Dataset dataset, File directory, Serie serie, Long converterId, boolean isConvertAs4D, boolean isConvertWithClidcm) throws NoSuchFieldException, SecurityException {
+	private NIfTIConverter datasetToNiftiConversionLauncher(Dataset dataset, File directory, Serie serie, NIfTIConversionContext context, boolean isConvertAs4D, boolean isConvertWithClidcm) throws NoSuchFieldException, SecurityException {
 
 		// search for the existing files in the destination folder
 
 		LOG.info("convertToNifti : create nifti files for the dataset : {}", dataset.getName());
-		if (conversionLogs != null && !"".equals(conversionLogs)) {
-			conversionLogs += "\n";
-		} else {
-			conversionLogs = "";
-		}
-
-
-		NIfTIConverter converter = findById(converterId);
-		convertToNiftiExec(converter, directory.getPath(), directory.getPath(), isConvertAs4D);
-		LOG.info("conversionLogs : {}", conversionLogs);
-		return converter;
+		convertToNiftiExec(context, directory.getPath(), directory.getPath(), isConvertAs4D);
+		context.appendLogs("\n");
+		return context.getConverter();
 
 	}
 
@@ -533,32 +587,24 @@ public class DatasetsCreatorAndNIfTIConverterService {
 	 * @return List of nifti files
 	 */
 
-	private List<File> niftiFileSorting(List<File> existingFiles, File directory, File serieIDFolderFile) {
+	private List<File> niftiFileSorting(List<File> existingFiles, File directory, File serieIDFolderFile, NIfTIConversionContext context) {
 		// If one of the output files is a prop file, there has been an error
 		List<File> niftiFileResult = null;
-		if (outputFiles.get(serieIDFolderFile.getName()) != null) {
-			List<File> niiFiles = diff(existingFiles, directory.getPath());
+		String serieID = serieIDFolderFile.getName();
+		List<File> niiFiles = diff(existingFiles, directory.getPath());
+		if (context.hasOutputFiles(serieID)) {
 			niftiFileResult = niiFiles;
-			if (!containsPropFile(niiFiles)) {
-				for (File niiFile : niiFiles) {
-					outputFiles.get(serieIDFolderFile.getName()).add(niiFile.getAbsolutePath());
-					LOG.info("Path niiFile : {}", niiFile.getAbsolutePath());
-				}
-			}
-		} else {
-			List<String> niiPathList = new ArrayList<>();
-			if (!containsPropFile(diff(existingFiles, directory.getPath()))) {
-				List<File>  niiFileList = diff(existingFiles, directory.getPath());
-				niftiFileResult = niiFileList;
-				for (File niiFile : niiFileList) {
-					niiPathList.add(niiFile.getAbsolutePath());
-					LOG.info("Path niiFile : {}", niiFile.getAbsolutePath());
-				}
-				outputFiles.put(serieIDFolderFile.getName(), niiPathList);
+		}
+		if (!containsPropFile(niiFiles)) {
+			niftiFileResult = niiFiles;
+			List<String> serieOutputFiles = context.getOutputFiles(serieID);
+			for (File niiFile : niiFiles) {
+				serieOutputFiles.add(niiFile.getAbsolutePath());
+				LOG.info("Path niiFile : {}", niiFile.getAbsolutePath());
 			}
 		}
 		// delete the unused files
-		removeUnusedFiles();
+		removeUnusedFiles(context, serieID);
 		return niftiFileResult;
 	}
 
@@ -608,7 +654,7 @@ public class DatasetsCreatorAndNIfTIConverterService {
 	 * @throws NoSuchFieldException
 	 * 
 	 */
-	private void constructNifti(File serieIDFolderFile, final Serie serie, Long converterId) throws NoSuchFieldException {
+	private void constructNifti(File serieIDFolderFile, final Serie serie, NIfTIConversionContext context) throws NoSuchFieldException {
 
 		LOG.debug("convertToNifti : create nifti files for the serie : {}", serieIDFolderFile.getAbsolutePath());
 
@@ -631,11 +677,11 @@ public class DatasetsCreatorAndNIfTIConverterService {
 						final List<File> existingFiles = Arrays.asList(directory.listFiles());
 						NIfTIConverter converter = null;
 						try {
-							converter = datasetToNiftiConversionLauncher(dataset, directory, serie, converterId, isConvertAs4D, isConvertWithClidcm);
+							converter = datasetToNiftiConversionLauncher(dataset, directory, serie, context, isConvertAs4D, isConvertWithClidcm);
 						} catch (SecurityException e) {
 							LOG.error(e.getMessage());
 						}
-						List<File> niftiGeneratedFiles = converter.isDicomifier() ? niftiFileSortingDicom2Nifti(existingFiles, directory, dataset) : niftiFileSorting(existingFiles, directory, serieIDFolderFile);
+						List<File> niftiGeneratedFiles = converter.isDicomifier() ? niftiFileSortingDicom2Nifti(existingFiles, directory, dataset) : niftiFileSorting(existingFiles, directory, serieIDFolderFile, context);
 						constructNiftiExpressionAndDatasetFiles(converter, dataset, serie, niftiGeneratedFiles);
 						++index;
 
@@ -649,11 +695,11 @@ public class DatasetsCreatorAndNIfTIConverterService {
 					final List<File> existingFiles = Arrays.asList(serieIDFolderFile.listFiles());
 					NIfTIConverter converter = null;
 					try {
-						converter = datasetToNiftiConversionLauncher(dataset, serieIDFolderFile, serie, converterId, isConvertAs4D, isConvertWithClidcm);
+						converter = datasetToNiftiConversionLauncher(dataset, serieIDFolderFile, serie, context, isConvertAs4D, isConvertWithClidcm);
 					} catch (SecurityException e) {
 						LOG.error(e.getMessage());
 					}
-					List<File> niftiGeneratedFiles = converter.isDicomifier() ? niftiFileSortingDicom2Nifti(existingFiles, serieIDFolderFile, dataset) : niftiFileSorting(existingFiles, serieIDFolderFile, serieIDFolderFile);
+					List<File> niftiGeneratedFiles = converter.isDicomifier() ? niftiFileSortingDicom2Nifti(existingFiles, serieIDFolderFile, dataset) : niftiFileSorting(existingFiles, serieIDFolderFile, serieIDFolderFile, context);
 
 					constructNiftiExpressionAndDatasetFiles(converter, dataset, serie, niftiGeneratedFiles);
 				}
@@ -785,6 +831,11 @@ public class DatasetsCreatorAndNIfTIConverterService {
 		datasetFile.setPath(image.getPath());
 		datasetFile.setAcquisitionNumber(image.getAcquisitionNumber());
 		datasetFile.setImageOrientationPatient(image.getImageOrientationPatient());
+		datasetFile.setStudyInstanceUID(image.getStudyInstanceUID());
+		datasetFile.setSeriesInstanceUID(image.getSeriesInstanceUID());
+		datasetFile.setSopInstanceUID(image.getSopInstanceUID());
+		datasetFile.setAcquisitionTime(image.getAcquisitionTime());
+		datasetFile.setContentTime(image.getContentTime());
 		return datasetFile;
 	}
 
@@ -0,0 +1,74 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.importer.dcm2nii;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class holds the state of one conversion job (the conversion of all series
+ * of one patient of an import), that was before kept in the singleton service
+ * and did not allow two imports to run in parallel. The series of one job are
+ * converted concurrently, so all fields are thread-safe.
+ * 
+ * @author mkain
+ *
+ */
+public class NIfTIConversionContext {
+
+	/** Converter chosen for this job. */
+	private final NIfTIConverter converter;
+
+	/** Logs of the conversion. */
+	private final StringBuffer conversionLogs = new StringBuffer();
+
+	/** Output files mapped by series UID. */
+	private final Map<String, List<String>> outputFiles = new ConcurrentHashMap<>();
+
+	public NIfTIConversionContext(NIfTIConverter converter) {
+		this.converter = converter;
+	}
+
+	public NIfTIConverter getConverter() {
+		return converter;
+	}
+
+	public void appendLogs(String logs) {
+		conversionLogs.append(logs);
+	}
+
+	public String getConversionLogs() {
+		return conversionLogs.toString();
+	}
+
+	/**
+	 * Returns the output files of a serie, a list only used by the thread
+	 * converting this serie.
+	 * 
+	 * @param serieID
+	 * @return the list of output files
+	 */
+	public List<String> getOutputFiles(String serieID) {
+		return outputFiles.computeIfAbsent(serieID, key -> Collections.synchronizedList(new ArrayList<String>()));
+	}
+
+	public boolean hasOutputFiles(String serieID) {
+		return outputFiles.containsKey(serieID);
+	}
+
+}
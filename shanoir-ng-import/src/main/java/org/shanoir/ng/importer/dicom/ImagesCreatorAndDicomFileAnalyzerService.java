@@ -22,13 +22,19 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.commons.lang3.StringUtils;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
 import org.dcm4che3.emf.MultiframeExtractor;
-import org.dcm4che3.io.DicomInputStream;
 import org.shanoir.ng.importer.model.EchoTime;
 import org.shanoir.ng.importer.model.EquipmentDicom;
 import org.shanoir.ng.importer.model.Image;
@@ -46,7 +52,8 @@ import org.springframework.stereotype.Service;
 
 /**
  * This class reads all instances. A FileInputStream in form of a DicomInputStream is opened
- * to all files to read additional informations, e.g. missing in the DicomDir.
+ * to all files to read additional informations, e.g. missing in the DicomDir. Only the headers
+ * are read, the pixel data are skipped (see ImportUtils.readDicomHeader).
  * This class splits the instances array into two different array nodes: non-images and images,
  * on using the sop class uid. Before the instances are numbered with their instance number
  * and added like this by DicomDirToModelReader. DicomFileAnalyzer removes/deletes
@@ -58,6 +65,12 @@ import org.springframework.stereotype.Service;
  * In case of the import from pacs, the files are accessed using the STORAGE_PATTERN defined
  * in DicomStoreSCPServer.
  * 
+ * The series are analyzed in parallel on a bounded work-stealing pool, and the instances of
+ * large series are split again into sub-tasks. The images of each serie are always kept in
+ * the order of the instances, whatever the thread, that has read them. An error in one serie
+ * does not stop the analysis of the others; the first error is thrown once all series are done.
+ * Setting shanoir.import.analysis.parallelism to 1 gives back the sequential behaviour.
+ * 
  * @author mkain
  *
  */
@@ -80,8 +93,34 @@ public class ImagesCreatorAndDicomFileAnalyzerService {
 	@Value("${shanoir.import.series.isspectroscopy}")
 	private String isSpectroscopy;
 
+	/** Number of threads analyzing dicom files, 0 means all available processors. */
+	@Value("${shanoir.import.analysis.parallelism:0}")
+	private int parallelism;
+
+	/** Series with more instances than this are split into several sub-tasks. */
+	@Value("${shanoir.import.analysis.instancesThreshold:200}")
+	private int instancesThreshold;
+
+	private ForkJoinPool analysisPool;
+
+	@PostConstruct
+	private void initAnalysisPool() {
+		int poolSize = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+		analysisPool = new ForkJoinPool(poolSize);
+		LOG.info("Dicom files analysis pool started with parallelism: {}", poolSize);
+	}
+
+	@PreDestroy
+	private void shutdownAnalysisPool() {
+		analysisPool.shutdownNow();
+	}
+
 	public void createImagesAndAnalyzeDicomFiles(List<Patient> patients, String folderFileAbsolutePath, boolean isImportFromPACS)
 			throws FileNotFoundException {
+		long startTime = System.currentTimeMillis();
+		int instancesNumber = 0;
+		List<Serie> submittedSeries = new ArrayList<>();
+		List<ForkJoinTask<?>> seriesTasks = new ArrayList<>();
 		// patient level
 		for (Iterator<Patient> patientsIt = patients.iterator(); patientsIt.hasNext();) {
 			Patient patient = patientsIt.next();
@@ -93,11 +132,67 @@ public class ImagesCreatorAndDicomFileAnalyzerService {
 				List<Serie> series = study.getSeries();
 				for (Iterator<Serie> seriesIt = series.iterator(); seriesIt.hasNext();) {
 					Serie serie = seriesIt.next();
-					filterAndCreateImages(folderFileAbsolutePath, serie, isImportFromPACS);
-					getAdditionalMetaDataFromFirstInstanceOfSerie(folderFileAbsolutePath, serie, patient, isImportFromPACS);
+					instancesNumber += serie.getInstances() != null ? serie.getInstances().size() : 0;
+					submittedSeries.add(serie);
+					seriesTasks.add(submitSerieAnalysis(patient, serie, folderFileAbsolutePath, isImportFromPACS));
 				}
 			}
 		}
+		waitForSeriesTasks(submittedSeries, seriesTasks);
+		long duration = System.currentTimeMillis() - startTime;
+		LOG.info("Analyzed {} instances of {} series in {} ms ({} instances/s).", instancesNumber, submittedSeries.size(),
+				duration, duration > 0 ? instancesNumber * 1000L / duration : instancesNumber);
+	}
+
+	/**
+	 * Submits the analysis of one serie to the analysis pool, what allows to start
+	 * it as soon as the files of the serie are there (e.g. arrived from the PACS).
+	 * 
+	 * @param patient
+	 * @param serie
+	 * @param folderFileAbsolutePath
+	 * @param isImportFromPACS
+	 * @return the task to wait for with waitForSeriesTasks
+	 */
+	public ForkJoinTask<?> submitSerieAnalysis(Patient patient, Serie serie, String folderFileAbsolutePath, boolean isImportFromPACS) {
+		return analysisPool.submit(() -> {
+			filterAndCreateImages(folderFileAbsolutePath, serie, isImportFromPACS);
+			getAdditionalMetaDataFromFirstInstanceOfSerie(folderFileAbsolutePath, serie, patient, isImportFromPACS);
+			return null;
+		});
+	}
+
+	/**
+	 * Waits for all series, even if one of them failed, to isolate the errors
+	 * of each serie: the first error met is thrown after all tasks are finished.
+	 * 
+	 * @param series
+	 * @param seriesTasks
+	 * @throws FileNotFoundException
+	 */
+	public void waitForSeriesTasks(List<Serie> series, List<ForkJoinTask<?>> seriesTasks) throws FileNotFoundException {
+		FileNotFoundException firstException = null;
+		for (int i = 0; i < seriesTasks.size(); i++) {
+			try {
+				seriesTasks.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted during analysis of dicom files.", e);
+			} catch (ExecutionException e) {
+				LOG.error("Error during analysis of serie: {}", series.get(i).getSeriesInstanceUID(), e.getCause());
+				if (firstException == null) {
+					if (e.getCause() instanceof FileNotFoundException) {
+						firstException = (FileNotFoundException) e.getCause();
+					} else {
+						firstException = new FileNotFoundException("Error during analysis of serie "
+								+ series.get(i).getSeriesInstanceUID() + ": " + e.getCause().getMessage());
+					}
+				}
+			}
+		}
+		if (firstException != null) {
+			throw firstException;
+		}
 	}
 
 	/**
@@ -111,14 +206,18 @@ public class ImagesCreatorAndDicomFileAnalyzerService {
 		if (!instances.isEmpty()) {
 			Instance firstInstance = instances.get(0);
 			File firstInstanceFile = getFileFromInstance(firstInstance, serie, folderFileAbsolutePath, isImportFromPACS);
-			processDicomFileForFirstInstance(firstInstanceFile, serie, patient);
+			// the patient is shared by all series analyzed in parallel
+			synchronized (patient) {
+				processDicomFileForFirstInstance(firstInstanceFile, serie, patient);
+			}
 		}
 	}
 
 	/**
 	 * This method iterates over all instances and filter only the images
 	 * and puts them into a new list: images. For the moment non-images is
-	 * not implemented.
+	 * not implemented. Each image is put at the index of its instance, so the
+	 * order of the images does not depend on the order the sub-tasks finish.
 	 * 
 	 * @param folderFileAbsolutePath
 	 * @param serie
@@ -127,12 +226,18 @@ public class ImagesCreatorAndDicomFileAnalyzerService {
 	private void filterAndCreateImages(String folderFileAbsolutePath, Serie serie, boolean isImportFromPACS) throws FileNotFoundException {
 		// instance level
 		List<Object> nonImages = new ArrayList<>();
-		List<Image> images = new ArrayList<>();
 		List<Instance> instances = serie.getInstances();
-		for (Iterator<Instance> instancesIt = instances.iterator(); instancesIt.hasNext();) {
-			Instance instance = instancesIt.next();
-			File instanceFile = getFileFromInstance(instance, serie, folderFileAbsolutePath, isImportFromPACS);
-			processDicomFileForAllInstances(instanceFile, images, folderFileAbsolutePath);
+		File[] instanceFiles = new File[instances.size()];
+		for (int i = 0; i < instanceFiles.length; i++) {
+			instanceFiles[i] = getFileFromInstance(instances.get(i), serie, folderFileAbsolutePath, isImportFromPACS);
+		}
+		Image[] imagesByInstance = new Image[instanceFiles.length];
+		new InstancesAnalyzerTask(instanceFiles, imagesByInstance, folderFileAbsolutePath, 0, instanceFiles.length).invoke();
+		List<Image> images = new ArrayList<>(imagesByInstance.length);
+		for (Image image : imagesByInstance) {
+			if (image != null) {
+				images.add(image);
+			}
 		}
 		serie.setNonImages(nonImages);
 		serie.setNonImagesNumber(nonImages.size());
@@ -140,6 +245,46 @@ public class ImagesCreatorAndDicomFileAnalyzerService {
 		serie.setImagesNumber(images.size());
 	}
 
+	/**
+	 * Analyzes a range of instance files of one serie, splitting the range in two
+	 * as long as it is bigger than the configured threshold.
+	 */
+	private class InstancesAnalyzerTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final File[] instanceFiles;
+
+		private final Image[] imagesByInstance;
+
+		private final String folderFileAbsolutePath;
+
+		private final int from;
+
+		private final int to;
+
+		InstancesAnalyzerTask(File[] instanceFiles, Image[] imagesByInstance, String folderFileAbsolutePath, int from, int to) {
+			this.instanceFiles = instanceFiles;
+			this.imagesByInstance = imagesByInstance;
+			this.folderFileAbsolutePath = folderFileAbsolutePath;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > Math.max(instancesThreshold, 1)) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new InstancesAnalyzerTask(instanceFiles, imagesByInstance, folderFileAbsolutePath, from, middle),
+						new InstancesAnalyzerTask(instanceFiles, imagesByInstance, folderFileAbsolutePath, middle, to));
+			} else {
+				for (int i = from; i < to; i++) {
+					imagesByInstance[i] = processDicomFileForAllInstances(instanceFiles[i], folderFileAbsolutePath);
+				}
+			}
+		}
+	}
+
 	/**
 	 * This method accesses to the dicom file of each instance and handles it.
 	 * 
@@ -188,16 +333,12 @@ public class ImagesCreatorAndDicomFileAnalyzerService {
 	 * and extracts meta-data from the dicom, that will be used later.
 	 * 
 	 * @param dicomFile
-	 * @param serie
-	 * @param instances
-	 * @param instance
-	 * @param index
-	 * @param nonImages
-	 * @param images
+	 * @param folderFileAbsolutePath
+	 * @return the image or null, if the file is not an image
 	 */
-	private void processDicomFileForAllInstances(File dicomFile, List<Image> images, String folderFileAbsolutePath) {
-		try (DicomInputStream dIS = new DicomInputStream(dicomFile)) {
-			Attributes attributes = dIS.readDataset(-1, -1);
+	private Image processDicomFileForAllInstances(File dicomFile, String folderFileAbsolutePath) {
+		try {
+			Attributes attributes = ImportUtils.readDicomHeader(dicomFile);
 			final String sopClassUID = attributes.getString(Tag.SOPClassUID);
 			// Some DICOM files with a particular SOP Class UID are to be ignored: such as Raw Data Storage
 			if (sopClassUID.startsWith("1.2.840.10008.5.1.4.1.1.66")) {
@@ -219,13 +360,15 @@ public class ImagesCreatorAndDicomFileAnalyzerService {
 					 */
 					String relativeFilePath = dicomFile.getAbsolutePath().replace(folderFileAbsolutePath + SLASH, "");
 					image.setPath(relativeFilePath);
+					image.setHeaderValues(attributes);
 					addImageSeparateDatasetsInfo(image, attributes);
-					images.add(image);
+					return image;
 				}
 			}
 		} catch (IOException e) {
 			LOG.error("Error during DICOM file process", e);
 		}
+		return null;
 	}
 	
 	/**
@@ -236,9 +379,8 @@ public class ImagesCreatorAndDicomFileAnalyzerService {
 	 * @param patient
 	 */
 	private void processDicomFileForFirstInstance(File dicomFile, Serie serie, Patient patient) {
-		try (DicomInputStream dIS = new DicomInputStream(dicomFile)) {
-			
-			Attributes attributes = dIS.readDataset(-1, -1);
+		try {
+			Attributes attributes = ImportUtils.readDicomHeader(dicomFile);
 			checkPatientData(patient, attributes);
 			checkSerieData(serie, attributes);
 			checkIsMultiFrame(serie, attributes);
@@ -26,7 +26,6 @@ import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
 import org.dcm4che3.emf.MultiframeExtractor;
-import org.dcm4che3.io.DicomInputStream;
 import org.shanoir.ng.importer.model.EchoTime;
 import org.shanoir.ng.importer.model.EquipmentDicom;
 import org.shanoir.ng.importer.model.Image;
@@ -64,66 +63,64 @@ public class ImportJobConstructorService {
 					Image image=iterator.next();
 					File imageFile = new File(
 							folder.getAbsolutePath() + File.separator + image.getPath());
-					try (DicomInputStream dIS = new DicomInputStream(imageFile)) {
-						Attributes datasetAttributes = dIS.readDataset(-1, -1);
-						String seriesDescription = null;
-						if (firstImageOfSerie) {
-							if (serie.getSopClassUID() == null) {
-								String sopClassUID = datasetAttributes.getString(Tag.SOPClassUID);
-								serie.setSopClassUID(sopClassUID);
-							}
-							seriesDescription = datasetAttributes.getString(Tag.SeriesDescription);
-							if (serie.getSeriesDescription() == null) {
-								serie.setSeriesDescription(seriesDescription);
-							}
-							serie.setSeriesInstanceUID(datasetAttributes.getString(Tag.SeriesInstanceUID));
-							String protocolNameDicomFile = datasetAttributes.getString(Tag.ProtocolName);
-							if (protocolNameDicomFile != null && !protocolNameDicomFile.isEmpty()) {
-								serie.setProtocolName(protocolNameDicomFile);
-							}
-							serie.setSeriesDescription(datasetAttributes.getString(Tag.SeriesDescription));
-							serie.setSeriesDate(DateTimeUtils.dateToLocalDate(datasetAttributes.getDate(Tag.StudyDate)));
-							serie.setNumberOfSeriesRelatedInstances(datasetAttributes.getInt(Tag.NumberOfSeriesRelatedInstances,0));
-							EquipmentDicom equipment = new EquipmentDicom(
-								datasetAttributes.getString(Tag.Manufacturer),
-								datasetAttributes.getString(Tag.ManufacturerModelName),
-								datasetAttributes.getString(Tag.DeviceSerialNumber));
-							serie.setEquipment(equipment);
-							serie.setIsCompressed(checkSeriesIsCompressed(datasetAttributes));
-							if (UID.EnhancedMRImageStorage.equals(serie.getSopClassUID())) {
-								serie.setSequenceName(datasetAttributes.getString(Tag.PulseSequenceName));
-								serie.setIsEnhancedMR(true);
-								serie.setIsMultiFrame(true);
-								Integer frameCount = Integer.valueOf(getFrameCount(datasetAttributes));
-								serie.setMultiFrameCount(frameCount);
-							} else {
-								serie.setSequenceName(datasetAttributes.getString(Tag.SequenceName));
-								serie.setIsEnhancedMR(false);
-								serie.setIsMultiFrame(false);
-								serie.setMultiFrameCount(0);
-							}
-							firstImageOfSerie = false;
+					Attributes datasetAttributes = ImportUtils.readDicomHeader(imageFile);
+					String seriesDescription = null;
+					if (firstImageOfSerie) {
+						if (serie.getSopClassUID() == null) {
+							String sopClassUID = datasetAttributes.getString(Tag.SOPClassUID);
+							serie.setSopClassUID(sopClassUID);
 						}
+						seriesDescription = datasetAttributes.getString(Tag.SeriesDescription);
+						if (serie.getSeriesDescription() == null) {
+							serie.setSeriesDescription(seriesDescription);
+						}
+						serie.setSeriesInstanceUID(datasetAttributes.getString(Tag.SeriesInstanceUID));
+						String protocolNameDicomFile = datasetAttributes.getString(Tag.ProtocolName);
+						if (protocolNameDicomFile != null && !protocolNameDicomFile.isEmpty()) {
+							serie.setProtocolName(protocolNameDicomFile);
+						}
+						serie.setSeriesDescription(datasetAttributes.getString(Tag.SeriesDescription));
+						serie.setSeriesDate(DateTimeUtils.dateToLocalDate(datasetAttributes.getDate(Tag.StudyDate)));
+						serie.setNumberOfSeriesRelatedInstances(datasetAttributes.getInt(Tag.NumberOfSeriesRelatedInstances,0));
+						EquipmentDicom equipment = new EquipmentDicom(
+							datasetAttributes.getString(Tag.Manufacturer),
+							datasetAttributes.getString(Tag.ManufacturerModelName),
+							datasetAttributes.getString(Tag.DeviceSerialNumber));
+						serie.setEquipment(equipment);
+						serie.setIsCompressed(checkSeriesIsCompressed(datasetAttributes));
+						if (UID.EnhancedMRImageStorage.equals(serie.getSopClassUID())) {
+							serie.setSequenceName(datasetAttributes.getString(Tag.PulseSequenceName));
+							serie.setIsEnhancedMR(true);
+							serie.setIsMultiFrame(true);
+							Integer frameCount = Integer.valueOf(getFrameCount(datasetAttributes));
+							serie.setMultiFrameCount(frameCount);
+						} else {
+							serie.setSequenceName(datasetAttributes.getString(Tag.SequenceName));
+							serie.setIsEnhancedMR(false);
+							serie.setIsMultiFrame(false);
+							serie.setMultiFrameCount(0);
+						}
+						firstImageOfSerie = false;
+					}
 	
-						if (serie.getSopClassUID().startsWith("1.2.840.10008.5.1.4.1.1.66")) {
-							// do nothing here as instances array will be deleted after split
+					if (serie.getSopClassUID().startsWith("1.2.840.10008.5.1.4.1.1.66")) {
+						// do nothing here as instances array will be deleted after split
+						iterator.remove();
+					} else {
+						// divide here between non-images and images, non-images at first
+						if (UID.PrivateSiemensCSANonImageStorage.equals(serie.getSopClassUID())
+								|| UID.MRSpectroscopyStorage.equals(serie.getSopClassUID())
+								|| checkSerieIsSpectroscopy(seriesDescription)) {
 							iterator.remove();
+							serie.getNonImages().add(image);
+							serie.setIsSpectroscopy(true);
+							LOG.warn("Attention: spectroscopy serie is included in this import!");
+							// images at the second
 						} else {
-							// divide here between non-images and images, non-images at first
-							if (UID.PrivateSiemensCSANonImageStorage.equals(serie.getSopClassUID())
-									|| UID.MRSpectroscopyStorage.equals(serie.getSopClassUID())
-									|| checkSerieIsSpectroscopy(seriesDescription)) {
-								iterator.remove();
-								serie.getNonImages().add(image);
-								serie.setIsSpectroscopy(true);
-								LOG.warn("Attention: spectroscopy serie is included in this import!");
-								// images at the second
-							} else {
-								// do not change here: use absolute path all time and find other solution for
-								// image preview
-								addImageSeparateDatasetsInfo(image, datasetAttributes, serie.getSopClassUID());
-								serie.setIsSpectroscopy(false);
-							}
+							// do not change here: use absolute path all time and find other solution for
+							// image preview
+							addImageSeparateDatasetsInfo(image, datasetAttributes, serie.getSopClassUID());
+							serie.setIsSpectroscopy(false);
 						}
 					}
 				}
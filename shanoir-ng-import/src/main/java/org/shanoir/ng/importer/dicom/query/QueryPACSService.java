@@ -18,13 +18,21 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.commons.lang3.StringUtils;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.net.QueryOption;
+import org.dcm4che3.net.Status;
 import org.dcm4che3.net.service.QueryRetrieveLevel;
 import org.dcm4che3.tool.findscu.FindSCU.InformationModel;
 import org.shanoir.ng.importer.model.ImportJob;
@@ -78,12 +86,34 @@ public class QueryPACSService {
 	
 	@Value("${shanoir.import.pacs.store.aet.called.name}")
 	private String calledNameSCP;
-	
+
+	/** Maximum number of c-find queries sent in parallel to the PACS. */
+	@Value("${shanoir.import.pacs.query.maxAssociations:4}")
+	private int maxQueryAssociations;
+
+	/** Duration in seconds, during which the results of a c-find are reused. */
+	@Value("${shanoir.import.pacs.query.cacheTTL:60}")
+	private long cacheTTL;
+
+	/** Maximum number of c-find results kept in the cache. */
+	private static final int CACHE_MAX_SIZE = 1000;
+
+	private ForkJoinPool queryPool;
+
+	/** Results of the last c-find queries, by level and params. */
+	private final Map<String, CachedResult> cache = new ConcurrentHashMap<>();
+
 	@PostConstruct
 	private void initDicomNodes() {
 		// Initialize connection configuration parameters here: to be used for all queries
 		this.calling = new DicomNode(callingName, callingHost, callingPort);
 		this.called = new DicomNode(calledName, calledHost, calledPort);
+		this.queryPool = new ForkJoinPool(maxQueryAssociations);
+	}
+
+	@PreDestroy
+	private void shutdownQueryPool() {
+		queryPool.shutdownNow();
 	}
 	
 	public ImportJob queryCFIND(DicomQuery dicomQuery) throws ShanoirImportException {
@@ -153,11 +183,13 @@ public class QueryPACSService {
 				patientsNbre = maxPatientsFromPACS;
 			}
 			List<Patient> patients = new ArrayList<>();
+			List<Runnable> studiesQueries = new ArrayList<>();
 			for (int i = 0; i < patientsNbre; i++) {
 				Patient patient = new Patient(attributesPatients.get(i));
 				patients.add(patient);
-				queryStudies(calling, called, dicomQuery, patient);
+				studiesQueries.add(() -> queryStudies(calling, called, dicomQuery, patient));
 			}
+			invokeAll(studiesQueries);
 			importJob.setPatients(patients);
 		}
 	}
@@ -178,6 +210,7 @@ public class QueryPACSService {
 		List<Attributes> attributesStudies = queryCFIND(params, QueryRetrieveLevel.STUDY, calling, called);
 		if (attributesStudies != null) {
 			List<Patient> patients = new ArrayList<>();
+			List<Runnable> seriesQueries = new ArrayList<>();
 			for (int i = 0; i < attributesStudies.size(); i++) {
 				// handle patients
 				Patient patient = new Patient(attributesStudies.get(i));
@@ -185,8 +218,9 @@ public class QueryPACSService {
 				// handle studies
 				Study study = new Study(attributesStudies.get(i));
 				patient.getStudies().add(study);
-				querySeries(calling, called, study);
+				seriesQueries.add(() -> querySeries(calling, called, study));
 			}
+			invokeAll(seriesQueries);
 			// Limit the max number of patients returned
 			if (maxPatientsFromPACS < patients.size()) {
 				patients = patients.subList(0, maxPatientsFromPACS);
@@ -246,11 +280,13 @@ public class QueryPACSService {
 		List<Attributes> attributesStudies = queryCFIND(params, QueryRetrieveLevel.STUDY, calling, called);
 		if (attributesStudies != null) {
 			List<Study> studies = new ArrayList<>();
+			List<Runnable> seriesQueries = new ArrayList<>();
 			for (int i = 0; i < attributesStudies.size(); i++) {
 				Study study = new Study(attributesStudies.get(i));
 				studies.add(study);
-				querySeries(calling, called, study);
+				seriesQueries.add(() -> querySeries(calling, called, study));
 			}
+			invokeAll(seriesQueries);
 			studies.sort((p1, p2) -> p1.getStudyDate().compareTo(p2.getStudyDate()));
 			patient.setStudies(studies);
 		}
@@ -277,20 +313,24 @@ public class QueryPACSService {
 		};
 		List<Attributes> attributes = queryCFIND(params, QueryRetrieveLevel.SERIES, calling, called);
 		if (attributes != null) {
-			List<Serie> series = new ArrayList<>();
+			List<Serie> imageSeries = new ArrayList<>();
 			for (int i = 0; i < attributes.size(); i++) {
 				Serie serie = new Serie(attributes.get(i));
 				if (serie.getModality() != null && !"PR".equals(serie.getModality()) && !"SR".equals(serie.getModality())) {
-					queryInstances(calling, called, serie, study);
-					if (!serie.getInstances().isEmpty()) {
-						series.add(serie);
-					} else {
-						LOG.warn("Serie found with empty instances and therefore ignored (SerieInstanceUID: {}).", serie.getSeriesInstanceUID());
-					}
+					imageSeries.add(serie);
 				} else {
 					LOG.warn("Serie found with wrong modality (PR or SR) therefore ignored (SerieInstanceUID: {}).", serie.getSeriesInstanceUID());
 				}
 			}
+			invokeAll(imageSeries.stream().map(serie -> (Runnable) () -> queryInstances(calling, called, serie, study)).collect(Collectors.toList()));
+			List<Serie> series = new ArrayList<>();
+			for (Serie serie : imageSeries) {
+				if (serie.getInstances() != null && !serie.getInstances().isEmpty()) {
+					series.add(serie);
+				} else {
+					LOG.warn("Serie found with empty instances and therefore ignored (SerieInstanceUID: {}).", serie.getSeriesInstanceUID());
+				}
+			}
 			study.setSeries(series);
 		}
 	}
@@ -329,6 +369,12 @@ public class QueryPACSService {
 	 * @return
 	 */
 	private List<Attributes> queryCFIND(DicomParam[] params, QueryRetrieveLevel level, final DicomNode calling, final DicomNode called) {
+		String cacheKey = getCacheKey(params, level);
+		CachedResult cachedResult = cache.get(cacheKey);
+		if (cachedResult != null && !cachedResult.isExpired()) {
+			LOG.debug("C-FIND result taken from cache: {}", cacheKey);
+			return cachedResult.attributes;
+		}
 		AdvancedParams options = new AdvancedParams();
 		if (level.equals(QueryRetrieveLevel.PATIENT)) {
 			options.setInformationModel(InformationModel.PatientRoot);
@@ -341,7 +387,67 @@ public class QueryPACSService {
 		}
 		logQuery(params, options);
 		DicomState state = CFind.process(options, calling, called, 0, level, params);
-		return state.getDicomRSP();
+		List<Attributes> attributes = state.getDicomRSP();
+		// a failed or cancelled c-find can return partial results: they are not kept
+		if (state.getStatus() == Status.Success && attributes != null && !attributes.isEmpty()) {
+			putInCache(cacheKey, attributes);
+		} else if (state.getStatus() != Status.Success) {
+			LOG.warn("C-FIND ended with status {}: {}", Integer.toHexString(state.getStatus()), state.getMessage());
+		}
+		return attributes;
+	}
+
+	/**
+	 * Runs the given queries in parallel on the query pool and waits for them.
+	 * Nested calls (e.g. the series of the studies) run in the same pool.
+	 * 
+	 * @param queries
+	 */
+	private void invokeAll(List<Runnable> queries) {
+		List<ForkJoinTask<?>> tasks = queries.stream().map(ForkJoinTask::adapt).collect(Collectors.toList());
+		if (ForkJoinTask.getPool() == queryPool) {
+			ForkJoinTask.invokeAll(tasks);
+		} else {
+			queryPool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+		}
+	}
+
+	private String getCacheKey(DicomParam[] params, QueryRetrieveLevel level) {
+		StringBuilder key = new StringBuilder(level.name());
+		for (DicomParam param : params) {
+			key.append('|').append(param.getTag()).append('=').append(Arrays.toString(param.getValues()));
+		}
+		return key.toString();
+	}
+
+	private void putInCache(String cacheKey, List<Attributes> attributes) {
+		if (cache.size() >= CACHE_MAX_SIZE) {
+			cache.values().removeIf(CachedResult::isExpired);
+			if (cache.size() >= CACHE_MAX_SIZE) {
+				cache.clear();
+			}
+		}
+		cache.put(cacheKey, new CachedResult(attributes, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(cacheTTL)));
+	}
+
+	/**
+	 * Result of a c-find kept in the cache until its expiration time: the user
+	 * often queries the same patient or study again to refine the selection.
+	 */
+	private static class CachedResult {
+
+		private final List<Attributes> attributes;
+
+		private final long expiration;
+
+		CachedResult(List<Attributes> attributes, long expiration) {
+			this.attributes = attributes;
+			this.expiration = expiration;
+		}
+
+		boolean isExpired() {
+			return System.currentTimeMillis() > expiration;
+		}
 	}
 
 	/**
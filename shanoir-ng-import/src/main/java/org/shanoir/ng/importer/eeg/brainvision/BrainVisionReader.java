@@ -25,11 +25,11 @@ import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -61,7 +61,7 @@ public class BrainVisionReader {
 
 	private static final String NO_FILE_FOUND_ON_CURRENT_LOCATION = "No file found on current location.";
 	private String dataFileLocation;
-	private RandomAccessFile dataFile;
+	private FileChannel dataChannel;
 	private DataFormat dataFormat;
 	private DataOrientation dataOrientation;
 	private DataType dataType;
@@ -76,11 +76,8 @@ public class BrainVisionReader {
 	private long pnts;
 	private double srate;
 	private float[] data;
-	private float[][] asciiData;
-	private boolean isAsciiRead;
 	private String[] channelNames;
 
-	private ByteBuffer buf;
 	private long nSamples;
 	private int bytes;
 
@@ -139,19 +136,12 @@ public class BrainVisionReader {
 		 */
 		if (dataFormat != null) {
 			if (dataFormat.equals(DataFormat.BINARY)) {
-				try {
-					eegFile = new File(dataFileLocation);
-					dataFile = new RandomAccessFile(dataFileLocation, "r");
-				} catch (FileNotFoundException ex) {
-					LOG.error(ex.getMessage());
-				}
-
-				if (pnts == 0 && dataFile != null) {
-					try {
-						pnts = (int) (dataFile.length() / bytes / nbchan);
-					} catch (IOException ex) {
-						LOG.error(ex.getMessage());
-					}
+				// the data file is opened and mapped on first read
+				eegFile = new File(dataFileLocation);
+				if (!eegFile.exists()) {
+					LOG.error(ERROR_TEMPLATE_MSG, NO_FILE_FOUND_ON_CURRENT_LOCATION, dataFileLocation);
+				} else if (pnts == 0) {
+					pnts = eegFile.length() / bytes / nbchan;
 				}
 			}
 		} else {
@@ -159,7 +149,6 @@ public class BrainVisionReader {
 		}
 
 		nSamples = 1;
-		isAsciiRead = false;
 	}
 
 	/**
@@ -463,118 +452,206 @@ public class BrainVisionReader {
 		}
 	}
 
+	/**
+	 * Reads the samples [from, to[ of a channel into the data array.
+	 * The binary data file is memory-mapped: the samples are read in place from the mapping,
+	 * with a stride of nbchan samples for multiplexed data, without copying the window.
+	 * Ascii data files are streamed: only the lines of the window are parsed.
+	 *
+	 * @param channel the index of the channel
+	 * @param from first sample
+	 * @param to last sample (excluded)
+	 */
 	public void read(final int channel, final long from, final long to) {
 		int nbSamples = (int) (to - from);
 		if (this.nSamples != nbSamples) {
 			prepareBuffers(nbSamples);
 		}
 
+		float[][] out = new float[nbchan][];
+		out[channel] = data;
 		if (dataFormat.equals(DataFormat.BINARY)) {
-			readBinary(channel, from);
+			readBinary(from, out);
 		} else if (dataFormat.equals(DataFormat.ASCII)) {
-			if (!isAsciiRead) {
-				asciiData = readAscii(new File(dataFileLocation));
-				isAsciiRead = true;
-			}
-			System.arraycopy(asciiData[channel], (int) from, data, 0, data.length);
+			readAscii(from, out);
 		}
 	}
 
 	/**
-	 * Reads the first data value of channel 1
+	 * Reads the samples [from, to[ of all the channels, in one pass over the data file.
 	 *
-	 * @param dataFile file with data content
-	 * @param channel
-	 * @param epochToRead the epoch which have to be read.
-	 * @return
+	 * @param from first sample
+	 * @param to last sample (excluded)
+	 * @return the samples, by channel
 	 */
-	private float[] readBinary(final int channel, final long from) {
-		try {
-			FileChannel inChannel = dataFile.getChannel();
-			// Set the start position in the file
-
-			buf.clear();
-			if (dataOrientation.equals(DataOrientation.MULTIPLEXED)) {
-				inChannel.position((from * nbchan + channel) * bytes);
-			} else if (dataOrientation.equals(DataOrientation.VECTORIZED)) {
-				inChannel.position((channel * pnts + from) * bytes);
-			}
-
-			final int increment = nbchan * bytes - bytes;
-			final boolean flag = dataOrientation.equals(DataOrientation.MULTIPLEXED);
-			final int localBytes = this.bytes;
-
-			int nRead = inChannel.read(buf);
-			if (nRead != -1) {
-				// Make buffer ready for read
-				buf.rewind();
-				for (int i = 0; i < data.length; i++) {
-					if (localBytes == 2) {
-						data[i] = buf.getShort() * channelResolution;
-					} else if (localBytes == 4) {
-						data[i] = buf.getFloat();
-					} else if (localBytes == 8) {
-						data[i] = (float) buf.getDouble();
-					}
+	public float[][] readAll(final long from, final long to) {
+		float[][] out = new float[nbchan][(int) (to - from)];
+		if (dataFormat.equals(DataFormat.BINARY)) {
+			readBinary(from, out);
+		} else if (dataFormat.equals(DataFormat.ASCII)) {
+			readAscii(from, out);
+		}
+		return out;
+	}
 
-					if (flag) {
-						// This is the next sample in this epoch for the given channel
-						buf.position(buf.position() + increment);
-					}
+	/**
+	 * Reads the samples of the channels, that have an array in out, from the memory-mapped data file.
+	 * For multiplexed data, one window holds all the channels, for vectorized data, each channel has its own window.
+	 *
+	 * @param from first sample
+	 * @param out the samples by channel, null for the channels not to read
+	 */
+	private void readBinary(final long from, final float[][] out) {
+		try {
+			final boolean multiplexed = dataOrientation.equals(DataOrientation.MULTIPLEXED);
+			ByteBuffer window = null;
+			for (int channel = 0; channel < nbchan; channel++) {
+				if (out[channel] == null) {
+					continue;
+				}
+				if (window == null || !multiplexed) {
+					window = mapWindow(channel, from, out[channel].length, multiplexed);
+				}
+				// the sample i of the channel, in the window
+				final int stride = multiplexed ? nbchan * bytes : bytes;
+				final int offset = multiplexed ? channel * bytes : 0;
+				float[] samples = out[channel];
+				for (int i = 0, index = offset; i < samples.length && index + bytes <= window.limit(); i++, index += stride) {
+					samples[i] = getSample(window, index);
 				}
 			}
 		} catch (IOException e) {
 			LOG.error(e.getMessage());
 		}
-		return data;
 	}
 
-	private float[][] readAscii(final File dataFileLocation) {
-		float[][] out = null;
-		try (BufferedReader in = new BufferedReader(new FileReader(dataFileLocation))) {
-			out = in.lines()
-					.map(e -> e.replaceAll(",", "."))
-					.map(e -> e.replaceAll("\\s+", " "))
-					.map(e -> e.split(" "))
-					.map(e -> doubleToFloat(Arrays.stream(e).skip(skipColumns).mapToDouble(i -> Double.parseDouble(i)).toArray()))
-					.toArray(float[][]::new);
+	/**
+	 * Maps the window of nbSamples samples from the sample from of the data file:
+	 * all the channels for multiplexed data, the given channel for vectorized data.
+	 * The window is truncated at the last sample of the channels, and at the end of the file.
+	 */
+	private ByteBuffer mapWindow(final int channel, final long from, final int nbSamples, final boolean multiplexed) throws IOException {
+		FileChannel inChannel = getDataChannel();
+		// for vectorized data, the samples after the last one of a channel are the ones of the next channel
+		long samples = Math.max(0, Math.min(nbSamples, pnts - from));
+		long position;
+		long size;
+		if (multiplexed) {
+			position = from * nbchan * bytes;
+			size = samples * nbchan * bytes;
+		} else {
+			position = (channel * pnts + from) * bytes;
+			size = samples * bytes;
+		}
+		size = Math.min(size, inChannel.size() - position);
+		if (size <= 0) {
+			return ByteBuffer.allocate(0);
+		}
+		ByteBuffer window = inChannel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		if (useBigEndianOrder) {
+			window.order(ByteOrder.BIG_ENDIAN);
+		} else {
+			window.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return window;
+	}
+
+	private float getSample(final ByteBuffer window, final int index) {
+		if (bytes == 2) {
+			if (BinaryFormat.UINT_16.equals(binaryFormat)) {
+				return (window.getShort(index) & 0xFFFF) * channelResolution;
+			}
+			return window.getShort(index) * channelResolution;
+		} else if (bytes == 4) {
+			return window.getFloat(index);
+		} else {
+			return (float) window.getDouble(index);
+		}
+	}
 
+	/**
+	 * Opens the data file on first read.
+	 */
+	private FileChannel getDataChannel() throws IOException {
+		if (dataChannel == null) {
+			dataChannel = FileChannel.open(eegFile.toPath(), StandardOpenOption.READ);
+		}
+		return dataChannel;
+	}
+
+	/**
+	 * Streams the lines of the ascii data file, after the skipped lines, and parses only the lines
+	 * of the window: a line by sample for multiplexed data, a line by channel for vectorized data.
+	 *
+	 * @param from first sample
+	 * @param out the samples by channel, null for the channels not to read
+	 */
+	private void readAscii(final long from, final float[][] out) {
+		final boolean multiplexed = dataOrientation.equals(DataOrientation.MULTIPLEXED);
+		try (BufferedReader in = new BufferedReader(new FileReader(dataFileLocation))) {
+			String line;
+			long row = -skipLines;
+			while ((line = in.readLine()) != null) {
+				long current = row++;
+				if (current < 0) {
+					continue;
+				}
+				if (multiplexed) {
+					if (current < from) {
+						continue;
+					}
+					int sample = (int) (current - from);
+					String[] values = splitAsciiLine(line);
+					boolean inWindow = false;
+					for (int channel = 0; channel < nbchan; channel++) {
+						if (out[channel] != null && sample < out[channel].length) {
+							inWindow = true;
+							if (skipColumns + channel < values.length) {
+								out[channel][sample] = Float.parseFloat(values[skipColumns + channel]);
+							}
+						}
+					}
+					if (!inWindow) {
+						break;
+					}
+				} else {
+					if (current >= nbchan) {
+						break;
+					}
+					float[] samples = out[(int) current];
+					if (samples == null) {
+						continue;
+					}
+					String[] values = splitAsciiLine(line);
+					for (int i = 0; i < samples.length && skipColumns + from + i < values.length; i++) {
+						samples[i] = Float.parseFloat(values[(int) (skipColumns + from + i)]);
+					}
+				}
+			}
 		} catch (FileNotFoundException e) {
 			LOG.error(ERROR_TEMPLATE_MSG, NO_FILE_FOUND_ON_CURRENT_LOCATION, e.getMessage());
 		} catch (IOException e) {
 			LOG.error(e.getMessage());
 		}
-		return out;
+	}
+
+	private static String[] splitAsciiLine(final String line) {
+		return line.replace(',', '.').trim().split("\\s+");
 	}
 
 	private void prepareBuffers(final int nSamples) {
 		this.nSamples = nSamples;
 		data = new float[nSamples];
 
-		if (dataFormat.equals(DataFormat.BINARY) && dataType.equals(DataType.TIMEDOMAIN)) {
-			if (dataOrientation.equals(DataOrientation.MULTIPLEXED)) {
-				buf = ByteBuffer.allocateDirect(bytes * nSamples * nbchan);
-			} else if (dataOrientation.equals(DataOrientation.VECTORIZED)) {
-				buf = ByteBuffer.allocateDirect(bytes * nSamples);
-			}
-
-			if (useBigEndianOrder) {
-				buf.order(ByteOrder.BIG_ENDIAN);
-			} else {
-				buf.order(ByteOrder.LITTLE_ENDIAN);
-			}
-
-		} else if (dataFormat.equals(DataFormat.ASCII) && dataType.equals(DataType.TIMEDOMAIN)) {
-			// Nothing to be done here
-		} else {
+		if (!dataType.equals(DataType.TIMEDOMAIN) || !(dataFormat.equals(DataFormat.BINARY) || dataFormat.equals(DataFormat.ASCII))) {
 			LOG.error("Cannot recognize specific BrainVision format");
 		}
-
 	}
 
 	public void close() throws IOException {
-		if (dataFormat != null && dataFormat.equals(DataFormat.BINARY) && dataFile != null) {
-			dataFile.close();
+		if (dataChannel != null) {
+			dataChannel.close();
+			dataChannel = null;
 		}
 	}
 
@@ -25,6 +25,7 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -56,6 +57,75 @@ public class EDFParser
 		return result;
 	}
 
+	/**
+	 * Parse the header and the annotations of an EDF-File, without reading the
+	 * samples of the other channels: only the bytes of the annotation signal are
+	 * read in each data record, with positional reads. The signal of the result
+	 * is null.
+	 *
+	 * @param channel
+	 *            the FileChannel to the EDF-File
+	 * @return the parsed result
+	 * @throws EDFParserException
+	 *             if there is an error during parsing
+	 */
+	public static EDFParserResult parseHeaderAndAnnotations(FileChannel channel) throws EDFParserException
+	{
+		try
+		{
+			channel.position(0);
+			// the stream is not closed, as it would close the channel
+			EDFParserResult result = parseHeader(Channels.newInputStream(channel));
+			EDFHeader header = result.getHeader();
+
+			int annotationIndex = getAnnotationIndex(header);
+			if (annotationIndex == -1) {
+				result.annotations = Collections.emptyList();
+				return result;
+			}
+
+			long recordSize = 0;
+			long annotationOffset = 0;
+			for (int i = 0; i < header.numberOfChannels; i++)
+			{
+				if (i == annotationIndex) {
+					annotationOffset = recordSize;
+				}
+				recordSize += header.numberOfSamples[i] * 2L;
+			}
+
+			int numberOfRecords = header.numberOfRecords;
+			if (numberOfRecords == -1)
+			{
+				// the number of data records is unknown while recording: count the complete ones
+				numberOfRecords = (int) ((channel.size() - header.bytesInHeader) / recordSize);
+			}
+
+			int annotationSize = header.numberOfSamples[annotationIndex] * 2;
+			byte[] b = new byte[numberOfRecords * annotationSize];
+			ByteBuffer bytebuf = ByteBuffer.wrap(b);
+			for (int i = 0; i < numberOfRecords; i++)
+			{
+				long position = header.bytesInHeader + i * recordSize + annotationOffset;
+				bytebuf.limit((i + 1) * annotationSize);
+				while (bytebuf.hasRemaining())
+				{
+					int read = channel.read(bytebuf, position + bytebuf.position() - i * annotationSize);
+					if (read == -1) {
+						throw new EDFParserException();
+					}
+				}
+			}
+
+			removeAnnotationChannel(header, annotationIndex);
+			result.annotations = parseAnnotations(b);
+			return result;
+		} catch (IOException e)
+		{
+			throw new EDFParserException(e);
+		}
+	}
+
 	/**
 	 * Parse the InputStream which should be at the start of an EDF-File. The
 	 * method returns an object containing the complete header of the EDF-File
@@ -119,6 +189,9 @@ public class EDFParser
 		{
 			EDFSignal signal = new EDFSignal();
 			EDFHeader header = result.getHeader();
+			if (header.numberOfRecords == -1) {
+				throw new EDFParserException("Unknown number of data records, the EDF file is still being recorded.", null);
+			}
 
 			signal.unitsInDigit = new Double[header.numberOfChannels];
 			for (int i = 0; i < signal.unitsInDigit.length; i++) {
@@ -171,20 +244,7 @@ public class EDFParser
 
 	private static List<EDFAnnotation> parseAnnotation(EDFHeader header, EDFSignal signal)
 	{
-
-		if (!header.formatVersion.startsWith("EDF+")) {
-			return Collections.emptyList();
-		}
-
-		int annotationIndex = -1;
-		for (int i = 0; i < header.numberOfChannels; i++)
-		{
-			if ("EDF Annotations".equals(header.channelLabels[i].trim()))
-			{
-				annotationIndex = i;
-				break;
-			}
-		}
+		int annotationIndex = getAnnotationIndex(header);
 		if (annotationIndex == -1) {
 			return Collections.emptyList();
 		}
@@ -203,6 +263,24 @@ public class EDFParser
 
 	}
 
+	/**
+	 * @return the index of the annotation signal of an EDF+ file, or -1
+	 */
+	private static int getAnnotationIndex(EDFHeader header)
+	{
+		if (!header.formatVersion.startsWith("EDF+")) {
+			return -1;
+		}
+		for (int i = 0; i < header.numberOfChannels; i++)
+		{
+			if ("EDF Annotations".equals(header.channelLabels[i].trim()))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
 	private static List<EDFAnnotation> parseAnnotations(byte[] b)
 	{
 		List<EDFAnnotation> annotations = new ArrayList<>();
@@ -249,22 +327,27 @@ public class EDFParser
 	}
 
 	private static void removeAnnotationSignal(EDFHeader header, EDFSignal signal, int annotationIndex)
+	{
+		removeAnnotationChannel(header, annotationIndex);
+
+		signal.digitalValues = ParseUtils.removeElement(signal.digitalValues, annotationIndex);
+		signal.unitsInDigit = ParseUtils.removeElement(signal.unitsInDigit, annotationIndex);
+		signal.valuesInUnits = ParseUtils.removeElement(signal.valuesInUnits, annotationIndex);
+	}
+
+	private static void removeAnnotationChannel(EDFHeader header, int annotationIndex)
 	{
 		header.numberOfChannels--;
-		ParseUtils.removeElement(header.channelLabels, annotationIndex);
-		ParseUtils.removeElement(header.transducerTypes, annotationIndex);
-		ParseUtils.removeElement(header.dimensions, annotationIndex);
-		ParseUtils.removeElement(header.minInUnits, annotationIndex);
-		ParseUtils.removeElement(header.maxInUnits, annotationIndex);
-		ParseUtils.removeElement(header.digitalMin, annotationIndex);
-		ParseUtils.removeElement(header.digitalMax, annotationIndex);
-		ParseUtils.removeElement(header.prefilterings, annotationIndex);
-		ParseUtils.removeElement(header.numberOfSamples, annotationIndex);
-		ParseUtils.removeElement(header.reserveds, annotationIndex);
-
-		ParseUtils.removeElement(signal.digitalValues, annotationIndex);
-		ParseUtils.removeElement(signal.unitsInDigit, annotationIndex);
-		ParseUtils.removeElement(signal.valuesInUnits, annotationIndex);
+		header.channelLabels = ParseUtils.removeElement(header.channelLabels, annotationIndex);
+		header.transducerTypes = ParseUtils.removeElement(header.transducerTypes, annotationIndex);
+		header.dimensions = ParseUtils.removeElement(header.dimensions, annotationIndex);
+		header.minInUnits = ParseUtils.removeElement(header.minInUnits, annotationIndex);
+		header.maxInUnits = ParseUtils.removeElement(header.maxInUnits, annotationIndex);
+		header.digitalMin = ParseUtils.removeElement(header.digitalMin, annotationIndex);
+		header.digitalMax = ParseUtils.removeElement(header.digitalMax, annotationIndex);
+		header.prefilterings = ParseUtils.removeElement(header.prefilterings, annotationIndex);
+		header.numberOfSamples = ParseUtils.removeElement(header.numberOfSamples, annotationIndex);
+		header.reserveds = ParseUtils.removeElement(header.reserveds, annotationIndex);
 	}
 
 	private static void parseChannelInformation(InputStream is, EDFParserResult result) throws EDFParserException
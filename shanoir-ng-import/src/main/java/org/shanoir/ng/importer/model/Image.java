@@ -17,6 +17,9 @@ package org.shanoir.ng.importer.model;
 import java.util.List;
 import java.util.Set;
 
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class Image {
@@ -42,6 +45,36 @@ public class Image {
 	@JsonProperty("imageOrientationPatient")
 	public List<Double> imageOrientationPatient;
 
+	@JsonProperty("studyInstanceUID")
+	public String studyInstanceUID;
+
+	@JsonProperty("seriesInstanceUID")
+	public String seriesInstanceUID;
+
+	@JsonProperty("sopInstanceUID")
+	public String sopInstanceUID;
+
+	@JsonProperty("acquisitionTime")
+	public String acquisitionTime;
+
+	@JsonProperty("contentTime")
+	public String contentTime;
+
+	/**
+	 * Keeps the header values needed by the datasets microservice to create the
+	 * dataset expressions, so that it does not have to read the file again. To be
+	 * called again after anonymization, as the UIDs change.
+	 * 
+	 * @param attributes
+	 */
+	public void setHeaderValues(Attributes attributes) {
+		this.studyInstanceUID = attributes.getString(Tag.StudyInstanceUID);
+		this.seriesInstanceUID = attributes.getString(Tag.SeriesInstanceUID);
+		this.sopInstanceUID = attributes.getString(Tag.SOPInstanceUID);
+		this.acquisitionTime = attributes.getString(Tag.AcquisitionTime);
+		this.contentTime = attributes.getString(Tag.ContentTime);
+	}
+
 	public String getPath() {
 		return path;
 	}
@@ -98,4 +131,24 @@ public class Image {
 		this.flipAngle = flipAngle;
 	}
 
+	public String getStudyInstanceUID() {
+		return studyInstanceUID;
+	}
+
+	public String getSeriesInstanceUID() {
+		return seriesInstanceUID;
+	}
+
+	public String getSopInstanceUID() {
+		return sopInstanceUID;
+	}
+
+	public String getAcquisitionTime() {
+		return acquisitionTime;
+	}
+
+	public String getContentTime() {
+		return contentTime;
+	}
+
 }
@@ -14,14 +14,18 @@
 
 package org.shanoir.ng.utils;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
@@ -33,6 +37,9 @@ import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.SystemUtils;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomInputStream.IncludeBulkData;
 import org.shanoir.ng.shared.core.model.AbstractEntity;
 import org.shanoir.ng.shared.exception.ErrorModel;
 import org.shanoir.ng.shared.exception.RestServiceException;
@@ -82,7 +89,7 @@ public class ImportUtils {
 	private static final int KB = 1024;
 
 	/** The Constant BUFFER_SIZE. */
-	private static final int BUFFER_SIZE = 2 * KB;
+	private static final int BUFFER_SIZE = 64 * KB;
 
 	/**
 	 * Convert Iterable to List
@@ -103,6 +110,23 @@ public class ImportUtils {
 		return list;
 	}
 
+	/**
+	 * Reads the header of a dicom file without loading the pixel data into memory:
+	 * all bulk data (pixel data, overlays, ...) are skipped and only kept as references
+	 * (offset and length) into the file. This way the MultiframeExtractor still works
+	 * on enhanced MR files, that would otherwise be loaded entirely into the heap.
+	 * 
+	 * @param dicomFile
+	 * @return the attributes of the dataset
+	 * @throws IOException
+	 */
+	public static Attributes readDicomHeader(final File dicomFile) throws IOException {
+		try (DicomInputStream dIS = new DicomInputStream(dicomFile)) {
+			dIS.setIncludeBulkData(IncludeBulkData.URI);
+			return dIS.readDataset(-1, -1);
+		}
+	}
+
 	public static boolean equalsIgnoreNull(Object o1, Object o2) {
 		if (o1 == null) {
 			return o2 == null;
@@ -162,7 +186,8 @@ public class ImportUtils {
 
 	/**
 	 * Extracts a zip file specified by the zipFilePath to a directory specified by
-	 * destDirectory (will be created if does not exists)
+	 * destDirectory (will be created if does not exists). As the file is on disk,
+	 * its entries are read with random access and extracted in parallel.
 	 * 
 	 * @param zipFilePath
 	 * @param destDirectory
@@ -173,28 +198,58 @@ public class ImportUtils {
 		if (!destDir.exists()) {
 			destDir.mkdir();
 		}
-		
-		try (ZipInputStream zipIn = new ZipInputStream(new FileInputStream(zipFilePath))) {
+
+		try (ZipFile zipFile = new ZipFile(zipFilePath)) {
+			List<? extends ZipEntry> entries = Collections.list(zipFile.entries());
+			// create all directories first, file entries can come before their directory entry
+			for (ZipEntry entry : entries) {
+				File entryFile = getEntryFile(destDir, entry);
+				if (entry.isDirectory()) {
+					entryFile.mkdirs();
+				} else {
+					entryFile.getParentFile().mkdirs();
+				}
+			}
+			entries.parallelStream().filter(entry -> !entry.isDirectory()).forEach(entry -> {
+				try (InputStream entryIn = zipFile.getInputStream(entry)) {
+					extractFile(entryIn, getEntryFile(destDir, entry));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Extracts a zip stream, e.g. an upload, entry by entry to a directory specified by
+	 * destDirectory (will be created if does not exists), without storing the zip itself.
+	 * 
+	 * @param zipStream
+	 * @param destDirectory
+	 * @throws IOException
+	 */
+	public static void unzip(InputStream zipStream, String destDirectory) throws IOException {
+		File destDir = new File(destDirectory);
+		if (!destDir.exists()) {
+			destDir.mkdir();
+		}
+
+		try (ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(zipStream, BUFFER_SIZE))) {
 			ZipEntry entry = zipIn.getNextEntry();
-			String directoryFile;
-			String name;
-			// iterates over entries in the .zip file
+			// iterates over entries in the .zip stream
 			while (entry != null) {
-				name = entry.getName();
-				String filePath = destDirectory + File.separator + name;
+				File entryFile = getEntryFile(destDir, entry);
 				if (!entry.isDirectory()) {
 					// if the entry is a file, extracts it
 					// create the dir if necessary, file entry can come before directory entry where
 					// is file located
-					directoryFile = getDirectoryPart(name);
-					if (directoryFile != null) {
-						createDirectory(destDir, directoryFile);
-					}
-					extractFile(zipIn, filePath);
+					entryFile.getParentFile().mkdirs();
+					extractFile(zipIn, entryFile);
 				} else {
 					// if the entry is a directory, make the directory
-					File dir = new File(filePath);
-					dir.mkdir();
+					entryFile.mkdirs();
 				}
 				zipIn.closeEntry();
 				entry = zipIn.getNextEntry();
@@ -244,8 +299,12 @@ public class ImportUtils {
 	 * @param file
 	 */
 	public static boolean isZipFile(final MultipartFile file) {
-		return file.getOriginalFilename().endsWith(ZIP_FILE_SUFFIX) || file.getContentType().equals(APPLICATION_ZIP)
-				|| file.getContentType().equals(APPLICATION_OCTET_STREAM);
+		return isZipFile(file.getOriginalFilename(), file.getContentType());
+	}
+
+	public static boolean isZipFile(final String fileName, final String contentType) {
+		return (fileName != null && fileName.endsWith(ZIP_FILE_SUFFIX)) || APPLICATION_ZIP.equals(contentType)
+				|| APPLICATION_OCTET_STREAM.equals(contentType);
 	}
 
 	public static File getUserImportDir(String importDir) {
@@ -258,30 +317,36 @@ public class ImportUtils {
 		return userImportDir;
 	}
 
-	private static void createDirectory(File outdir, String path) {
-		File d = new File(outdir, path);
-		if (!d.exists()) {
-			d.mkdirs();
+	/**
+	 * Returns the file of a zip entry and checks, that it is inside the destination
+	 * directory (entries like ../../file are refused).
+	 * 
+	 * @param destDir
+	 * @param entry
+	 * @return the file to extract to
+	 * @throws IOException
+	 */
+	private static File getEntryFile(File destDir, ZipEntry entry) throws IOException {
+		File entryFile = new File(destDir, entry.getName());
+		String destDirPath = destDir.getCanonicalPath() + File.separator;
+		if (!entryFile.getCanonicalPath().startsWith(destDirPath) && !entryFile.getCanonicalFile().equals(destDir.getCanonicalFile())) {
+			throw new IOException("Zip entry is outside of the target directory: " + entry.getName());
 		}
-	}
-
-	private static String getDirectoryPart(String name) {
-		int s = name.lastIndexOf(File.separatorChar);
-		return s == -1 ? null : name.substring(0, s);
+		return entryFile;
 	}
 
 	/**
 	 * Extracts a zip entry (file entry)
 	 * 
-	 * @param zipIn
-	 * @param filePath
+	 * @param entryIn
+	 * @param file
 	 * @throws IOException
 	 */
-	private static void extractFile(ZipInputStream zipIn, String filePath) throws IOException {
-		try (BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(filePath))) {
+	private static void extractFile(InputStream entryIn, File file) throws IOException {
+		try (BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)) {
 			byte[] bytesIn = new byte[BUFFER_SIZE];
 			int read = 0;
-			while ((read = zipIn.read(bytesIn)) != -1) {
+			while ((read = entryIn.read(bytesIn)) != -1) {
 				bos.write(bytesIn, 0, read);
 			}
 		}
@@ -521,6 +586,30 @@ public class ImportUtils {
 		return unzipFolderFile;
 	}
 
+	/**
+	 * This method creates a new folder with a random name in the user import
+	 * directory and unzips the zip stream into it, e.g. while the upload is read
+	 * from the request: the zip itself is never written to the import directory.
+	 * 
+	 * @param userImportDir
+	 * @param zipStream
+	 * @return the folder with the content
+	 * @throws IOException
+	 * @throws RestServiceException
+	 */
+	public static File createFolderAndUnzip(final File userImportDir, final InputStream zipStream)
+			throws IOException, RestServiceException {
+		File unzipFolderFile = new File(userImportDir.getAbsolutePath(), Long.toString(createRandomLong()));
+		if (!unzipFolderFile.exists()) {
+			unzipFolderFile.mkdirs();
+		} else {
+			throw new RestServiceException(new ErrorModel(HttpStatus.UNPROCESSABLE_ENTITY.value(),
+					"Error while unzipping file: folder already exists.", null));
+		}
+		ImportUtils.unzip(zipStream, unzipFolderFile.getAbsolutePath());
+		return unzipFolderFile;
+	}
+
 	/**
 	 * This method takes a multipart file and stores it in a configured upload
 	 * directory in relation with the userId with a random name and the suffix
@@ -0,0 +1,93 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class keeps the metrics of the external processes (converters)
+ * started by ShanoirExec: the number of processes running and the
+ * durations of the last executions of each process, to compute percentiles.
+ *
+ * @author mkain
+ *
+ */
+public class ProcessMetrics {
+
+	/** Number of durations kept per process. */
+	private static final int SAMPLES = 1000;
+
+	private final AtomicInteger running = new AtomicInteger();
+
+	private final Map<String, Durations> durations = new ConcurrentHashMap<>();
+
+	public void processStarted() {
+		running.incrementAndGet();
+	}
+
+	public void processFinished(String processName, long durationMillis) {
+		running.decrementAndGet();
+		durations.computeIfAbsent(processName, key -> new Durations()).add(durationMillis);
+	}
+
+	public int getRunning() {
+		return running.get();
+	}
+
+	/**
+	 * Returns the percentile of the last durations of a process.
+	 *
+	 * @param processName
+	 * @param percentile between 0 and 100
+	 * @return the duration in ms, or -1 if the process has never run
+	 */
+	public long getPercentile(String processName, int percentile) {
+		Durations processDurations = durations.get(processName);
+		if (processDurations == null) {
+			return -1;
+		}
+		return processDurations.getPercentile(percentile);
+	}
+
+	/**
+	 * Ring buffer of the last durations of a process.
+	 */
+	private static class Durations {
+
+		private final long[] values = new long[SAMPLES];
+
+		private int count;
+
+		synchronized void add(long duration) {
+			values[count % SAMPLES] = duration;
+			count++;
+		}
+
+		synchronized long getPercentile(int percentile) {
+			int size = Math.min(count, SAMPLES);
+			if (size == 0) {
+				return -1;
+			}
+			long[] sorted = Arrays.copyOf(values, size);
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+			return sorted[Math.max(0, Math.min(index, size - 1))];
+		}
+	}
+
+}
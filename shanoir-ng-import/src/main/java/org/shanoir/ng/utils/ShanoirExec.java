@@ -14,9 +14,12 @@
 
 package org.shanoir.ng.utils;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.shanoir.ng.shared.exception.RestServiceException;
 import org.slf4j.Logger;
@@ -49,8 +52,21 @@ public class ShanoirExec {
 	@Value("${ms.url.dicom2nifti}")
 	private String dicomifierMsUrl;
 
+	/** Maximum wall-clock duration of one process, in minutes. */
+	@Value("${shanoir.conversion.process.timeout:30}")
+	private long processTimeout;
+
+	/** Maximum CPU time of one process, in seconds, 0 for no limit (uses prlimit). */
+	@Value("${shanoir.conversion.process.cpuLimit:0}")
+	private long processCpuLimit;
+
 	@Autowired
 	RestTemplate restTemplate;
+
+	/** Versions of the converters by path, as they do not change while running. */
+	private final Map<String, String> converterVersions = new ConcurrentHashMap<>();
+
+	private final ProcessMetrics metrics = new ProcessMetrics();
 	
 	/**
 	 * Exec the clidcm command to convert Dicom files to Nifti files.
@@ -329,76 +345,7 @@ public class ShanoirExec {
 	 * @return string containing the version
 	 */
 	public String mcverterVersionExec(final String mcverterPath) {
-		LOG.debug("mcverterVersionExec : Begin");
-
-		String[] cmd = new String[2];
-		cmd[0] = mcverterPath;
-		// output folder
-		cmd[1] = "-V";
-
-		StringBuilder executingCommand = new StringBuilder("");
-		for (final String item : cmd) {
-			executingCommand.append(item).append(" ");
-		}
-		LOG.debug("exec : Executing {}", executingCommand);
-
-		StreamGobbler errorGobbler = null;
-		StreamGobbler outputGobbler = null;
-		String result = null;
-		try {
-			Runtime rt = Runtime.getRuntime();
-
-			final Process proc = rt.exec(cmd, null);
-
-			// any error message?
-			errorGobbler = new StreamGobbler(proc.getErrorStream(), "ERROR");
-
-			// any output?
-			outputGobbler = new StreamGobbler(proc.getInputStream(), "DEBUG");
-
-			// kick them off
-			errorGobbler.start();
-			outputGobbler.start();
-
-			// any error???
-			final int exitVal = proc.waitFor();
-
-			/*Getting the version of mcverter causes an exit code = 1 even though there is no error
-			when exec "mcverter -V" so we get rid of this error in this particular case
-			by checking if the cmd is for the version*/
-
-			if (exitVal != 0 && exitVal != 1) {
-				LOG.error("The exit value is {}, an error has probably occured", exitVal);
-			}
-
-			proc.getInputStream().close();
-			proc.getErrorStream().close();
-			LOG.debug("exec : ExitValue: {}", exitVal);
-		} catch (final Exception exc) {
-			LOG.error("exec : {}", exc.getMessage());
-			if (errorGobbler != null && outputGobbler != null) {
-				result = errorGobbler.getStringDisplay();
-				if (result != null && !"".equals(result)) {
-					result += "\n\n";
-				}
-				result += outputGobbler.getStringDisplay();
-				return result;
-			}
-		}
-		if (errorGobbler != null) {
-			result = errorGobbler.getStringDisplay();
-			if (result != null && !"".equals(result)) {
-				result += "\n\n";
-			}
-		}
-		if (outputGobbler != null) {
-			result += outputGobbler.getStringDisplay();
-		}
-
-		LOG.info("mcverterVersionExec = {}", result);
-		LOG.debug("mcverterVersionExec : End");
-		return result;
-
+		return getConverterVersion(mcverterPath, new String[] { mcverterPath, "-V" }, 0, 1);
 	}
 
 	/**
@@ -412,14 +359,33 @@ public class ShanoirExec {
 	 * @return the version
 	 */
 	public String dcm2niiVersionExec(final String dcm2niiPath) {
-		LOG.debug("dcm2niiVersionExec : Begin");
-		LOG.info("dcm2niiVersionExec : {}", dcm2niiPath);
-		String[] cmd = new String[1];
-		cmd[0] = dcm2niiPath;
-		final String result = exec(cmd);
-		LOG.info("dcm2niiVersionExec : {}", result);
-		LOG.debug("dcm2niiVersionExec : End");
-		return result;
+		return getConverterVersion(dcm2niiPath, new String[] { dcm2niiPath }, 0);
+	}
+
+	/**
+	 * Returns the cached version of a converter, or executes the command giving it.
+	 * The process runs outside of the cache, and only the output of a successful
+	 * exit is cached: a failure is returned, but the command is executed again next time.
+	 *
+	 * @param converterPath
+	 * @param cmd
+	 * @param successExitValues
+	 *            the exit values of a successful execution
+	 * @return the version
+	 */
+	private String getConverterVersion(final String converterPath, final String[] cmd, final int... successExitValues) {
+		String version = converterVersions.get(converterPath);
+		if (version != null) {
+			return version;
+		}
+		LOG.info("Converter version : {}", converterPath);
+		ProcessResult result = execProcess(cmd, null, successExitValues);
+		LOG.info("Converter version : {}", result.output);
+		if (result.success && result.output != null) {
+			String cachedVersion = converterVersions.putIfAbsent(converterPath, result.output);
+			return cachedVersion != null ? cachedVersion : result.output;
+		}
+		return result.output;
 	}
 
 
@@ -521,6 +487,22 @@ public class ShanoirExec {
 	 * @return the output result
 	 */
 	public String exec(final String[] cmd, final String[] envp) {
+		return execProcess(cmd, envp, 0).output;
+	}
+
+	/**
+	 * Execute the command line given in argument.
+	 *
+	 * @param cmd
+	 *            the command line as a string array
+	 * @param envp
+	 *            the environment, or null to inherit it
+	 * @param successExitValues
+	 *            the exit values of a successful execution
+	 *
+	 * @return the output result, and if the execution succeeded
+	 */
+	private ProcessResult execProcess(final String[] cmd, final String[] envp, final int... successExitValues) {
 
 		StringBuilder executingCommand = new StringBuilder("");
 		for (final String item : cmd) {
@@ -531,10 +513,15 @@ public class ShanoirExec {
 		StreamGobbler errorGobbler = null;
 		StreamGobbler outputGobbler = null;
 		String result = null;
+		boolean success = false;
+		Process proc = null;
+		String processName = getProcessName(cmd);
+		long start = System.currentTimeMillis();
+		metrics.processStarted();
 		try {
 			Runtime rt = Runtime.getRuntime();
 
-			final Process proc = rt.exec(cmd, envp);
+			proc = rt.exec(limitCpu(cmd), envp);
 
 			// any error message?
 			errorGobbler = new StreamGobbler(proc.getErrorStream(), "ERROR");
@@ -547,9 +534,15 @@ public class ShanoirExec {
 			outputGobbler.start();
 
 			// any error???
-			final int exitVal = proc.waitFor();
+			boolean finished = proc.waitFor(processTimeout, TimeUnit.MINUTES);
+			if (!finished) {
+				LOG.error("exec : {} did not finish within {} minutes, destroying it", processName, processTimeout);
+				proc.destroyForcibly().waitFor();
+			}
+			final int exitVal = proc.exitValue();
 
-			if (exitVal != 0) {
+			success = finished && Arrays.stream(successExitValues).anyMatch(value -> value == exitVal);
+			if (!success) {
 				LOG.error("The exit value is {}, an error has probably occured", exitVal);
 			}
 			// let errorGobbler and outputGobbler finish execution before finishing main thread
@@ -559,6 +552,12 @@ public class ShanoirExec {
 			proc.getInputStream().close();
 			proc.getErrorStream().close();
 			LOG.debug("exec : ExitValue: {}", exitVal);
+		} catch (final InterruptedException exc) {
+			// the conversion has been cancelled or timed out: do not leave the converter running
+			LOG.error("exec : interrupted, destroying process {}", executingCommand);
+			proc.destroyForcibly();
+			Thread.currentThread().interrupt();
+			return new ProcessResult(errorGobbler != null ? errorGobbler.getStringDisplay() : null, false);
 		} catch (final Exception exc) {
 			LOG.error("exec : {}", exc.getMessage());
 			if (errorGobbler != null && outputGobbler != null) {
@@ -567,8 +566,13 @@ public class ShanoirExec {
 					result += "\n\n";
 				}
 				result += outputGobbler.getStringDisplay();
-				return result;
 			}
+			return new ProcessResult(result, false);
+		} finally {
+			long duration = System.currentTimeMillis() - start;
+			metrics.processFinished(processName, duration);
+			LOG.info("exec : {} finished in {} ms ({} processes running, p50 {} ms, p99 {} ms)", processName, duration,
+					metrics.getRunning(), metrics.getPercentile(processName, 50), metrics.getPercentile(processName, 99));
 		}
 		if (errorGobbler != null) {
 			result = errorGobbler.getStringDisplay();
@@ -582,7 +586,61 @@ public class ShanoirExec {
 
 		LOG.debug("exec : return result {}", result);
 
-		return result;
+		return new ProcessResult(result, success);
+	}
+
+	/**
+	 * The output of a process, and if it exited successfully.
+	 */
+	private static class ProcessResult {
+
+		private final String output;
+
+		private final boolean success;
+
+		ProcessResult(String output, boolean success) {
+			this.output = output;
+			this.success = success;
+		}
+
+	}
+
+	/**
+	 * Prefixes the command with prlimit, if a CPU time limit is configured:
+	 * the process is then killed by the system when it exceeds the limit.
+	 *
+	 * @param cmd
+	 * @return the command to execute
+	 */
+	private String[] limitCpu(final String[] cmd) {
+		if (processCpuLimit <= 0) {
+			return cmd;
+		}
+		String[] limitedCmd = new String[cmd.length + 3];
+		limitedCmd[0] = "prlimit";
+		limitedCmd[1] = "--cpu=" + processCpuLimit;
+		limitedCmd[2] = "--";
+		System.arraycopy(cmd, 0, limitedCmd, 3, cmd.length);
+		return limitedCmd;
+	}
+
+	/**
+	 * Returns the name of the executable, used as key for the metrics.
+	 * For commands run with bash -c, the first word of the command line is used.
+	 *
+	 * @param cmd
+	 * @return the process name
+	 */
+	private String getProcessName(final String[] cmd) {
+		String executable = cmd[0];
+		if ("bash".equals(executable) && cmd.length > 2) {
+			executable = cmd[2].trim().split(" ")[0];
+		}
+		return new File(executable).getName();
+	}
+
+	public ProcessMetrics getMetrics() {
+		return metrics;
 	}
 
 	/**
@@ -22,6 +22,11 @@ import java.io.InputStreamReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Reads the output of a process line by line and logs it as soon as it is
+ * written. Only the beginning of the output is kept for the string display,
+ * as verbose converters can write a lot during long conversions.
+ */
 public class StreamGobbler extends Thread {
 
 	/**
@@ -29,6 +34,9 @@ public class StreamGobbler extends Thread {
 	 */
 	private static final Logger LOG = LoggerFactory.getLogger(StreamGobbler.class);
 
+	/** Maximum number of characters kept for the string display. */
+	private static final int MAX_DISPLAY_LENGTH = 64 * 1024;
+
 	/** The is. */
 	private InputStream is;
 
@@ -36,7 +44,10 @@ public class StreamGobbler extends Thread {
 	private String type;
 
 	/** Result string. */
-	private String stringDisplay = "";
+	private final StringBuilder stringDisplay = new StringBuilder();
+
+	/** Number of lines not kept in the string display. */
+	private int truncatedLines;
 
 	/**
 	 * Creates a new StreamGobbler object.
@@ -64,13 +75,13 @@ public class StreamGobbler extends Thread {
 			while ((line = br.readLine()) != null) {
 				if (type.equals("ERROR")) {
 					LOG.error(line);
-					stringDisplay += "ERROR : " + line + "\n";
+					display(line);
 				} else if (type.equals("DEBUG")) {
 					LOG.debug(line);
-					stringDisplay += "DEBUG : " + line + "\n";
+					display(line);
 				} else if (type.equals("INFO")) {
 					LOG.info(line);
-					stringDisplay += "INFO : " + line + "\n";
+					display(line);
 				}
 			}
 		} catch (final IOException ioe) {
@@ -78,13 +89,24 @@ public class StreamGobbler extends Thread {
 		}
 	}
 
+	private synchronized void display(final String line) {
+		if (stringDisplay.length() + line.length() < MAX_DISPLAY_LENGTH) {
+			stringDisplay.append(type).append(" : ").append(line).append("\n");
+		} else {
+			truncatedLines++;
+		}
+	}
+
 	/**
 	 * Gets the string display.
 	 * 
 	 * @return the stringDisplay
 	 */
-	public String getStringDisplay() {
-		return stringDisplay;
+	public synchronized String getStringDisplay() {
+		if (truncatedLines > 0) {
+			return stringDisplay + "[" + truncatedLines + " more lines in the log]\n";
+		}
+		return stringDisplay.toString();
 	}
 
 	/**
@@ -93,8 +115,10 @@ public class StreamGobbler extends Thread {
 	 * @param stringDisplay
 	 *            the stringDisplay to set
 	 */
-	public void setStringDisplay(String stringDisplay) {
-		this.stringDisplay = stringDisplay;
+	public synchronized void setStringDisplay(String stringDisplay) {
+		this.stringDisplay.setLength(0);
+		this.stringDisplay.append(stringDisplay);
+		truncatedLines = 0;
 	}
 }
 
@@ -15,23 +15,35 @@
 package org.shanoir.ng.importer;
 
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FileUtils;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomOutputStream;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -43,6 +55,7 @@ import org.shanoir.ng.importer.dicom.ImportJobConstructorService;
 import org.shanoir.ng.importer.dicom.query.QueryPACSService;
 import org.shanoir.ng.importer.model.EegDataset;
 import org.shanoir.ng.importer.model.EegImportJob;
+import org.shanoir.ng.importer.model.Patient;
 import org.shanoir.ng.shared.exception.ShanoirException;
 import org.shanoir.ng.utils.ImportUtils;
 import org.shanoir.ng.utils.usermock.WithMockKeycloakUser;
@@ -80,6 +93,10 @@ public class ImporterApiControllerTest {
 
 	private static final String GET_DICOM = "/importer/get_dicom/";
 
+	private static final String UPLOAD_DICOM_PATH = "/importer/upload_dicom/";
+
+	private static final String BOUNDARY = "shanoirBoundary";
+
 	private Gson gson;
 	
 	@Autowired
@@ -188,6 +205,52 @@ public class ImporterApiControllerTest {
 		}
 	}
 
+	@Test
+	@WithMockKeycloakUser(id = 3, username = "jlouis", authorities = { "ROLE_ADMIN" })
+	public void testUploadDicomZipFile() throws Exception {
+		// GIVEN a zip file with its DICOMDIR
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		try (ZipOutputStream zipOut = new ZipOutputStream(zip)) {
+			zipOut.putNextEntry(new ZipEntry("DICOMDIR"));
+			zipOut.write("DICOMDIR".getBytes(StandardCharsets.US_ASCII));
+			zipOut.closeEntry();
+		}
+		Patient patient = new Patient();
+		patient.setPatientName("Patient streamed");
+		given(dicomDirToModel.readDicomDirToPatients(any(File.class))).willReturn(Collections.singletonList(patient));
+
+		// WHEN it is sent as the file part of a multipart request, read as a stream
+		mvc.perform(MockMvcRequestBuilders.post(UPLOAD_DICOM_PATH)
+				.contentType("multipart/form-data; boundary=" + BOUNDARY)
+				.content(multipartBody("dicom.zip", "application/zip", zip.toByteArray())))
+		// THEN it is extracted and the import job of its patients is returned
+		.andExpect(status().isOk())
+		.andExpect(content().string(containsString("Patient streamed")));
+		verify(dicomDirGeneratorService, never()).generateDicomDirFromDirectory(any(File.class), any(File.class));
+	}
+
+	@Test
+	@WithMockKeycloakUser(id = 3, username = "jlouis", authorities = { "ROLE_ADMIN" })
+	public void testUploadDicomZipFileNotZip() throws Exception {
+		mvc.perform(MockMvcRequestBuilders.post(UPLOAD_DICOM_PATH)
+				.contentType("multipart/form-data; boundary=" + BOUNDARY)
+				.content(multipartBody("dicom.json", "application/json", "{}".getBytes(StandardCharsets.US_ASCII))))
+		.andExpect(status().isUnprocessableEntity());
+	}
+
+	/**
+	 * Creates the body of a multipart request, with the file part only.
+	 */
+	private byte[] multipartBody(String fileName, String contentType, byte[] content) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		body.write(("--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName + "\"\r\n"
+				+ "Content-Type: " + contentType + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		body.write(content);
+		body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+		return body.toByteArray();
+	}
+
 	@Test
 	@WithMockKeycloakUser(id = 3, username = "jlouis", authorities = { "ROLE_ADMIN" })
 	public void testStartImportEEGJob() throws Exception {
@@ -212,9 +275,64 @@ public class ImporterApiControllerTest {
 	@WithMockKeycloakUser(id = 3, username = "jlouis", authorities = { "ROLE_ADMIN" })
 	public void testGetDicomImageNoPath() throws Exception {
 		
+		// the user import directory itself is not a dicom image
 		mvc.perform(MockMvcRequestBuilders.get(GET_DICOM)
 				.param("path", ""))
-		.andExpect(status().is(200));
+		.andExpect(status().is(404));
+	}
+
+	@Test
+	@WithMockKeycloakUser(id = 3, username = "jlouis", authorities = { "ROLE_ADMIN" })
+	public void testGetDicomFrameKeepsTransferSyntax() throws Exception {
+		// GIVEN a single frame dicom file in implicit VR
+		byte[] pixelData = new byte[] { 1, 2, 3, 4 };
+		File dicomFile = writeDicomFile("frame.dcm", 1, pixelData);
+
+		// WHEN its first frame is requested
+		byte[] frame = mvc.perform(MockMvcRequestBuilders.get(GET_DICOM)
+				.param("path", dicomFile.getName())
+				.param("frame", "0"))
+		.andExpect(status().isOk())
+		.andReturn().getResponse().getContentAsByteArray();
+
+		// THEN the file meta information declares the syntax the frame is written in
+		try (DicomInputStream dIS = new DicomInputStream(new ByteArrayInputStream(frame))) {
+			Attributes attributes = dIS.readDataset(-1, -1);
+			assertEquals(UID.ImplicitVRLittleEndian, dIS.getFileMetaInformation().getString(Tag.TransferSyntaxUID));
+			assertEquals(UID.ImplicitVRLittleEndian, dIS.getTransferSyntax());
+			assertArrayEquals(pixelData, attributes.getBytes(Tag.PixelData));
+		}
+	}
+
+	@Test
+	@WithMockKeycloakUser(id = 3, username = "jlouis", authorities = { "ROLE_ADMIN" })
+	public void testGetDicomFrameUnsupportedSopClass() throws Exception {
+		// a multiframe MR image storage is not an enhanced multiframe SOP class
+		File dicomFile = writeDicomFile("multiframe.dcm", 2, new byte[] { 1, 2, 3, 4 });
+
+		mvc.perform(MockMvcRequestBuilders.get(GET_DICOM)
+				.param("path", dicomFile.getName())
+				.param("frame", "1"))
+		.andExpect(status().isUnprocessableEntity());
+	}
+
+	private File writeDicomFile(String name, int numberOfFrames, byte[] pixelData) throws IOException {
+		String sopInstanceUID = "1.2.3.4." + numberOfFrames;
+		Attributes dataset = new Attributes();
+		dataset.setString(Tag.SOPClassUID, VR.UI, UID.MRImageStorage);
+		dataset.setString(Tag.SOPInstanceUID, VR.UI, sopInstanceUID);
+		dataset.setInt(Tag.NumberOfFrames, VR.IS, numberOfFrames);
+		dataset.setInt(Tag.Rows, VR.US, 1);
+		dataset.setInt(Tag.Columns, VR.US, 1);
+		dataset.setInt(Tag.BitsAllocated, VR.US, 16);
+		dataset.setBytes(Tag.PixelData, VR.OW, pixelData);
+		File dicomFile = new File(ImportUtils.getUserImportDir("/tmp"), name);
+		dicomFile.deleteOnExit();
+		try (DicomOutputStream dOS = new DicomOutputStream(dicomFile)) {
+			dOS.writeDataset(Attributes.createFileMetaInformation(sopInstanceUID, UID.MRImageStorage,
+					UID.ImplicitVRLittleEndian), dataset);
+		}
+		return dicomFile;
 	}
 
 }
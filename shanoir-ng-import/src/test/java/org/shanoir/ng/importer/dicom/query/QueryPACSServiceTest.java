@@ -0,0 +1,120 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.importer.dicom.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.times;
+
+import java.util.List;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.net.Status;
+import org.dcm4che3.net.service.QueryRetrieveLevel;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+import org.weasis.dicom.op.CFind;
+import org.weasis.dicom.param.AdvancedParams;
+import org.weasis.dicom.param.DicomNode;
+import org.weasis.dicom.param.DicomParam;
+import org.weasis.dicom.param.DicomState;
+
+/**
+ * Test class for the cache of the c-find results in QueryPACSService.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(CFind.class)
+public class QueryPACSServiceTest {
+
+	private static final String PATIENT_ID = "PAT123456";
+
+	private QueryPACSService service;
+
+	private DicomNode calling = new DicomNode("SHANOIR", "localhost", 11112);
+
+	private DicomNode called = new DicomNode("PACS", "localhost", 11113);
+
+	@Before
+	public void setUp() {
+		service = new QueryPACSService();
+		Whitebox.setInternalState(service, "cacheTTL", 60L);
+		PowerMockito.mockStatic(CFind.class);
+	}
+
+	@Test
+	public void testSuccessfulResultIsCached() throws Exception {
+		givenCFindReturns(Status.Success, 1);
+
+		assertEquals(1, queryPatient().size());
+		assertEquals(1, queryPatient().size());
+
+		verifyCFindCalled(1);
+	}
+
+	@Test
+	public void testFailedResultIsNotCached() throws Exception {
+		// GIVEN a c-find failing after a partial result
+		givenCFindReturns(Status.UnableToProcess, 1);
+
+		// WHEN the same query is done twice
+		assertEquals(1, queryPatient().size());
+		queryPatient();
+
+		// THEN the PACS is queried again
+		verifyCFindCalled(2);
+	}
+
+	@Test
+	public void testEmptyResultIsNotCached() throws Exception {
+		givenCFindReturns(Status.Success, 0);
+
+		assertEquals(0, queryPatient().size());
+		queryPatient();
+
+		verifyCFindCalled(2);
+	}
+
+	private void givenCFindReturns(int status, int nbResults) {
+		DicomState state = new DicomState(status, null, null);
+		for (int i = 0; i < nbResults; i++) {
+			Attributes attributes = new Attributes();
+			attributes.setString(Tag.PatientID, VR.LO, PATIENT_ID);
+			state.addDicomRSP(attributes);
+		}
+		PowerMockito.when(CFind.process(any(AdvancedParams.class), any(DicomNode.class), any(DicomNode.class), anyInt(),
+				any(QueryRetrieveLevel.class), (DicomParam[]) anyVararg())).thenReturn(state);
+	}
+
+	private void verifyCFindCalled(int times) {
+		PowerMockito.verifyStatic(times(times));
+		CFind.process(any(AdvancedParams.class), any(DicomNode.class), any(DicomNode.class), anyInt(),
+				any(QueryRetrieveLevel.class), (DicomParam[]) anyVararg());
+	}
+
+	private List<Attributes> queryPatient() throws Exception {
+		DicomParam[] params = { new DicomParam(Tag.PatientID, PATIENT_ID) };
+		return Whitebox.invokeMethod(service, "queryCFIND", params, QueryRetrieveLevel.PATIENT, calling, called);
+	}
+
+}
@@ -6,9 +6,16 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.List;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.shanoir.ng.importer.eeg.brainvision.BrainVisionReader;
 import org.shanoir.ng.importer.model.Channel;
 import org.shanoir.ng.importer.model.Event;
@@ -21,6 +28,14 @@ import org.shanoir.ng.shared.exception.ShanoirImportException;
  */
 public class BrainVisionReaderTest {
 
+	/** Number of channels and of samples of the generated data files. */
+	private static final int NB_CHANNELS = 3;
+
+	private static final int NB_SAMPLES = 50;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	BrainVisionReader reader;
 	File vhdrFile = new File("./src/main/resources/tests/eeg/ROBEEG_BACGU020_dlpfc_l_0002.vhdr");
 
@@ -77,4 +92,136 @@ public class BrainVisionReaderTest {
 		assertNull(event2.getDate());
 
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testReadBinaryMultiplexed() throws ShanoirImportException, IOException {
+		checkReadBinary("MULTIPLEXED", "INT_16");
+		checkReadBinary("MULTIPLEXED", "UINT_16");
+		checkReadBinary("MULTIPLEXED", "IEEE_FLOAT_32");
+	}
+
+	@Test
+	public void testReadBinaryVectorized() throws ShanoirImportException, IOException {
+		checkReadBinary("VECTORIZED", "INT_16");
+		checkReadBinary("VECTORIZED", "UINT_16");
+		checkReadBinary("VECTORIZED", "IEEE_FLOAT_32");
+	}
+
+	@Test
+	public void testReadAsciiMultiplexed() throws ShanoirImportException, IOException {
+		// one line by sample, the first column is the time
+		StringBuilder data = new StringBuilder("header line 1\nheader line 2\n");
+		for (int i = 0; i < NB_SAMPLES; i++) {
+			data.append(i);
+			for (int c = 0; c < NB_CHANNELS; c++) {
+				data.append("  ").append(value(c, i, 0));
+			}
+			data.append("\n");
+		}
+		checkReadAscii("MULTIPLEXED", data.toString());
+	}
+
+	@Test
+	public void testReadAsciiVectorized() throws ShanoirImportException, IOException {
+		// one line by channel, the first column is the channel name, with a decimal comma
+		StringBuilder data = new StringBuilder("header line 1\nheader line 2\n");
+		for (int c = 0; c < NB_CHANNELS; c++) {
+			data.append("Ch").append(c + 1);
+			for (int i = 0; i < NB_SAMPLES; i++) {
+				data.append(' ').append(String.valueOf(value(c, i, 0)).replace('.', ','));
+			}
+			data.append("\n");
+		}
+		checkReadAscii("VECTORIZED", data.toString());
+	}
+
+	private void checkReadBinary(String orientation, String binaryFormat) throws ShanoirImportException, IOException {
+		int bytes = "IEEE_FLOAT_32".equals(binaryFormat) ? 4 : 2;
+		// values above 32767 for unsigned samples
+		int offset = "UINT_16".equals(binaryFormat) ? 40000 : 0;
+		ByteBuffer data = ByteBuffer.allocate(NB_CHANNELS * NB_SAMPLES * bytes).order(ByteOrder.LITTLE_ENDIAN);
+		for (int k = 0; k < NB_CHANNELS * NB_SAMPLES; k++) {
+			boolean multiplexed = "MULTIPLEXED".equals(orientation);
+			int channel = multiplexed ? k % NB_CHANNELS : k / NB_SAMPLES;
+			int sample = multiplexed ? k / NB_CHANNELS : k % NB_SAMPLES;
+			if (bytes == 2) {
+				data.putShort((short) value(channel, sample, offset));
+			} else {
+				data.putFloat(value(channel, sample, offset));
+			}
+		}
+		File dataFile = new File(folder.newFolder(), "data.eeg");
+		Files.write(dataFile.toPath(), data.array());
+		// samples scaled by the resolution of 0.5 if they are integers
+		checkRead(writeHeader(dataFile, "BINARY", orientation, binaryFormat), bytes == 2 ? 0.5f : 1f, offset);
+	}
+
+	private void checkReadAscii(String orientation, String data) throws ShanoirImportException, IOException {
+		File dataFile = new File(folder.newFolder(), "data.txt");
+		Files.write(dataFile.toPath(), data.getBytes(StandardCharsets.UTF_8));
+		checkRead(writeHeader(dataFile, "ASCII", orientation, "INT_16"), 1f, 0);
+	}
+
+	private void checkRead(File header, float resolution, int offset) throws ShanoirImportException, IOException {
+		BrainVisionReader dataReader = new BrainVisionReader(header);
+		try {
+			// one channel
+			dataReader.read(1, 10, 20);
+			float[] samples = dataReader.getData();
+			assertEquals(10, samples.length);
+			for (int i = 0; i < samples.length; i++) {
+				assertEquals(value(1, 10 + i, offset) * resolution, samples[i], 0f);
+			}
+
+			// all channels
+			float[][] allSamples = dataReader.readAll(5, NB_SAMPLES);
+			assertEquals(NB_CHANNELS, allSamples.length);
+			for (int c = 0; c < NB_CHANNELS; c++) {
+				assertEquals(NB_SAMPLES - 5, allSamples[c].length);
+				for (int i = 0; i < allSamples[c].length; i++) {
+					assertEquals(value(c, 5 + i, offset) * resolution, allSamples[c][i], 0f);
+				}
+			}
+
+			// a window crossing the end of the data: the samples after the end are 0
+			allSamples = dataReader.readAll(NB_SAMPLES - 5, NB_SAMPLES + 5);
+			for (int c = 0; c < NB_CHANNELS; c++) {
+				for (int i = 0; i < 10; i++) {
+					float expected = i < 5 ? value(c, NB_SAMPLES - 5 + i, offset) * resolution : 0f;
+					assertEquals(expected, allSamples[c][i], 0f);
+				}
+			}
+		} finally {
+			dataReader.close();
+		}
+	}
+
+	private File writeHeader(File dataFile, String dataFormat, String orientation, String binaryFormat) throws IOException {
+		String header = "Brain Vision Data Exchange Header File Version 1.0\n"
+				+ "[Common Infos]\n"
+				+ "DataFile=" + dataFile.getName() + "\n"
+				+ "DataFormat=" + dataFormat + "\n"
+				+ "DataOrientation=" + orientation + "\n"
+				+ "NumberOfChannels=" + NB_CHANNELS + "\n"
+				+ "SamplingInterval=1000\n"
+				+ "[Binary Infos]\n"
+				+ "BinaryFormat=" + binaryFormat + "\n"
+				+ "[ASCII Infos]\n"
+				+ "SkipLines=2\n"
+				+ "SkipColumns=1\n"
+				+ "[Channel Infos]\n";
+		for (int c = 1; c <= NB_CHANNELS; c++) {
+			header += "Ch" + c + "=Ch" + c + ",,0.5,uV\n";
+		}
+		File headerFile = new File(dataFile.getParentFile(), "data.vhdr");
+		Files.write(headerFile.toPath(), header.getBytes(StandardCharsets.UTF_8));
+		return headerFile;
+	}
+
+	/**
+	 * The value of a sample in the generated data files.
+	 */
+	private static float value(int channel, int sample, int offset) {
+		return offset + channel * 100 + sample;
+	}
+}
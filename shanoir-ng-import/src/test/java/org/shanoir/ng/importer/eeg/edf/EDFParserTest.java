@@ -0,0 +1,207 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.importer.eeg.edf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for EDFParser, with an EDF+ file whose annotation signal is
+ * between two data signals.
+ */
+public class EDFParserTest {
+
+	private static final String[] LABELS = { "EEG1", "EDF Annotations", "EEG2" };
+
+	private static final int[] SAMPLES = { 4, 16, 2 };
+
+	private static final String[] RECORD_ANNOTATIONS = {
+			"+0\u0014\u0014\u0000+0.5\u00151.5\u0014Stim\u0014\u0000",
+			"+1\u0014\u0014\u0000+1.25\u0014End\u0014\u0000" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testParseHeaderAndAnnotations() throws IOException {
+		File edfFile = writeEdf("2");
+
+		EDFParserResult expected;
+		try (InputStream is = new FileInputStream(edfFile)) {
+			expected = EDFParser.parseEDF(is);
+		}
+		EDFParserResult result;
+		try (FileChannel channel = FileChannel.open(edfFile.toPath(), StandardOpenOption.READ)) {
+			result = EDFParser.parseHeaderAndAnnotations(channel);
+		}
+
+		checkAnnotations(expected.getAnnotations());
+		assertEquals(expected.getAnnotations().toString(), result.getAnnotations().toString());
+		assertNull(result.getSignal());
+		checkHeader(expected.getHeader());
+		checkHeader(result.getHeader());
+
+		// the annotation signal is removed from the data
+		assertEquals(2, expected.getSignal().getDigitalValues().length);
+		assertArrayEquals(new short[] { 0, 1, 2, 3, 100, 101, 102, 103 }, expected.getSignal().getDigitalValues()[0]);
+		assertArrayEquals(new short[] { -10, -9, -110, -109 }, expected.getSignal().getDigitalValues()[1]);
+	}
+
+	@Test
+	public void testParseHeaderAndAnnotationsUnknownNumberOfRecords() throws IOException {
+		File edfFile = writeEdf("-1");
+
+		EDFParserResult result;
+		try (FileChannel channel = FileChannel.open(edfFile.toPath(), StandardOpenOption.READ)) {
+			result = EDFParser.parseHeaderAndAnnotations(channel);
+		}
+
+		checkAnnotations(result.getAnnotations());
+		checkHeader(result.getHeader());
+	}
+
+	@Test(expected = EDFParserException.class)
+	public void testParseEDFUnknownNumberOfRecords() throws IOException {
+		File edfFile = writeEdf("-1");
+		try (InputStream is = new FileInputStream(edfFile)) {
+			EDFParser.parseEDF(is);
+		}
+	}
+
+	private static void checkAnnotations(List<EDFAnnotation> annotations) {
+		// the last annotation of the file is not returned by the parser
+		assertEquals(3, annotations.size());
+		checkAnnotation(annotations.get(0), 0, 0);
+		checkAnnotation(annotations.get(1), 0.5, 1.5, "Stim");
+		checkAnnotation(annotations.get(2), 1, 0);
+	}
+
+	private static void checkAnnotation(EDFAnnotation annotation, double onSet, double duration, String... texts) {
+		assertEquals(onSet, annotation.getOnSet(), 0);
+		assertEquals(duration, annotation.getDuration(), 0);
+		assertEquals(Arrays.asList(texts), annotation.getAnnotations());
+	}
+
+	private static void checkHeader(EDFHeader header) {
+		assertEquals(2, header.getNumberOfChannels());
+		assertArrayEquals(new String[] { "EEG1", "EEG2" }, trim(header.getChannelLabels()));
+		assertArrayEquals(new String[] { "electrode EEG1", "electrode EEG2" }, trim(header.getTransducerTypes()));
+		assertArrayEquals(new String[] { "uV", "mV" }, trim(header.getDimensions()));
+		assertArrayEquals(new Double[] { -100d, -200d }, header.getMinInUnits());
+		assertArrayEquals(new Double[] { 100d, 200d }, header.getMaxInUnits());
+		assertArrayEquals(new Integer[] { -32768, -2048 }, header.getDigitalMin());
+		assertArrayEquals(new Integer[] { 32767, 2047 }, header.getDigitalMax());
+		assertArrayEquals(new String[] { "HP:0.1Hz", "HP:0.2Hz" }, trim(header.getPrefilterings()));
+		assertArrayEquals(new Integer[] { 4, 2 }, header.getNumberOfSamples());
+		assertEquals(2, header.getReserveds().length);
+	}
+
+	private static String[] trim(String[] values) {
+		String[] trimmed = new String[values.length];
+		for (int i = 0; i < values.length; i++) {
+			trimmed[i] = values[i].trim();
+		}
+		return trimmed;
+	}
+
+	/**
+	 * Writes an EDF+ file of 2 data records, with the given number of data records in its header.
+	 */
+	private File writeEdf(String numberOfRecords) throws IOException {
+		int bytesInHeader = 256 + LABELS.length * 256;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		write(out, "0", 8);
+		write(out, "X X X X", 80);
+		write(out, "Startdate 01-JAN-2020 X X X", 80);
+		write(out, "01.01.20", 8);
+		write(out, "10.00.00", 8);
+		write(out, String.valueOf(bytesInHeader), 8);
+		write(out, "EDF+C", 44);
+		write(out, numberOfRecords, 8);
+		write(out, "1", 8);
+		write(out, String.valueOf(LABELS.length), 4);
+		for (String label : LABELS) {
+			write(out, label, 16);
+		}
+		for (String label : LABELS) {
+			write(out, label.startsWith("EDF") ? "" : "electrode " + label, 80);
+		}
+		write(out, "uV", 8, "", 8, "mV", 8);
+		write(out, "-100", 8, "-1", 8, "-200", 8);
+		write(out, "100", 8, "1", 8, "200", 8);
+		write(out, "-32768", 8, "-32768", 8, "-2048", 8);
+		write(out, "32767", 8, "32767", 8, "2047", 8);
+		write(out, "HP:0.1Hz", 80, "", 80, "HP:0.2Hz", 80);
+		for (int samples : SAMPLES) {
+			write(out, String.valueOf(samples), 8);
+		}
+		for (int i = 0; i < LABELS.length; i++) {
+			write(out, "", 32);
+		}
+		assertEquals(bytesInHeader, out.size());
+
+		for (int record = 0; record < 2; record++) {
+			ByteBuffer buffer = ByteBuffer.allocate((SAMPLES[0] + SAMPLES[1] + SAMPLES[2]) * 2).order(ByteOrder.LITTLE_ENDIAN);
+			for (int i = 0; i < SAMPLES[0]; i++) {
+				buffer.putShort((short) (record * 100 + i));
+			}
+			byte[] annotations = RECORD_ANNOTATIONS[record].getBytes(StandardCharsets.US_ASCII);
+			buffer.put(Arrays.copyOf(annotations, SAMPLES[1] * 2));
+			for (int i = 0; i < SAMPLES[2]; i++) {
+				buffer.putShort((short) (-record * 100 - 10 + i));
+			}
+			out.write(buffer.array());
+		}
+
+		File edfFile = folder.newFile("test.edf");
+		Files.write(edfFile.toPath(), out.toByteArray());
+		return edfFile;
+	}
+
+	/**
+	 * Writes the given fields, each one followed by its size, padded with spaces.
+	 */
+	private static void write(ByteArrayOutputStream out, Object... fields) throws IOException {
+		for (int i = 0; i < fields.length; i += 2) {
+			String field = (String) fields[i];
+			int size = (Integer) fields[i + 1];
+			StringBuilder padded = new StringBuilder(field);
+			while (padded.length() < size) {
+				padded.append(' ');
+			}
+			out.write(padded.toString().getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+
+}
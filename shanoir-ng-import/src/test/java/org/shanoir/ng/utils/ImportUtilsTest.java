@@ -0,0 +1,99 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.BulkData;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.io.DicomInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for ImportUtils.
+ */
+public class ImportUtilsTest {
+
+	private File dicomFile = new File("./src/main/resources/tests/sample/IMAGES/IM000000");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReadDicomHeaderDoesNotLoadPixelData() throws IOException {
+		Attributes header = ImportUtils.readDicomHeader(dicomFile);
+		Attributes fullDataset;
+		try (DicomInputStream dIS = new DicomInputStream(dicomFile)) {
+			fullDataset = dIS.readDataset(-1, -1);
+		}
+		assertTrue(header.getValue(Tag.PixelData) instanceof BulkData);
+		assertTrue(fullDataset.getValue(Tag.PixelData) instanceof byte[]);
+		assertEquals(fullDataset.getString(Tag.SOPInstanceUID), header.getString(Tag.SOPInstanceUID));
+		assertEquals(fullDataset.getString(Tag.SeriesInstanceUID), header.getString(Tag.SeriesInstanceUID));
+	}
+
+	@Test
+	public void testUnzipStreamAndFileGiveSameContent() throws IOException {
+		byte[] zip = createZip("DICOMDIR", "IMAGES/IM1", "IMAGES/SUB/IM2");
+		File zipFile = folder.newFile("upload.zip");
+		try (FileOutputStream fos = new FileOutputStream(zipFile)) {
+			fos.write(zip);
+		}
+		File fromStream = folder.newFolder("fromStream");
+		File fromFile = folder.newFolder("fromFile");
+		ImportUtils.unzip(new ByteArrayInputStream(zip), fromStream.getAbsolutePath());
+		ImportUtils.unzip(zipFile.getAbsolutePath(), fromFile.getAbsolutePath());
+		for (String name : new String[] { "DICOMDIR", "IMAGES/IM1", "IMAGES/SUB/IM2" }) {
+			assertEquals(name, new String(Files.readAllBytes(new File(fromStream, name).toPath()), StandardCharsets.UTF_8));
+			assertEquals(name, new String(Files.readAllBytes(new File(fromFile, name).toPath()), StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnzipRefusesEntryOutsideOfFolder() throws IOException {
+		byte[] zip = createZip("../outside");
+		ImportUtils.unzip(new ByteArrayInputStream(zip), folder.newFolder("dest").getAbsolutePath());
+	}
+
+	/**
+	 * Creates a zip, in which each entry contains its own name.
+	 */
+	private byte[] createZip(String... names) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (ZipOutputStream zipOut = new ZipOutputStream(bos)) {
+			for (String name : names) {
+				zipOut.putNextEntry(new ZipEntry(name));
+				zipOut.write(name.getBytes(StandardCharsets.UTF_8));
+				zipOut.closeEntry();
+			}
+		}
+		return bos.toByteArray();
+	}
+
+}
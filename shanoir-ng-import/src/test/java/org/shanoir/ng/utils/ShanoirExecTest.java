@@ -0,0 +1,87 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.utils;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Test class for the converter versions of ShanoirExec.
+ */
+public class ShanoirExecTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ShanoirExec shanoirExec;
+
+	private File converter;
+
+	@Before
+	public void setUp() {
+		shanoirExec = new ShanoirExec();
+		ReflectionTestUtils.setField(shanoirExec, "processTimeout", 1L);
+		converter = new File(folder.getRoot(), "dcm2nii");
+	}
+
+	@Test
+	public void testVersionCachedAfterSuccess() throws IOException {
+		writeConverter("echo v1");
+		assertTrue(shanoirExec.dcm2niiVersionExec(converter.getAbsolutePath()).trim().endsWith("v1"));
+
+		// the converter is not executed again
+		writeConverter("echo v2");
+		assertTrue(shanoirExec.dcm2niiVersionExec(converter.getAbsolutePath()).trim().endsWith("v1"));
+	}
+
+	@Test
+	public void testVersionNotCachedAfterFailure() throws IOException {
+		// the converter does not exist yet
+		assertNull(shanoirExec.dcm2niiVersionExec(converter.getAbsolutePath()));
+
+		writeConverter("echo v0\nexit 2");
+		assertTrue(shanoirExec.dcm2niiVersionExec(converter.getAbsolutePath()).trim().endsWith("v0"));
+
+		writeConverter("echo v1");
+		assertTrue(shanoirExec.dcm2niiVersionExec(converter.getAbsolutePath()).trim().endsWith("v1"));
+	}
+
+	@Test
+	public void testMcverterVersionExitValueOne() throws IOException {
+		// mcverter -V exits with 1 without error
+		writeConverter("echo \"mcverter $1\"\nexit 1");
+		assertTrue(shanoirExec.mcverterVersionExec(converter.getAbsolutePath()).trim().endsWith("mcverter -V"));
+
+		writeConverter("echo other");
+		assertTrue(shanoirExec.mcverterVersionExec(converter.getAbsolutePath()).trim().endsWith("mcverter -V"));
+	}
+
+	private void writeConverter(String script) throws IOException {
+		Files.write(converter.toPath(), ("#!/bin/sh\n" + script + "\n").getBytes(StandardCharsets.UTF_8));
+		converter.setExecutable(true);
+	}
+
+}
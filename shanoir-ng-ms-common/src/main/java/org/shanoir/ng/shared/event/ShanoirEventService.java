@@ -1,5 +1,18 @@
 package org.shanoir.ng.shared.event;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import org.shanoir.ng.shared.configuration.RabbitMQConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,6 +26,8 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 /**
  * Service to send every event created.
+ * The events are sent asynchronously, after a short delay: when an event only
+ * changes its progress in the meantime, only its last progress is sent.
  * @author fli
  *
  */
@@ -24,28 +39,108 @@ public class ShanoirEventService {
 
 	private static final Logger LOG = LoggerFactory.getLogger(ShanoirEventService.class);
 
+	/** Delay in ms, during which the progress updates of an event are coalesced. */
+	private static final long PUBLISH_DELAY = 200;
+
+	private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+	/** Events to send, in order. Guarded by this list. */
+	private final List<PendingEvent> pendingEvents = new ArrayList<>();
+
+	/** Last pending event by event id, to coalesce the progress updates. */
+	private final Map<Long, PendingEvent> lastPendingEvents = new HashMap<>();
+
+	private ScheduledExecutorService publishExecutor;
+
+	@PostConstruct
+	private void init() {
+		publishExecutor = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	@PreDestroy
+	private void shutdown() {
+		publishExecutor.shutdown();
+		// send the events not sent yet
+		sendPendingEvents();
+	}
+
 	/**
-	 * Publishes an event to user microservice.
+	 * Publishes an event to user microservice. The event is serialized at once,
+	 * so it can be modified and published again by the caller.
 	 * @param event
 	 */
 	public void publishEvent(ShanoirEvent event) {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.registerModule(new JavaTimeModule());
-		StringBuilder builder = new StringBuilder("Event:[")
-			.append("id=").append(event.getId()).append(";")
-			.append("user_id=").append(event.getUserId()).append(";")
-			.append("event_type=").append(event.getEventType()).append(";")
-			.append("object_id=").append(event.getObjectId()).append(";")
-			.append("message=").append(event.getMessage()).append(";")
-			.append("status=").append(event.getStatus()).append(";")
-			.append("progress=").append(event.getProgress()).append("]");
-		LOG.info(builder.toString());
+		LOG.info("Event:[id={};user_id={};event_type={};object_id={};message={};status={};progress={}]",
+				event.getId(), event.getUserId(), event.getEventType(), event.getObjectId(),
+				event.getMessage(), event.getStatus(), event.getProgress());
+		String str;
 		try {
-			String str = mapper.writeValueAsString(event);
-			rabbitTemplate.convertAndSend(RabbitMQConfiguration.EVENTS_EXCHANGE, event.getEventType(), str);
+			str = mapper.writeValueAsString(event);
 		} catch (JsonProcessingException e) {
 			LOG.error("Error while sending event: event {}, user: {}, reference: {}", event.getEventType(), event.getUserId(), event.getObjectId());
 			LOG.error("Thrown exception: {}", e);
+			return;
+		}
+		boolean schedule;
+		synchronized (pendingEvents) {
+			PendingEvent last = event.getId() != null ? lastPendingEvents.get(event.getId()) : null;
+			if (last != null && last.status == event.getStatus() && Objects.equals(last.eventType, event.getEventType())
+					&& Objects.equals(last.message, event.getMessage())) {
+				// only the progress changed: replace the pending update
+				last.json = str;
+				return;
+			}
+			PendingEvent pending = new PendingEvent(event, str);
+			pendingEvents.add(pending);
+			if (event.getId() != null) {
+				lastPendingEvents.put(event.getId(), pending);
+			}
+			schedule = pendingEvents.size() == 1;
+		}
+		if (schedule) {
+			try {
+				publishExecutor.schedule(this::sendPendingEvents, PUBLISH_DELAY, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// shutting down
+				sendPendingEvents();
+			}
+		}
+	}
+
+	private void sendPendingEvents() {
+		List<PendingEvent> events;
+		synchronized (pendingEvents) {
+			events = new ArrayList<>(pendingEvents);
+			pendingEvents.clear();
+			lastPendingEvents.clear();
+		}
+		for (PendingEvent event : events) {
+			try {
+				rabbitTemplate.convertAndSend(RabbitMQConfiguration.EVENTS_EXCHANGE, event.eventType, event.json);
+			} catch (Exception e) {
+				LOG.error("Error while sending event: event {}, message: {}", event.eventType, event.message, e);
+			}
+		}
+	}
+
+	/**
+	 * An event serialized, waiting to be sent.
+	 */
+	private static class PendingEvent {
+
+		private final String eventType;
+
+		private final String message;
+
+		private final int status;
+
+		private String json;
+
+		PendingEvent(ShanoirEvent event, String json) {
+			this.eventType = event.getEventType();
+			this.message = event.getMessage();
+			this.status = event.getStatus();
+			this.json = json;
 		}
 	}
 }
@@ -26,6 +26,8 @@ public class ShanoirEventType {
 	public static final String CREATE_DATASET_EVENT = "createDataset.event";
 	public static final String UPDATE_DATASET_EVENT = "updateDataset.event";
 	public static final String DELETE_DATASET_EVENT = "deleteDataset.event";
+	/** Progress of the deletion of the datasets of a study or subject. */
+	public static final String DELETE_DATASETS_EVENT = "deleteDatasets.event";
 
 	/** Dataset **/
 	public static final String CREATE_DATASET_ACQUISITION_EVENT = "createDatasetAcquisition.event";
@@ -0,0 +1,113 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.study.rights;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.shanoir.ng.shared.security.rights.StudyUserRight;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache of the study rights of the users: userId -> studyId -> rights, the rights
+ * of a study-user being the bitmask stored in StudyUser. The rights of a user are
+ * loaded at once with one query on first access, and invalidated by StudyUserUpdateService,
+ * when study-user commands are received from the studies microservice.
+ * A study-user, that is not confirmed, has no rights.
+ *
+ * @author mkain
+ *
+ */
+@Component
+public class StudyRightsCache {
+
+	private static final Logger LOG = LoggerFactory.getLogger(StudyRightsCache.class);
+
+	@Autowired
+	private StudyUserRightsRepository repo;
+
+	private final Map<Long, Map<Long, Integer>> rightsByUser = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Returns the rights of a user, by study id.
+	 *
+	 * @param userId
+	 * @return an unmodifiable map studyId -> rights bitmask
+	 */
+	public Map<Long, Integer> getRights(Long userId) {
+		Map<Long, Integer> rights = rightsByUser.get(userId);
+		if (rights != null) {
+			hits.incrementAndGet();
+			return rights;
+		}
+		// computeIfAbsent blocks an invalidation of the same user during the load
+		return rightsByUser.computeIfAbsent(userId, this::load);
+	}
+
+	/**
+	 * @return true, if the user has the right on the study
+	 */
+	public boolean hasRight(Long userId, Long studyId, StudyUserRight right) {
+		return StudyUser.hasRight(getRights(userId).get(studyId), right);
+	}
+
+	/**
+	 * Removes the rights of the given users, to reload them on next access.
+	 * Has to be called after the changes of the study-users are committed.
+	 *
+	 * @param userIds
+	 */
+	public void invalidate(Collection<Long> userIds) {
+		for (Long userId : userIds) {
+			rightsByUser.remove(userId);
+		}
+		LOG.debug("Study rights invalidated for users {}", userIds);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int getSize() {
+		return rightsByUser.size();
+	}
+
+	private Map<Long, Integer> load(Long userId) {
+		long missCount = misses.incrementAndGet();
+		Map<Long, Integer> rights = new HashMap<>();
+		for (Object[] studyRights : repo.findStudyRightsByUserId(userId)) {
+			rights.put((Long) studyRights[0], (Integer) studyRights[1]);
+		}
+		LOG.debug("Study rights loaded for user {} ({} studies), cache hits: {}, misses: {}",
+				userId, rights.size(), hits.get(), missCount);
+		return Collections.unmodifiableMap(rights);
+	}
+
+}
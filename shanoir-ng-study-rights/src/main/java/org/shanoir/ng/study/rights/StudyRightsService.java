@@ -14,7 +14,10 @@
 
 package org.shanoir.ng.study.rights;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.shanoir.ng.shared.security.rights.StudyUserRight;
@@ -26,7 +29,7 @@ import org.springframework.stereotype.Service;
 public class StudyRightsService {
 		
 	@Autowired
-	private StudyUserRightsRepository repo;
+	private StudyRightsCache cache;
 	
 	
 	/**
@@ -41,11 +44,7 @@ public class StudyRightsService {
 		if (userId == null) {
 			throw new IllegalStateException("UserId should not be null. Cannot check rights on the study " + studyId);
 		}
-		StudyUser founded = repo.findByUserIdAndStudyId(userId, studyId);
-		return
-				founded.getStudyUserRights() != null
-				&& founded.getStudyUserRights().contains(StudyUserRight.valueOf(rightStr))
-				&& founded.isConfirmed();
+		return cache.hasRight(userId, studyId, StudyUserRight.valueOf(rightStr));
     }
     
     /**
@@ -58,11 +57,9 @@ public class StudyRightsService {
     public boolean hasOneRightOnStudy(Long studyId, String... rightStrs) {
 		Long userId = KeycloakUtil.getTokenUserId();
 		if (userId == null) throw new IllegalStateException("UserId should not be null. Cannot check rights on the study " + studyId);
-		StudyUser founded = repo.findByUserIdAndStudyId(userId, studyId);
-		if (founded.getStudyUserRights() != null) {
-			for (String rightStr : rightStrs) {
-				if (founded.getStudyUserRights().contains(StudyUserRight.valueOf(rightStr)) && founded.isConfirmed()) return true;
-			}
+		Integer rights = cache.getRights(userId).get(studyId);
+		for (String rightStr : rightStrs) {
+			if (StudyUser.hasRight(rights, StudyUserRight.valueOf(rightStr))) return true;
 		}
 		return false;
     }
@@ -79,16 +76,38 @@ public class StudyRightsService {
 		if (userId == null) {
 			throw new IllegalStateException("UserId should not be null. Cannot check rights on the studies " + studyIds);
 		}
-		Iterable<StudyUser> founded = repo.findByUserIdAndStudyIdIn(userId, studyIds);
+		StudyUserRight right = StudyUserRight.valueOf(rightStr);
+		Map<Long, Integer> rights = cache.getRights(userId);
 		Set<Long> validIds = new HashSet<>();
-		for (StudyUser su : founded) {
-			if (su.getStudyUserRights().contains(StudyUserRight.valueOf(rightStr)) && su.isConfirmed()) {
-				validIds.add(su.getStudyId());
+		for (Long studyId : studyIds) {
+			if (StudyUser.hasRight(rights.get(studyId), right)) {
+				validIds.add(studyId);
 			}
 		}
 		return validIds;
 	}
 
+	/**
+	 * Returns the ids of the studies, in which the connected user has the given right.
+	 *
+	 * @param rightStr the right
+	 * @return the study ids
+	 */
+	public List<Long> getStudyIdsWithRight(String rightStr) {
+		Long userId = KeycloakUtil.getTokenUserId();
+		if (userId == null) {
+			throw new IllegalStateException("UserId should not be null. Cannot check rights.");
+		}
+		StudyUserRight right = StudyUserRight.valueOf(rightStr);
+		List<Long> studyIds = new ArrayList<>();
+		for (Map.Entry<Long, Integer> studyRights : cache.getRights(userId).entrySet()) {
+			if (StudyUser.hasRight(studyRights.getValue(), right)) {
+				studyIds.add(studyRights.getKey());
+			}
+		}
+		return studyIds;
+	}
+
 	/**
 	 * Check that the connected user has the given right for one study at least.
 	 * 
@@ -100,9 +119,9 @@ public class StudyRightsService {
 		if (userId == null) {
 			throw new IllegalStateException("UserId should not be null. Cannot check rights.");
 		}
-		Iterable<StudyUser> founded = repo.findByUserId(userId);
-		for (StudyUser su : founded) {
-			if (su.getStudyUserRights().contains(StudyUserRight.valueOf(rightStr)) && su.isConfirmed()) {
+		StudyUserRight right = StudyUserRight.valueOf(rightStr);
+		for (Integer rights : cache.getRights(userId).values()) {
+			if (StudyUser.hasRight(rights, right)) {
 				return true;
 			}
 		}
@@ -17,7 +17,6 @@ package org.shanoir.ng.study.rights;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Table;
@@ -26,6 +25,8 @@ import javax.persistence.UniqueConstraint;
 import org.hibernate.validator.constraints.NotBlank;
 import org.shanoir.ng.shared.security.rights.StudyUserRight;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 @Entity
 @Table(uniqueConstraints = { @UniqueConstraint(columnNames = { "studyId", "userId" }, name = "study_user_idx") })
 public class StudyUser implements StudyUserInterface {
@@ -53,9 +54,8 @@ public class StudyUser implements StudyUserInterface {
 	/** User id. */
 	private Long userId;
 
-	/** Type of the relationship. */
-	@ElementCollection
-	private List<Integer> studyUserRights;
+	/** Type of the relationship: bitmask of the rights, see {@link #toBit(StudyUserRight)}. */
+	private int studyUserRights;
 	
 	/** User name. Duplicate: master record in ms users. */
 	@NotBlank
@@ -125,8 +125,10 @@ public class StudyUser implements StudyUserInterface {
 	@Override
 	public List<StudyUserRight> getStudyUserRights() {
 		List<StudyUserRight> list = new ArrayList<>();
-		for (Integer localId : studyUserRights) {
-			list.add(StudyUserRight.getType(localId));
+		for (StudyUserRight right : StudyUserRight.values()) {
+			if (hasRight(studyUserRights, right)) {
+				list.add(right);
+			}
 		}
 		return list;
 	}
@@ -136,14 +138,39 @@ public class StudyUser implements StudyUserInterface {
 	 */
 	@Override
 	public void setStudyUserRights(List<StudyUserRight> studyUserRights) {
-		this.studyUserRights = new ArrayList<>();
+		this.studyUserRights = 0;
 		if (studyUserRights != null) {
 			for (StudyUserRight sur : studyUserRights)  {
-				this.studyUserRights.add(sur.getId());
+				this.studyUserRights |= toBit(sur);
 			}
 		}
 	}
 
+	/**
+	 * @return the rights as a bitmask
+	 */
+	@JsonIgnore
+	public int getStudyUserRightsBitmask() {
+		return studyUserRights;
+	}
+
+	/**
+	 * @param right
+	 * @return the bit of the right in the bitmask of the rights
+	 */
+	public static int toBit(StudyUserRight right) {
+		return 1 << right.getId();
+	}
+
+	/**
+	 * @param rights a bitmask of rights, can be null
+	 * @param right
+	 * @return true, if the right is in the bitmask
+	 */
+	public static boolean hasRight(Integer rights, StudyUserRight right) {
+		return rights != null && (rights & toBit(right)) != 0;
+	}
+
 	/**
 	 * @return the userId
 	 */
@@ -14,11 +14,13 @@
 
 package org.shanoir.ng.study.rights;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
 import javax.transaction.Transactional;
 
+import org.shanoir.ng.shared.security.rights.StudyUserRight;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
@@ -37,6 +39,31 @@ public interface StudyUserRightsRepository extends CrudRepository<StudyUser, Lon
 
 	Iterable<StudyUser> findByUserId(Long userId);
 
-	@Query("select su.studyId from StudyUser su where su.userId = :userId and :right in elements(su.studyUserRights)")
-	List<Long> findDistinctStudyIdByUserId(@Param("userId") Long userId, @Param("right") int right);
+	/**
+	 * Returns the ids of the studies, in which the user is confirmed and has the given right.
+	 *
+	 * @param userId
+	 * @param right the id of a StudyUserRight
+	 * @return the study ids
+	 */
+	default List<Long> findDistinctStudyIdByUserId(Long userId, int right) {
+		StudyUserRight studyUserRight = StudyUserRight.getType(right);
+		List<Long> studyIds = new ArrayList<>();
+		for (Object[] studyRights : findStudyRightsByUserId(userId)) {
+			if (StudyUser.hasRight((Integer) studyRights[1], studyUserRight)) {
+				studyIds.add((Long) studyRights[0]);
+			}
+		}
+		return studyIds;
+	}
+
+	/**
+	 * Returns the rights matrix of a user: for each study, the bitmask of the rights of the user,
+	 * 0 if the user is not confirmed in the study.
+	 *
+	 * @param userId
+	 * @return a list of [studyId, rights bitmask]
+	 */
+	@Query("select su.studyId, case when su.confirmed = true then su.studyUserRights else 0 end from StudyUser su where su.userId = :userId")
+	List<Object[]> findStudyRightsByUserId(@Param("userId") Long userId);
 }
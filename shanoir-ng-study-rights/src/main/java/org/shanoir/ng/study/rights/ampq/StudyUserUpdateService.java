@@ -22,6 +22,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.shanoir.ng.shared.security.rights.StudyUserRight;
+import org.shanoir.ng.study.rights.StudyRightsCache;
 import org.shanoir.ng.study.rights.StudyUser;
 import org.shanoir.ng.study.rights.StudyUserRightsRepository;
 import org.shanoir.ng.study.rights.command.CommandType;
@@ -40,6 +41,9 @@ public class StudyUserUpdateService {
 	@Autowired
 	private StudyUserRightsRepository studyUserRepository;
 
+	@Autowired
+	private StudyRightsCache rightsCache;
+
     public void processCommands(Iterable<StudyUserCommand> commands) {
         
         List<StudyUser> toBeCreated = new ArrayList<>();
@@ -59,8 +63,23 @@ public class StudyUserUpdateService {
 			}
         }
         
+        // users, whose cached rights are invalidated after the changes
+        Set<Long> changedUserIds = new HashSet<>();
+        for (StudyUser su : toBeCreated) {
+        	changedUserIds.add(su.getUserId());
+        }
+        if (!toBeDeleted.isEmpty()) {
+        	Iterable<StudyUser> toBeDeletedDb = studyUserRepository.findAll(toBeDeleted);
+        	if (toBeDeletedDb != null) {
+        		for (StudyUser su : toBeDeletedDb) {
+        			changedUserIds.add(su.getUserId());
+        		}
+        	}
+        }
+
         Iterable<StudyUser> toBeUpdatedDb = studyUserRepository.findAll(toBeUpdated.keySet());
         for (StudyUser existingSu : toBeUpdatedDb) {
+        	changedUserIds.add(existingSu.getUserId());
         	StudyUser replacingSu = toBeUpdated.get(existingSu.getId());
 			existingSu.setReceiveAnonymizationReport(replacingSu.isReceiveAnonymizationReport());
 			existingSu.setReceiveNewImportReport(replacingSu.isReceiveNewImportReport());
@@ -93,5 +112,6 @@ public class StudyUserUpdateService {
         	LOG.debug("Deleting {} study-user(s)", toBeDeleted.size());
         	studyUserRepository.deleteByIdIn(toBeDeleted);
         }
+        rightsCache.invalidate(changedUserIds);
     }
 }
\ No newline at end of file
@@ -0,0 +1,123 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.study.rights;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.shanoir.ng.shared.security.rights.StudyUserRight;
+import org.shanoir.ng.study.rights.ampq.StudyUserUpdateService;
+import org.shanoir.ng.study.rights.command.CommandType;
+import org.shanoir.ng.study.rights.command.StudyUserCommand;
+import org.shanoir.ng.utils.usermock.WithMockKeycloakUser;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Test class for the invalidation of StudyRightsCache by the study-user commands.
+ *
+ * @author mkain
+ *
+ */
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = { StudyRightsCache.class, StudyRightsService.class, StudyUserUpdateService.class })
+public class StudyRightsCacheTest {
+
+	private static final long LOGGED_USER_ID = 2L;
+
+	private static final long STUDY_ID = 1L;
+
+	private static final long STUDY_USER_ID = 3L;
+
+	@Autowired
+	private StudyRightsService rightsService;
+
+	@Autowired
+	private StudyUserUpdateService updateService;
+
+	@Autowired
+	private StudyRightsCache cache;
+
+	@MockBean
+	private StudyUserRightsRepository repository;
+
+	@Before
+	public void setup() {
+		// the cache is shared by the tests
+		cache.invalidate(Collections.singleton(LOGGED_USER_ID));
+		given(repository.findStudyRightsByUserId(LOGGED_USER_ID)).willReturn(
+				rights(StudyUserRight.CAN_SEE_ALL), Collections.emptyList());
+		given(repository.findAll(Collections.<Long>emptySet())).willReturn(Collections.emptyList());
+	}
+
+	@Test
+	@WithMockKeycloakUser(id = LOGGED_USER_ID)
+	public void testRightsReloadedAfterDelete() {
+		assertTrue(rightsService.hasRightOnStudy(STUDY_ID, "CAN_SEE_ALL"));
+		assertTrue(rightsService.hasRightOnStudy(STUDY_ID, "CAN_SEE_ALL"));
+		verify(repository, times(1)).findStudyRightsByUserId(LOGGED_USER_ID);
+
+		given(repository.findAll(Collections.singleton(STUDY_USER_ID))).willReturn(
+				Collections.singletonList(createStudyUser(StudyUserRight.CAN_SEE_ALL)));
+		updateService.processCommands(Collections.singletonList(new StudyUserCommand(CommandType.DELETE, STUDY_USER_ID)));
+
+		assertFalse(rightsService.hasRightOnStudy(STUDY_ID, "CAN_SEE_ALL"));
+		verify(repository, times(2)).findStudyRightsByUserId(LOGGED_USER_ID);
+	}
+
+	@Test
+	@WithMockKeycloakUser(id = LOGGED_USER_ID)
+	public void testRightsReloadedAfterUpdate() {
+		given(repository.findStudyRightsByUserId(LOGGED_USER_ID)).willReturn(
+				rights(StudyUserRight.CAN_SEE_ALL), rights(StudyUserRight.CAN_DOWNLOAD));
+		assertTrue(rightsService.hasRightOnStudy(STUDY_ID, "CAN_SEE_ALL"));
+
+		given(repository.findAll(Collections.singleton(STUDY_USER_ID))).willReturn(
+				Collections.singletonList(createStudyUser(StudyUserRight.CAN_SEE_ALL)));
+		updateService.processCommands(Collections.singletonList(
+				new StudyUserCommand(CommandType.UPDATE, createStudyUser(StudyUserRight.CAN_DOWNLOAD))));
+
+		assertFalse(rightsService.hasRightOnStudy(STUDY_ID, "CAN_SEE_ALL"));
+		assertTrue(rightsService.hasRightOnStudy(STUDY_ID, "CAN_DOWNLOAD"));
+		verify(repository, times(2)).findStudyRightsByUserId(LOGGED_USER_ID);
+	}
+
+	private List<Object[]> rights(StudyUserRight right) {
+		return Collections.singletonList(new Object[] { STUDY_ID, StudyUser.toBit(right) });
+	}
+
+	private StudyUser createStudyUser(StudyUserRight right) {
+		StudyUser studyUser = new StudyUser();
+		studyUser.setId(STUDY_USER_ID);
+		studyUser.setStudyId(STUDY_ID);
+		studyUser.setUserId(LOGGED_USER_ID);
+		studyUser.setUserName("logged");
+		studyUser.setStudyUserRights(Arrays.asList(right));
+		return studyUser;
+	}
+
+}
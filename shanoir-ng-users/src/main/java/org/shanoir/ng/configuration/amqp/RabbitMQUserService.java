@@ -53,6 +53,8 @@ public class RabbitMQUserService {
 
 	Map<Long, List<String>> series = new HashMap<>();
 
+	private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
 	/**
 	 * Receives a shanoirEvent as a json object, thus create a event in the queue
 	 * @param commandArrStr the task as a json string.
@@ -64,9 +66,7 @@ public class RabbitMQUserService {
 	        	autoDelete = "false", durable = "true", type=ExchangeTypes.TOPIC))
 	)
 	public void receiveEvent(String eventAsString) throws AmqpRejectAndDontRequeueException {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.registerModule(new JavaTimeModule());
-		LOG.info("Receiving event: " + eventAsString);
+		LOG.info("Receiving event: {}", eventAsString);
 		try {
 			ShanoirEvent event = mapper.readValue(eventAsString, ShanoirEvent.class);
 			eventsService.addEvent(event);
@@ -87,8 +87,6 @@ public class RabbitMQUserService {
 	        	autoDelete = "false", durable = "true", type=ExchangeTypes.TOPIC))
 	)
 	public void receiveImportEvent(String eventAsString) throws AmqpRejectAndDontRequeueException {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.registerModule(new JavaTimeModule());
 		try {
 			ShanoirEvent event = mapper.readValue(eventAsString, ShanoirEvent.class);
 			// Do nothing if it's not a success
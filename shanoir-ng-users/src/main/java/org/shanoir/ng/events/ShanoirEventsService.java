@@ -1,21 +1,23 @@
 package org.shanoir.ng.events;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
 
 import org.apache.commons.lang3.time.DateUtils;
 import org.shanoir.ng.shared.event.ShanoirEventType;
-import org.shanoir.ng.tasks.AsyncTaskApiController;
 import org.shanoir.ng.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.MediaType;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * Service managing ShanoirEvents
@@ -28,12 +30,35 @@ public class ShanoirEventsService {
 	@Autowired
 	ShanoirEventRepository repository;
 
+	@Autowired
+	SseEventDispatcher dispatcher;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
 	private static final Logger LOG = LoggerFactory.getLogger(ShanoirEventsService.class);
 
+	/** Delay in ms between two saves of the received events. */
+	private static final long SAVE_DELAY = 1000;
+
+	/** Events received and not saved yet, the last update by event id. Guarded by this map. */
+	private final Map<Long, ShanoirEvent> eventsToSave = new LinkedHashMap<>();
 
+	private TransactionTemplate transactionTemplate;
+
+	@PostConstruct
+	private void init() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * Adds an event: it is saved with the next batch of events, and pushed to the UI at once.
+	 * @param event
+	 */
 	public void addEvent(ShanoirEvent event) {
-		// Call repository
-		repository.save(event);
+		synchronized (eventsToSave) {
+			eventsToSave.put(event.getId(), event);
+		}
 
 		// Push notification to UI
 		if (ShanoirEventType.IMPORT_DATASET_EVENT.equals(event.getEventType())) {
@@ -45,6 +70,38 @@ public class ShanoirEventsService {
 		return Utils.toList(repository.findByUserIdAndEventType(userId, eventType));
 	}
 
+	/**
+	 * Saves the events received since the last save, in one transaction.
+	 */
+	@Scheduled(fixedDelay = SAVE_DELAY)
+	public void saveEvents() {
+		List<ShanoirEvent> events;
+		synchronized (eventsToSave) {
+			if (eventsToSave.isEmpty()) {
+				return;
+			}
+			events = new ArrayList<>(eventsToSave.values());
+			eventsToSave.clear();
+		}
+		try {
+			transactionTemplate.execute(status -> {
+				// load the existing events at once, so that they are not selected one by one when merged
+				repository.findAll(ids(events));
+				return repository.save(events);
+			});
+		} catch (Exception e) {
+			LOG.error("Error while saving {} events.", events.size(), e);
+		}
+	}
+
+	private List<Long> ids(List<ShanoirEvent> events) {
+		List<Long> ids = new ArrayList<>();
+		for (ShanoirEvent event : events) {
+			ids.add(event.getId());
+		}
+		return ids;
+	}
+
 	/**
 	 * Deletes everyday events older than 1 year.
 	 */
@@ -56,40 +113,10 @@ public class ShanoirEventsService {
 	}
 
 	/**
-	 * Sends an event using an emiter
+	 * Sends an event to the emitters of its user, without waiting for it to be sent.
 	 * @param notification the event to send
 	 */
 	public void sendSseEventsToUI(ShanoirEvent notification) {
-        List<SseEmitter> sseEmitterListToRemove = new ArrayList<>();
-        AsyncTaskApiController.emitters.forEach((SseEmitter emitter) -> {
-            try {
-                emitter.send(notification, MediaType.APPLICATION_JSON);
-            } catch (IOException e2) {
-            	emitter.complete();
-                sseEmitterListToRemove.add(emitter);
-                LOG.error("Error while send task to UI ", e2);
-            } catch (Exception e) {
-            	emitter.complete();
-                sseEmitterListToRemove.add(emitter);
-                LOG.error("Error while send task to UI ", e);
-                throw e;
-            }
-        });
-        AsyncTaskApiController.emitters.removeAll(sseEmitterListToRemove);
-    }
-
-	@Scheduled(fixedDelay = 30000)
-	private void keepConnectionAlive( ) {
-        List<SseEmitter> sseEmitterListToRemove = new ArrayList<>();
-        AsyncTaskApiController.emitters.forEach((SseEmitter emitter) -> {
-            try {
-                emitter.send("{}", MediaType.APPLICATION_JSON);
-            } catch (Exception e) {
-            	emitter.complete();
-                sseEmitterListToRemove.add(emitter);
-                LOG.error("Error while keeping connection alive. ", e);
-            }
-        });
-        AsyncTaskApiController.emitters.removeAll(sseEmitterListToRemove);
+		dispatcher.dispatch(notification);
 	}
 }
@@ -0,0 +1,227 @@
+package org.shanoir.ng.events;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Dispatches the events to the SseEmitters of their user, without blocking the caller:
+ * each emitter has a bounded queue, that is sent by a thread of the dispatch pool.
+ * The updates of the same event waiting in a queue are coalesced into the last one,
+ * and the oldest events are dropped, when a queue is full (slow client).
+ *
+ * @author fli
+ *
+ */
+@Component
+public class SseEventDispatcher {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SseEventDispatcher.class);
+
+	private static final String KEEP_ALIVE = "{}";
+
+	@Value("${sse.dispatch.threads:4}")
+	private int dispatchThreads;
+
+	@Value("${sse.queue.size:100}")
+	private int queueSize;
+
+	private ExecutorService dispatchExecutor;
+
+	private final Map<Long, Set<EmitterQueue>> emittersByUser = new ConcurrentHashMap<>();
+
+	private final AtomicLong droppedEvents = new AtomicLong();
+
+	@PostConstruct
+	private void init() {
+		dispatchExecutor = Executors.newFixedThreadPool(dispatchThreads);
+	}
+
+	@PreDestroy
+	private void shutdown() {
+		dispatchExecutor.shutdownNow();
+	}
+
+	/**
+	 * Registers an emitter of a user, until it completes or times out.
+	 *
+	 * @param userId
+	 * @param emitter
+	 */
+	public void register(Long userId, SseEmitter emitter) {
+		EmitterQueue queue = new EmitterQueue(userId, emitter);
+		emittersByUser.computeIfAbsent(userId, key -> ConcurrentHashMap.newKeySet()).add(queue);
+		emitter.onCompletion(() -> unregister(queue));
+		emitter.onTimeout(() -> unregister(queue));
+	}
+
+	/**
+	 * Queues the event for all the emitters of its user.
+	 *
+	 * @param event
+	 */
+	public void dispatch(ShanoirEvent event) {
+		if (event.getUserId() == null) {
+			// no emitter can be registered without user
+			return;
+		}
+		Set<EmitterQueue> queues = emittersByUser.get(event.getUserId());
+		if (queues == null) {
+			return;
+		}
+		Object key = event.getId() != null ? event.getId() : new Object();
+		for (EmitterQueue queue : queues) {
+			queue.offer(key, event);
+		}
+	}
+
+	/**
+	 * Pings the idle emitters, so that the connections are not closed by proxies.
+	 */
+	@Scheduled(fixedDelay = 30000)
+	public void keepConnectionAlive() {
+		int emitters = 0;
+		for (Set<EmitterQueue> queues : emittersByUser.values()) {
+			for (EmitterQueue queue : queues) {
+				queue.offer(KEEP_ALIVE, KEEP_ALIVE);
+				emitters++;
+			}
+		}
+		LOG.debug("SSE: {} users, {} emitters, {} queued events, {} dropped events",
+				emittersByUser.size(), emitters, getQueueDepth(), droppedEvents.get());
+	}
+
+	/**
+	 * @return the number of events waiting in all queues
+	 */
+	public int getQueueDepth() {
+		int depth = 0;
+		for (Set<EmitterQueue> queues : emittersByUser.values()) {
+			for (EmitterQueue queue : queues) {
+				depth += queue.size();
+			}
+		}
+		return depth;
+	}
+
+	/**
+	 * @return the number of events dropped since the start, because a queue was full
+	 */
+	public long getDroppedEvents() {
+		return droppedEvents.get();
+	}
+
+	private void unregister(EmitterQueue queue) {
+		emittersByUser.computeIfPresent(queue.userId, (key, queues) -> {
+			queues.remove(queue);
+			return queues.isEmpty() ? null : queues;
+		});
+	}
+
+	/**
+	 * The events waiting to be sent to one emitter. Only one dispatch task runs
+	 * at a time for an emitter, to keep the order of the events.
+	 */
+	private class EmitterQueue implements Runnable {
+
+		private final Long userId;
+
+		private final SseEmitter emitter;
+
+		/** Key (event id) -> last update of the event, in the order of the first update. */
+		private final LinkedHashMap<Object, Object> pending = new LinkedHashMap<>();
+
+		private boolean scheduled;
+
+		private boolean closed;
+
+		EmitterQueue(Long userId, SseEmitter emitter) {
+			this.userId = userId;
+			this.emitter = emitter;
+		}
+
+		void offer(Object key, Object data) {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				if (KEEP_ALIVE.equals(key) && (scheduled || !pending.isEmpty())) {
+					// the connection is not idle
+					return;
+				}
+				if (!pending.containsKey(key) && pending.size() >= queueSize) {
+					Iterator<Object> oldest = pending.keySet().iterator();
+					oldest.next();
+					oldest.remove();
+					droppedEvents.incrementAndGet();
+				}
+				pending.put(key, data);
+				if (scheduled) {
+					return;
+				}
+				scheduled = true;
+			}
+			try {
+				dispatchExecutor.execute(this);
+			} catch (RejectedExecutionException e) {
+				// shutting down
+				close();
+			}
+		}
+
+		synchronized int size() {
+			return pending.size();
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				Object data;
+				synchronized (this) {
+					Iterator<Object> iterator = pending.values().iterator();
+					if (closed || !iterator.hasNext()) {
+						scheduled = false;
+						return;
+					}
+					data = iterator.next();
+					iterator.remove();
+				}
+				try {
+					emitter.send(data, MediaType.APPLICATION_JSON);
+				} catch (Exception e) {
+					LOG.error("Error while sending event to UI, the emitter is closed. ", e);
+					close();
+					emitter.complete();
+					return;
+				}
+			}
+		}
+
+		private void close() {
+			synchronized (this) {
+				closed = true;
+				scheduled = false;
+				pending.clear();
+			}
+			unregister(this);
+		}
+	}
+
+}
@@ -1,8 +1,6 @@
 package org.shanoir.ng.tasks;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
@@ -11,6 +9,7 @@ import java.util.stream.Collectors;
 import org.apache.commons.lang3.time.DateUtils;
 import org.shanoir.ng.events.ShanoirEvent;
 import org.shanoir.ng.events.ShanoirEventsService;
+import org.shanoir.ng.events.SseEventDispatcher;
 import org.shanoir.ng.shared.event.ShanoirEventType;
 import org.shanoir.ng.utils.KeycloakUtil;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,7 +30,8 @@ public class AsyncTaskApiController implements AsyncTaskApi {
 	@Autowired
 	ShanoirEventsService taskService;
 
-    public static final List<SseEmitter> emitters = Collections.synchronizedList(new ArrayList<>());
+	@Autowired
+	SseEventDispatcher eventDispatcher;
 
 	@Override
 	public ResponseEntity<List<ShanoirEvent>> findTasks() {
@@ -58,8 +58,7 @@ public class AsyncTaskApiController implements AsyncTaskApi {
 	@Override
     public ResponseEntity<SseEmitter> updateTasks() throws IOException {
         SseEmitter emitter = new SseEmitter(-1L);
-        emitters.add(emitter);
-        emitter.onCompletion(() -> emitters.remove(emitter));
+        eventDispatcher.register(KeycloakUtil.getTokenUserId(), emitter);
         return new ResponseEntity<>(emitter,HttpStatus.OK);
     }
 }
@@ -0,0 +1,109 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.shanoir.ng.shared.event.ShanoirEventType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Test class for the batched save of the events in ShanoirEventsService.
+ *
+ * @author fli
+ *
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ShanoirEventsServiceTest {
+
+	@Mock
+	private ShanoirEventRepository repository;
+
+	@Mock
+	private SseEventDispatcher dispatcher;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
+	@InjectMocks
+	private ShanoirEventsService service;
+
+	@Captor
+	private ArgumentCaptor<Iterable<ShanoirEvent>> eventsCaptor;
+
+	@Before
+	public void setup() {
+		ReflectionTestUtils.invokeMethod(service, "init");
+	}
+
+	@Test
+	public void testSaveLastUpdateOfEvents() {
+		// GIVEN several updates of the first event
+		ShanoirEvent event1 = createEvent(1L, 0.1f);
+		ShanoirEvent event2 = createEvent(2L, 0.5f);
+		ShanoirEvent event1Update = createEvent(1L, 0.6f);
+		ShanoirEvent event3 = createEvent(3L, 1f);
+
+		// WHEN the events are received
+		service.addEvent(event1);
+		service.addEvent(event2);
+		service.addEvent(event1Update);
+		service.addEvent(event3);
+
+		// THEN each update is pushed at once, and the last update of each event is saved at once
+		verify(dispatcher, times(4)).dispatch(any(ShanoirEvent.class));
+		verify(repository, never()).save(any(Iterable.class));
+
+		service.saveEvents();
+		verify(repository).findAll(Arrays.asList(1L, 2L, 3L));
+		verify(repository, times(1)).save(eventsCaptor.capture());
+		List<ShanoirEvent> saved = new ArrayList<>();
+		eventsCaptor.getValue().forEach(saved::add);
+		assertEquals(Arrays.asList(event1Update, event2, event3), saved);
+
+		// nothing left to save
+		service.saveEvents();
+		verify(repository, times(1)).save(any(Iterable.class));
+		verify(repository, times(1)).findAll(anyListOf(Long.class));
+	}
+
+	private ShanoirEvent createEvent(Long id, float progress) {
+		ShanoirEvent event = new ShanoirEvent();
+		event.setId(id);
+		event.setUserId(1L);
+		event.setEventType(ShanoirEventType.IMPORT_DATASET_EVENT);
+		event.setProgress(progress);
+		return event;
+	}
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Shanoir NG - Import, manage and share neuroimaging data
+ * Copyright (C) 2009-2019 Inria - https://www.inria.fr/
+ * Contact us on https://project.inria.fr/shanoir/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/gpl-3.0.html
+ */
+
+package org.shanoir.ng.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.shanoir.ng.shared.event.ShanoirEventType;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Test class for SseEventDispatcher, with a slow emitter blocked in its first send.
+ *
+ * @author fli
+ *
+ */
+public class SseEventDispatcherTest {
+
+	private static final long USER_ID = 1L;
+
+	private SseEventDispatcher dispatcher;
+
+	private final CountDownLatch sending = new CountDownLatch(1);
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() {
+		dispatcher = new SseEventDispatcher();
+		ReflectionTestUtils.setField(dispatcher, "dispatchThreads", 2);
+		ReflectionTestUtils.setField(dispatcher, "queueSize", 2);
+		ReflectionTestUtils.invokeMethod(dispatcher, "init");
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		ReflectionTestUtils.invokeMethod(dispatcher, "shutdown");
+	}
+
+	@Test
+	public void testDispatchToEmittersOfUser() throws Exception {
+		SseEmitter emitter = mock(SseEmitter.class);
+		SseEmitter otherEmitter = mock(SseEmitter.class);
+		SseEmitter otherUserEmitter = mock(SseEmitter.class);
+		dispatcher.register(USER_ID, emitter);
+		dispatcher.register(USER_ID, otherEmitter);
+		dispatcher.register(2L, otherUserEmitter);
+
+		ShanoirEvent event = createEvent(1L, USER_ID, 0.5f);
+		dispatcher.dispatch(event);
+		// an event without user is not sent
+		dispatcher.dispatch(createEvent(2L, null, 0.5f));
+
+		verify(emitter, timeout(1000)).send(event, MediaType.APPLICATION_JSON);
+		verify(otherEmitter, timeout(1000)).send(event, MediaType.APPLICATION_JSON);
+		verify(emitter, times(1)).send(any(), any(MediaType.class));
+		verify(otherUserEmitter, never()).send(any(), any(MediaType.class));
+	}
+
+	@Test
+	public void testCoalesceUpdatesOfEvent() throws Exception {
+		SseEmitter emitter = registerBlockedEmitter();
+
+		ShanoirEvent update1 = createEvent(2L, USER_ID, 0.1f);
+		ShanoirEvent update2 = createEvent(2L, USER_ID, 0.5f);
+		ShanoirEvent update3 = createEvent(2L, USER_ID, 0.9f);
+		dispatcher.dispatch(update1);
+		dispatcher.dispatch(update2);
+		dispatcher.dispatch(update3);
+		assertEquals(1, dispatcher.getQueueDepth());
+
+		release.countDown();
+		verify(emitter, timeout(1000)).send(update3, MediaType.APPLICATION_JSON);
+		verify(emitter, never()).send(update1, MediaType.APPLICATION_JSON);
+		verify(emitter, never()).send(update2, MediaType.APPLICATION_JSON);
+		assertEquals(0, dispatcher.getDroppedEvents());
+	}
+
+	@Test
+	public void testDropOldestEventWhenQueueIsFull() throws Exception {
+		SseEmitter emitter = registerBlockedEmitter();
+
+		ShanoirEvent event2 = createEvent(2L, USER_ID, 0.5f);
+		ShanoirEvent event3 = createEvent(3L, USER_ID, 0.5f);
+		ShanoirEvent event4 = createEvent(4L, USER_ID, 0.5f);
+		dispatcher.dispatch(event2);
+		dispatcher.dispatch(event3);
+		dispatcher.dispatch(event4);
+		assertEquals(2, dispatcher.getQueueDepth());
+		assertEquals(1, dispatcher.getDroppedEvents());
+
+		release.countDown();
+		verify(emitter, timeout(1000)).send(event4, MediaType.APPLICATION_JSON);
+		InOrder order = inOrder(emitter);
+		order.verify(emitter).send(event3, MediaType.APPLICATION_JSON);
+		order.verify(emitter).send(event4, MediaType.APPLICATION_JSON);
+		verify(emitter, never()).send(event2, MediaType.APPLICATION_JSON);
+	}
+
+	/**
+	 * Registers an emitter, whose send of a first event blocks until the release.
+	 */
+	private SseEmitter registerBlockedEmitter() throws Exception {
+		SseEmitter emitter = mock(SseEmitter.class);
+		ShanoirEvent first = createEvent(1L, USER_ID, 1f);
+		doAnswer(invocation -> {
+			sending.countDown();
+			release.await();
+			return null;
+		}).when(emitter).send(first, MediaType.APPLICATION_JSON);
+		dispatcher.register(USER_ID, emitter);
+
+		dispatcher.dispatch(first);
+		assertTrue(sending.await(1, TimeUnit.SECONDS));
+		return emitter;
+	}
+
+	private ShanoirEvent createEvent(Long id, Long userId, float progress) {
+		ShanoirEvent event = new ShanoirEvent();
+		event.setId(id);
+		event.setUserId(userId);
+		event.setEventType(ShanoirEventType.IMPORT_DATASET_EVENT);
+		event.setProgress(progress);
+		return event;
+	}
+
+}
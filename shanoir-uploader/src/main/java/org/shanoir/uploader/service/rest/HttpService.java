@@ -5,6 +5,8 @@ import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
@@ -16,17 +18,24 @@ import org.apache.http.HttpResponse;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLContexts;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.shanoir.uploader.ShUpOnloadConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,6 +67,12 @@ public class HttpService {
 
 	private static final String DEV_LOCAL = "shanoir-ng-nginx";
 
+	/** Max number of connections per client, enough for the parallel uploads. */
+	private static final int MAX_CONNECTIONS = 10;
+
+	/** One pooled client per configuration (dev or not, proxy), shared by all instances. */
+	private static final Map<String, CloseableHttpClient> httpClients = new ConcurrentHashMap<>();
+
 	// only used for dev environments, not for prod
 	private SSLConnectionSocketFactory socketFactoryDevEnv;
 
@@ -97,11 +112,27 @@ public class HttpService {
 
 	public HttpResponse get(String url) {
 		try {
-			HttpClient httpClient = buildHttpClient(url);
 			HttpGet httpGet = new HttpGet(url);
 			httpGet.addHeader("Authorization", "Bearer " + ShUpOnloadConfig.getTokenString());
-			HttpResponse response = httpClient.execute(httpGet);
-			return response;
+			return execute(url, httpGet);
+		} catch (Exception e) {
+			LOG.error(e.getMessage(), e);
+		}
+		return null;
+	}
+
+	/**
+	 * Gets a response without buffering its entity: the caller has to read the content
+	 * of the entity until its end, or to consume it, to release the connection.
+	 * 
+	 * @param url
+	 * @return the response or null
+	 */
+	public HttpResponse download(String url) {
+		try {
+			HttpGet httpGet = new HttpGet(url);
+			httpGet.addHeader("Authorization", "Bearer " + ShUpOnloadConfig.getTokenString());
+			return getHttpClient(url).execute(httpGet);
 		} catch (Exception e) {
 			LOG.error(e.getMessage(), e);
 		}
@@ -110,7 +141,6 @@ public class HttpService {
 
 	public HttpResponse post(String url, String json, boolean isLoginPost) {
 		try {
-			HttpClient httpClient = buildHttpClient(url);
 			HttpPost httpPost = new HttpPost(url);
 			if (isLoginPost) {
 				httpPost.setHeader("Content-type", "application/x-www-form-urlencoded");
@@ -119,8 +149,7 @@ public class HttpService {
 			}
 			StringEntity requestEntity = new StringEntity(json, ContentType.APPLICATION_JSON);
 			httpPost.setEntity(requestEntity);
-			HttpResponse response = httpClient.execute(httpPost);
-			return response;
+			return execute(url, httpPost);
 		} catch (Exception e) {
 			LOG.error(e.getMessage(), e);
 		}
@@ -129,18 +158,13 @@ public class HttpService {
 
 	public HttpResponse postFile(String url, String tempDirId, File file) {
 		try {
-			HttpClient httpClient = buildHttpClient(url);
 			HttpPost httpPost = new HttpPost(url + tempDirId);
 			httpPost.addHeader("Authorization", "Bearer " + ShUpOnloadConfig.getTokenString());
 			MultipartEntityBuilder builder = MultipartEntityBuilder.create();
-			// for (Iterator iterator = files.iterator(); iterator.hasNext();) {
-			// File file = (File) iterator.next();
 			builder.addBinaryBody("file", file, ContentType.create("application/octet-stream"), file.getName());
-			// }
 			HttpEntity entity = builder.build();
 			httpPost.setEntity(entity);
-			HttpResponse response = httpClient.execute(httpPost);
-			return response;
+			return execute(url, httpPost);
 		} catch (Exception e) {
 			LOG.error(e.getMessage(), e);
 		}
@@ -149,86 +173,93 @@ public class HttpService {
 
 	public HttpResponse put(String url, String json) {
 		try {
-			HttpClient httpClient = buildHttpClient(url);
 			HttpPut httpPut = new HttpPut(url);
 			httpPut.addHeader("Authorization", "Bearer " + ShUpOnloadConfig.getTokenString());
 			StringEntity requestEntity = new StringEntity(json, ContentType.APPLICATION_JSON);
 			httpPut.setEntity(requestEntity);
-			HttpResponse response = httpClient.execute(httpPut);
-			return response;
+			return execute(url, httpPut);
 		} catch (Exception e) {
 			LOG.error(e.getMessage(), e);
 		}
 		return null;
 	}
 
-	private CloseableHttpClient buildHttpClient(String url) throws Exception {
+	/**
+	 * Executes the request and buffers the (small) entity of the response, so that
+	 * the connection goes back to the pool at once, even if the caller does not read it.
+	 */
+	private HttpResponse execute(String url, HttpUriRequest request) throws Exception {
+		HttpResponse response = getHttpClient(url).execute(request);
+		HttpEntity entity = response.getEntity();
+		if (entity != null) {
+			response.setEntity(new BufferedHttpEntity(entity));
+		}
+		return response;
+	}
+
+	/**
+	 * Returns the pooled client of the current proxy configuration, built on first use:
+	 * its connections are kept alive and reused by all requests, to avoid a TLS handshake
+	 * per request.
+	 */
+	private CloseableHttpClient getHttpClient(String url) throws Exception {
+		boolean devEnv = url.contains(DEV_SERVER) || url.contains(DEV_LOCAL);
+		String key = devEnv + "|" + serviceConfiguration.isProxyEnable() + "|" + serviceConfiguration.getProxyHost()
+				+ "|" + serviceConfiguration.getProxyPort() + "|" + serviceConfiguration.getProxyUser()
+				+ "|" + serviceConfiguration.getProxyPassword();
+		CloseableHttpClient httpClient = httpClients.get(key);
+		if (httpClient == null) {
+			synchronized (httpClients) {
+				httpClient = httpClients.get(key);
+				if (httpClient == null) {
+					httpClient = buildHttpClient(devEnv);
+					httpClients.put(key, httpClient);
+				}
+			}
+		}
+		return httpClient;
+	}
+
+	private CloseableHttpClient buildHttpClient(boolean devEnv) throws Exception {
+		// as a connection manager is set, the socket factory has to be given to the connection manager
+		SSLConnectionSocketFactory sslSocketFactory;
+		if (devEnv) {
+			sslSocketFactory = socketFactoryDevEnv;
+		} else {
+			// the below code solves the GitHub issue: https://github.com/fli-iam/shanoir-ng/issues/582,
+			// as Apache HttpClient does not per default use the HostnameVerifier from HttpsURLConnection (JDK/JRE)
+			sslSocketFactory = new SSLConnectionSocketFactory(SSLContexts.createDefault(), new CustomHostnameVerifier());
+		}
+		Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory())
+				.register("https", sslSocketFactory)
+				.build();
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+		connectionManager.setMaxTotal(MAX_CONNECTIONS);
+		connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+		HttpClientBuilder builder = HttpClientBuilder.create().setConnectionManager(connectionManager);
 		if (serviceConfiguration.isProxyEnable()) {
 			HttpHost proxy = null;
-			CredentialsProvider credsProvider = null;
 			// Host and port are given
 			if (serviceConfiguration.getProxyHost() != null && serviceConfiguration.getProxyPort() != null) {
 				proxy = new HttpHost(serviceConfiguration.getProxyHost(), Integer.valueOf(serviceConfiguration.getProxyPort()));
-				// user and password are additionally set
-				if (serviceConfiguration.getProxyUser() != null && serviceConfiguration.getProxyPassword() != null) {
-					credsProvider = new BasicCredentialsProvider();
-				    credsProvider.setCredentials(
-				            new AuthScope(proxy),
-				            new UsernamePasswordCredentials(serviceConfiguration.getProxyUser(), serviceConfiguration.getProxyPassword()));
-				}
 			// Only host is configured, so do not set port
 			} else if (serviceConfiguration.getProxyHost() != null) {
 				proxy = new HttpHost(serviceConfiguration.getProxyHost());
-				// user and password are additionally set
-				if (serviceConfiguration.getProxyUser() != null && serviceConfiguration.getProxyPassword() != null) {
-					credsProvider = new BasicCredentialsProvider();
-				    credsProvider.setCredentials(
-				            new AuthScope(proxy),
-				            new UsernamePasswordCredentials(serviceConfiguration.getProxyUser(), serviceConfiguration.getProxyPassword()));
-				}
 			} else {
 				throw new Exception("Proxy enabled, but no host set or only port does not work.");
 			}
-			if (proxy != null && credsProvider != null) {
-				if (url.contains(DEV_SERVER) || url.contains(DEV_LOCAL)) {
-					return HttpClientBuilder.create()
-							.setSSLSocketFactory(socketFactoryDevEnv)
-							.setDefaultCredentialsProvider(credsProvider)
-							.setProxy(proxy).build();
-				} else {
-					// the below code solves the GitHub issue: https://github.com/fli-iam/shanoir-ng/issues/582,
-					// as Apache HttpClient does not per default use the HostnameVerifier from HttpsURLConnection (JDK/JRE)
-					return HttpClientBuilder.create()
-							.setHostnameVerifier(new CustomHostnameVerifier())
-							.setDefaultCredentialsProvider(credsProvider)
-							.setProxy(proxy).build();
-				}
-			} else if (proxy != null) {
-				if (url.contains(DEV_SERVER) || url.contains(DEV_LOCAL)) {
-					return HttpClientBuilder.create()
-							.setSSLSocketFactory(socketFactoryDevEnv)
-							.setProxy(proxy).build();
-				} else {
-					// the below code solves the GitHub issue: https://github.com/fli-iam/shanoir-ng/issues/582,
-					// as Apache HttpClient does not per default use the HostnameVerifier from HttpsURLConnection (JDK/JRE)
-					return HttpClientBuilder.create()
-							.setHostnameVerifier(new CustomHostnameVerifier())
-							.setProxy(proxy).build();
-				}
-			}
-		/**
-		 * No proxy case:
-		 */
-		} else {
-			if (url.contains(DEV_SERVER) || url.contains(DEV_LOCAL)) {
-				return HttpClientBuilder.create().setSSLSocketFactory(socketFactoryDevEnv).build();
-			} else {
-				// the below code solves the GitHub issue: https://github.com/fli-iam/shanoir-ng/issues/582,
-				// as Apache HttpClient does not per default use the HostnameVerifier from HttpsURLConnection (JDK/JRE)
-				return HttpClientBuilder.create().setHostnameVerifier(new CustomHostnameVerifier()).build();
+			builder.setProxy(proxy);
+			// user and password are additionally set
+			if (serviceConfiguration.getProxyUser() != null && serviceConfiguration.getProxyPassword() != null) {
+				CredentialsProvider credsProvider = new BasicCredentialsProvider();
+				credsProvider.setCredentials(
+						new AuthScope(proxy),
+						new UsernamePasswordCredentials(serviceConfiguration.getProxyUser(), serviceConfiguration.getProxyPassword()));
+				builder.setDefaultCredentialsProvider(credsProvider);
 			}
 		}
-		return null;
+		return builder.build();
 	}
 
 }
@@ -371,11 +371,12 @@ public class ShanoirUploaderServiceClientNG {
 	public HttpResponse downloadDatasetById(Long datasetId, String format) throws Exception {
 		if (datasetId != null) {
 			URI url = UriBuilder.fromUri(this.serviceURLDatasets + "download/" + datasetId).queryParam("format", format).build();
-			HttpResponse response = httpService.get(url.toString());
+			HttpResponse response = httpService.download(url.toString());
 			int code = response.getStatusLine().getStatusCode();
 			if (code == HttpStatus.SC_OK) {
 				return response;
 			} else {
+				EntityUtils.consume(response.getEntity());
 				logger.error("Could not get dataset id " + datasetId + " (status code: " + code + ", message: " + apiResponseMessages.getOrDefault(code, "unknown status code") + ")");
 			}
 		}
@@ -386,11 +387,12 @@ public class ShanoirUploaderServiceClientNG {
 		if (datasetIds != null) {
 			String datasetIdsString = datasetIds.stream().map(Object::toString).collect(Collectors.joining(","));
 			String url = this.serviceURLDatasets + "massiveDownload?datasetIds=" + datasetIdsString + "&format=" + format;
-			HttpResponse response = httpService.get(url.toString());
+			HttpResponse response = httpService.download(url.toString());
 			int code = response.getStatusLine().getStatusCode();
 			if (code == HttpStatus.SC_OK) {
 				return response;
 			} else {
+				EntityUtils.consume(response.getEntity());
 				logger.error("Could not get dataset ids " + datasetIds + " (status code: " + code + ", message: " + apiResponseMessages.getOrDefault(code, "unknown status code") + ")");
 			}
 		}
@@ -400,11 +402,12 @@ public class ShanoirUploaderServiceClientNG {
 	public HttpResponse downloadDatasetsByStudyId(Long studyId, String format) throws Exception {
 		if (studyId != null) {
 			URI url = UriBuilder.fromUri(this.serviceURLDatasets + "massiveDownloadByStudy").queryParam("studyId", studyId).queryParam("format", format).build();
-			HttpResponse response = httpService.get(url.toString());
+			HttpResponse response = httpService.download(url.toString());
 			int code = response.getStatusLine().getStatusCode();
 			if (code == HttpStatus.SC_OK) {
 				return response;
 			} else {
+				EntityUtils.consume(response.getEntity());
 				logger.error("Could not get dataset of study " + studyId + " (status code: " + code + ", message: " + apiResponseMessages.getOrDefault(code, "unknown status code") + ")");
 			}
 		}
@@ -9,6 +9,11 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.log4j.Logger;
 import org.jboss.seam.security.Identity;
@@ -48,6 +53,12 @@ public class UploadServiceJob implements Job {
 
 	private static Logger logger = Logger.getLogger(UploadServiceJob.class);
 
+	/** Number of files uploaded in parallel for ShanoirNG. */
+	private static final int UPLOAD_THREADS = 4;
+
+	/** Min delay in ms between two writes of the upload percentage in the nominative data upload job. */
+	private static final long PROGRESS_WRITE_INTERVAL = 3000;
+
 	private ShanoirUploaderServiceClient uploadServiceClient;
 	
 	private ShanoirUploaderServiceClientNG uploadServiceClientNG;
@@ -202,18 +213,38 @@ public class UploadServiceJob implements Job {
 		try {
 			String tempDirId = uploadServiceClientNG.createTempDir();
 			logger.info("Upload: tempDirId for import: " + tempDirId);
-			int i = 0;
-			for (Iterator iterator = allFiles.iterator(); iterator.hasNext();) {
-				File file = (File) iterator.next();
-				i++;
-				logger.debug("UploadServiceJob started to upload file: " + file.getName());
-				uploadServiceClientNG.uploadFile(tempDirId, file);
-				logger.debug("UploadServiceJob finished to upload file: " + file.getName());
-				uploadPercentage = i * 100 / allFiles.size() + " %";
-				nominativeDataUploadJob.setUploadPercentage(uploadPercentage);
-				currentNominativeDataController.updateNominativeDataPercentage(folder, uploadPercentage);
-				nominativeDataUploadJobManager.writeUploadDataJob(nominativeDataUploadJob);
-				logger.debug("Upload percentage of folder " + folder.getName() + " = " + uploadPercentage + ".");
+			ExecutorService uploadExecutor = Executors.newFixedThreadPool(UPLOAD_THREADS);
+			try {
+				CompletionService<File> uploads = new ExecutorCompletionService<File>(uploadExecutor);
+				for (final File file : allFiles) {
+					uploads.submit(() -> {
+						logger.debug("UploadServiceJob started to upload file: " + file.getName());
+						uploadServiceClientNG.uploadFile(tempDirId, file);
+						logger.debug("UploadServiceJob finished to upload file: " + file.getName());
+						return file;
+					});
+				}
+				long lastProgressWrite = System.currentTimeMillis();
+				for (int i = 1; i <= allFiles.size(); i++) {
+					try {
+						uploads.take().get();
+					} catch (ExecutionException e) {
+						throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+					}
+					uploadPercentage = i * 100 / allFiles.size() + " %";
+					currentNominativeDataController.updateNominativeDataPercentage(folder, uploadPercentage);
+					// the upload job file is written at most every PROGRESS_WRITE_INTERVAL
+					long now = System.currentTimeMillis();
+					if (now - lastProgressWrite >= PROGRESS_WRITE_INTERVAL || i == allFiles.size()) {
+						nominativeDataUploadJob.setUploadPercentage(uploadPercentage);
+						nominativeDataUploadJobManager.writeUploadDataJob(nominativeDataUploadJob);
+						lastProgressWrite = now;
+						logger.debug("Upload percentage of folder " + folder.getName() + " = " + uploadPercentage + ".");
+					}
+				}
+			} finally {
+				// on error, stops the remaining uploads
+				uploadExecutor.shutdownNow();
 			}
 			logger.info("Upload: " + allFiles.size() + " uploaded files to tempDirId: " + tempDirId);
 			/**